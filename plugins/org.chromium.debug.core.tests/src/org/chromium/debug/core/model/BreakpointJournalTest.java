@@ -0,0 +1,221 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.debug.core.model;
+
+import static junit.framework.Assert.*;
+
+import java.util.Collections;
+
+import org.chromium.sdk.Breakpoint;
+import org.chromium.sdk.IgnoreCountBreakpointExtension;
+import org.chromium.sdk.JavascriptVm;
+import org.chromium.sdk.RelayOk;
+import org.chromium.sdk.SyncCallback;
+import org.junit.Test;
+
+public class BreakpointJournalTest {
+  private static final VmResourceRef SCRIPT_A =
+      VmResourceRef.forVmResourceId(new VmResourceId("a.js", null));
+  private static final VmResourceRef SCRIPT_B =
+      VmResourceRef.forVmResourceId(new VmResourceId("b.js", null));
+
+  @Test
+  public void testFirstSyncIsFull() {
+    BreakpointJournal journal = new BreakpointJournal();
+    assertTrue(journal.startSync().isFull());
+  }
+
+  @Test
+  public void testGenerations() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    journal.recordChange(SCRIPT_A);
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    assertFalse(snapshot.isFull());
+    assertTrue(snapshot.isChanged(SCRIPT_A));
+    assertFalse(snapshot.isChanged(SCRIPT_B));
+
+    // Changes made during synchronization must survive it.
+    journal.recordChange(SCRIPT_B);
+    journal.syncFinished(snapshot, true);
+
+    snapshot = journal.startSync();
+    assertFalse(snapshot.isFull());
+    assertFalse(snapshot.isChanged(SCRIPT_A));
+    assertTrue(snapshot.isChanged(SCRIPT_B));
+    journal.syncFinished(snapshot, true);
+
+    snapshot = journal.startSync();
+    assertFalse(snapshot.isFull());
+    assertFalse(snapshot.isChanged(SCRIPT_B));
+  }
+
+  @Test
+  public void testResourceChangedAgainDuringSync() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    journal.recordChange(SCRIPT_A);
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    journal.recordChange(SCRIPT_A);
+    journal.syncFinished(snapshot, true);
+
+    assertTrue(journal.startSync().isChanged(SCRIPT_A));
+  }
+
+  @Test
+  public void testFailureThenFull() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    journal.recordChange(SCRIPT_A);
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    assertFalse(snapshot.isFull());
+    journal.syncFinished(snapshot, false);
+
+    snapshot = journal.startSync();
+    assertTrue(snapshot.isFull());
+    journal.syncFinished(snapshot, true);
+
+    assertFalse(journal.startSync().isFull());
+  }
+
+  @Test
+  public void testUnknownChangeThenFull() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    journal.recordChange(null);
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    assertTrue(snapshot.isFull());
+    journal.syncFinished(snapshot, true);
+
+    assertFalse(journal.startSync().isFull());
+  }
+
+  @Test
+  public void testUnresolvedRemoteBreakpointReRecorded() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    journal.recordChange(SCRIPT_A);
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    // Synchronizer fails to find a local file for a remote breakpoint and re-records it.
+    journal.recordChange(SCRIPT_A);
+    journal.syncFinished(snapshot, true);
+
+    snapshot = journal.startSync();
+    assertFalse(snapshot.isFull());
+    assertTrue(snapshot.isChanged(SCRIPT_A));
+  }
+
+  @Test
+  public void testScriptLoadWithUnresolvedBreakpoint() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    journal.scriptsChanged();
+    assertFalse(journal.startSync().isFull());
+
+    journal.uiBreakpointUnresolved();
+    journal.scriptsChanged();
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    assertTrue(snapshot.isFull());
+    // Full synchronization finds the breakpoint resolvable now.
+    journal.syncFinished(snapshot, true);
+
+    journal.scriptsChanged();
+    assertFalse(journal.startSync().isFull());
+  }
+
+  @Test
+  public void testUnresolvedBreakpointReportedDuringSync() {
+    BreakpointJournal journal = createSyncedJournal();
+
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    // Synchronizer fails to resolve a local breakpoint.
+    journal.uiBreakpointUnresolved();
+    journal.syncFinished(snapshot, true);
+
+    journal.scriptsChanged();
+    assertTrue(journal.startSync().isFull());
+  }
+
+  @Test
+  public void testRemoteMirror() {
+    BreakpointJournal journal = new BreakpointJournal();
+    Breakpoint breakpointA = new BreakpointStub("a.js");
+    Breakpoint breakpointB = new BreakpointStub("b.js");
+
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    journal.resetRemote(Collections.singletonList(breakpointA));
+    journal.syncFinished(snapshot, true);
+    journal.remoteBreakpointAdded(breakpointB);
+
+    journal.recordChange(SCRIPT_A);
+    snapshot = journal.startSync();
+    assertEquals(Collections.singletonList(breakpointA), snapshot.getRemoteBreakpoints());
+    journal.syncFinished(snapshot, true);
+
+    journal.remoteBreakpointRemoved(breakpointA);
+    journal.recordChange(SCRIPT_A);
+    journal.recordChange(SCRIPT_B);
+    snapshot = journal.startSync();
+    assertEquals(Collections.singletonList(breakpointB), snapshot.getRemoteBreakpoints());
+  }
+
+  private static BreakpointJournal createSyncedJournal() {
+    BreakpointJournal journal = new BreakpointJournal();
+    BreakpointJournal.Snapshot snapshot = journal.startSync();
+    journal.resetRemote(Collections.<Breakpoint>emptyList());
+    journal.syncFinished(snapshot, true);
+    return journal;
+  }
+
+  private static class BreakpointStub implements Breakpoint {
+    private final Target target;
+
+    BreakpointStub(String scriptName) {
+      this.target = new Target.ScriptName(scriptName);
+    }
+
+    @Override public Target getTarget() {
+      return target;
+    }
+
+    @Override public long getId() {
+      return INVALID_ID;
+    }
+
+    @Override public long getLineNumber() {
+      return 0;
+    }
+
+    @Override public boolean isEnabled() {
+      return true;
+    }
+
+    @Override public void setEnabled(boolean enabled) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public String getCondition() {
+      return null;
+    }
+
+    @Override public void setCondition(String condition) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public RelayOk clear(JavascriptVm.BreakpointCallback callback,
+        SyncCallback syncCallback) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public RelayOk flush(JavascriptVm.BreakpointCallback callback,
+        SyncCallback syncCallback) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public IgnoreCountBreakpointExtension getIgnoreCountBreakpointExtension() {
+      return null;
+    }
+  }
+}
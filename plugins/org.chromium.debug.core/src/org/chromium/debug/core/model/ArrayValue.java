@@ -5,22 +5,37 @@
 package org.chromium.debug.core.model;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.chromium.debug.core.ChromiumDebugPlugin;
 import org.chromium.sdk.JsArray;
+import org.chromium.sdk.JsVariable;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IIndexedValue;
 import org.eclipse.debug.core.model.IVariable;
 
 /**
  * An IIndexedValue implementation for an array element range using a JsArray
- * instance.
+ * instance. When the array is big enough for Eclipse to show it in partitions, only
+ * the elements of the expanded partitions get loaded from remote.
  */
 public class ArrayValue extends Value implements IIndexedValue {
 
   private final AtomicReference<IVariable[]> elementsRef = new AtomicReference<IVariable[]>(null);
 
+  private volatile Integer size = null;
+
+  /**
+   * Already loaded element ranges. Key is an offset and a length packed into a long value.
+   */
+  private final Map<Long, IVariable[]> rangeCache = new HashMap<Long, IVariable[]>();
+
   public ArrayValue(EvaluateContext evaluateContext, JsArray array,
       ExpressionTracker.Node expressionTrackerNode) {
     super(evaluateContext, array, expressionTrackerNode);
@@ -50,16 +65,44 @@ public class ArrayValue extends Value implements IIndexedValue {
   }
 
   public int getSize() throws DebugException {
-    return getElements().length;
+    Integer result = size;
+    if (result == null) {
+      JsArray jsArray = (JsArray) getJsValue();
+      result = (int) Math.min(jsArray.getLength(), Integer.MAX_VALUE);
+      size = result;
+    }
+    return result;
   }
 
   public IVariable getVariable(int offset) throws DebugException {
-    return getElements()[offset];
+    IVariable[] range = getVariables(offset, 1);
+    if (range.length == 0) {
+      throw new DebugException(new Status(IStatus.ERROR, ChromiumDebugPlugin.PLUGIN_ID,
+          "No array element at index " + offset)); //$NON-NLS-1$
+    }
+    return range[0];
   }
 
+  /**
+   * Returns existing elements with indexes in [offset, offset + length); the result
+   * may be shorter than length if the array has holes.
+   */
   public IVariable[] getVariables(int offset, int length) throws DebugException {
-    IVariable[] result = new IVariable[length];
-    System.arraycopy(getElements(), offset, result, 0, length);
+    Long key = (((long) offset) << 32) | length;
+    synchronized (rangeCache) {
+      IVariable[] cached = rangeCache.get(key);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    JsArray jsArray = (JsArray) getJsValue();
+    SortedMap<Long, ? extends JsVariable> range =
+        jsArray.getRange(offset, ((long) offset) + length);
+    IVariable[] result = StackFrame.wrapVariables(getEvaluateContext(), range.values(),
+        Collections.<String>emptySet(), null, null, getExpressionTrackerNode());
+    synchronized (rangeCache) {
+      rangeCache.put(key, result);
+    }
     return result;
   }
 
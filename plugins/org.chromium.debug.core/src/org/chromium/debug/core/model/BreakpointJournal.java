@@ -0,0 +1,193 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.debug.core.model;
+
+import static org.chromium.sdk.util.BasicUtil.getSafe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.chromium.sdk.Breakpoint;
+
+/**
+ * A journal of line breakpoint mutations in one debug target, keyed by {@link VmResourceRef}.
+ * It lets {@link BreakpointSynchronizer} process only resources that have changed since
+ * the last successful synchronization instead of comparing all breakpoints.
+ * <p>
+ * Each recorded change gets a new generation number. The journal also keeps a mirror of remote
+ * line breakpoints, that is updated as breakpoints are created and cleared from this target, so
+ * remote breakpoints don't need to be listed again. This relies on remote breakpoints being
+ * changed only from this target, which is true for the lifetime of one connection. The journal
+ * is created per connection, so after reconnect the first synchronization is a full one.
+ * A failed synchronization also makes the next one full.
+ * <p>
+ * Some changes happen outside of the journal's sight: a breakpoint whose file doesn't resolve
+ * to a script is never sent to remote. The journal remembers that such breakpoints exist and
+ * treats any change in the set of scripts as an unknown change, so that the next
+ * synchronization is a full one and picks them up.
+ */
+class BreakpointJournal {
+  private static final long NEVER_SYNCED = -1;
+
+  private long generation = 0;
+  private long syncedGeneration = NEVER_SYNCED;
+  /** Generation of the last change that can't be attributed to a resource. */
+  private long unknownChangeGeneration = 0;
+  /** Whether some local breakpoint didn't resolve to a script since the last sync started. */
+  private boolean hasUnresolvedUiBreakpoints = false;
+  private final Map<VmResourceRef, Long> changedResources = new HashMap<VmResourceRef, Long>();
+  private final Map<VmResourceRef, Set<Breakpoint>> remoteBreakpoints =
+      new HashMap<VmResourceRef, Set<Breakpoint>>();
+
+  /**
+   * A state of journal at the start of synchronization.
+   */
+  static class Snapshot {
+    private final long generation;
+    private final Set<VmResourceRef> changedResources;
+    private final List<Breakpoint> remoteBreakpoints;
+
+    Snapshot(long generation, Set<VmResourceRef> changedResources,
+        List<Breakpoint> remoteBreakpoints) {
+      this.generation = generation;
+      this.changedResources = changedResources;
+      this.remoteBreakpoints = remoteBreakpoints;
+    }
+
+    /**
+     * @return true if all breakpoints must be compared; remote breakpoints must be
+     *     read from remote VM and passed to {@link BreakpointJournal#resetRemote}
+     */
+    boolean isFull() {
+      return changedResources == null;
+    }
+
+    /**
+     * @return whether breakpoints of the resource take part in an incremental synchronization
+     */
+    boolean isChanged(VmResourceRef vmResourceRef) {
+      return changedResources.contains(vmResourceRef);
+    }
+
+    /**
+     * @return remote breakpoints of changed resources (for incremental synchronization only)
+     */
+    List<Breakpoint> getRemoteBreakpoints() {
+      return remoteBreakpoints;
+    }
+  }
+
+  /**
+   * Records a change that must be reconciled with remote at next synchronization.
+   */
+  synchronized void recordChange(VmResourceRef vmResourceRef) {
+    generation++;
+    if (vmResourceRef == null) {
+      // We don't know what has changed.
+      unknownChangeGeneration = generation;
+      return;
+    }
+    changedResources.put(vmResourceRef, generation);
+  }
+
+  /**
+   * Records that a local breakpoint couldn't be resolved to a script and therefore wasn't
+   * (or couldn't be) set on remote.
+   */
+  synchronized void uiBreakpointUnresolved() {
+    hasUnresolvedUiBreakpoints = true;
+  }
+
+  /**
+   * Records that a script was loaded or reloaded. This may make unresolved breakpoints
+   * resolvable, so it counts as an unknown change if there are any.
+   */
+  synchronized void scriptsChanged() {
+    if (hasUnresolvedUiBreakpoints) {
+      recordChange(null);
+    }
+  }
+
+  synchronized void remoteBreakpointAdded(Breakpoint sdkBreakpoint) {
+    VmResourceRef vmResourceRef = BreakpointSynchronizer.getVmResourceRef(sdkBreakpoint);
+    if (vmResourceRef == null) {
+      return;
+    }
+    Set<Breakpoint> set = getSafe(remoteBreakpoints, vmResourceRef);
+    if (set == null) {
+      set = new HashSet<Breakpoint>(3);
+      remoteBreakpoints.put(vmResourceRef, set);
+    }
+    set.add(sdkBreakpoint);
+  }
+
+  synchronized void remoteBreakpointRemoved(Breakpoint sdkBreakpoint) {
+    VmResourceRef vmResourceRef = BreakpointSynchronizer.getVmResourceRef(sdkBreakpoint);
+    if (vmResourceRef == null) {
+      return;
+    }
+    Set<Breakpoint> set = getSafe(remoteBreakpoints, vmResourceRef);
+    if (set == null) {
+      return;
+    }
+    set.remove(sdkBreakpoint);
+    if (set.isEmpty()) {
+      remoteBreakpoints.remove(vmResourceRef);
+    }
+  }
+
+  /**
+   * Replaces the mirror of remote breakpoints with the actual list read from remote VM.
+   */
+  synchronized void resetRemote(Collection<? extends Breakpoint> sdkBreakpoints) {
+    remoteBreakpoints.clear();
+    for (Breakpoint sdkBreakpoint : sdkBreakpoints) {
+      remoteBreakpointAdded(sdkBreakpoint);
+    }
+  }
+
+  /**
+   * Starts synchronization. The caller must report all local breakpoints that it fails to
+   * resolve via {@link #uiBreakpointUnresolved()}.
+   */
+  synchronized Snapshot startSync() {
+    hasUnresolvedUiBreakpoints = false;
+    if (syncedGeneration < unknownChangeGeneration) {
+      return new Snapshot(generation, null, null);
+    }
+    Set<VmResourceRef> changed = new HashSet<VmResourceRef>(changedResources.keySet());
+    List<Breakpoint> remoteList = new ArrayList<Breakpoint>();
+    for (VmResourceRef vmResourceRef : changed) {
+      Set<Breakpoint> set = getSafe(remoteBreakpoints, vmResourceRef);
+      if (set != null) {
+        remoteList.addAll(set);
+      }
+    }
+    return new Snapshot(generation, changed, remoteList);
+  }
+
+  /**
+   * Marks changes up to the snapshot generation as reconciled if synchronization succeeded,
+   * otherwise requires the next synchronization to be a full one.
+   */
+  synchronized void syncFinished(Snapshot snapshot, boolean success) {
+    if (!success) {
+      syncedGeneration = NEVER_SYNCED;
+      return;
+    }
+    for (Iterator<Long> it = changedResources.values().iterator(); it.hasNext(); ) {
+      if (it.next() <= snapshot.generation) {
+        it.remove();
+      }
+    }
+    syncedGeneration = snapshot.generation;
+  }
+}
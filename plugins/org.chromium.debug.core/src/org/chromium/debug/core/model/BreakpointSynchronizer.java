@@ -13,6 +13,7 @@ import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -43,19 +44,25 @@ import org.eclipse.debug.core.model.IBreakpoint;
  * A class responsible for comparing breakpoints in workspace and on remote VM and synchronizing
  * them in both directions. {@link Direction#RESET_REMOTE} allows several synchronization
  * jobs to different VMs.
+ * <p>
+ * Only the first synchronization in a connection compares all breakpoints; after that
+ * {@link BreakpointJournal} tells which resources have changed, and only their breakpoints
+ * are compared.
  */
 public class BreakpointSynchronizer {
   private final JavascriptVm javascriptVm;
   private final ChromiumSourceDirector sourceDirector;
   private final BreakpointHelper breakpointHelper;
+  private final BreakpointJournal journal;
   private final String debugModelId;
 
-  public BreakpointSynchronizer(JavascriptVm javascriptVm,
+  BreakpointSynchronizer(JavascriptVm javascriptVm,
       ChromiumSourceDirector sourceDirector, BreakpointHelper breakpointHelper,
-      String debugModelId) {
+      BreakpointJournal journal, String debugModelId) {
     this.javascriptVm = javascriptVm;
     this.sourceDirector = sourceDirector;
     this.breakpointHelper = breakpointHelper;
+    this.journal = journal;
     this.debugModelId = debugModelId;
   }
 
@@ -96,29 +103,69 @@ public class BreakpointSynchronizer {
 
     BreakpointInTargetMap<Breakpoint, ChromiumLineBreakpoint> getLineBreakpointMap();
 
+    /**
+     * Creates several breakpoints on remote VM with a single bulk request (asynchronously)
+     * and links them to ui breakpoints. Lists must have the same size.
+     */
+    RelayOk createBreakpointsOnRemote(List<ChromiumLineBreakpoint> uiBreakpoints,
+        List<VmResourceRef> vmResourceRefs, BulkCreateCallback bulkCreateCallback,
+        SyncCallback syncCallback);
+
     void registerExceptionBreakpoint(Collection<ChromiumExceptionBreakpoint> breakpoints);
 
     interface CreateCallback {
       void failure(Exception ex);
       void success();
     }
+
+    interface BulkCreateCallback {
+      void success(ChromiumLineBreakpoint uiBreakpoint);
+      void failure(ChromiumLineBreakpoint uiBreakpoint, Exception ex);
+      void progress(int finishedCount, int totalCount);
+    }
   }
 
   public interface Callback {
     void onDone(IStatus status);
   }
 
+  /**
+   * Receives progress of breakpoint creation on remote. May be called from any thread.
+   */
+  public interface ProgressListener {
+    void breakpointsCreated(int finishedCount, int totalCount);
+  }
+
   /**
    * The main entry method of the class. Asynchronously performs synchronization job.
    */
   public void syncBreakpoints(Direction direction, Callback callback) {
-    ReportBuilder reportBuilder = new ReportBuilder(direction);
-    StatusBuilder statusBuilder = new StatusBuilder(callback, reportBuilder);
+    syncBreakpoints(direction, callback, null);
+  }
+
+  /**
+   * Asynchronously performs synchronization job reporting progress to the listener.
+   * @param progressListener may be null
+   */
+  public void syncBreakpoints(Direction direction, final Callback callback,
+      ProgressListener progressListener) {
+    final BreakpointJournal.Snapshot snapshot = journal.startSync();
+    Callback journalCallback = new Callback() {
+      public void onDone(IStatus status) {
+        journal.syncFinished(snapshot, status.isOK());
+        if (callback != null) {
+          callback.onDone(status);
+        }
+      }
+    };
+    ReportBuilder reportBuilder = new ReportBuilder(direction, snapshot.isFull());
+    StatusBuilder statusBuilder =
+        new StatusBuilder(journalCallback, reportBuilder, progressListener);
 
     statusBuilder.plan(UNCODITIONALLY_RELAY_TO_REST_OF_METHOD_OK);
     Exception ex = null;
     try {
-      syncBreakpointsImpl(direction, statusBuilder);
+      syncBreakpointsImpl(direction, snapshot, statusBuilder);
     } catch (RuntimeException e) {
       ex = e;
     } finally {
@@ -128,18 +175,47 @@ public class BreakpointSynchronizer {
 
   private static final RelayOk UNCODITIONALLY_RELAY_TO_REST_OF_METHOD_OK = new RelayOk() {};
 
-  private void syncBreakpointsImpl(final Direction direction, final StatusBuilder statusBuilder) {
-    // Collect the remote breakpoints.
-    Collection<? extends Breakpoint> sdkBreakpoints = readSdkBreakpoints(javascriptVm);
+  private void syncBreakpointsImpl(final Direction direction,
+      BreakpointJournal.Snapshot snapshot, final StatusBuilder statusBuilder) {
+    Collection<? extends Breakpoint> sdkBreakpoints;
     // Collect all local breakpoints.
     ChromiumBreakpointsFiltered uiBreakpoints = getUiBreakpoints();
+    // Drop breakpoints that don't resolve to a script (the journal has to know about them)
+    // and, for incremental synchronization, breakpoints of unchanged resources.
+    for (Iterator<ChromiumLineBreakpoint> it = uiBreakpoints.getLineBreakpoints().iterator();
+        it.hasNext(); ) {
+      VmResourceRef vmResourceRef = uiBreakpointHandler.getVmResourceRef(it.next());
+      if (vmResourceRef == null) {
+        journal.uiBreakpointUnresolved();
+        it.remove();
+      } else if (!snapshot.isFull() && !snapshot.isChanged(vmResourceRef)) {
+        it.remove();
+      }
+    }
+    if (snapshot.isFull()) {
+      // Collect the remote breakpoints.
+      sdkBreakpoints = readSdkBreakpoints(javascriptVm);
+      journal.resetRemote(sdkBreakpoints);
+      if (direction != Direction.MERGE) {
+        breakpointHelper.getLineBreakpointMap().clear();
+      }
+    } else {
+      // Only take breakpoints of changed resources; remote ones are known from the journal.
+      sdkBreakpoints = snapshot.getRemoteBreakpoints();
+      if (direction != Direction.MERGE) {
+        BreakpointInTargetMap<Breakpoint, ChromiumLineBreakpoint> map =
+            breakpointHelper.getLineBreakpointMap();
+        for (Breakpoint sdkBreakpoint : sdkBreakpoints) {
+          ChromiumLineBreakpoint uiBreakpoint = map.getUiBreakpoint(sdkBreakpoint);
+          if (uiBreakpoint != null) {
+            map.remove(uiBreakpoint);
+          }
+        }
+      }
+    }
 
     List<Breakpoint> lineSdkBreakpoints = new ArrayList<Breakpoint>(sdkBreakpoints.size());
 
-    if (direction != Direction.MERGE) {
-      breakpointHelper.getLineBreakpointMap().clear();
-    }
-
     // Throw away all already linked breakpoints and put remaining into lineSdkBreakpoints list.
     for (Breakpoint sdkBreakpoint : sdkBreakpoints) {
       ChromiumLineBreakpoint uiBreakpoint =
@@ -198,13 +274,14 @@ public class BreakpointSynchronizer {
 
   private void deteleBreakpoints(List<Breakpoint> sdkBreakpointsToDelete,
       List<ChromiumLineBreakpoint> uiBreakpointsToDelete, final StatusBuilder statusBuilder) {
-    for (Breakpoint sdkBreakpoint : sdkBreakpointsToDelete) {
+    for (final Breakpoint sdkBreakpoint : sdkBreakpointsToDelete) {
       final PlannedTaskHelper deleteTaskHelper = new PlannedTaskHelper(statusBuilder);
       JavascriptVm.BreakpointCallback callback = new JavascriptVm.BreakpointCallback() {
         public void failure(String errorMessage) {
           deleteTaskHelper.setException(new Exception(errorMessage));
         }
         public void success(Breakpoint breakpoint) {
+          journal.remoteBreakpointRemoved(sdkBreakpoint);
           statusBuilder.getReportBuilder().increment(ReportBuilder.Property.DELETED_ON_REMOTE);
         }
       };
@@ -235,6 +312,8 @@ public class BreakpointSynchronizer {
         statusBuilder.getReportBuilder().addProblem(
             ReportBuilder.Problem.UNRESOLVED_REMOTE_BREAKPOINT,
             sdkBreakpoint.getTarget().accept(ChromiumDebugPluginUtil.BREAKPOINT_TARGET_TO_STRING));
+        // Keep the breakpoint unsettled, so that next synchronization looks at it again.
+        journal.recordChange(getVmResourceRef(sdkBreakpoint));
         continue;
       }
       // We do not actually support working files for scripts with offset.
@@ -250,30 +329,38 @@ public class BreakpointSynchronizer {
       }
       statusBuilder.getReportBuilder().increment(ReportBuilder.Property.CREATED_LOCALLY);
     }
+    List<ChromiumLineBreakpoint> uiBreakpointList = new ArrayList<ChromiumLineBreakpoint>();
+    List<VmResourceRef> vmResourceRefList = new ArrayList<VmResourceRef>();
     for (ChromiumLineBreakpoint uiBreakpoint : uiBreakpointsToCreate) {
       VmResourceRef vmResourceRef = uiBreakpointHandler.getVmResourceRef(uiBreakpoint);
       if (vmResourceRef == null) {
         // Actually we should not get here, because getScript call succeeded before.
         continue;
       }
+      uiBreakpointList.add(uiBreakpoint);
+      vmResourceRefList.add(vmResourceRef);
+    }
+    if (uiBreakpointList.isEmpty()) {
+      return;
+    }
 
-      final PlannedTaskHelper createTaskHelper = new PlannedTaskHelper(statusBuilder);
-      BreakpointHelper.CreateCallback createCallback = new BreakpointHelper.CreateCallback() {
-        public void success() {
-          statusBuilder.getReportBuilder().increment(ReportBuilder.Property.CREATED_ON_REMOTE);
-        }
-        public void failure(Exception ex) {
-          createTaskHelper.setException(ex);
-        }
-      };
-      try {
-        RelayOk relayOk = breakpointHelper.createBreakpointOnRemote(uiBreakpoint, vmResourceRef,
-            createCallback, createTaskHelper);
-        createTaskHelper.registerSelf(relayOk);
-      } catch (CoreException e) {
-        statusBuilder.addOnStartException(e);
+    // All breakpoints go in one bulk request instead of a round trip per breakpoint.
+    PlannedTaskHelper createTaskHelper = new PlannedTaskHelper(statusBuilder);
+    BreakpointHelper.BulkCreateCallback createCallback =
+        new BreakpointHelper.BulkCreateCallback() {
+      public void success(ChromiumLineBreakpoint uiBreakpoint) {
+        statusBuilder.getReportBuilder().increment(ReportBuilder.Property.CREATED_ON_REMOTE);
       }
-    }
+      public void failure(ChromiumLineBreakpoint uiBreakpoint, Exception ex) {
+        statusBuilder.addException(ex);
+      }
+      public void progress(int finishedCount, int totalCount) {
+        statusBuilder.reportProgress(finishedCount, totalCount);
+      }
+    };
+    RelayOk relayOk = breakpointHelper.createBreakpointsOnRemote(uiBreakpointList,
+        vmResourceRefList, createCallback, createTaskHelper);
+    createTaskHelper.registerSelf(relayOk);
   }
 
   private static class BreakpointMerger extends Merger<ChromiumLineBreakpoint, Breakpoint> {
@@ -327,10 +414,13 @@ public class BreakpointSynchronizer {
     private final List<Exception> exceptions = new ArrayList<Exception>(0);
     private boolean alreadyReported = false;
     private final ReportBuilder reportBuilder;
+    private final ProgressListener progressListener;
 
-    StatusBuilder(Callback callback, ReportBuilder reportBuilder) {
+    StatusBuilder(Callback callback, ReportBuilder reportBuilder,
+        ProgressListener progressListener) {
       this.callback = callback;
       this.reportBuilder = reportBuilder;
+      this.progressListener = progressListener;
     }
 
     ReportBuilder getReportBuilder() {
@@ -351,10 +441,20 @@ public class BreakpointSynchronizer {
       }
     }
 
-    public synchronized void addOnStartException(Exception ex) {
+    /**
+     * Registers a failure that does not finish a planned job (e.g. failure of one
+     * breakpoint in a bulk request).
+     */
+    public synchronized void addException(Exception ex) {
       exceptions.add(ex);
     }
 
+    void reportProgress(int finishedCount, int totalCount) {
+      if (progressListener != null) {
+        progressListener.breakpointsCreated(finishedCount, totalCount);
+      }
+    }
+
     private synchronized boolean doneImpl(Exception ex) {
       if (ex != null) {
         exceptions.add(ex);
@@ -449,11 +549,13 @@ public class BreakpointSynchronizer {
     }
 
     private final Direction direction;
+    private final boolean full;
     private final Map<Property, AtomicInteger> counters;
     private final Map<Problem, List<String>> problems;
 
-    ReportBuilder(Direction direction) {
+    ReportBuilder(Direction direction, boolean full) {
       this.direction = direction;
+      this.full = full;
       counters = new EnumMap<Property, AtomicInteger>(Property.class);
       for (Property property : Property.class.getEnumConstants()) {
         counters.put(property, new AtomicInteger(0));
@@ -477,6 +579,7 @@ public class BreakpointSynchronizer {
     public String build() {
       StringBuilder builder = new StringBuilder();
       builder.append("direction=").append(direction); //$NON-NLS-1$
+      builder.append(full ? " full" : " incremental"); //$NON-NLS-1$ //$NON-NLS-2$
       for (Map.Entry<Property, AtomicInteger> en : counters.entrySet()) {
         int number = en.getValue().get();
         if (number == 0) {
@@ -534,6 +637,13 @@ public class BreakpointSynchronizer {
     }
   };
 
+  /**
+   * @return resource of SDK breakpoint as it is used for comparing breakpoints or null
+   */
+  static VmResourceRef getVmResourceRef(Breakpoint sdkBreakpoint) {
+    return sdkBreakpointHandler.getVmResourceRef(sdkBreakpoint);
+  }
+
   private static final PropertyHandler<Breakpoint> sdkBreakpointHandler =
       new PropertyHandler<Breakpoint>() {
     @Override
@@ -23,6 +23,7 @@ import org.chromium.sdk.BreakpointTypeExtension.ScriptRegExpSupport;
 import org.chromium.sdk.IgnoreCountBreakpointExtension;
 import org.chromium.sdk.JavascriptVm;
 import org.chromium.sdk.JavascriptVm.BreakpointCallback;
+import org.chromium.sdk.JavascriptVm.BreakpointSpec;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.util.BasicUtil;
@@ -200,11 +201,7 @@ public class ChromiumLineBreakpoint extends LineBreakpoint {
         VmResourceRef vmResourceRef, final ConnectedTargetData connectedTargetData,
         final CreateOnRemoveCallback createOnRemoveCallback,
         SyncCallback syncCallback) throws CoreException {
-      final JavascriptVm javascriptVm = connectedTargetData.getJavascriptVm();
-
-      // ILineBreakpoint lines are 1-based while V8 lines are 0-based
-      final int line = (uiBreakpoint.getLineNumber() - 1);
-      final int column = 0;
+      JavascriptVm javascriptVm = connectedTargetData.getJavascriptVm();
 
       BreakpointCallback callback = new BreakpointCallback() {
         public void success(Breakpoint sdkBreakpoint) {
@@ -215,6 +212,42 @@ public class ChromiumLineBreakpoint extends LineBreakpoint {
         }
       };
 
+      BreakpointSpec spec = createSpec(uiBreakpoint, vmResourceRef, connectedTargetData);
+
+      if (spec.getIgnoreCount() == Breakpoint.EMPTY_VALUE) {
+        return javascriptVm.setBreakpoint(
+            spec.getTarget(),
+            spec.getLine(),
+            spec.getColumn(),
+            spec.isEnabled(),
+            spec.getCondition(),
+            callback, syncCallback);
+      } else {
+        return javascriptVm.getIgnoreCountBreakpointExtension().setBreakpoint(
+            javascriptVm,
+            spec.getTarget(),
+            spec.getLine(),
+            spec.getColumn(),
+            spec.isEnabled(),
+            spec.getCondition(),
+            spec.getIgnoreCount(),
+            callback, syncCallback);
+      }
+    }
+
+    /**
+     * Translates UI breakpoint into SDK breakpoint parameters, e.g. for
+     * {@link JavascriptVm#setBreakpoints}. Ignore count is only specified if VM supports it.
+     */
+    public static BreakpointSpec createSpec(ChromiumLineBreakpoint uiBreakpoint,
+        VmResourceRef vmResourceRef, final ConnectedTargetData connectedTargetData)
+        throws CoreException {
+      final JavascriptVm javascriptVm = connectedTargetData.getJavascriptVm();
+
+      // ILineBreakpoint lines are 1-based while V8 lines are 0-based
+      final int line = (uiBreakpoint.getLineNumber() - 1);
+      final int column = 0;
+
       class SdkParams {
         SdkParams(Target target, int line, int column) {
           this.target = target;
@@ -263,30 +296,16 @@ public class ChromiumLineBreakpoint extends LineBreakpoint {
         }
       });
 
-      IgnoreCountBreakpointExtension extension = javascriptVm.getIgnoreCountBreakpointExtension();
-      if (extension == null) {
-        if (uiBreakpoint.getEffectiveIgnoreCount() != Breakpoint.EMPTY_VALUE) {
+      int ignoreCount = uiBreakpoint.getEffectiveIgnoreCount();
+      if (javascriptVm.getIgnoreCountBreakpointExtension() == null) {
+        if (ignoreCount != Breakpoint.EMPTY_VALUE) {
           ChromiumDebugPlugin.log(
               new Exception("Failed to set breakpoint ignore count as it is not supported by VM"));
         }
-        return javascriptVm.setBreakpoint(
-            sdkParams.target,
-            sdkParams.line,
-            sdkParams.column,
-            uiBreakpoint.isEnabled(),
-            uiBreakpoint.getCondition(),
-            callback, syncCallback);
-      } else {
-        return extension.setBreakpoint(
-            javascriptVm,
-            sdkParams.target,
-            sdkParams.line,
-            sdkParams.column,
-            uiBreakpoint.isEnabled(),
-            uiBreakpoint.getCondition(),
-            uiBreakpoint.getEffectiveIgnoreCount(),
-            callback, syncCallback);
+        ignoreCount = Breakpoint.EMPTY_VALUE;
       }
+      return new BreakpointSpec(sdkParams.target, sdkParams.line, sdkParams.column,
+          uiBreakpoint.isEnabled(), uiBreakpoint.getCondition(), ignoreCount);
     }
 
     public static void updateOnRemote(final Breakpoint sdkBreakpoint,
@@ -134,6 +134,10 @@ public class ConnectedTargetData {
       }
       return NLS.bind(Messages.DebugTargetImpl_BUSY_WITH, currentRequest, numberOfEnqueued);
     }
+
+    public void objectCacheStatisticsChanged(long hitCount, long missCount) {
+      // Not shown in UI.
+    }
   }
 
   public void synchronizeBreakpoints(BreakpointSynchronizer.Direction direction,
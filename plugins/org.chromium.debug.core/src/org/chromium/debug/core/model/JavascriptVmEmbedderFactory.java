@@ -36,9 +36,11 @@ import org.eclipse.core.runtime.Status;
 public class JavascriptVmEmbedderFactory {
   public static JavascriptVmEmbedder.ConnectionToRemote connectToWipBrowser(String host, int port,
       WipBackend backend,
-      final NamedConnectionLoggerFactory browserLoggerFactory,
+      NamedConnectionLoggerFactory browserLoggerFactoryParam,
       final NamedConnectionLoggerFactory tabLoggerFactory,
       WipTabSelector tabSelector) throws CoreException {
+    final NamedConnectionLoggerFactory browserLoggerFactory =
+        RingBufferLoggerFactory.wrapIfConfigured(browserLoggerFactoryParam);
 
     InetSocketAddress address = new InetSocketAddress(host, port);
     WipBrowserFactory.LoggerFactory factory = new WipBrowserFactory.LoggerFactory() {
@@ -189,8 +191,8 @@ public class JavascriptVmEmbedderFactory {
   public static JavascriptVmEmbedder.ConnectionToRemote connectToStandalone(String host, int port,
       NamedConnectionLoggerFactory connectionLoggerFactory) {
     SocketAddress address = new InetSocketAddress(host, port);
-    ConnectionLogger connectionLogger =
-      connectionLoggerFactory.createLogger(address.toString());
+    ConnectionLogger connectionLogger = RingBufferLoggerFactory.wrapIfConfigured(
+        connectionLoggerFactory).createLogger(address.toString());
     final StandaloneVm standaloneVm = JavascriptVmFactory.getInstance().createStandalone(address,
         connectionLogger);
 
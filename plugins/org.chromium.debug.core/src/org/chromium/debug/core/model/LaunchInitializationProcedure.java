@@ -4,12 +4,14 @@
 
 package org.chromium.debug.core.model;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.chromium.debug.core.ChromiumDebugPlugin;
 import org.chromium.debug.core.util.ProgressUtil;
 import org.chromium.debug.core.util.ProgressUtil.MonitorWrapper;
 import org.chromium.debug.core.util.ProgressUtil.Stage;
 import org.chromium.sdk.CallbackSemaphore;
-import org.chromium.sdk.RelayOk;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -134,14 +136,23 @@ class LaunchInitializationProcedure {
           callbackSemaphore.callbackDone(null);
         }
       };
-      workspaceBridge.getBreakpointSynchronizer().syncBreakpoints(direction, callback);
-      RelayOk relayOk = SYNCHRONIZER_MUST_RELAY_OK;
+      final AtomicInteger createdCount = new AtomicInteger(0);
+      final AtomicInteger totalCount = new AtomicInteger(0);
+      BreakpointSynchronizer.ProgressListener progressListener =
+          new BreakpointSynchronizer.ProgressListener() {
+        public void breakpointsCreated(int finishedCount, int total) {
+          totalCount.set(total);
+          createdCount.set(finishedCount);
+        }
+      };
+      workspaceBridge.getBreakpointSynchronizer().syncBreakpoints(direction, callback,
+          progressListener);
       checkIsCanceled(monitor);
 
       BreakpointsWorkPlan.ANALYZE.finish(monitor);
 
       BreakpointsWorkPlan.REMOTE_CHANGES.start(monitor);
-      callbackSemaphore.tryAcquireDefault(relayOk);
+      waitForRemoteChanges(callbackSemaphore, createdCount, totalCount, monitor);
       BreakpointsWorkPlan.REMOTE_CHANGES.finish(monitor);
 
     } finally {
@@ -149,11 +160,32 @@ class LaunchInitializationProcedure {
     }
   }
 
+  /**
+   * Waits for the synchronizer to finish, showing how many breakpoints have been set so far.
+   */
+  private static void waitForRemoteChanges(CallbackSemaphore callbackSemaphore,
+      AtomicInteger createdCount, AtomicInteger totalCount, MonitorWrapper monitor) {
+    long deadline = System.currentTimeMillis() + CallbackSemaphore.OPERATION_TIMEOUT_MS;
+    int shownCount = -1;
+    while (!callbackSemaphore.tryAcquire(PROGRESS_POLL_MS, TimeUnit.MILLISECONDS)) {
+      if (System.currentTimeMillis() > deadline) {
+        return;
+      }
+      int created = createdCount.get();
+      if (created != shownCount && totalCount.get() != 0) {
+        shownCount = created;
+        monitor.setTaskName(NLS.bind(
+            Messages.LaunchInitializationProcedure_SET_BREAKPOINTS_PROGRESS,
+            created, totalCount.get()));
+      }
+    }
+  }
+
+  private static final long PROGRESS_POLL_MS = 200;
+
   private static void checkIsCanceled(MonitorWrapper monitor) {
     if (monitor.isCanceled()) {
       throw new OperationCanceledException();
     }
   }
-
-  private static final RelayOk SYNCHRONIZER_MUST_RELAY_OK = new RelayOk() {};
 }
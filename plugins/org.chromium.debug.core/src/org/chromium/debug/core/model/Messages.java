@@ -79,6 +79,8 @@ public class Messages extends NLS {
 
   public static String LaunchInitializationProcedure_LOAD_SCRIPTS;
 
+  public static String LaunchInitializationProcedure_SET_BREAKPOINTS_PROGRESS;
+
   public static String LaunchInitializationProcedure_SET_OPTIONS;
 
   public static String LaunchInitializationProcedure_SYNCHRONIZE_BREAKPOINTS;
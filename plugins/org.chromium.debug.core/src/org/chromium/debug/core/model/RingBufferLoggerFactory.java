@@ -0,0 +1,52 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.debug.core.model;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.chromium.sdk.ConnectionLogger;
+import org.chromium.sdk.util.RingBufferConnectionLogger;
+
+/**
+ * The factory provides {@link RingBufferConnectionLogger}s that save traffic into files
+ * in a directory set by {@link #LOG_DIRECTORY_PROPERTY} system property. Unlike
+ * {@link ConnectionLoggerImpl} it doesn't slow down the connection on heavy traffic; a log file
+ * is converted into a text by {@link RingBufferConnectionLogger#render} when someone views it.
+ */
+public class RingBufferLoggerFactory implements NamedConnectionLoggerFactory {
+  /**
+   * System property that sets a directory for connection log files.
+   */
+  private static final String LOG_DIRECTORY_PROPERTY =
+      "org.chromium.debug.connectionLogDirectory";
+
+  /**
+   * @return a factory of log files if {@link #LOG_DIRECTORY_PROPERTY} is set, otherwise
+   *     the factory passed
+   */
+  public static NamedConnectionLoggerFactory wrapIfConfigured(
+      NamedConnectionLoggerFactory defaultFactory) {
+    String directory = System.getProperty(LOG_DIRECTORY_PROPERTY);
+    if (directory == null || directory.length() == 0) {
+      return defaultFactory;
+    }
+    return new RingBufferLoggerFactory(new File(directory));
+  }
+
+  private final File directory;
+  private final AtomicInteger fileCounter = new AtomicInteger(0);
+
+  public RingBufferLoggerFactory(File directory) {
+    this.directory = directory;
+  }
+
+  public ConnectionLogger createLogger(String title) {
+    directory.mkdirs();
+    String fileName = "connection-" + System.currentTimeMillis() + "-" +
+        fileCounter.incrementAndGet() + "-" + title.replaceAll("[^A-Za-z0-9.]+", "_") + ".log";
+    return new RingBufferConnectionLogger(new File(directory, fileName));
+  }
+}
@@ -73,6 +73,7 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
   private final ResourceManager resourceManager;
   private final ConnectedTargetData connectedTargetData;
   private final ChromiumSourceDirector sourceDirector;
+  private final BreakpointJournal breakpointJournal = new BreakpointJournal();
 
   public VProjectWorkspaceBridge(String projectName, ConnectedTargetData connectedTargetData,
       JavascriptVm javascriptVm) {
@@ -90,7 +91,7 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
 
   public BreakpointSynchronizer getBreakpointSynchronizer() {
     return new BreakpointSynchronizer(javascriptVm, sourceDirector, breakpointHandler,
-        DEBUG_MODEL_ID);
+        breakpointJournal, DEBUG_MODEL_ID);
   }
 
   public void synchronizeBreakpoints(BreakpointSynchronizer.Direction direction,
@@ -114,10 +115,12 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
 
   public void handleVmResetEvent() {
     resourceManager.clear();
+    breakpointJournal.recordChange(null);
   }
 
   public void scriptLoaded(Script newScript) {
     resourceManager.addScript(newScript);
+    breakpointJournal.scriptsChanged();
   }
 
   public void scriptCollected(Script script) {
@@ -137,6 +140,7 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
         for (Script script : scripts) {
           resourceManager.addScript(script);
         }
+        breakpointJournal.scriptsChanged();
       }
     });
   }
@@ -189,6 +193,7 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
 
   public void reloadScript(Script script) {
     resourceManager.reloadScript(script);
+    breakpointJournal.scriptsChanged();
   }
 
   public BreakpointHandler getBreakpointHandler() {
@@ -249,6 +254,14 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
           createCallback, syncCallback);
     }
 
+    @Override
+    public RelayOk createBreakpointsOnRemote(List<ChromiumLineBreakpoint> lineBreakpoints,
+        List<VmResourceRef> vmResourceRefs, BulkCreateCallback bulkCreateCallback,
+        SyncCallback syncCallback) {
+      return lineBreakpointHandler.createBreakpointsOnRemote(lineBreakpoints, vmResourceRefs,
+          bulkCreateCallback, syncCallback);
+    }
+
     @Override
     public BreakpointInTargetMap<Breakpoint, ChromiumLineBreakpoint> getLineBreakpointMap() {
       return lineBreakpointHandler.getMap();
@@ -335,12 +348,15 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
         } catch (CoreException e) {
           ChromiumDebugPlugin.log(
               new Exception("Failed to resolve script for the file " + file, e)); //$NON-NLS-1$
+          breakpointJournal.uiBreakpointUnresolved();
           return;
         }
         if (vmResourceRef == null) {
-          // Might be a script from a different debug target
+          // Might be a script from a different debug target or a script that is not loaded yet.
+          breakpointJournal.uiBreakpointUnresolved();
           return;
         }
+        breakpointJournal.recordChange(vmResourceRef);
 
         try {
           createBreakpointOnRemote(lineBreakpoint, vmResourceRef, null, null);
@@ -384,12 +400,15 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
         ChromiumLineBreakpoint.Helper.CreateOnRemoveCallback callback =
             new ChromiumLineBreakpoint.Helper.CreateOnRemoveCallback() {
           public void success(Breakpoint breakpoint) {
+            breakpointJournal.remoteBreakpointAdded(breakpoint);
             getMap().add(breakpoint, lineBreakpoint);
             if (createCallback != null) {
               createCallback.success();
             }
           }
           public void failure(String errorMessage) {
+            // Nothing was set on remote; next synchronization should retry.
+            breakpointJournal.recordChange(vmResourceRef);
             if (createCallback == null) {
               ChromiumDebugPlugin.logError(errorMessage);
             } else {
@@ -401,6 +420,66 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
             connectedTargetData, callback, syncCallback);
       }
 
+      public RelayOk createBreakpointsOnRemote(List<ChromiumLineBreakpoint> lineBreakpoints,
+          List<VmResourceRef> vmResourceRefs, final BulkCreateCallback bulkCreateCallback,
+          SyncCallback syncCallback) {
+        final List<ChromiumLineBreakpoint> requestedBreakpoints =
+            new ArrayList<ChromiumLineBreakpoint>(lineBreakpoints.size());
+        final List<VmResourceRef> requestedRefs =
+            new ArrayList<VmResourceRef>(lineBreakpoints.size());
+        List<JavascriptVm.BreakpointSpec> specs =
+            new ArrayList<JavascriptVm.BreakpointSpec>(lineBreakpoints.size());
+        for (int i = 0; i < lineBreakpoints.size(); i++) {
+          ChromiumLineBreakpoint lineBreakpoint = lineBreakpoints.get(i);
+          JavascriptVm.BreakpointSpec spec;
+          try {
+            spec = ChromiumLineBreakpoint.Helper.createSpec(lineBreakpoint,
+                vmResourceRefs.get(i), connectedTargetData);
+          } catch (CoreException e) {
+            breakpointJournal.recordChange(vmResourceRefs.get(i));
+            bulkCreateCallback.failure(lineBreakpoint, e);
+            continue;
+          } catch (RuntimeException e) {
+            breakpointJournal.recordChange(vmResourceRefs.get(i));
+            bulkCreateCallback.failure(lineBreakpoint, e);
+            continue;
+          }
+          requestedBreakpoints.add(lineBreakpoint);
+          requestedRefs.add(vmResourceRefs.get(i));
+          specs.add(spec);
+        }
+
+        // Each breakpoint is linked as soon as it is set, so that it can be hit or removed
+        // while the rest of the batch is still in progress.
+        JavascriptVm.BulkBreakpointCallback callback = new JavascriptVm.BulkBreakpointCallback() {
+          @Override
+          public void success(int index, Breakpoint sdkBreakpoint) {
+            ChromiumLineBreakpoint lineBreakpoint = requestedBreakpoints.get(index);
+            breakpointJournal.remoteBreakpointAdded(sdkBreakpoint);
+            getMap().add(sdkBreakpoint, lineBreakpoint);
+            bulkCreateCallback.success(lineBreakpoint);
+          }
+
+          @Override
+          public void failure(int index, String errorMessage) {
+            breakpointJournal.recordChange(requestedRefs.get(index));
+            bulkCreateCallback.failure(requestedBreakpoints.get(index),
+                new Exception(errorMessage));
+          }
+
+          @Override
+          public void progress(int finishedCount, int totalCount) {
+            bulkCreateCallback.progress(finishedCount, totalCount);
+          }
+
+          @Override
+          public void done(List<Breakpoint> breakpoints, List<String> errorMessages) {
+          }
+        };
+        return connectedTargetData.getJavascriptVm().setBreakpoints(specs, callback,
+            syncCallback);
+      }
+
       @Override
       void breakpointChanged(ChromiumLineBreakpoint lineBreakpoint,
           IMarkerDelta delta) {
@@ -433,11 +512,14 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
       @Override
       void breakpointRemoved(ChromiumLineBreakpoint lineBreakpoint,
           IMarkerDelta delta) {
+        final Breakpoint sdkBreakpoint = getMap().getSdkBreakpoint(lineBreakpoint);
+        // Whatever happens below, the script must be reconciled at next synchronization.
+        recordRemovedBreakpoint(lineBreakpoint, sdkBreakpoint);
+
         if (ChromiumLineBreakpoint.getIgnoreList().contains(lineBreakpoint)) {
           return;
         }
 
-        Breakpoint sdkBreakpoint = getMap().getSdkBreakpoint(lineBreakpoint);
         if (sdkBreakpoint == null) {
           return;
         }
@@ -447,10 +529,12 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
         }
         JavascriptVm.BreakpointCallback callback = new JavascriptVm.BreakpointCallback() {
           public void failure(String errorMessage) {
+            breakpointJournal.recordChange(BreakpointSynchronizer.getVmResourceRef(sdkBreakpoint));
             ChromiumDebugPlugin.log(new Exception("Failed to remove breakpoint in " + //$NON-NLS-1$
                 getTargetNameSafe() + ": " + errorMessage)); //$NON-NLS-1$
           }
           public void success(Breakpoint breakpoint) {
+            breakpointJournal.remoteBreakpointRemoved(sdkBreakpoint);
           }
         };
         try {
@@ -462,6 +546,30 @@ public class VProjectWorkspaceBridge implements WorkspaceBridge {
         getMap().remove(lineBreakpoint);
       }
 
+      private void recordRemovedBreakpoint(ChromiumLineBreakpoint lineBreakpoint,
+          Breakpoint sdkBreakpoint) {
+        if (sdkBreakpoint != null) {
+          breakpointJournal.recordChange(BreakpointSynchronizer.getVmResourceRef(sdkBreakpoint));
+          return;
+        }
+        IFile file = (IFile) lineBreakpoint.getMarker().getResource();
+        VmResourceRef vmResourceRef;
+        try {
+          vmResourceRef = findVmResourceRefFromWorkspaceFile(file);
+        } catch (CoreException e) {
+          ChromiumDebugPlugin.log(
+              new Exception("Failed to resolve script for the file " + file, e)); //$NON-NLS-1$
+          // We don't know what has changed.
+          breakpointJournal.recordChange(null);
+          return;
+        }
+        if (vmResourceRef == null) {
+          // The file has no script in this target, so there is nothing to reconcile.
+          return;
+        }
+        breakpointJournal.recordChange(vmResourceRef);
+      }
+
       @Override
       void breakpointManagerEnablementChanged(boolean enabled) {
         enablementMonitor.setState(enabled);
@@ -17,6 +17,7 @@ import org.chromium.sdk.JsEvaluateContext.ResultOrException;
 import org.chromium.sdk.JsFunction;
 import org.chromium.sdk.JsObject;
 import org.chromium.sdk.JsValue;
+import org.chromium.sdk.ObjectPreviewExtension;
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IVariable;
 import org.eclipse.debug.ui.IValueDetailListener;
@@ -54,6 +55,10 @@ public class Value extends ValueBase.ValueWithLazyVariables {
   public String getValueString() {
     String valueText = JsValueStringifier.toVisibleString(value);
     if (value.asObject() != null) {
+      String previewText = renderPreview(value.asObject());
+      if (previewText != null) {
+        valueText = valueText + " " + previewText;
+      }
       String ref = value.asObject().getRefId();
       if (ref != null) {
         valueText = valueText + "  (id=" + ref + ")";
@@ -62,6 +67,24 @@ public class Value extends ValueBase.ValueWithLazyVariables {
     return valueText;
   }
 
+  /**
+   * @return object summary rendered from its preview or null if there is no preview
+   */
+  private String renderPreview(JsObject jsObject) {
+    ObjectPreviewExtension previewExtension =
+        getConnectedData().getJavascriptVm().getObjectPreviewExtension();
+    if (previewExtension == null) {
+      return null;
+    }
+    ObjectPreviewExtension.Preview preview = previewExtension.getPreview(jsObject);
+    if (preview == null) {
+      return null;
+    }
+    return PREVIEW_STRINGIFIER.renderPreview(preview);
+  }
+
+  private static final JsValueStringifier PREVIEW_STRINGIFIER = new JsValueStringifier();
+
   // This method could be blocking -- it gets called from a worker thread.
   // All data should be prepared here.
   protected IVariable[] calculateVariables() {
@@ -69,12 +92,84 @@ public class Value extends ValueBase.ValueWithLazyVariables {
     if (asObject == null) {
       return EMPTY_VARIABLES;
     }
+    if (isPagingWorthwhile(asObject)) {
+      JsObject.PropertyPage page = asObject.getPropertyPage(null, PROPERTY_PAGE_SIZE);
+      if (page.getContinuationToken() != null) {
+        return wrapPropertyPage(getEvaluateContext(), asObject, page, expressionNode);
+      }
+    }
     List<Variable> functionScopes = calculateFunctionScopesVariable(asObject);
     return StackFrame.wrapVariables(getEvaluateContext(),
         asObject.getProperties(), Collections.<String>emptySet(),
         asObject.getInternalProperties(), functionScopes, expressionNode);
   }
 
+  /**
+   * Maximal number of properties that are loaded at once for a plain object.
+   */
+  private static final int PROPERTY_PAGE_SIZE = 1000;
+
+  /**
+   * Checks whether the object has too many properties to load all of them at once.
+   * Requesting a page costs an extra round-trip, so we only do it when the object
+   * is known to be big.
+   */
+  private static boolean isPagingWorthwhile(JsObject jsObject) {
+    if (jsObject.asArray() != null || jsObject.asFunction() != null) {
+      return false;
+    }
+    return jsObject.getPropertyCountIfKnown() > PROPERTY_PAGE_SIZE;
+  }
+
+  /**
+   * Wraps a page of object properties. If there are more properties, adds a virtual
+   * variable that loads the next page when expanded.
+   */
+  private static IVariable[] wrapPropertyPage(EvaluateContext evaluateContext,
+      JsObject jsObject, JsObject.PropertyPage page, ExpressionTracker.Node expressionNode) {
+    List<Variable> additional = null;
+    if (page.getContinuationToken() != null) {
+      additional = Collections.singletonList(createMorePropertiesVariable(evaluateContext,
+          jsObject, page.getContinuationToken(), expressionNode));
+    }
+    return StackFrame.wrapVariables(evaluateContext, page.getProperties(),
+        Collections.<String>emptySet(), page.getInternalProperties(), additional,
+        expressionNode);
+  }
+
+  private static Variable createMorePropertiesVariable(EvaluateContext evaluateContext,
+      final JsObject jsObject, final String continuationToken,
+      final ExpressionTracker.Node expressionNode) {
+    ValueBase value = new ValueBase.ValueWithLazyVariables(evaluateContext) {
+      @Override public String getReferenceTypeName() throws DebugException {
+        return "<more properties>";
+      }
+
+      @Override public boolean isAllocated() throws DebugException {
+        return true;
+      }
+
+      @Override public boolean hasVariables() throws DebugException {
+        return true;
+      }
+
+      @Override protected IVariable[] calculateVariables() {
+        JsObject.PropertyPage nextPage =
+            jsObject.getPropertyPage(continuationToken, PROPERTY_PAGE_SIZE);
+        return wrapPropertyPage(getEvaluateContext(), jsObject, nextPage, expressionNode);
+      }
+
+      @Override public Value asRealValue() {
+        return null;
+      }
+
+      @Override public String getValueString() {
+        return "";
+      }
+    };
+    return Variable.forMoreProperties(evaluateContext, value);
+  }
+
   /**
    * Returns 'function scopes' node packed as a list or an empty list if the input is not
    * a function. The 'function scopes' node holds actual scope variables as its children.
@@ -165,6 +165,16 @@ public abstract class Variable extends DebugElementImpl.WithEvaluate implements
     return forScopeImpl(evaluateContext, "<function scope>", value);
   }
 
+  /**
+   * Creates a virtual variable that holds the rest of object properties, that haven't been
+   * loaded with the current page.
+   */
+  public static Variable forMoreProperties(EvaluateContext evaluateContext,
+      ValueBase morePropertiesValue) {
+    return new Variable.Virtual(evaluateContext, "<more properties>", "<more properties>",
+        morePropertiesValue, null);
+  }
+
   public static Variable forEvaluateExpression(EvaluateContext evaluateContext, JsValue jsValue,
       String expression) {
     ExpressionTracker.Node expressionTrackerNode =
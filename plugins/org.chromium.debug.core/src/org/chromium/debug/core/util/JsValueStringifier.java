@@ -5,6 +5,7 @@
 package org.chromium.debug.core.util;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 
@@ -13,6 +14,7 @@ import org.chromium.sdk.JsObject;
 import org.chromium.sdk.JsValue;
 import org.chromium.sdk.JsVariable;
 import org.chromium.sdk.JsValue.Type;
+import org.chromium.sdk.ObjectPreviewExtension;
 
 /**
  * A converter of JsValues into human-readable strings used in various contexts.
@@ -30,6 +32,12 @@ public class JsValueStringifier {
      * The default is 80 characters.
      */
     public int maxLength = 80;
+
+    /**
+     * An optional extension; if set, objects that have a preview are rendered from it
+     * without loading their properties from remote.
+     */
+    public ObjectPreviewExtension objectPreviewExtension = null;
   }
 
   private static final String ELLIPSIS = "..."; //$NON-NLS-1$
@@ -158,6 +166,12 @@ public class JsValueStringifier {
   }
 
   private StringBuilder renderObject(JsObject value, int maxLength, StringBuilder output) {
+    if (config.objectPreviewExtension != null) {
+      ObjectPreviewExtension.Preview preview = config.objectPreviewExtension.getPreview(value);
+      if (preview != null) {
+        return renderPreview(preview, maxLength, output);
+      }
+    }
     output.append('[');
     Collection<? extends JsVariable> properties = value.getProperties();
     boolean isFirst = true;
@@ -187,6 +201,63 @@ public class JsValueStringifier {
     return output.append(']');
   }
 
+  /**
+   * Renders an object preview in the same format as objects are rendered. Never
+   * loads anything from remote.
+   */
+  public String renderPreview(ObjectPreviewExtension.Preview preview) {
+    StringBuilder output = new StringBuilder();
+    renderPreview(preview, config.maxLength, output);
+    return output.toString();
+  }
+
+  private StringBuilder renderPreview(ObjectPreviewExtension.Preview preview, int maxLength,
+      StringBuilder output) {
+    output.append('[');
+    List<? extends ObjectPreviewExtension.Property> properties = preview.getProperties();
+    boolean isFirst = true;
+    int maxLengthWithoutLastBracket = maxLength - 1;
+    StringBuilder elementBuilder = new StringBuilder();
+    int entriesWritten = 0;
+    for (ObjectPreviewExtension.Property property : properties) {
+      if (!isFirst) {
+        output.append(',');
+      } else {
+        isFirst = false;
+      }
+      elementBuilder.setLength(0);
+      elementBuilder.append(property.getName()).append('=');
+      renderPreviewValue(property, elementBuilder);
+      if (output.length() + elementBuilder.length() >= maxLengthWithoutLastBracket) {
+        // reached max length
+        appendNMore(output, properties.size() - entriesWritten);
+        break;
+      } else {
+        output.append(elementBuilder.toString());
+        entriesWritten++;
+      }
+    }
+    if (preview.isOverflow() && entriesWritten == properties.size()) {
+      if (!isFirst) {
+        output.append(',');
+      }
+      output.append(ELLIPSIS);
+    }
+    return output.append(']');
+  }
+
+  private static void renderPreviewValue(ObjectPreviewExtension.Property property,
+      StringBuilder output) {
+    String valueString = property.getValueString();
+    if (valueString == null) {
+      output.append(UNKNOWN_VALUE);
+    } else if (property.getType() == JsValue.Type.TYPE_STRING) {
+      output.append('"').append(valueString).append('"');
+    } else {
+      output.append(valueString);
+    }
+  }
+
   private StringBuilder appendNMore(StringBuilder output, int n) {
     return output.append(" +").append(n).append(ELLIPSIS); //$NON-NLS-1$
   }
@@ -21,8 +21,6 @@ import org.eclipse.jface.text.ITextViewer;
  */
 public class JsDebugTextHover implements ITextHover {
 
-  private static final JsValueStringifier STRINGIFIER = new JsValueStringifier();
-
   public String getHoverInfo(ITextViewer textViewer, IRegion hoverRegion) {
     IDocument doc = textViewer.getDocument();
     String expression = JavascriptUtil.extractSurroundingJsIdentifier(doc, hoverRegion.getOffset());
@@ -61,7 +59,10 @@ public class JsDebugTextHover implements ITextHover {
       return null;
     }
 
-    return STRINGIFIER.render(result[0]);
+    JsValueStringifier.Config config = new JsValueStringifier.Config();
+    config.objectPreviewExtension = evaluateContext.getThreadSuspendedState().getThread()
+        .getConnectedData().getJavascriptVm().getObjectPreviewExtension();
+    return new JsValueStringifier(config).render(result[0]);
   }
 
   public IRegion getHoverRegion(ITextViewer textViewer, int offset) {
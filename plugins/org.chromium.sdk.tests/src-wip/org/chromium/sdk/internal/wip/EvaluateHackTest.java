@@ -0,0 +1,122 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.wip;
+
+import static org.chromium.sdk.internal.wip.WipSessionReplayTest.NO_HEADERS;
+import static org.chromium.sdk.internal.wip.WipSessionReplayTest.TIMEOUT_MS;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.chromium.sdk.DebugContext;
+import org.chromium.sdk.JsEvaluateContext;
+import org.chromium.sdk.JsScope;
+import org.chromium.sdk.JsValue;
+import org.chromium.sdk.JsVariable;
+import org.chromium.sdk.internal.transport.SessionRecording;
+import org.chromium.sdk.internal.transport.WsStubServer;
+import org.junit.Test;
+
+/**
+ * Tests {@link EvaluateHack} over a replayed session. The recordings have both commands of
+ * the operation before their responses, so the replay only goes on if the commands are sent
+ * in one batch without waiting for responses.
+ */
+public class EvaluateHackTest {
+  private static final String FILL_REQUEST = "{\"id\":6,\"method\":\"Runtime.callFunctionOn\"," +
+      "\"params\":{\"objectId\":\"{\\\"injectedScriptId\\\":1,\\\"id\\\":3}\"}}";
+  private static final String EVALUATE_REQUEST =
+      "{\"id\":7,\"method\":\"Debugger.evaluateOnCallFrame\"}";
+  private static final String EVALUATE_RESPONSE = "{\"id\":7,\"result\":{\"result\":" +
+      "{\"type\":\"number\",\"value\":3,\"description\":\"3\"},\"wasThrown\":false}}";
+
+  @Test(timeout = 30000)
+  public void testBatch() throws Exception {
+    EvaluateResult result = evaluate("{\"id\":6,\"result\":{\"result\":" +
+        "{\"type\":\"undefined\"},\"wasThrown\":false}}");
+    Assert.assertNull(result.failure);
+    Assert.assertEquals("3", result.value.getValueString());
+  }
+
+  /**
+   * Helper script throws an exception without description; this must not pass for a success.
+   */
+  @Test(timeout = 30000)
+  public void testHelperFailureWithoutDetails() throws Exception {
+    EvaluateResult result = evaluate("{\"id\":6,\"result\":{\"result\":" +
+        "{\"type\":\"object\"},\"wasThrown\":true}}");
+    Assert.assertNull(result.value);
+    Assert.assertNotNull(result.failure);
+  }
+
+  private static EvaluateResult evaluate(String fillResponse) throws Exception {
+    File file = File.createTempFile("evaluatehack", ".rec");
+    try {
+      SessionRecording.Writer writer = new SessionRecording.Writer(file);
+      WipSessionReplayTest.writeSuspend(writer);
+      WipSessionReplayTest.writeLocalScopeExpansion(writer);
+      writer.write(false, NO_HEADERS, FILL_REQUEST);
+      writer.write(false, NO_HEADERS, EVALUATE_REQUEST);
+      writer.write(true, NO_HEADERS, fillResponse);
+      writer.write(true, NO_HEADERS, EVALUATE_RESPONSE);
+      writer.close();
+
+      WipSessionReplayStub stub = new WipSessionReplayStub(SessionRecording.read(file), 0);
+      WsStubServer server = new WsStubServer(stub);
+      server.start();
+      try {
+        WipSessionReplayTest.Listener listener = new WipSessionReplayTest.Listener();
+        WipTabImpl tab = WipSessionReplayTest.attach(server, listener);
+        DebugContext context = listener.waitForSuspend();
+
+        JsValue point = null;
+        JsScope scope = context.getCallFrames().get(0).getVariableScopes().get(0);
+        for (JsVariable variable : scope.asDeclarativeScope().getVariables()) {
+          if (variable.getName().equals("point")) {
+            point = variable.getValue();
+          }
+        }
+        Assert.assertNotNull(point);
+
+        final EvaluateResult result = new EvaluateResult();
+        final CountDownLatch latch = new CountDownLatch(1);
+        context.getCallFrames().get(0).getEvaluateContext().evaluateAsync("p.x + p.y",
+            Collections.singletonMap("p", point), new JsEvaluateContext.EvaluateCallback() {
+              @Override
+              public void success(JsEvaluateContext.ResultOrException resultOrException) {
+                result.value = resultOrException.getResult();
+                latch.countDown();
+              }
+
+              @Override
+              public void failure(Exception cause) {
+                result.failure = cause;
+                latch.countDown();
+              }
+            }, null);
+        Assert.assertTrue(latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        Assert.assertTrue(stub.waitUntilFinished(TIMEOUT_MS));
+        Assert.assertEquals(0, stub.getUnexpectedRequestCount());
+        tab.detach();
+        return result;
+      } finally {
+        stub.stop();
+        server.stop();
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static class EvaluateResult {
+    volatile JsValue value = null;
+    volatile Exception failure = null;
+  }
+}
@@ -0,0 +1,70 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.wip;
+
+import static org.chromium.sdk.internal.wip.WipSessionReplayTest.TIMEOUT_MS;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.chromium.sdk.Script;
+import org.chromium.sdk.internal.transport.SessionRecording;
+import org.chromium.sdk.internal.transport.WsStubServer;
+import org.junit.Test;
+
+/**
+ * Tests lazy script source loading ('org.chromium.sdk.wip.lazyScriptSources').
+ */
+public class WipLazyScriptSourceTest {
+  private static final String LAZY_SOURCES_PROPERTY = "org.chromium.sdk.wip.lazyScriptSources";
+
+  /**
+   * A script reported after attach must be announced with its source: listeners read it
+   * in Dispatch thread, where it cannot be loaded synchronously.
+   */
+  @Test(timeout = 30000)
+  public void testSourceReadInScriptLoaded() throws Exception {
+    File file = File.createTempFile("wiplazy", ".rec");
+    System.setProperty(LAZY_SOURCES_PROPERTY, "true");
+    try {
+      SessionRecording.Writer writer = new SessionRecording.Writer(file);
+      WipSessionReplayTest.writeSuspend(writer);
+      writer.close();
+
+      WipSessionReplayStub stub = new WipSessionReplayStub(SessionRecording.read(file), 0);
+      WsStubServer server = new WsStubServer(stub);
+      server.start();
+      try {
+        final BlockingQueue<String> sources = new LinkedBlockingQueue<String>();
+        WipSessionReplayTest.Listener listener = new WipSessionReplayTest.Listener() {
+          @Override public void scriptLoaded(Script newScript) {
+            String source = newScript.getSource();
+            sources.add(source == null ? "<null>" : source);
+          }
+        };
+        WipTabImpl tab = WipSessionReplayTest.attach(server, listener);
+        listener.waitForSuspend();
+
+        String source = sources.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Assert.assertNotNull("Script hasn't been reported", source);
+        Assert.assertTrue(source, source.startsWith("function handler(count)"));
+
+        Assert.assertTrue(stub.waitUntilFinished(TIMEOUT_MS));
+        Assert.assertEquals(0, stub.getUnexpectedRequestCount());
+        tab.detach();
+      } finally {
+        stub.stop();
+        server.stop();
+      }
+    } finally {
+      System.clearProperty(LAZY_SOURCES_PROPERTY);
+      file.delete();
+    }
+  }
+}
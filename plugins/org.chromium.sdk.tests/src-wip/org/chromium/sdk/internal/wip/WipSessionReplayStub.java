@@ -0,0 +1,203 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.wip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.chromium.sdk.internal.JsonUtil;
+import org.chromium.sdk.internal.transport.SessionRecording;
+import org.chromium.sdk.internal.transport.WsStubServer;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Plays back a recorded WIP session (see {@link SessionRecording}) over {@link WsStubServer}.
+ * It works like {@link org.chromium.sdk.internal.transport.SessionReplayStub} for V8:
+ * incoming messages are sent in the recorded order, each one only after the client has made
+ * all the requests that preceded it. Live requests are matched against recorded ones by
+ * content (ignoring 'id'), or by method name if there is no exact match. Each response gets
+ * the 'id' of the matching live request. A request that matches nothing gets an error
+ * response right away, so that the client doesn't hang.
+ */
+public class WipSessionReplayStub implements WsStubServer.Handler {
+  private final List<SessionRecording.Entry> entries;
+  private final List<RecordedRequest> recordedRequests;
+  private final double timeScale;
+
+  // All fields below are accessed under synchronization on this.
+  private final Map<Long, Long> recordedToLiveId = new HashMap<Long, Long>();
+  private int unexpectedRequestCount = 0;
+  private boolean finished = false;
+
+  private WsStubServer server = null;
+  private Thread deliveryThread = null;
+
+  public WipSessionReplayStub(List<SessionRecording.Entry> entries, double timeScale) {
+    this.entries = entries;
+    this.timeScale = timeScale;
+    this.recordedRequests = new ArrayList<RecordedRequest>();
+    for (SessionRecording.Entry entry : entries) {
+      if (!entry.isIncoming()) {
+        recordedRequests.add(new RecordedRequest(parse(entry.getContent())));
+      }
+    }
+  }
+
+  @Override
+  public synchronized void connected(WsStubServer server) {
+    this.server = server;
+    deliveryThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          deliver();
+        } catch (InterruptedException e) {
+          // Replay has been stopped.
+        } catch (IOException e) {
+          // Connection has been closed.
+        }
+      }
+    }, "WIP session replay");
+    deliveryThread.setDaemon(true);
+    deliveryThread.start();
+  }
+
+  @Override
+  public void textMessageReceived(String text) {
+    JSONObject request = parse(text);
+    Long liveId = JsonUtil.getAsLong(request, "id");
+    request.remove("id");
+    synchronized (this) {
+      RecordedRequest matched = null;
+      for (RecordedRequest recorded : recordedRequests) {
+        if (!recorded.matched && recorded.content.equals(request)) {
+          matched = recorded;
+          break;
+        }
+      }
+      if (matched == null) {
+        Object method = request.get("method");
+        for (RecordedRequest recorded : recordedRequests) {
+          if (!recorded.matched && method != null &&
+              method.equals(recorded.content.get("method"))) {
+            matched = recorded;
+            break;
+          }
+        }
+      }
+      if (matched != null) {
+        matched.matched = true;
+        recordedToLiveId.put(matched.recordedId, liveId);
+        notifyAll();
+        // Responses are sent from the delivery thread.
+        return;
+      }
+      unexpectedRequestCount++;
+    }
+    try {
+      server.sendTextMessage("{\"id\":" + liveId +
+          ",\"error\":{\"code\":-32601,\"message\":\"Not in recording\"}}");
+    } catch (IOException e) {
+      // Connection has been closed.
+    }
+  }
+
+  /**
+   * Waits until all recorded messages are sent.
+   * @return whether the replay has finished within the timeout
+   */
+  public synchronized boolean waitUntilFinished(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!finished) {
+      long timeLeft = deadline - System.currentTimeMillis();
+      if (timeLeft <= 0) {
+        return false;
+      }
+      wait(timeLeft);
+    }
+    return true;
+  }
+
+  /**
+   * @return number of live requests that matched no recorded request
+   */
+  public synchronized int getUnexpectedRequestCount() {
+    return unexpectedRequestCount;
+  }
+
+  public synchronized void stop() {
+    if (deliveryThread != null) {
+      deliveryThread.interrupt();
+    }
+  }
+
+  private void deliver() throws InterruptedException, IOException {
+    int requestIndex = 0;
+    long previousTimeNanos = 0;
+    for (SessionRecording.Entry entry : entries) {
+      long pauseNanos = (long) ((entry.getTimeNanos() - previousTimeNanos) * timeScale);
+      previousTimeNanos = entry.getTimeNanos();
+
+      if (entry.isIncoming()) {
+        // Reproduces remote processing time; client time is spent by the live client.
+        if (pauseNanos > 0) {
+          Thread.sleep(pauseNanos / 1000000, (int) (pauseNanos % 1000000));
+        }
+        server.sendTextMessage(rewriteId(entry.getContent()));
+      } else {
+        RecordedRequest request = recordedRequests.get(requestIndex++);
+        synchronized (this) {
+          while (!request.matched) {
+            wait();
+          }
+        }
+      }
+    }
+    synchronized (this) {
+      finished = true;
+      notifyAll();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized String rewriteId(String content) {
+    JSONObject message = parse(content);
+    Long recordedId = JsonUtil.getAsLong(message, "id");
+    if (recordedId == null) {
+      return content;
+    }
+    Long liveId = recordedToLiveId.get(recordedId);
+    if (liveId == null) {
+      return content;
+    }
+    message.put("id", liveId);
+    return message.toJSONString();
+  }
+
+  private static JSONObject parse(String content) {
+    try {
+      return JsonUtil.jsonObjectFromJson(content);
+    } catch (ParseException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class RecordedRequest {
+    final JSONObject content;
+    final Long recordedId;
+    // Accessed under synchronization on the host stub.
+    boolean matched = false;
+
+    RecordedRequest(JSONObject content) {
+      this.recordedId = JsonUtil.getAsLong(content, "id");
+      content.remove("id");
+      this.content = content;
+    }
+  }
+}
@@ -0,0 +1,276 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.wip;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.chromium.sdk.CallFrame;
+import org.chromium.sdk.DebugContext;
+import org.chromium.sdk.DebugContext.StepAction;
+import org.chromium.sdk.DebugEventListener;
+import org.chromium.sdk.JsObject;
+import org.chromium.sdk.JsScope;
+import org.chromium.sdk.JsVariable;
+import org.chromium.sdk.Script;
+import org.chromium.sdk.TabDebugEventListener;
+import org.chromium.sdk.internal.transport.SessionRecording;
+import org.chromium.sdk.internal.transport.SessionReplayTest;
+import org.chromium.sdk.internal.transport.WsStubServer;
+import org.chromium.sdk.internal.websocket.Hybi17WsConnection;
+import org.chromium.sdk.internal.websocket.WsConnection;
+import org.junit.Test;
+
+/**
+ * Replays a WIP suspend/expand/resume session through a real WebSocket connection and
+ * {@link WipTabImpl}. The session is a synthetic one; a session recorded from a live browser
+ * with 'org.chromium.sdk.wip.recordSession' can be replayed the same way. Latency budgets are
+ * checked only if {@link SessionReplayTest#CHECK_LATENCY_PROPERTY} is set.
+ */
+public class WipSessionReplayTest {
+  private static final int REPLAY_COUNT = 10;
+
+  // See SessionReplayTest for the V8 counterpart of these budgets.
+  private static final long MAX_OPERATION_LATENCY_MS = 500;
+  private static final long MAX_AVERAGE_SESSION_MS = 100;
+
+  static final int TIMEOUT_MS = 5000;
+
+  static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+  @Test(timeout = 60000)
+  public void testReplayLatency() throws Exception {
+    File file = File.createTempFile("wipsession", ".rec");
+    try {
+      writeSession(file);
+      List<SessionRecording.Entry> entries = SessionRecording.read(file);
+
+      long totalNanos = 0;
+      for (int i = 0; i < REPLAY_COUNT; i++) {
+        WipSessionReplayStub stub = new WipSessionReplayStub(entries, 0);
+        WsStubServer server = new WsStubServer(stub);
+        server.start();
+        try {
+          long[] latencies = runWorkload(server, stub);
+
+          Assert.assertEquals(0, stub.getUnexpectedRequestCount());
+          for (long latency : latencies) {
+            totalNanos += latency;
+            if (SessionReplayTest.CHECK_LATENCY) {
+              Assert.assertTrue("Operation took " + toMs(latency) + "ms",
+                  toMs(latency) <= MAX_OPERATION_LATENCY_MS);
+            }
+          }
+        } finally {
+          stub.stop();
+          server.stop();
+        }
+      }
+      if (SessionReplayTest.CHECK_LATENCY) {
+        long averageMs = toMs(totalNanos / REPLAY_COUNT);
+        Assert.assertTrue("Average session took " + averageMs + "ms",
+            averageMs <= MAX_AVERAGE_SESSION_MS);
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Writes a session the way the tab would see it: attach, a script with its source, a pause
+   * with one frame, expansion of the local scope and of an object in it, resume with
+   * release of the context objects.
+   */
+  private static void writeSession(File file) throws Exception {
+    SessionRecording.Writer writer = new SessionRecording.Writer(file);
+    writeSuspend(writer);
+    writeLocalScopeExpansion(writer);
+    writer.write(false, NO_HEADERS, "{\"id\":6,\"method\":\"Runtime.getProperties\"," +
+        "\"params\":{\"objectId\":\"{\\\"injectedScriptId\\\":1,\\\"id\\\":3}\"}}");
+    writer.write(true, NO_HEADERS, "{\"id\":6,\"result\":{\"result\":[" +
+        "{\"name\":\"x\",\"value\":{\"type\":\"number\",\"value\":1,\"description\":\"1\"}," +
+        "\"writable\":true,\"configurable\":true,\"enumerable\":true}," +
+        "{\"name\":\"y\",\"value\":{\"type\":\"number\",\"value\":2,\"description\":\"2\"}," +
+        "\"writable\":true,\"configurable\":true,\"enumerable\":true}]}}");
+    writer.write(false, NO_HEADERS, "{\"id\":7,\"method\":\"Debugger.resume\"}");
+    writer.write(true, NO_HEADERS, "{\"id\":7,\"result\":{}}");
+    writer.write(true, NO_HEADERS, "{\"method\":\"Debugger.resumed\"}");
+    writer.write(false, NO_HEADERS, "{\"id\":8,\"method\":\"Runtime.releaseObjectGroup\"," +
+        "\"params\":{\"objectGroup\":\"sdk-context-1\"}}");
+    writer.write(true, NO_HEADERS, "{\"id\":8,\"result\":{}}");
+    writer.close();
+  }
+
+  /**
+   * Writes attach to a tab with one script and a pause in it (requests 1-4).
+   */
+  static void writeSuspend(SessionRecording.Writer writer) throws IOException {
+    writer.write(false, NO_HEADERS, "{\"id\":1,\"method\":\"Debugger.enable\"}");
+    writer.write(false, NO_HEADERS, "{\"id\":2,\"method\":\"Page.enable\"}");
+    writer.write(false, NO_HEADERS, "{\"id\":3,\"method\":\"Page.getResourceTree\"}");
+    writer.write(true, NO_HEADERS, "{\"id\":1,\"result\":{}}");
+    writer.write(true, NO_HEADERS, "{\"id\":2,\"result\":{}}");
+    writer.write(true, NO_HEADERS, "{\"id\":3,\"result\":{\"frameTree\":{\"frame\":" +
+        "{\"id\":\"1.1\",\"loaderId\":\"1.2\",\"url\":\"http://localhost/test.html\"," +
+        "\"securityOrigin\":\"http://localhost\",\"mimeType\":\"text/html\"}," +
+        "\"resources\":[]}}}");
+    writer.write(true, NO_HEADERS, "{\"method\":\"Debugger.scriptParsed\",\"params\":" +
+        "{\"scriptId\":\"52\",\"url\":\"http://localhost/test.js\",\"startLine\":0," +
+        "\"startColumn\":0,\"endLine\":40,\"endColumn\":1}}");
+    writer.write(false, NO_HEADERS, "{\"id\":4,\"method\":\"Debugger.getScriptSource\"," +
+        "\"params\":{\"scriptId\":\"52\"}}");
+    writer.write(true, NO_HEADERS, "{\"id\":4,\"result\":{\"scriptSource\":" +
+        "\"function handler(count) {\\n  var point = {x: 1, y: 2};\\n  debugger;\\n}\"}}");
+    writer.write(true, NO_HEADERS, "{\"method\":\"Debugger.paused\",\"params\":" +
+        "{\"callFrames\":[{\"callFrameId\":\"{\\\"ordinal\\\":0,\\\"injectedScriptId\\\":1}\"," +
+        "\"functionName\":\"handler\",\"location\":{\"scriptId\":\"52\",\"lineNumber\":25," +
+        "\"columnNumber\":4},\"scopeChain\":[{\"type\":\"local\",\"object\":" +
+        "{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":1,\\\"id\\\":1}\"," +
+        "\"className\":\"Object\",\"description\":\"Object\"}},{\"type\":\"global\"," +
+        "\"object\":{\"type\":\"object\",\"objectId\":" +
+        "\"{\\\"injectedScriptId\\\":1,\\\"id\\\":2}\",\"className\":\"Window\"," +
+        "\"description\":\"Window\"}}],\"this\":{\"type\":\"object\",\"objectId\":" +
+        "\"{\\\"injectedScriptId\\\":1,\\\"id\\\":2}\",\"className\":\"Window\"," +
+        "\"description\":\"Window\"}}],\"reason\":\"other\",\"hitBreakpoints\":[]}}");
+  }
+
+  /**
+   * Writes expansion of the local scope of the top frame (request 5). The scope has
+   * a number 'count' and an object 'point'.
+   */
+  static void writeLocalScopeExpansion(SessionRecording.Writer writer) throws IOException {
+    writer.write(false, NO_HEADERS, "{\"id\":5,\"method\":\"Runtime.getProperties\"," +
+        "\"params\":{\"objectId\":\"{\\\"injectedScriptId\\\":1,\\\"id\\\":1}\"}}");
+    writer.write(true, NO_HEADERS, "{\"id\":5,\"result\":{\"result\":[" +
+        "{\"name\":\"count\",\"value\":{\"type\":\"number\",\"value\":3," +
+        "\"description\":\"3\"},\"writable\":true,\"configurable\":true,\"enumerable\":true}," +
+        "{\"name\":\"point\",\"value\":{\"type\":\"object\",\"objectId\":" +
+        "\"{\\\"injectedScriptId\\\":1,\\\"id\\\":3}\",\"className\":\"Object\"," +
+        "\"description\":\"Object\"},\"writable\":true,\"configurable\":true," +
+        "\"enumerable\":true}]}}");
+  }
+
+  /**
+   * Attaches, waits for suspend, expands top frame variables, resumes and detaches.
+   * @return latency of each operation in nanoseconds
+   */
+  private static long[] runWorkload(WsStubServer server, WipSessionReplayStub stub)
+      throws Exception {
+    Listener listener = new Listener();
+    long[] latencies = new long[4];
+
+    long start = System.nanoTime();
+    WipTabImpl tab = attach(server, listener);
+    DebugContext context = listener.waitForSuspend();
+    latencies[0] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    CallFrame topFrame = context.getCallFrames().get(0);
+    for (JsScope scope : topFrame.getVariableScopes()) {
+      JsScope.Declarative declarativeScope = scope.asDeclarativeScope();
+      if (declarativeScope == null) {
+        // Object scopes (global, with) are too big to expand them on each suspend.
+        continue;
+      }
+      for (JsVariable variable : declarativeScope.getVariables()) {
+        JsObject jsObject = variable.getValue().asObject();
+        if (jsObject != null) {
+          jsObject.getProperties();
+        }
+      }
+    }
+    latencies[1] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    final CountDownLatch resumeLatch = new CountDownLatch(1);
+    final String[] failure = new String[1];
+    context.continueVm(StepAction.CONTINUE, 0, new DebugContext.ContinueCallback() {
+      @Override
+      public void success() {
+        resumeLatch.countDown();
+      }
+
+      @Override
+      public void failure(String errorMessage) {
+        failure[0] = errorMessage == null ? "" : errorMessage;
+        resumeLatch.countDown();
+      }
+    }, null);
+    Assert.assertTrue(resumeLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    Assert.assertNull("Failure on resume: " + failure[0], failure[0]);
+    // Objects of the context are released after the resume callback returns.
+    Assert.assertTrue(stub.waitUntilFinished(TIMEOUT_MS));
+    latencies[2] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    tab.detach();
+    latencies[3] = System.nanoTime() - start;
+    return latencies;
+  }
+
+  static WipTabImpl attach(WsStubServer server, Listener listener) throws IOException {
+    WsConnection socket = Hybi17WsConnection.connect(server.getAddress(), TIMEOUT_MS,
+        "/devtools/page/1", Hybi17WsConnection.MaskStrategy.TRANSPARENT_MASK, null);
+    WipBrowserImpl browserImpl = new WipBrowserImpl(server.getAddress(), null);
+    return new WipTabImpl(socket, browserImpl, listener, "");
+  }
+
+  private static long toMs(long nanos) {
+    return nanos / 1000000;
+  }
+
+  static class Listener implements TabDebugEventListener, DebugEventListener {
+    private final BlockingQueue<DebugContext> suspendedContexts =
+        new LinkedBlockingQueue<DebugContext>();
+
+    DebugContext waitForSuspend() throws InterruptedException {
+      DebugContext context = suspendedContexts.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      Assert.assertNotNull("VM hasn't suspended", context);
+      return context;
+    }
+
+    @Override public DebugEventListener getDebugEventListener() {
+      return this;
+    }
+
+    @Override public void navigated(String newUrl) {
+    }
+
+    @Override public void closed() {
+    }
+
+    @Override public void suspended(DebugContext context) {
+      suspendedContexts.add(context);
+    }
+
+    @Override public void resumed() {
+    }
+
+    @Override public void disconnected() {
+    }
+
+    @Override public void scriptLoaded(Script newScript) {
+    }
+
+    @Override public void scriptCollected(Script script) {
+    }
+
+    @Override public VmStatusListener getVmStatusListener() {
+      return null;
+    }
+
+    @Override public void scriptContentChanged(Script newScript) {
+    }
+  }
+}
@@ -0,0 +1,43 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class RemoteObjectCacheTest {
+  @Test
+  public void testVersionCheck() {
+    RemoteObjectCache.Statistics statistics = new RemoteObjectCache.Statistics();
+    RemoteObjectCache<String, String> cache = new RemoteObjectCache<String, String>(10, statistics);
+    Assert.assertNull(cache.get("a", 1));
+    cache.put("a", 1, "value");
+    Assert.assertEquals("value", cache.get("a", 1));
+
+    // Entry of an older version is dropped.
+    Assert.assertNull(cache.get("a", 2));
+    Assert.assertEquals(0, cache.size());
+
+    Assert.assertEquals(1, statistics.getHitCount());
+    Assert.assertEquals(2, statistics.getMissCount());
+  }
+
+  @Test
+  public void testEviction() {
+    RemoteObjectCache<String, String> cache =
+        new RemoteObjectCache<String, String>(2, new RemoteObjectCache.Statistics());
+    cache.put("a", 1, "A");
+    cache.put("b", 1, "B");
+    // Make "a" recently used.
+    cache.get("a", 1);
+    cache.put("c", 1, "C");
+
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals("A", cache.get("a", 1));
+    Assert.assertNull(cache.get("b", 1));
+    Assert.assertEquals("C", cache.get("c", 1));
+  }
+}
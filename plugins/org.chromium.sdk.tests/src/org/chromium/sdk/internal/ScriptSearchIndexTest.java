@@ -0,0 +1,72 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ScriptSearchIndexTest {
+  @Test
+  public void testSearch() {
+    ScriptSearchIndex index = new ScriptSearchIndex();
+    index.put("1", "var a = 1;\r\nfunction Foo() {\n  return foo + a;\n}");
+    index.put("2", "var b = 2;");
+
+    Map<String, List<ScriptSearchIndex.LineMatch>> result = index.search("foo", false);
+    Assert.assertEquals(1, result.size());
+    List<ScriptSearchIndex.LineMatch> lines = result.get("1");
+    Assert.assertEquals(2, lines.size());
+    Assert.assertEquals(1, lines.get(0).getLineNumber());
+    Assert.assertEquals("function Foo() {", lines.get(0).getLineContent());
+    Assert.assertEquals(2, lines.get(1).getLineNumber());
+    Assert.assertEquals("  return foo + a;", lines.get(1).getLineContent());
+
+    Assert.assertEquals(1, index.search("Foo", true).get("1").size());
+    Assert.assertEquals(2, index.search("var", true).size());
+    Assert.assertEquals(2, index.search("a", true).size());
+    Assert.assertEquals(1, index.search("fu", false).size());
+    Assert.assertEquals(1, index.search("F", true).size());
+    Assert.assertTrue(index.search("bar", false).isEmpty());
+  }
+
+  @Test
+  public void testUpdate() {
+    ScriptSearchIndex index = new ScriptSearchIndex();
+    index.put("1", "alpha");
+    index.put("1", "beta");
+    Assert.assertTrue(index.search("alpha", false).isEmpty());
+    Assert.assertEquals(1, index.search("beta", false).size());
+
+    index.remove("1");
+    Assert.assertFalse(index.contains("1"));
+    Assert.assertTrue(index.search("beta", false).isEmpty());
+  }
+
+  @Test
+  public void testStaleSources() {
+    ScriptSearchIndex index = new ScriptSearchIndex();
+    index.put("1", "alpha");
+    index.put("2", "gamma");
+    Assert.assertEquals(2, index.search("a", false).size());
+
+    // Replaced after indexing: old postings must not produce matches.
+    index.put("1", "beta");
+    Assert.assertTrue(index.search("alp", false).isEmpty());
+    Assert.assertEquals(1, index.search("bet", false).size());
+
+    // Enough stale sources to rebuild postings.
+    for (int i = 0; i < 3; i++) {
+      index.put("2", "delta" + i);
+      Assert.assertEquals(2, index.search("ta", false).size());
+    }
+    index.remove("2");
+    Assert.assertEquals(1, index.search("ta", false).size());
+    Assert.assertFalse(index.search("ta", false).containsKey("2"));
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScriptSourceCacheTest {
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = File.createTempFile("scriptcache", null);
+    directory.delete();
+    directory.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    deleteRecursively(directory);
+  }
+
+  @Test
+  public void testPutAndGet() throws InterruptedException {
+    ScriptSourceCache cache = new ScriptSourceCache(directory, 1024 * 1024);
+    Assert.assertNull(cache.get("v8:a.js:0:0:1:10"));
+    String source = "var text = 'Жé';";
+    cache.put("v8:a.js:0:0:1:10", source);
+    cache.put("v8:b.js:0:0:1:10", source);
+    cache.flush();
+
+    // New instance must see what previous session has saved.
+    ScriptSourceCache newCache = new ScriptSourceCache(directory, 1024 * 1024);
+    Assert.assertEquals(source, newCache.get("v8:a.js:0:0:1:10"));
+    Assert.assertEquals(source, newCache.get("v8:b.js:0:0:1:10"));
+    Assert.assertNull(newCache.get("v8:c.js:0:0:1:10"));
+
+    // Same content is stored once.
+    Assert.assertEquals(1, new File(directory, "sources").list().length);
+  }
+
+  @Test
+  public void testEviction() throws InterruptedException {
+    ScriptSourceCache cache = new ScriptSourceCache(directory, 150);
+    String[] sources = new String[3];
+    for (int i = 0; i < sources.length; i++) {
+      StringBuilder builder = new StringBuilder();
+      for (int j = 0; j < 60; j++) {
+        builder.append((char) ('a' + i));
+      }
+      sources[i] = builder.toString();
+      cache.put("key" + i, sources[i]);
+      cache.flush();
+      // File time resolution may be coarse, make previous files explicitly older.
+      for (File blob : new File(directory, "sources").listFiles()) {
+        blob.setLastModified(blob.lastModified() - 10000);
+      }
+    }
+    Assert.assertNull(cache.get("key0"));
+    Assert.assertEquals(sources[1], cache.get("key1"));
+    Assert.assertEquals(sources[2], cache.get("key2"));
+  }
+
+  @Test
+  public void testTempFiles() throws IOException, InterruptedException {
+    // A file left by a session that crashed in the middle of a write.
+    File tempDirectory = new File(directory, "tmp");
+    tempDirectory.mkdirs();
+    FileOutputStream output = new FileOutputStream(new File(tempDirectory, "tmp1.tmp"));
+    output.write(new byte[100]);
+    output.close();
+
+    ScriptSourceCache cache = new ScriptSourceCache(directory, 1024 * 1024);
+    cache.put("key", "var a;");
+    cache.flush();
+    Assert.assertEquals(0, tempDirectory.list().length);
+    Assert.assertEquals(1, new File(directory, "sources").list().length);
+    Assert.assertEquals("var a;", cache.get("key"));
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
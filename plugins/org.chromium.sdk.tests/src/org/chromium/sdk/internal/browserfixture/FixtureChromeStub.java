@@ -81,6 +81,8 @@ public class FixtureChromeStub implements ChromeStub {
     refToObjectMap.put(19L, convertToRealJson("{'handle':19,'type':'null','text':'null'}"));
     // Fake proto object handle.
     refToObjectMap.put(73L, convertToRealJson("{'handle':73,'type':'null','text':'null'}"));
+    // Fake proto object handle of the local scope object.
+    refToObjectMap.put(21L, convertToRealJson("{'handle':21,'type':'null','text':'null'}"));
 
     // Script
     refToObjectMap.put(Long.valueOf(getScriptRef()),
@@ -8,12 +8,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.chromium.sdk.Breakpoint;
 import org.chromium.sdk.JavascriptVm.BreakpointCallback;
+import org.chromium.sdk.JavascriptVm.BreakpointSpec;
+import org.chromium.sdk.JavascriptVm.BulkBreakpointCallback;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.internal.TestUtil;
@@ -111,6 +119,81 @@ public class BreakpointImplTest extends AbstractAttachedTest<FakeConnection> {
     TestUtil.assertBreakpointsEqual(breakpoint, resultBreakpoint[0]);
   }
 
+  @Test(timeout = 5000)
+  public void testBulkCreate() throws Exception {
+    List<BreakpointSpec> specs = new ArrayList<BreakpointSpec>();
+    for (int i = 0; i < 5; i++) {
+      specs.add(new BreakpointSpec(new Breakpoint.Target.ScriptName("1"), i + 1, 1, true,
+          "false"));
+    }
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicInteger lastProgress = new AtomicInteger(0);
+    final List<List<?>> results = new ArrayList<List<?>>();
+    final Breakpoint[] itemResults = new Breakpoint[5];
+    javascriptVm.setBreakpoints(specs, new BulkBreakpointCallback() {
+      public void success(int index, Breakpoint breakpoint) {
+        // Each result must arrive before the whole batch is done.
+        assertTrue(results.isEmpty());
+        itemResults[index] = breakpoint;
+      }
+
+      public void failure(int index, String errorMessage) {
+        fail(errorMessage);
+      }
+
+      public void progress(int finishedCount, int totalCount) {
+        assertEquals(5, totalCount);
+        lastProgress.set(finishedCount);
+      }
+
+      public void done(List<Breakpoint> breakpoints, List<String> errorMessages) {
+        results.add(breakpoints);
+        results.add(errorMessages);
+      }
+    },
+    new SyncCallback() {
+      public void callbackDone(RuntimeException e) {
+        latch.countDown();
+      }
+    });
+    latch.await();
+    assertEquals(5, lastProgress.get());
+    List<?> breakpoints = results.get(0);
+    assertEquals(Collections.nCopies(5, null), results.get(1));
+    assertEquals(5, breakpoints.size());
+    for (int i = 0; i < 5; i++) {
+      Breakpoint breakpoint = (Breakpoint) breakpoints.get(i);
+      assertNotNull(breakpoint);
+      assertSame(itemResults[i], breakpoint);
+      assertEquals(i + 1, breakpoint.getLineNumber());
+    }
+  }
+
+  @Test
+  public void testBulkCreateEmpty() throws Exception {
+    final List<List<Breakpoint>> results = new ArrayList<List<Breakpoint>>();
+    javascriptVm.setBreakpoints(Collections.<BreakpointSpec>emptyList(),
+        new BulkBreakpointCallback() {
+          public void success(int index, Breakpoint breakpoint) {
+            fail();
+          }
+
+          public void failure(int index, String errorMessage) {
+            fail();
+          }
+
+          public void progress(int finishedCount, int totalCount) {
+          }
+
+          public void done(List<Breakpoint> breakpoints, List<String> errorMessages) {
+            results.add(breakpoints);
+          }
+        },
+        null);
+    assertEquals(1, results.size());
+    assertTrue(results.get(0).isEmpty());
+  }
+
   @Test(timeout = 5000)
   public void testClear() throws Exception {
     BreakpointImpl bp = new BreakpointImpl(1, new Breakpoint.Target.ScriptName("abc.js"),
@@ -0,0 +1,129 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.chromium.sdk.internal.transport.Connection.NetListener;
+import org.chromium.sdk.internal.transport.Message.MalformedMessageException;
+
+/**
+ * Serves a {@link ChromeStub} over a local socket in the standalone V8 protocol, so that
+ * a client goes through a real socket connection instead of {@link FakeConnection}.
+ * The server accepts a single client.
+ */
+public class ChromeStubServer {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ChromeStub stub;
+  private final ServerSocket serverSocket;
+  private volatile Socket socket = null;
+
+  public ChromeStubServer(ChromeStub stub) throws IOException {
+    this.stub = stub;
+    this.serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+  }
+
+  public InetSocketAddress getAddress() {
+    return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+  }
+
+  /**
+   * Starts a thread that waits for a client and serves it.
+   */
+  public void start() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          serve();
+        } catch (IOException e) {
+          // Connection closed.
+        } catch (MalformedMessageException e) {
+          throw new RuntimeException(e);
+        } finally {
+          stop();
+        }
+      }
+    }, "Chrome stub server");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void stop() {
+    try {
+      serverSocket.close();
+      Socket socketCopy = socket;
+      if (socketCopy != null) {
+        socketCopy.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void serve() throws IOException, MalformedMessageException {
+    socket = serverSocket.accept();
+    // Messages are small; don't let Nagle's algorithm add delays to replay timing.
+    socket.setTcpNoDelay(true);
+    final OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+
+    Map<String, String> handshakeHeaders = new LinkedHashMap<String, String>();
+    handshakeHeaders.put("Type", "connect");
+    handshakeHeaders.put("V8-Version", "3.12.1 stub server");
+    handshakeHeaders.put("Protocol-Version", "1");
+    handshakeHeaders.put("Embedding-Host", "junit stub server");
+    writeMessage(new Message(handshakeHeaders, ""), output);
+
+    stub.setNetListener(new NetListener() {
+      @Override
+      public void messageReceived(Message message) {
+        try {
+          writeMessage(message, output);
+        } catch (IOException e) {
+          stop();
+        }
+      }
+
+      @Override
+      public void eosReceived() {
+        stop();
+      }
+
+      @Override
+      public void connectionClosed() {
+        stop();
+      }
+    });
+
+    LineReader input = new LineReader(socket.getInputStream());
+    while (true) {
+      Message request = Message.fromBufferedReader(input, UTF_8);
+      if (request == null) {
+        break;
+      }
+      Message response = stub.respondTo(request);
+      if (response != null) {
+        writeMessage(response, output);
+      }
+    }
+  }
+
+  private static void writeMessage(Message message, OutputStream output) throws IOException {
+    synchronized (output) {
+      message.sendThrough(output, UTF_8);
+      output.flush();
+    }
+  }
+}
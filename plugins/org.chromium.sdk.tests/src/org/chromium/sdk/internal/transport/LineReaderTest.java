@@ -29,6 +29,20 @@ public class LineReaderTest {
    */
   @Test
   public void testOnRandomChunkStream() throws IOException, MalformedMessageException {
+    checkOnRandomChunkStream(null);
+  }
+
+  /**
+   * Same as {@link #testOnRandomChunkStream()}, but reads messages into pooled buffers
+   * (with in-place header parsing).
+   */
+  @Test
+  public void testOnRandomChunkStreamPooled() throws IOException, MalformedMessageException {
+    checkOnRandomChunkStream(new MessageBufferPool());
+  }
+
+  private void checkOnRandomChunkStream(MessageBufferPool bufferPool)
+      throws IOException, MalformedMessageException {
     Random random = new Random(0);
     Charset charset = Charset.forName("UTF-8");
 
@@ -50,10 +64,13 @@ public class LineReaderTest {
       LineReader lineReader = new LineReader(inputStream);
       List<Message> reReadMessages = new ArrayList<Message>();
       while (true) {
-        Message nextMessage = Message.fromBufferedReader(lineReader, charset);
+        Message nextMessage = Message.fromBufferedReader(lineReader, charset, bufferPool);
         if (nextMessage == null) {
           break;
         }
+        // Content must survive buffer recycling once it has been converted to String.
+        nextMessage.getContent();
+        nextMessage.release();
         reReadMessages.add(nextMessage);
       }
       Assert.assertEquals(messages.size(), reReadMessages.size());
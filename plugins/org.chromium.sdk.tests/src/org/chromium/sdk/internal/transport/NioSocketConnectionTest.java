@@ -0,0 +1,152 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.chromium.sdk.internal.transport.Message.MalformedMessageException;
+import org.junit.Test;
+
+public class NioSocketConnectionTest {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Feeds serialized messages into a buffer by small chunks and checks that
+   * {@link Message#fromByteBuffer} only returns complete messages.
+   */
+  @Test
+  public void testFromByteBufferByChunks() throws IOException, MalformedMessageException {
+    List<Message> messages = new ArrayList<Message>();
+    messages.add(new Message(Collections.singletonMap("Tool", "V8Debugger"), "{\"seq\":1}"));
+    messages.add(new Message(Collections.<String, String>emptyMap(), "Привет!"));
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    for (Message message : messages) {
+      message.sendThrough(stream, UTF8);
+    }
+    byte[] bytes = stream.toByteArray();
+
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+    List<Message> reReadMessages = new ArrayList<Message>();
+    for (int pos = 0; pos < bytes.length; pos += 3) {
+      buffer.put(bytes, pos, Math.min(3, bytes.length - pos));
+      buffer.flip();
+      while (true) {
+        Message message = Message.fromByteBuffer(buffer, UTF8);
+        if (message == null) {
+          break;
+        }
+        reReadMessages.add(message);
+      }
+      buffer.compact();
+    }
+    Assert.assertEquals(messages.size(), reReadMessages.size());
+    for (int i = 0; i < messages.size(); i++) {
+      Assert.assertEquals(messages.get(i).toString(), reReadMessages.get(i).toString());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testExchangeAfterHandshake() throws Exception {
+    ServerSocket serverSocket = new ServerSocket(0);
+    try {
+      NioSocketConnection connection = new NioSocketConnection(
+          new InetSocketAddress("localhost", serverSocket.getLocalPort()), 1000, null,
+          Handshaker.CHROMIUM);
+
+      final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+      final Object eosMark = new Object();
+      connection.setNetListener(new Connection.NetListener() {
+        @Override public void messageReceived(Message message) {
+          received.add(message);
+        }
+        @Override public void eosReceived() {
+          received.add(eosMark);
+        }
+        @Override public void connectionClosed() {
+        }
+      });
+      connection.start();
+
+      Socket socket = serverSocket.accept();
+      LineReader serverReader = new LineReader(socket.getInputStream());
+      Assert.assertEquals("ChromeDevToolsHandshake", serverReader.readLine(UTF8));
+      OutputStream serverOutput = socket.getOutputStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      response.write("ChromeDevToolsHandshake\r\n".getBytes(UTF8));
+      // First message comes in the same packet as handshake.
+      new Message(Collections.<String, String>emptyMap(), "first").sendThrough(response, UTF8);
+      serverOutput.write(response.toByteArray());
+      serverOutput.flush();
+
+      connection.send(new Message(Collections.singletonMap("Tool", "V8Debugger"), "request"));
+      Message request = Message.fromBufferedReader(serverReader, UTF8);
+      Assert.assertEquals("request", request.getContent());
+      Assert.assertEquals("V8Debugger", request.getTool());
+
+      new Message(Collections.<String, String>emptyMap(), "second").sendThrough(serverOutput,
+          UTF8);
+      serverOutput.flush();
+
+      Assert.assertEquals("first", ((Message) received.poll(5, TimeUnit.SECONDS)).getContent());
+      Assert.assertEquals("second", ((Message) received.poll(5, TimeUnit.SECONDS)).getContent());
+
+      socket.close();
+      Assert.assertSame(eosMark, received.poll(5, TimeUnit.SECONDS));
+      Assert.assertFalse(connection.isConnected());
+    } finally {
+      serverSocket.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testHandshakeTimeout() throws Exception {
+    ServerSocket serverSocket = new ServerSocket(0);
+    try {
+      NioSocketConnection connection = new NioSocketConnection(
+          new InetSocketAddress("localhost", serverSocket.getLocalPort()), 300, null,
+          Handshaker.CHROMIUM);
+
+      final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+      final Object closedMark = new Object();
+      connection.setNetListener(new Connection.NetListener() {
+        @Override public void messageReceived(Message message) {
+          received.add(message);
+        }
+        @Override public void eosReceived() {
+        }
+        @Override public void connectionClosed() {
+          received.add(closedMark);
+        }
+      });
+      connection.start();
+
+      // Remote accepts connection but never answers handshake.
+      Socket socket = serverSocket.accept();
+      try {
+        Assert.assertSame(closedMark, received.poll(5, TimeUnit.SECONDS));
+        Assert.assertFalse(connection.isConnected());
+      } finally {
+        socket.close();
+      }
+    } finally {
+      serverSocket.close();
+    }
+  }
+}
@@ -0,0 +1,227 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.chromium.sdk.internal.JsonUtil;
+import org.chromium.sdk.internal.transport.Connection.NetListener;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A {@link ChromeStub} that plays back a recorded V8 session (see {@link SessionRecording}).
+ * <p>Incoming messages are sent in the recorded order. A message is only sent after
+ * the client has made all the requests that preceded it in the recording. Live requests
+ * are matched against recorded ones by content (ignoring 'seq'), or by command name if
+ * there is no exact match. Each response gets the 'request_seq' of the matching live
+ * request. Recorded pauses between messages are reproduced, multiplied by a time scale
+ * (0 replays as fast as possible).
+ * <p>{@link #sendSuspendedEvent} sends the first recorded 'break' event out of turn.
+ */
+public class SessionReplayStub implements ChromeStub {
+  private final List<SessionRecording.Entry> entries;
+  private final List<RecordedRequest> recordedRequests;
+  private final double timeScale;
+  private final SessionRecording.Entry breakEventEntry;
+
+  // All fields below are accessed under synchronization on this.
+  private final Map<Long, Long> recordedToLiveSeq = new HashMap<Long, Long>();
+  private int unexpectedRequestCount = 0;
+  private boolean finished = false;
+
+  private NetListener listener = null;
+  private Thread deliveryThread = null;
+
+  public SessionReplayStub(List<SessionRecording.Entry> entries, double timeScale) {
+    this.entries = entries;
+    this.timeScale = timeScale;
+    this.recordedRequests = new ArrayList<RecordedRequest>();
+    SessionRecording.Entry breakEntry = null;
+    for (SessionRecording.Entry entry : entries) {
+      if (entry.isIncoming()) {
+        if (breakEntry == null && isBreakEvent(parse(entry.getContent()))) {
+          breakEntry = entry;
+        }
+      } else {
+        recordedRequests.add(new RecordedRequest(parse(entry.getContent())));
+      }
+    }
+    this.breakEventEntry = breakEntry;
+  }
+
+  @Override
+  public synchronized Message respondTo(Message requestMessage) {
+    JSONObject request = parse(requestMessage.getContent());
+    Long liveSeq = JsonUtil.getAsLong(request, "seq");
+    request.remove("seq");
+
+    RecordedRequest matched = null;
+    for (RecordedRequest recorded : recordedRequests) {
+      if (!recorded.isMatched() && recorded.content.equals(request)) {
+        matched = recorded;
+        break;
+      }
+    }
+    if (matched == null) {
+      Object command = request.get("command");
+      for (RecordedRequest recorded : recordedRequests) {
+        if (!recorded.isMatched() && command != null &&
+            command.equals(recorded.content.get("command"))) {
+          matched = recorded;
+          break;
+        }
+      }
+    }
+    if (matched == null) {
+      unexpectedRequestCount++;
+      return null;
+    }
+    matched.matched = true;
+    recordedToLiveSeq.put(matched.recordedSeq, liveSeq);
+    notifyAll();
+    // Responses are sent from the delivery thread.
+    return null;
+  }
+
+  @Override
+  public synchronized void setNetListener(NetListener listener) {
+    this.listener = listener;
+    deliveryThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          deliver();
+        } catch (InterruptedException e) {
+          // Replay has been stopped.
+        }
+      }
+    }, "Session replay");
+    deliveryThread.setDaemon(true);
+    deliveryThread.start();
+  }
+
+  /**
+   * Sends the first recorded 'break' event regardless of the replay progress. The event
+   * is also sent in its recorded turn.
+   */
+  @Override
+  public void sendSuspendedEvent() {
+    if (breakEventEntry == null) {
+      throw new IllegalStateException("Recording has no 'break' event");
+    }
+    NetListener currentListener;
+    synchronized (this) {
+      currentListener = listener;
+    }
+    currentListener.messageReceived(
+        new Message(breakEventEntry.getHeaders(), breakEventEntry.getContent()));
+  }
+
+  /**
+   * Waits until all recorded messages are sent.
+   * @return whether the replay has finished within the timeout
+   */
+  public synchronized boolean waitUntilFinished(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!finished) {
+      long timeLeft = deadline - System.currentTimeMillis();
+      if (timeLeft <= 0) {
+        return false;
+      }
+      wait(timeLeft);
+    }
+    return true;
+  }
+
+  /**
+   * @return number of live requests that matched no recorded request
+   */
+  public synchronized int getUnexpectedRequestCount() {
+    return unexpectedRequestCount;
+  }
+
+  public synchronized void stop() {
+    if (deliveryThread != null) {
+      deliveryThread.interrupt();
+    }
+  }
+
+  private void deliver() throws InterruptedException {
+    int requestIndex = 0;
+    long previousTimeNanos = 0;
+    for (SessionRecording.Entry entry : entries) {
+      long pauseNanos = (long) ((entry.getTimeNanos() - previousTimeNanos) * timeScale);
+      previousTimeNanos = entry.getTimeNanos();
+
+      if (entry.isIncoming()) {
+        // Reproduces remote processing time; client time is spent by the live client.
+        if (pauseNanos > 0) {
+          Thread.sleep(pauseNanos / 1000000, (int) (pauseNanos % 1000000));
+        }
+        String content = rewriteRequestSeq(entry.getContent());
+        listener.messageReceived(new Message(entry.getHeaders(), content));
+      } else {
+        RecordedRequest request = recordedRequests.get(requestIndex++);
+        synchronized (this) {
+          while (!request.isMatched()) {
+            wait();
+          }
+        }
+      }
+    }
+    synchronized (this) {
+      finished = true;
+      notifyAll();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private synchronized String rewriteRequestSeq(String content) {
+    JSONObject message = parse(content);
+    Long recordedRequestSeq = JsonUtil.getAsLong(message, "request_seq");
+    if (recordedRequestSeq == null) {
+      return content;
+    }
+    Long liveSeq = recordedToLiveSeq.get(recordedRequestSeq);
+    if (liveSeq == null) {
+      return content;
+    }
+    message.put("request_seq", liveSeq);
+    return message.toJSONString();
+  }
+
+  private static boolean isBreakEvent(JSONObject message) {
+    return "event".equals(message.get("type")) && "break".equals(message.get("event"));
+  }
+
+  private static JSONObject parse(String content) {
+    try {
+      return JsonUtil.jsonObjectFromJson(content);
+    } catch (ParseException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class RecordedRequest {
+    final JSONObject content;
+    final Long recordedSeq;
+    // Accessed under synchronization on the host stub.
+    boolean matched = false;
+
+    RecordedRequest(JSONObject content) {
+      this.recordedSeq = JsonUtil.getAsLong(content, "seq");
+      content.remove("seq");
+      this.content = content;
+    }
+
+    boolean isMatched() {
+      return matched;
+    }
+  }
+}
@@ -0,0 +1,206 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.chromium.sdk.CallFrame;
+import org.chromium.sdk.DebugContext;
+import org.chromium.sdk.DebugContext.StepAction;
+import org.chromium.sdk.DebugEventListener;
+import org.chromium.sdk.JsObject;
+import org.chromium.sdk.JsScope;
+import org.chromium.sdk.JsVariable;
+import org.chromium.sdk.Script;
+import org.chromium.sdk.internal.BrowserFactoryImplTestGate;
+import org.chromium.sdk.internal.browserfixture.FixtureChromeStub;
+import org.chromium.sdk.internal.standalonev8.StandaloneVmImpl;
+import org.junit.Test;
+
+/**
+ * Records a suspend/expand/step session against {@link FixtureChromeStub} and replays it
+ * over a real socket connection. The same replay can be driven with a session recorded from
+ * a live browser.
+ * <p>
+ * Latency budgets of the workload are checked only if {@link #CHECK_LATENCY_PROPERTY} is set:
+ * they depend on the machine and its load, so a regular test run only checks that the replay
+ * goes as recorded.
+ */
+public class SessionReplayTest {
+  public static final String CHECK_LATENCY_PROPERTY =
+      "org.chromium.sdk.tests.checkReplayLatency";
+
+  public static final boolean CHECK_LATENCY = Boolean.getBoolean(CHECK_LATENCY_PROPERTY);
+
+  private static final int REPLAY_COUNT = 10;
+
+  // Replay works on a local socket without remote delays, so a session normally takes
+  // a few milliseconds. A message split into small socket writes (and thus delayed by
+  // Nagle's algorithm) costs about 40ms per request and exceeds the average budget.
+  private static final long MAX_OPERATION_LATENCY_MS = 500;
+  private static final long MAX_AVERAGE_SESSION_MS = 100;
+
+  private static final long TIMEOUT_MS = 5000;
+
+  @Test(timeout = 60000)
+  public void testReplayLatency() throws Exception {
+    File file = File.createTempFile("session", ".rec");
+    try {
+      recordSession(file);
+      List<SessionRecording.Entry> entries = SessionRecording.read(file);
+      Assert.assertFalse(entries.isEmpty());
+
+      long totalNanos = 0;
+      for (int i = 0; i < REPLAY_COUNT; i++) {
+        SessionReplayStub stub = new SessionReplayStub(entries, 0);
+        ChromeStubServer server = new ChromeStubServer(stub);
+        server.start();
+        try {
+          Handshaker.StandaloneV8 handshaker = new Handshaker.StandaloneV8Impl();
+          Connection connection = new SocketConnection(server.getAddress(),
+              (int) TIMEOUT_MS, null, handshaker);
+          StandaloneVmImpl vm = BrowserFactoryImplTestGate.createStandalone(connection,
+              handshaker);
+          long[] latencies = runWorkload(vm, null);
+
+          Assert.assertTrue(stub.waitUntilFinished(TIMEOUT_MS));
+          Assert.assertEquals(0, stub.getUnexpectedRequestCount());
+          for (long latency : latencies) {
+            totalNanos += latency;
+            if (CHECK_LATENCY) {
+              Assert.assertTrue("Operation took " + toMs(latency) + "ms",
+                  toMs(latency) <= MAX_OPERATION_LATENCY_MS);
+            }
+          }
+        } finally {
+          stub.stop();
+          server.stop();
+        }
+      }
+      if (CHECK_LATENCY) {
+        long averageMs = toMs(totalNanos / REPLAY_COUNT);
+        Assert.assertTrue("Average session took " + averageMs + "ms",
+            averageMs <= MAX_AVERAGE_SESSION_MS);
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static void recordSession(File file) throws Exception {
+    final FixtureChromeStub fixture = new FixtureChromeStub();
+    SessionRecording.Writer writer = new SessionRecording.Writer(file);
+    Connection connection = new RecordingConnection(new FakeConnection(fixture), writer);
+    StandaloneVmImpl vm =
+        BrowserFactoryImplTestGate.createStandalone(connection, FakeConnection.HANDSHAKER);
+    runWorkload(vm, new Runnable() {
+      @Override
+      public void run() {
+        fixture.sendSuspendedEvent();
+      }
+    });
+    writer.close();
+  }
+
+  /**
+   * Attaches, waits for suspend, expands top frame variables, steps and detaches.
+   * @param suspendTrigger makes remote suspend or null if remote suspends on its own
+   * @return latency of each operation in nanoseconds
+   */
+  private static long[] runWorkload(StandaloneVmImpl vm, Runnable suspendTrigger)
+      throws Exception {
+    Listener listener = new Listener();
+    long[] latencies = new long[4];
+
+    long start = System.nanoTime();
+    vm.attach(listener);
+    if (suspendTrigger != null) {
+      suspendTrigger.run();
+    }
+    DebugContext context = listener.suspendedContexts.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    Assert.assertNotNull("VM hasn't suspended", context);
+    latencies[0] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    CallFrame topFrame = context.getCallFrames().get(0);
+    for (JsScope scope : topFrame.getVariableScopes()) {
+      JsScope.Declarative declarativeScope = scope.asDeclarativeScope();
+      if (declarativeScope == null) {
+        // Object scopes (global, with) are too big to expand them on each suspend.
+        continue;
+      }
+      for (JsVariable variable : declarativeScope.getVariables()) {
+        JsObject jsObject = variable.getValue().asObject();
+        if (jsObject != null) {
+          jsObject.getProperties();
+        }
+      }
+    }
+    latencies[1] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    final CountDownLatch stepLatch = new CountDownLatch(1);
+    final String[] failure = new String[1];
+    context.continueVm(StepAction.OVER, 1, new DebugContext.ContinueCallback() {
+      @Override
+      public void success() {
+        stepLatch.countDown();
+      }
+
+      @Override
+      public void failure(String errorMessage) {
+        failure[0] = errorMessage == null ? "" : errorMessage;
+        stepLatch.countDown();
+      }
+    }, null);
+    Assert.assertTrue(stepLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    Assert.assertNull("Failure on step: " + failure[0], failure[0]);
+    latencies[2] = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    vm.detach();
+    latencies[3] = System.nanoTime() - start;
+    return latencies;
+  }
+
+  private static long toMs(long nanos) {
+    return nanos / 1000000;
+  }
+
+  private static class Listener implements DebugEventListener {
+    final BlockingQueue<DebugContext> suspendedContexts =
+        new LinkedBlockingQueue<DebugContext>();
+
+    @Override public void suspended(DebugContext context) {
+      suspendedContexts.add(context);
+    }
+
+    @Override public void resumed() {
+    }
+
+    @Override public void disconnected() {
+    }
+
+    @Override public void scriptLoaded(Script newScript) {
+    }
+
+    @Override public void scriptCollected(Script script) {
+    }
+
+    @Override public VmStatusListener getVmStatusListener() {
+      return null;
+    }
+
+    @Override public void scriptContentChanged(Script newScript) {
+    }
+  }
+}
@@ -0,0 +1,250 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.bind.DatatypeConverter;
+
+/**
+ * A server side of WebSocket (RFC 6455) protocol on a local socket. It accepts a single
+ * connection, answers the handshake and then passes incoming text messages to a handler.
+ * Outgoing messages are sent as unmasked final text frames, as a browser sends them.
+ * Extensions and ping/pong are not supported. Used by WIP session replay and by
+ * the WebSocket benchmarks.
+ */
+public class WsStubServer {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  private static final int OPCODE_CONTINUATION = 0x0;
+  private static final int OPCODE_TEXT = 0x1;
+  private static final int OPCODE_CLOSE = 0x8;
+
+  /**
+   * Receives events of the connection. Methods are called from the server thread.
+   */
+  public interface Handler {
+    /**
+     * Called once the handshake is over; server may send messages from now on.
+     */
+    void connected(WsStubServer server);
+
+    void textMessageReceived(String text);
+  }
+
+  private final Handler handler;
+  private final ServerSocket serverSocket;
+  private Thread serverThread = null;
+
+  // Access must be synchronized on this.
+  private Socket socket = null;
+  private OutputStream output = null;
+
+  public WsStubServer(Handler handler) throws IOException {
+    this.handler = handler;
+    this.serverSocket = new ServerSocket(0);
+  }
+
+  public InetSocketAddress getAddress() {
+    return new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort());
+  }
+
+  public void start() {
+    serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          serve();
+        } catch (IOException e) {
+          // Connection has been closed.
+        }
+      }
+    }, "WebSocket stub server");
+    serverThread.setDaemon(true);
+    serverThread.start();
+  }
+
+  public void stop() {
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // Ignore.
+    }
+    synchronized (this) {
+      if (socket != null) {
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Ignore.
+        }
+      }
+    }
+    if (serverThread != null) {
+      serverThread.interrupt();
+    }
+  }
+
+  public void sendTextMessage(String text) throws IOException {
+    sendFrames(encodeTextFrames(Collections.singletonList(text)));
+  }
+
+  /**
+   * Sends frames as prepared by {@link #encodeTextFrames} in a single write.
+   */
+  public synchronized void sendFrames(byte[] frames) throws IOException {
+    if (output == null) {
+      throw new IOException("Not connected");
+    }
+    output.write(frames);
+    output.flush();
+  }
+
+  /**
+   * Encodes messages as unmasked final text frames.
+   */
+  public static byte[] encodeTextFrames(List<String> messages) {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    for (String message : messages) {
+      byte[] payload = message.getBytes(UTF_8);
+      result.write(0x80 | OPCODE_TEXT);
+      if (payload.length < 126) {
+        result.write(payload.length);
+      } else if (payload.length < 0x10000) {
+        result.write(126);
+        result.write(payload.length >>> 8);
+        result.write(payload.length & 0xFF);
+      } else {
+        result.write(127);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          result.write((int) (((long) payload.length >>> shift) & 0xFF));
+        }
+      }
+      result.write(payload, 0, payload.length);
+    }
+    return result.toByteArray();
+  }
+
+  private void serve() throws IOException {
+    Socket acceptedSocket = serverSocket.accept();
+    acceptedSocket.setTcpNoDelay(true);
+    InputStream input = acceptedSocket.getInputStream();
+    synchronized (this) {
+      socket = acceptedSocket;
+    }
+    try {
+      String key = null;
+      while (true) {
+        String line = readHttpLine(input);
+        if (line.length() == 0) {
+          break;
+        }
+        int colonPos = line.indexOf(':');
+        if (colonPos != -1 &&
+            line.substring(0, colonPos).trim().equalsIgnoreCase("Sec-WebSocket-Key")) {
+          key = line.substring(colonPos + 1).trim();
+        }
+      }
+      byte[] acceptSha1;
+      try {
+        acceptSha1 = MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(UTF_8));
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      String response = "HTTP/1.1 101 Switching Protocols\r\n" +
+          "Upgrade: websocket\r\n" +
+          "Connection: Upgrade\r\n" +
+          "Sec-WebSocket-Accept: " + DatatypeConverter.printBase64Binary(acceptSha1) + "\r\n" +
+          "\r\n";
+      synchronized (this) {
+        // Client may start sending messages as soon as it reads the response.
+        output = acceptedSocket.getOutputStream();
+        output.write(response.getBytes(UTF_8));
+        output.flush();
+      }
+      handler.connected(this);
+
+      readFrames(new DataInputStream(input));
+    } finally {
+      acceptedSocket.close();
+    }
+  }
+
+  /**
+   * Reads client frames (always masked) until close frame or end of stream.
+   */
+  private void readFrames(DataInputStream input) throws IOException {
+    ByteArrayOutputStream message = new ByteArrayOutputStream();
+    while (true) {
+      int firstByte;
+      try {
+        firstByte = input.readUnsignedByte();
+      } catch (EOFException e) {
+        return;
+      }
+      boolean isFinal = (firstByte & 0x80) != 0;
+      int opcode = firstByte & 0x0F;
+      int secondByte = input.readUnsignedByte();
+      boolean isMasked = (secondByte & 0x80) != 0;
+      long length = secondByte & 0x7F;
+      if (length == 126) {
+        length = input.readUnsignedShort();
+      } else if (length == 127) {
+        length = input.readLong();
+      }
+      byte[] mask = new byte[4];
+      if (isMasked) {
+        input.readFully(mask);
+      }
+      byte[] payload = new byte[(int) length];
+      input.readFully(payload);
+      for (int i = 0; i < payload.length; i++) {
+        payload[i] = (byte) (payload[i] ^ mask[i % 4]);
+      }
+
+      if (opcode == OPCODE_CLOSE) {
+        return;
+      }
+      if (opcode != OPCODE_TEXT && opcode != OPCODE_CONTINUATION) {
+        continue;
+      }
+      message.write(payload, 0, payload.length);
+      if (isFinal) {
+        handler.textMessageReceived(new String(message.toByteArray(), UTF_8));
+        message.reset();
+      }
+    }
+  }
+
+  private static String readHttpLine(InputStream input) throws IOException {
+    StringBuilder builder = new StringBuilder();
+    while (true) {
+      int b = input.read();
+      if (b == -1) {
+        throw new IOException("Unexpected end of stream");
+      }
+      if (b == '\n') {
+        int length = builder.length();
+        if (length > 0 && builder.charAt(length - 1) == '\r') {
+          builder.setLength(length - 1);
+        }
+        return builder.toString();
+      }
+      builder.append((char) b);
+    }
+  }
+}
@@ -47,6 +47,11 @@ class FakeValueLoader extends ValueLoader {
     return cacheState;
   }
 
+  @Override
+  public SubpropertiesMirror getSubpropertiesIfCached(Long ref) {
+    return getOrLoadSubproperties(ref);
+  }
+
   @Override
   public SubpropertiesMirror getOrLoadSubproperties(Long ref) {
     ValueData data = getSafe(valueDataMap, ref);
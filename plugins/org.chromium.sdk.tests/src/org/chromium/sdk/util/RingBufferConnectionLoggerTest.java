@@ -0,0 +1,80 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.Assert;
+
+import org.chromium.sdk.ConnectionLogger;
+import org.junit.Test;
+
+public class RingBufferConnectionLoggerTest {
+  @Test
+  public void testRender() throws IOException, InterruptedException {
+    File file = File.createTempFile("connection", ".log");
+    try {
+      RingBufferConnectionLogger logger = new RingBufferConnectionLogger(file, 1024);
+      logger.start();
+      ConnectionLogger.RawStreamListener outgoing =
+          (ConnectionLogger.RawStreamListener) logger.getOutgoingStreamListener();
+      ConnectionLogger.RawStreamListener incoming =
+          (ConnectionLogger.RawStreamListener) logger.getIncomingStreamListener();
+
+      outgoing.addBinaryBytes(new byte[] { (byte) 0x81, 5 }, 0, 2);
+      byte[] request = "xxhello".getBytes("UTF-8");
+      outgoing.addTextBytes(request, 2, 5);
+      outgoing.addSeparator();
+      incoming.addContent("wor");
+      incoming.addTextBytes("ld".getBytes("UTF-8"), 0, 2);
+      logger.handleEos();
+      Assert.assertTrue(logger.waitUntilClosed(5000));
+
+      String text = render(file);
+      Assert.assertTrue(text, text.contains("%129%005hello\n> end of message\n"));
+      Assert.assertTrue(text, text.indexOf("> Sent") < text.indexOf("> Received"));
+      Assert.assertTrue(text, text.endsWith(":\nworld"));
+      Assert.assertEquals(0, logger.getDroppedRecordCount());
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Fills the buffer while the writer is not started: the extra records are dropped and
+   * reported in the log.
+   */
+  @Test
+  public void testOverflow() throws IOException, InterruptedException {
+    File file = File.createTempFile("connection", ".log");
+    try {
+      RingBufferConnectionLogger logger = new RingBufferConnectionLogger(file, 100);
+      ConnectionLogger.StreamListener incoming = logger.getIncomingStreamListener();
+      for (int i = 0; i < 10; i++) {
+        incoming.addContent("0123456789");
+      }
+      // Each record takes 31 bytes, so only 3 fit.
+      Assert.assertEquals(7, logger.getDroppedRecordCount());
+
+      logger.start();
+      logger.handleEos();
+      Assert.assertTrue(logger.waitUntilClosed(5000));
+
+      String text = render(file);
+      Assert.assertTrue(text, text.contains("> 7 records dropped"));
+      Assert.assertTrue(text, text.contains("012345678901234567890123456789"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static String render(File file) throws IOException {
+    StringWriter writer = new StringWriter();
+    RingBufferConnectionLogger.render(file, writer);
+    return writer.toString();
+  }
+}
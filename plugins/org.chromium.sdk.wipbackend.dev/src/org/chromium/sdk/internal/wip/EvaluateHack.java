@@ -8,35 +8,30 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.chromium.sdk.JsEvaluateContext;
 import org.chromium.sdk.JsEvaluateContext.ResultOrException;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
-import org.chromium.sdk.internal.wip.WipRelayRunner.ProcessException;
-import org.chromium.sdk.internal.wip.WipRelayRunner.Step;
 import org.chromium.sdk.internal.wip.WipValueBuilder.SerializableValue;
 import org.chromium.sdk.internal.wip.protocol.input.runtime.CallFunctionOnData;
-import org.chromium.sdk.internal.wip.protocol.input.runtime.EvaluateData;
-import org.chromium.sdk.internal.wip.protocol.input.runtime.RemoteObjectValue;
 import org.chromium.sdk.internal.wip.protocol.output.WipParamsWithResponse;
 import org.chromium.sdk.internal.wip.protocol.output.runtime.CallArgumentParam;
 import org.chromium.sdk.internal.wip.protocol.output.runtime.CallFunctionOnParams;
-import org.chromium.sdk.internal.wip.protocol.output.runtime.EvaluateParams;
 import org.chromium.sdk.util.GenericCallback;
-import org.chromium.sdk.util.RelaySyncCallback;
 
 /**
  * Helper class that implements evaluate with additional context and
  * destination group id operation. This implementation is a hack because it adds (injects)
  * a property to the global object and works with its properties. The normal approach is when
  * the protocol itself supports this operation. As it hopefully will.
+ * <p>All commands of the operation are sent at once, so it only costs a single round-trip.
  */
 public class EvaluateHack {
 
   private final WipTabImpl tabImpl;
   private final AtomicInteger uniqueIdCounter = new AtomicInteger(0);
-  private boolean objectInjected = false;
 
   public EvaluateHack(WipTabImpl tabImpl) {
     this.tabImpl = tabImpl;
@@ -51,31 +46,10 @@ public class EvaluateHack {
   public RelayOk evaluateAsync(String expression,
       Map<String, ? extends SerializableValue> additionalContext,
       WipValueLoader destinationValueLoader, EvaluateCommandHandler<?> evaluateCommandHandler,
-      final JsEvaluateContext.EvaluateCallback callback, SyncCallback syncCallback) {
-
-    RelaySyncCallback relaySyncCallback = new RelaySyncCallback(syncCallback);
-
-    final EvaluateSession evaluateSession = new EvaluateSession(expression,
-        additionalContext, destinationValueLoader, evaluateCommandHandler);
-
-    final RelaySyncCallback.Guard guard = relaySyncCallback.newGuard();
-
-    GenericCallback<Void> postEnsureCallback = new GenericCallback<Void>() {
-          @Override
-          public void success(Void value) {
-            RelayOk relayOk = evaluateSession.run(callback, guard.getRelay());
-            guard.discharge(relayOk);
-          }
-
-          @Override
-          public void failure(Exception exception) {
-            if (callback != null) {
-              callback.failure(exception);
-            }
-          }
-        };
-
-    return ensureObjectInjected(postEnsureCallback, guard.asSyncCallback());
+      JsEvaluateContext.EvaluateCallback callback, SyncCallback syncCallback) {
+    EvaluateSession evaluateSession = new EvaluateSession(expression,
+        additionalContext, destinationValueLoader);
+    return evaluateSession.run(evaluateCommandHandler, callback, syncCallback);
   }
 
   /**
@@ -97,65 +71,109 @@ public class EvaluateHack {
     Exception processFailure(Exception cause);
   }
 
-  synchronized void pageReloaded() {
-    objectInjected = false;
-  }
-
   /**
-   * Corresponds to a one evaluate operation. Holds most of parameters. It does following:
+   * Corresponds to a one evaluate operation. Holds most of parameters. It sends 2 commands
+   * without waiting for responses (remote handles commands in order):
    * <ol>
-   *   <li>creates a temporary object inside the main injected object,
-   *   <li>puts all values from additional context thus making it a 'with' object,
-   *   <li>evaluates user expression inside the 'with' operator,
-   *   <li>returns result to a user callback,
-   *   <li>deletes the temporary object.
+   *   <li>'callFunctionOn' that injects the main object if needed, creates a temporary object
+   *       inside it and puts all values from additional context there thus making it
+   *       a 'with' object,
+   *   <li>user evaluate command that evaluates user expression inside the 'with' operator
+   *       and deletes the temporary object.
    * </ol>
-   *
-   * It uses {@link WipRelayRunner} as an engine.
+   * The user callback gets the result of the second command, unless the first one failed.
    */
   private class EvaluateSession {
     private final String userExpression;
     private final Map<String, ? extends SerializableValue> additionalContext;
     private final WipValueLoader destinationValueLoader;
-    private final EvaluateCommandHandler<?> evaluateCommandHandler;
 
     private final String dataId = "d" + uniqueIdCounter.incrementAndGet();
 
     EvaluateSession(String expression,
         Map<String, ? extends SerializableValue> additionalContext,
-        WipValueLoader destinationValueLoader, EvaluateCommandHandler<?> evaluateCommandHandler) {
+        WipValueLoader destinationValueLoader) {
       this.userExpression = expression;
       this.additionalContext = additionalContext;
       this.destinationValueLoader = destinationValueLoader;
-      this.evaluateCommandHandler = evaluateCommandHandler;
     }
 
-    RelayOk run(final JsEvaluateContext.EvaluateCallback callback, RelaySyncCallback relay) {
-      WipRelayRunner.Step<ResultOrException> step = createFillDataObjectStep();
+    <EVAL_DATA> RelayOk run(final EvaluateCommandHandler<EVAL_DATA> commandHandler,
+        final JsEvaluateContext.EvaluateCallback callback, SyncCallback syncCallback) {
+      CallFunctionOnParams fillParams = createFillDataObjectParams();
+
+      // Set in Dispatch thread before the evaluate response is processed.
+      final AtomicReference<String> fillProblem = new AtomicReference<String>(null);
+
+      GenericCallback<CallFunctionOnData> fillCallback =
+          new GenericCallback<CallFunctionOnData>() {
+        @Override
+        public void success(CallFunctionOnData response) {
+          if (response.wasThrown() == Boolean.TRUE) {
+            fillProblem.set(describeProblem(response.result().description()));
+          }
+        }
+
+        @Override
+        public void failure(Exception exception) {
+          fillProblem.set(describeProblem(exception.getMessage()));
+        }
+      };
+
+      String script = "try { with (" + getDataObjectRef() + ") { return (" + userExpression +
+          "); } } finally { delete " + getDataObjectRef() + "; }";
+      String wrappedExpression = "(function() {" + script + "})()";
+      WipParamsWithResponse<EVAL_DATA> evaluateParams =
+          commandHandler.createRequest(wrappedExpression, destinationValueLoader);
 
-      GenericCallback<ResultOrException> innerCallback;
+      GenericCallback<EVAL_DATA> evaluateCallback;
       if (callback == null) {
-        innerCallback = null;
+        evaluateCallback = null;
       } else {
-        innerCallback = new GenericCallback<ResultOrException>() {
-          @Override public void success(ResultOrException value) {
-            callback.success(value);
+        evaluateCallback = new GenericCallback<EVAL_DATA>() {
+          @Override
+          public void success(EVAL_DATA response) {
+            String problem = fillProblem.get();
+            if (problem != null) {
+              callback.failure(new Exception("Helper script failed on remote: " + problem));
+              return;
+            }
+            callback.success(commandHandler.processResult(response, destinationValueLoader));
           }
-          @Override public void failure(Exception exception) {
-            callback.failure(exception);
+
+          @Override
+          public void failure(Exception exception) {
+            callback.failure(commandHandler.processFailure(exception));
           }
         };
       }
 
-      return WipRelayRunner.run(tabImpl.getCommandProcessor(), step,
-          innerCallback, relay);
+      WipCommandProcessor commandProcessor = tabImpl.getCommandProcessor();
+      commandProcessor.beginBatch();
+      try {
+        commandProcessor.send(fillParams, fillCallback, null);
+        return commandProcessor.send(evaluateParams, evaluateCallback, syncCallback);
+      } finally {
+        commandProcessor.endBatch();
+      }
     }
 
     /**
-     * Sends request that create a temporary object and fills it with user values.
+     * @return not null, so that a problem without details is not taken for a success
+     */
+    private String describeProblem(String message) {
+      return message == null ? "<no details>" : message;
+    }
+
+    private String getDataObjectRef() {
+      return GLOBAL_VARIABLE_NAME + ".data." + dataId;
+    }
+
+    /**
+     * Creates request that creates a temporary object and fills it with user values.
      * User values are passed as 1. 'this', 2. additional arguments to the function.
      */
-    private WipRelayRunner.Step<ResultOrException> createFillDataObjectStep() {
+    private CallFunctionOnParams createFillDataObjectParams() {
       if (additionalContext.isEmpty()) {
         throw new IllegalArgumentException("Empty context");
       }
@@ -164,8 +182,8 @@ public class EvaluateHack {
       StringBuilder parametersBuilder = new StringBuilder();
 
       String thisObjectId = null;
-      final List<CallArgumentParam> additionalObjectIds = new ArrayList<CallArgumentParam>(0);
-      String tempObjectRef = GLOBAL_VARIABLE_NAME + ".data." + dataId + ".";
+      List<CallArgumentParam> additionalObjectIds = new ArrayList<CallArgumentParam>(0);
+      String tempObjectRef = getDataObjectRef() + ".";
       for (Map.Entry<String, ? extends SerializableValue> entry : additionalContext.entrySet()) {
         SerializableValue jsValueBase = entry.getValue();
         String commandParamName;
@@ -192,155 +210,22 @@ public class EvaluateHack {
         throw new IllegalArgumentException("At least one additional parameter must be an object");
       }
 
-      final String functionText = "function(" + parametersBuilder + ") { " +
-          GLOBAL_VARIABLE_NAME + ".data." + dataId + " = {};\n" +
+      // 'data' is for temporary objects.
+      // 'code' is for utility methods.
+      String functionText = "function(" + parametersBuilder + ") { " +
+          "if (typeof " + GLOBAL_VARIABLE_NAME + " == 'undefined') { " +
+          GLOBAL_VARIABLE_NAME + " = { data: {}, code: {}}; }\n" +
+          getDataObjectRef() + " = {};\n" +
           assigmentBuilder + "}";
 
-      final String thisObjectIdFinal = thisObjectId;
-
-      return new WipRelayRunner.SendStepWithResponse<CallFunctionOnData, ResultOrException>() {
-        @Override
-        public WipParamsWithResponse<CallFunctionOnData> getParams() {
-          List<CallArgumentParam> arguments;
-          if (additionalObjectIds.isEmpty()) {
-            arguments = null;
-          } else {
-            arguments = additionalObjectIds;
-          }
-          return new CallFunctionOnParams(thisObjectIdFinal, functionText, arguments, null, true,
-              null);
-        }
-
-        @Override
-        public Step<ResultOrException> processResponse(CallFunctionOnData response) {
-          if (response.wasThrown() == Boolean.TRUE) {
-            return createHandleErrorStep(response.result());
-          }
-          return createEvaluateStep(evaluateCommandHandler);
-        }
-
-        @Override
-        public Exception processFailure(Exception cause) {
-          return cause;
-        }
-      };
-    }
-
-    private <EVAL_DATA> WipRelayRunner.Step<ResultOrException> createEvaluateStep(
-        final EvaluateCommandHandler<EVAL_DATA> commandHandler) {
-      return new WipRelayRunner.SendStepWithResponse<EVAL_DATA, ResultOrException>() {
-        @Override
-        public WipParamsWithResponse<EVAL_DATA> getParams() {
-          String script = "with (" + GLOBAL_VARIABLE_NAME + ".data." + dataId +
-              ") { return (" + userExpression + "); }";
-          String wrappedExpression = "(function() {" + script +"})()";
-
-          WipParamsWithResponse<EVAL_DATA> paramsWithResponse = commandHandler.createRequest(
-              wrappedExpression, destinationValueLoader);
-
-          return paramsWithResponse;
-        }
-
-        @Override
-        public Step<ResultOrException> processResponse(EVAL_DATA response) {
-          ResultOrException resultOrException =
-              commandHandler.processResult(response, destinationValueLoader);
-
-          clearTempObjectAsync();
-
-          return WipRelayRunner.createFinalStep(resultOrException);
-        }
-
-        @Override
-        public Exception processFailure(Exception cause) {
-          return commandHandler.processFailure(cause);
-        }
-      };
-    }
-
-    /**
-     * Clears the temporary object. It is done asynchronously, outside the main relay, because
-     * user shouldn't wait for its result.
-     */
-    private void clearTempObjectAsync() {
-      String script = "delete " + GLOBAL_VARIABLE_NAME + ".data." + dataId + ";";
-      String deleteDataExpression = "(function() {" + script +"})()";
-      EvaluateParams evaluateParams =
-          new EvaluateParams(deleteDataExpression, null, null, null, null, true, null);
-      tabImpl.getCommandProcessor().send(evaluateParams, (WipCommandCallback) null, null);
-    }
-
-    /**
-     * An alternative spin-off in the relay, that handles an exception we ran into.
-     * The additional step is needed because the exception message is only available from
-     * its 'message' pseudo-property (a getter).
-     */
-    private Step<ResultOrException> createHandleErrorStep(
-        final RemoteObjectValue remoteObjectValue) {
-      return new WipRelayRunner.SendStepWithResponse<CallFunctionOnData, ResultOrException>() {
-        @Override
-        public WipParamsWithResponse<CallFunctionOnData> getParams() {
-          String functionText = "function() { return String(this.message); }";
-          return new CallFunctionOnParams(remoteObjectValue.objectId(), functionText, null, null,
-              true, null);
-        }
-
-        @Override
-        public Step<ResultOrException> processResponse(CallFunctionOnData response)
-            throws ProcessException {
-          throw new ProcessException("Helper script failed on remote: " +
-              response.result().value());
-        }
-
-        @Override
-        public Exception processFailure(Exception cause) {
-          return cause;
-        }
-      };
-    }
-  }
-
-  /**
-   * Makes sure that we injected a helper object inside a global object.
-   * This cannot be implemented as step in {@link WipRelayRunner}, because the method
-   * is synchronized and cannot undergo required control inversion.
-   */
-  private synchronized RelayOk ensureObjectInjected(GenericCallback<Void> callback,
-      SyncCallback syncCallback) {
-    if (objectInjected) {
-      callback.success(null);
-      return RelaySyncCallback.finish(syncCallback);
-    } else {
-      objectInjected = true;
-      return injectObject(callback, syncCallback);
-    }
-  }
-
-  private RelayOk injectObject(final GenericCallback<Void> callback, SyncCallback syncCallback) {
-    // 'data' is for temporary objects.
-    // 'code' is for utility methods.
-    String injectedObjectText = "{ data: {}, code: {}}";
-    String expression = "(function() { " + GLOBAL_VARIABLE_NAME + " = " + injectedObjectText +
-        " ; })()";
-
-    EvaluateParams evaluateParams = new EvaluateParams(expression, null, false, null, null, true,
-        null);
-
-    GenericCallback<EvaluateData> wrappedCallback = new GenericCallback<EvaluateData>() {
-      @Override
-      public void success(EvaluateData value) {
-        // TODO: check result.
-        callback.success(null);
-      }
-
-      @Override
-      public void failure(Exception exception) {
-        callback.failure(new Exception("Failed to inject evaluate helper script into remote VM",
-            exception));
+      List<CallArgumentParam> arguments;
+      if (additionalObjectIds.isEmpty()) {
+        arguments = null;
+      } else {
+        arguments = additionalObjectIds;
       }
-    };
-
-    return tabImpl.getCommandProcessor().send(evaluateParams, wrappedCallback, syncCallback);
+      return new CallFunctionOnParams(thisObjectId, functionText, arguments, null, true, null);
+    }
   }
 
   private static final String GLOBAL_VARIABLE_NAME = "_com_chromium_debug_helper";
@@ -7,6 +7,9 @@ package org.chromium.sdk.internal.wip;
 import org.chromium.sdk.JsEvaluateContext;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
+import org.chromium.sdk.internal.RemoteObjectCache;
+import org.chromium.sdk.internal.wip.WipValueLoader.Getter;
+import org.chromium.sdk.internal.wip.WipValueLoader.ObjectProperties;
 import org.chromium.sdk.internal.wip.protocol.input.WipCommandResponse;
 import org.chromium.sdk.internal.wip.protocol.output.runtime.ReleaseObjectGroupParams;
 import org.chromium.sdk.util.GenericCallback;
@@ -16,9 +19,17 @@ class PermanentRemoteValueMappingImpl extends WipValueLoader
     implements PermanentRemoteValueMapping {
   private final String id;
 
+  /**
+   * Object ids of this group stay valid after VM resumes, so loaded properties are kept
+   * until {@link #clearCaches()} is called.
+   */
+  private final RemoteObjectCache<String, Getter<ObjectProperties>> propertyCache;
+
   PermanentRemoteValueMappingImpl(WipTabImpl tabImpl, String id) {
     super(tabImpl);
     this.id = id;
+    this.propertyCache = new RemoteObjectCache<String, Getter<ObjectProperties>>(
+        tabImpl.getObjectCacheStatistics());
   }
 
   @Override
@@ -26,8 +37,16 @@ class PermanentRemoteValueMappingImpl extends WipValueLoader
     return id;
   }
 
+  @Override
+  public void clearCaches() {
+    super.clearCaches();
+    propertyCache.clear();
+  }
+
   @Override
   public RelayOk delete(final GenericCallback<Void> callback, SyncCallback syncCallback) {
+    propertyCache.clear();
+    getTabImpl().getObjectGroupManager().forgetGroup(id);
     ReleaseObjectGroupParams params = new ReleaseObjectGroupParams(id);
     WipCommandCallback callbackWrapper;
     if (callback == null) {
@@ -53,6 +72,11 @@ class PermanentRemoteValueMappingImpl extends WipValueLoader
     return id;
   }
 
+  @Override
+  RemoteObjectCache<String, Getter<ObjectProperties>> getPersistentPropertyCache() {
+    return propertyCache;
+  }
+
   @Override
   public JsEvaluateContext getEvaluateContext() {
     return new WipContextBuilder.GlobalEvaluateContext(this);
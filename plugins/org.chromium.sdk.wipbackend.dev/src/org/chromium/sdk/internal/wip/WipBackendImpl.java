@@ -4,22 +4,27 @@
 
 package org.chromium.sdk.internal.wip;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.AbstractList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.chromium.sdk.ConnectionLogger;
 import org.chromium.sdk.TabDebugEventListener;
 import org.chromium.sdk.internal.protocolparser.JsonProtocolParseException;
+import org.chromium.sdk.internal.transport.SessionRecording;
 import org.chromium.sdk.internal.transport.SocketWrapper;
 import org.chromium.sdk.internal.transport.SocketWrapper.LoggableInputStream;
 import org.chromium.sdk.internal.transport.SocketWrapper.LoggableOutputStream;
 import org.chromium.sdk.internal.websocket.HandshakeUtil;
 import org.chromium.sdk.internal.websocket.Hybi00WsConnection;
 import org.chromium.sdk.internal.websocket.Hybi17WsConnection;
+import org.chromium.sdk.internal.websocket.RecordingWsConnection;
 import org.chromium.sdk.internal.websocket.WsConnection;
 import org.chromium.sdk.internal.wip.protocol.WipParserAccess;
 import org.chromium.sdk.internal.wip.protocol.input.WipTabList;
@@ -35,6 +40,14 @@ public class WipBackendImpl extends WipBackendBase {
 
   private static final boolean USE_OLD_WEBSOCKET = false;
 
+  /**
+   * System property that makes tab connections record all their messages into session files
+   * (see {@link SessionRecording}). The value is a path prefix of the files.
+   */
+  private static final String RECORD_SESSION_PROPERTY = "org.chromium.sdk.wip.recordSession";
+
+  private static final Logger LOGGER = Logger.getLogger(WipBackendImpl.class.getName());
+
   private static final String ID = "current development";
   private static final String DESCRIPTION =
       "Google Chrome/Chromium: \n" +
@@ -118,11 +131,27 @@ public class WipBackendImpl extends WipBackendBase {
             Hybi17WsConnection.MaskStrategy.TRANSPARENT_MASK, connectionLogger);
       }
 
+      String recordPathPrefix = System.getProperty(RECORD_SESSION_PROPERTY);
+      if (recordPathPrefix != null) {
+        socket = wrapForRecording(socket, recordPathPrefix);
+      }
 
       return new WipTabImpl(socket, browserImpl, listener, description.url());
     }
   }
 
+  private static WsConnection wrapForRecording(WsConnection socket, String pathPrefix) {
+    File file = SessionRecording.nextSessionFile(pathPrefix);
+    SessionRecording.Writer writer;
+    try {
+      writer = new SessionRecording.Writer(file);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Failed to start session recording into " + file, e);
+      return socket;
+    }
+    return new RecordingWsConnection(socket, writer);
+  }
+
   private String readHttpResponseContent(InetSocketAddress socketAddress, String resource,
       LoggerFactory loggerFactory) throws IOException {
     ConnectionLogger browserConnectionLogger;
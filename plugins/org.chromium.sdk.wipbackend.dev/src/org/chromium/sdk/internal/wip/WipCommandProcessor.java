@@ -4,7 +4,6 @@
 
 package org.chromium.sdk.internal.wip;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -46,9 +45,14 @@ class WipCommandProcessor {
   private final BaseCommandProcessor<Integer, JSONObject, JSONObject, WipCommandResponse>
       baseProcessor;
   private final AtomicInteger currentSeq = new AtomicInteger(0);
+  private final WipCommandWriter commandWriter;
+
+  /** Set from Dispatch thread once it starts dispatching, never changes afterwards. */
+  private volatile Thread dispatchThread = null;
 
   WipCommandProcessor(WipTabImpl tabImpl, WsConnection wsSocket) {
     this.tabImpl = tabImpl;
+    this.commandWriter = new WipCommandWriter(wsSocket);
 
     WipMessageTypeHandler handler = new WipMessageTypeHandler();
 
@@ -101,12 +105,43 @@ class WipCommandProcessor {
     return sendRaw(request, commandCallback, syncCallback);
   }
 
+  /**
+   * Processes incoming message. All commands that callbacks send in response are written
+   * in a single batch.
+   */
   void acceptResponse(JSONObject message) {
-    baseProcessor.processIncoming(message);
+    dispatchThread = Thread.currentThread();
+    commandWriter.beginBatch();
+    try {
+      baseProcessor.processIncoming(message);
+    } finally {
+      commandWriter.endBatch();
+    }
   }
 
   void processEos() {
     baseProcessor.processEos();
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine("Command writer statistics: " + commandWriter.getStatistics());
+    }
+  }
+
+  /**
+   * @see WipCommandWriter#beginBatch()
+   */
+  void beginBatch() {
+    commandWriter.beginBatch();
+  }
+
+  /**
+   * @see WipCommandWriter#endBatch()
+   */
+  void endBatch() {
+    commandWriter.endBatch();
+  }
+
+  WipCommandWriter.Statistics getWriterStatistics() {
+    return commandWriter.getStatistics();
   }
 
   private void processEvent(JSONObject jsonObject) {
@@ -139,12 +174,7 @@ class WipCommandProcessor {
 
     @Override
     public void send(JSONObject message, boolean isImmediate) {
-      try {
-        WipCommandProcessor.this.tabImpl.getWsSocket().sendTextualMessage(
-            message.toJSONString());
-      } catch (IOException e) {
-        LOGGER.log(Level.SEVERE, "Failed to send", e);
-      }
+      commandWriter.send(message.toJSONString());
     }
 
     @Override
@@ -232,8 +262,28 @@ class WipCommandProcessor {
     EVENT_MAP.add(FrameDetachedEventData.TYPE, null);
   }
 
-  public RelayOk runInDispatchThread(Runnable runnable, SyncCallback syncCallback) {
-    return this.tabImpl.getWsSocket().runInDispatchThread(runnable, syncCallback);
+  /**
+   * @return whether the current thread is Dispatch thread, where nothing may block waiting
+   *     for a response
+   */
+  boolean isDispatchThread() {
+    return Thread.currentThread() == dispatchThread;
+  }
+
+  public RelayOk runInDispatchThread(final Runnable runnable, SyncCallback syncCallback) {
+    Runnable batchingRunnable = new Runnable() {
+      @Override
+      public void run() {
+        dispatchThread = Thread.currentThread();
+        commandWriter.beginBatch();
+        try {
+          runnable.run();
+        } finally {
+          commandWriter.endBatch();
+        }
+      }
+    };
+    return this.tabImpl.getWsSocket().runInDispatchThread(batchingRunnable, syncCallback);
   }
 
   private static class EventMap {
@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -71,9 +72,18 @@ import org.json.simple.JSONObject;
 class WipContextBuilder {
   private static final Logger LOGGER = Logger.getLogger(WipContextBuilder.class.getName());
 
+  /**
+   * System property that turns on speculative loading of the top frame variables as soon as
+   * VM is suspended, so that they are likely to be ready when user first asks for them.
+   */
+  private static final String PREFETCH_SCOPES_PROPERTY = "org.chromium.sdk.wip.prefetchScopes";
+
+  private static final boolean PREFETCH_SCOPES = Boolean.getBoolean(PREFETCH_SCOPES_PROPERTY);
+
   private final WipTabImpl tabImpl;
   private final EvaluateHack evaluateHack;
   private WipDebugContextImpl currentContext = null;
+  private final AtomicInteger contextCounter = new AtomicInteger(0);
 
   WipContextBuilder(WipTabImpl tabImpl) {
     this.tabImpl = tabImpl;
@@ -115,6 +125,10 @@ class WipContextBuilder {
     };
 
     context.setFrames(data.callFrames(), callback, null);
+
+    if (PREFETCH_SCOPES) {
+      context.prefetchTopFrameData();
+    }
   }
 
   EvaluateHack getEvaluateHack() {
@@ -149,8 +163,9 @@ class WipContextBuilder {
         } catch (JsonProtocolParseException e) {
           throw new RuntimeException("Failed to parse exception data", e);
         }
+        // Objects of the paused event belong to 'backtrace' group, that SDK doesn't own.
         JsValue exceptionValue =
-            valueLoader.getValueBuilder().wrap(exceptionRemoteObject);
+            valueLoader.getValueBuilder().wrap(exceptionRemoteObject, null);
         exceptionData = new ExceptionDataImpl(exceptionValue);
       } else {
         exceptionData = null;
@@ -193,7 +208,26 @@ class WipContextBuilder {
       return valueLoader;
     }
 
+    /**
+     * Starts loading data of the top frame. All requests go out in a single write and
+     * the method never blocks.
+     */
+    void prefetchTopFrameData() {
+      List<CallFrameImpl> currentFrames = frames;
+      if (currentFrames.isEmpty()) {
+        return;
+      }
+      WipCommandProcessor commandProcessor = tabImpl.getCommandProcessor();
+      commandProcessor.beginBatch();
+      try {
+        currentFrames.get(0).prefetchData();
+      } finally {
+        commandProcessor.endBatch();
+      }
+    }
+
     void reportClosed() {
+      tabImpl.getObjectGroupManager().releaseGroup(objectGroupId);
       CloseRequest request = this.closeRequest.get();
       if (request != null && request.callback != null) {
         request.callback.success();
@@ -317,6 +351,7 @@ class WipContextBuilder {
       private final JsVariable thisObject;
       private final TextStreamPosition streamPosition;
       private final String sourceId;
+      private final boolean isThisGlobal;
       private WipScriptImpl scriptImpl;
 
       public CallFrameImpl(CallFrameValue frameData) {
@@ -344,8 +379,10 @@ class WipContextBuilder {
         if (thisObjectData == null) {
           LOGGER.log(Level.SEVERE, "Missing local scope", new Exception());
           thisObject = null;
+          isThisGlobal = false;
         } else {
           thisObject = createSimpleNameVariable("this", thisObjectData);
+          isThisGlobal = isGlobalObject(thisObjectData, scopeDataList);
         }
 
         // 0-based.
@@ -378,6 +415,22 @@ class WipContextBuilder {
         return sourceId;
       }
 
+      /**
+       * Starts loading variables of local and closure scopes and properties of 'this',
+       * unless 'this' is the global object (it is usually too big to load speculatively).
+       */
+      void prefetchData() {
+        for (JsScope scope : scopeData.get()) {
+          if (scope instanceof DeclarativeScopeImpl &&
+              (scope.getType() == JsScope.Type.LOCAL || scope.getType() == JsScope.Type.CLOSURE)) {
+            ((DeclarativeScopeImpl) scope).prefetchVariables();
+          }
+        }
+        if (thisObject != null && !isThisGlobal) {
+          WipValueBuilder.prefetchProperties(thisObject.getValue());
+        }
+      }
+
       void setScript(WipScriptImpl scriptImpl) {
         this.scriptImpl = scriptImpl;
       }
@@ -413,7 +466,8 @@ class WipContextBuilder {
       }
 
       private JsVariable createSimpleNameVariable(String name, RemoteObjectValue thisObjectData) {
-        return valueLoader.getValueBuilder().createVariable(thisObjectData, name);
+        // Call frame objects belong to 'backtrace' group, that SDK doesn't own.
+        return valueLoader.getValueBuilder().createVariable(thisObjectData, null, name);
       }
 
       private final WipEvaluateContextBase<?> evaluateContext =
@@ -421,8 +475,9 @@ class WipContextBuilder {
         @Override
         protected WipParamsWithResponse<EvaluateOnCallFrameData> createRequestParams(
             String expression, WipValueLoader destinationValueLoader) {
+          boolean generatePreview = true;
           return new EvaluateOnCallFrameParams(id, expression,
-              destinationValueLoader.getObjectGroupId(), false, null, false, null);
+              destinationValueLoader.getObjectGroupId(), false, null, false, generatePreview);
         }
 
         @Override protected RemoteObjectValue getRemoteObjectValue(EvaluateOnCallFrameData data) {
@@ -537,10 +592,16 @@ class WipContextBuilder {
       return tabImpl;
     }
 
+    /**
+     * Group of objects that are created in this context, e.g. evaluate results.
+     * It gets released when the context is closed.
+     */
+    private final String objectGroupId = "sdk-context-" + contextCounter.incrementAndGet();
+
     private final WipValueLoader valueLoader = new WipValueLoader(tabImpl) {
       @Override
       String getObjectGroupId() {
-        return null;
+        return objectGroupId;
       }
     };
   }
@@ -566,6 +627,21 @@ class WipContextBuilder {
   };
 
 
+  /**
+   * Guesses whether the object is the global object by comparing it with the global scope
+   * object; object ids can't be compared because they are different for each reference.
+   */
+  private static boolean isGlobalObject(RemoteObjectValue objectData,
+      List<ScopeValue> scopeChain) {
+    for (ScopeValue scope : scopeChain) {
+      if (scope.type() == ScopeValue.Type.GLOBAL) {
+        String globalClassName = scope.object().className();
+        return globalClassName != null && globalClassName.equals(objectData.className());
+      }
+    }
+    return false;
+  }
+
   static JsScope createScope(ScopeValue scopeData, WipValueLoader valueLoader,
       ScopeHolderParams holderParams, int scopeIndex) {
     JsScope.Type type = WIP_TO_SDK_SCOPE_TYPE.get(scopeData.type());
@@ -612,6 +688,15 @@ class WipContextBuilder {
       return visitor.visitDeclarative(this);
     }
 
+    /**
+     * Starts loading variables unless they are already loaded or being loaded. Never blocks.
+     */
+    void prefetchVariables() {
+      if (!propertiesRef.isInitialized()) {
+        startLoadOperation(false, valueLoader.getCacheState());
+      }
+    }
+
     @Override
     public List<? extends JsDeclarativeVariable> getVariables() throws MethodIsBlockingException {
       int currentCacheState = valueLoader.getCacheState();
@@ -673,7 +758,6 @@ class WipContextBuilder {
           return WipValueLoader.Getter.newFailure(exception);
         }
       };
-      // This is blocking.
       valueLoader.loadPropertiesInFuture(objectId, processor, reload, currentCacheState,
           propertiesRef);
     }
@@ -713,7 +797,7 @@ class WipContextBuilder {
     private final JsScope.Type type;
 
     ObjectScopeImpl(ScopeValue scopeData, JsScope.Type type, WipValueLoader valueLoader) {
-      this.jsValue = valueLoader.getValueBuilder().wrap(scopeData.object());
+      this.jsValue = valueLoader.getValueBuilder().wrap(scopeData.object(), null);
       this.type = type;
     }
 
@@ -752,8 +836,9 @@ class WipContextBuilder {
     @Override protected WipParamsWithResponse<EvaluateData> createRequestParams(String expression,
         WipValueLoader destinationValueLoader) {
       boolean doNotPauseOnExceptions = true;
+      boolean generatePreview = true;
       return new EvaluateParams(expression, destinationValueLoader.getObjectGroupId(),
-          false, doNotPauseOnExceptions, null, false, null);
+          false, doNotPauseOnExceptions, null, false, generatePreview);
     }
 
     @Override protected RemoteObjectValue getRemoteObjectValue(EvaluateData data) {
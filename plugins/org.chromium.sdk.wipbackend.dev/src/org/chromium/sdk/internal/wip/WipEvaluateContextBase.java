@@ -112,7 +112,9 @@ abstract class WipEvaluateContextBase<DATA> extends JsEvaluateContextBase {
 
     WipValueBuilder valueBuilder = destinationValueLoader.getValueBuilder();
 
-    final JsValue jsValue = valueBuilder.wrap(valueData);
+    // Evaluate results are put into the group of the destination mapping.
+    final JsValue jsValue =
+        valueBuilder.wrap(valueData, destinationValueLoader.getObjectGroupId());
 
     if (getWasThrown(data) == Boolean.TRUE) {
       return new ResultOrException() {
@@ -18,6 +18,7 @@ import org.chromium.sdk.internal.wip.protocol.input.debugger.CallFrameValue;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.SetScriptSourceData;
 import org.chromium.sdk.internal.wip.protocol.output.debugger.SetScriptSourceParams;
 import org.chromium.sdk.util.GenericCallback;
+import org.chromium.sdk.util.MethodIsBlockingException;
 import org.chromium.sdk.util.RelaySyncCallback;
 
 /**
@@ -31,6 +32,31 @@ class WipScriptImpl extends ScriptBase<String> {
     this.scriptManager = scriptManager;
   }
 
+  /**
+   * If sources are loaded lazily (see {@link WipScriptManager#isLoadingSourcesLazily()}),
+   * the source is requested on the first access. The method blocks in this case; in Dispatch
+   * thread it only starts the request and returns null.
+   */
+  @Override
+  public String getSource() throws MethodIsBlockingException {
+    String source = super.getSource();
+    if (scriptManager.isLoadingSourcesLazily()) {
+      if (source == null) {
+        source = scriptManager.loadSourceSync(this);
+      } else {
+        scriptManager.sourceAccessed(this);
+      }
+    }
+    return source;
+  }
+
+  /**
+   * @return script source or null if it hasn't been loaded yet; never blocks
+   */
+  String getSourceIfLoaded() {
+    return super.getSource();
+  }
+
   @Override
   public RelayOk setSourceOnRemote(String newSource, UpdateCallback callback,
       SyncCallback syncCallback) {
@@ -102,6 +128,31 @@ class WipScriptImpl extends ScriptBase<String> {
     }
   }
 
+  // In lazy mode source may be loaded and dropped during the script lifetime, so it doesn't
+  // take part in identity.
+  @Override
+  public int hashCode() {
+    if (!scriptManager.isLoadingSourcesLazily()) {
+      return super.hashCode();
+    }
+    return getDescriptor().hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!scriptManager.isLoadingSourcesLazily()) {
+      return super.equals(obj);
+    }
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof WipScriptImpl)) {
+      return false;
+    }
+    WipScriptImpl that = (WipScriptImpl) obj;
+    return this.getDescriptor().equals(that.getDescriptor());
+  }
+
   private void dispatchResult(SetScriptSourceData.Result result, UpdateCallback updateCallback) {
     if (updateCallback != null) {
       LiveEditResult liveEditResult;
@@ -10,32 +10,74 @@ import static org.chromium.sdk.util.BasicUtil.getSafe;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.chromium.sdk.DebugEventListener;
 import org.chromium.sdk.JavascriptVm;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.Script;
+import org.chromium.sdk.ScriptSearchExtension;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.internal.ScriptBase;
+import org.chromium.sdk.internal.ScriptSearchIndex;
+import org.chromium.sdk.internal.ScriptSourceCache;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.GetScriptSourceData;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.ScriptParsedEventData;
+import org.chromium.sdk.internal.wip.protocol.input.debugger.SearchInContentData;
+import org.chromium.sdk.internal.wip.protocol.input.page.SearchMatchValue;
 import org.chromium.sdk.internal.wip.protocol.output.debugger.GetScriptSourceParams;
+import org.chromium.sdk.internal.wip.protocol.output.debugger.SearchInContentParams;
 import org.chromium.sdk.util.AsyncFuture;
 import org.chromium.sdk.util.AsyncFuture.Callback;
 import org.chromium.sdk.util.AsyncFutureMerger;
 import org.chromium.sdk.util.AsyncFutureRef;
 import org.chromium.sdk.util.GenericCallback;
+import org.chromium.sdk.util.MethodIsBlockingException;
 import org.chromium.sdk.util.RelaySyncCallback;
 
 /**
  * Keeps all current scripts for the debug session and handles script source loading.
  */
 class WipScriptManager {
+  /**
+   * System property that limits the number of script source requests that may be in flight
+   * at the same time.
+   */
+  private static final String SOURCE_LOAD_WINDOW_PROPERTY =
+      "org.chromium.sdk.wip.scriptSourceLoadWindow";
+
+  private static final int DEFAULT_SOURCE_LOAD_WINDOW = 32;
+
+  /**
+   * System property that turns on lazy source loading: script source is requested only
+   * when it is actually needed (see {@link WipScriptImpl#getSource()}) and may be dropped
+   * later to save memory.
+   */
+  private static final String LAZY_SOURCES_PROPERTY = "org.chromium.sdk.wip.lazyScriptSources";
+
+  /**
+   * System property that limits the total length (in chars) of script sources kept in
+   * lazy mode.
+   */
+  private static final String SOURCE_CACHE_SIZE_PROPERTY =
+      "org.chromium.sdk.wip.scriptSourceCacheSize";
+
+  private static final int DEFAULT_SOURCE_CACHE_SIZE = 16 * 1024 * 1024;
+
   private final WipTabImpl tabImpl;
   // Access must be synchronized.
   private final Map<String, ScriptData> scriptIdToData = new HashMap<String, ScriptData>();
@@ -49,9 +91,28 @@ class WipScriptManager {
   /** Accessed from Dispatch thread only. */
   private ScriptPopulateMode populateMode = new ScriptPopulateMode();
 
+  private final SourceLoadWindow sourceLoadWindow =
+      new SourceLoadWindow(getIntProperty(SOURCE_LOAD_WINDOW_PROPERTY,
+          DEFAULT_SOURCE_LOAD_WINDOW));
+
+  /** Null unless sources are loaded lazily. */
+  private final SourceCache sourceCache;
+
+  /** Index of locally available sources. */
+  private final ScriptSearchIndex searchIndex = new ScriptSearchIndex();
+
+  /** Persistent source cache or null. */
+  private final ScriptSourceCache persistentCache = ScriptSourceCache.getConfigured();
+
   WipScriptManager(WipTabImpl tabImpl) {
     this.tabImpl = tabImpl;
     this.scriptsPreloaded = populateMode.createAndInitMasterFuture();
+    if (Boolean.getBoolean(LAZY_SOURCES_PROPERTY)) {
+      this.sourceCache = new SourceCache(getIntProperty(SOURCE_CACHE_SIZE_PROPERTY,
+          DEFAULT_SOURCE_CACHE_SIZE));
+    } else {
+      this.sourceCache = null;
+    }
   }
 
   WipTabImpl getTabImpl() {
@@ -103,7 +164,7 @@ class WipScriptManager {
     if (data == null) {
       return null;
     }
-    if (!data.sourceLoadedFuture.isDone()) {
+    if (sourceCache == null && !data.isSourceLoaded()) {
       return null;
     }
     return data.scriptImpl;
@@ -114,7 +175,7 @@ class WipScriptManager {
     synchronized (scriptIdToData) {
       List<Script> list = new ArrayList<Script>(scriptIdToData.size());
       for (ScriptData data : scriptIdToData.values()) {
-        if (data.sourceLoadedFuture.isDone()) {
+        if (sourceCache != null || data.isSourceLoaded()) {
           list.add(data.scriptImpl);
         }
       }
@@ -133,7 +194,15 @@ class WipScriptManager {
     ScriptBase.Descriptor<String> descriptor = new ScriptBase.Descriptor<String>(Script.Type.NORMAL,
         sourceID, url, (int) data.startLine(), (int) data.startColumn(), -1);
     final WipScriptImpl script = new WipScriptImpl(this, descriptor);
-    final ScriptData scriptData = new ScriptData(script);
+
+    String cacheFingerprint;
+    if (persistentCache == null || url == null) {
+      cacheFingerprint = null;
+    } else {
+      cacheFingerprint = "wip:" + url + ':' + data.startLine() + ':' + data.startColumn() + ':' +
+          data.endLine() + ':' + data.endColumn();
+    }
+    ScriptData scriptData = new ScriptData(script, cacheFingerprint);
 
     synchronized (scriptIdToData) {
       if (containsKeySafe(scriptIdToData, sourceID)) {
@@ -142,10 +211,15 @@ class WipScriptManager {
       scriptIdToData.put(sourceID, scriptData);
     }
 
-    scriptData.sourceLoadedFuture.initializeRunning(new SourceLoadOperation(script, sourceID));
-
     final ScriptPopulateMode populateModeSaved = populateMode;
 
+    if (sourceCache != null && populateModeSaved != null) {
+      // A pre-existing script goes to getScripts without source, it is loaded on demand.
+      // A script reported later is announced once its source has loaded, as in eager mode,
+      // because listeners read the source right away in Dispatch thread.
+      return;
+    }
+
     AsyncFuture.Callback<Boolean> callback;
     SyncCallback syncCallback;
 
@@ -174,30 +248,116 @@ class WipScriptManager {
       };
     }
 
-    scriptData.sourceLoadedFuture.getAsync(callback, syncCallback);
+    scriptData.getSourceLoadedFuture().getAsync(callback, syncCallback);
+  }
+
+  /**
+   * @return whether script sources are loaded on demand rather than right after
+   *     the script is reported parsed
+   */
+  boolean isLoadingSourcesLazily() {
+    return sourceCache != null;
+  }
+
+  /**
+   * Returns script source, loading it synchronously if needed. Only used in lazy mode.
+   * Never blocks in Dispatch thread: there it only starts the load and may return null.
+   */
+  String loadSourceSync(WipScriptImpl script) throws MethodIsBlockingException {
+    ScriptData data;
+    synchronized (scriptIdToData) {
+      data = getSafe(scriptIdToData, script.getId());
+    }
+    if (data == null || data.scriptImpl != script) {
+      // Page has been reloaded, script is obsolete.
+      return null;
+    }
+    if (tabImpl.getCommandProcessor().isDispatchThread()) {
+      // The response would be dispatched in this very thread, only start the load.
+      data.getSourceLoadedFuture();
+      return script.getSourceIfLoaded();
+    }
+    while (true) {
+      AsyncFutureRef<Boolean> future = data.getSourceLoadedFuture();
+      future.getSync();
+      String source = script.getSourceIfLoaded();
+      if (source != null || !data.isDroppedSince(future)) {
+        return source;
+      }
+      // Source cache has dropped the source right after it was loaded, load it again.
+    }
+  }
+
+  /**
+   * Reports that script source is accessed. Only used in lazy mode.
+   */
+  void sourceAccessed(WipScriptImpl script) {
+    sourceCache.touch(script.getId());
   }
 
   /**
-   * Asynchronously loads script source.
+   * Asynchronously loads script source. The source is taken from the persistent cache if
+   * possible, otherwise the actual request is issued by {@link SourceLoadWindow}, possibly
+   * some time later.
    */
   private final class SourceLoadOperation implements AsyncFuture.Operation<Boolean> {
     private final WipScriptImpl script;
     private final String sourceID;
+    private final String cacheFingerprint;
 
-    private SourceLoadOperation(WipScriptImpl script, String sourceID) {
+    private SourceLoadOperation(WipScriptImpl script, String sourceID, String cacheFingerprint) {
       this.script = script;
       this.sourceID = sourceID;
+      this.cacheFingerprint = cacheFingerprint;
     }
 
     @Override
-    public RelayOk start(final Callback<Boolean> operationCallback, SyncCallback syncCallback) {
+    public RelayOk start(Callback<Boolean> operationCallback, SyncCallback syncCallback) {
+      if (cacheFingerprint != null) {
+        String source = persistentCache.get(cacheFingerprint);
+        if (source != null) {
+          setLoadedSource(script, source, operationCallback);
+          return RelaySyncCallback.finish(syncCallback);
+        }
+      }
+      return sourceLoadWindow.submit(new PendingSourceLoad(script, sourceID, cacheFingerprint,
+          operationCallback, syncCallback));
+    }
+  }
+
+  /**
+   * A source load request that has been started by {@link SourceLoadOperation}
+   * but may not have been sent yet.
+   */
+  private final class PendingSourceLoad {
+    private final WipScriptImpl script;
+    private final String sourceID;
+    private final String cacheFingerprint;
+    private final Callback<Boolean> operationCallback;
+    private final SyncCallback syncCallback;
+
+    PendingSourceLoad(WipScriptImpl script, String sourceID, String cacheFingerprint,
+        Callback<Boolean> operationCallback, SyncCallback syncCallback) {
+      this.script = script;
+      this.sourceID = sourceID;
+      this.cacheFingerprint = cacheFingerprint;
+      this.operationCallback = operationCallback;
+      this.syncCallback = syncCallback;
+    }
+
+    /**
+     * @param completionCallback wraps {@link #syncCallback}
+     */
+    RelayOk send(SyncCallback completionCallback) {
       GenericCallback<GetScriptSourceData> commandCallback =
           new GenericCallback<GetScriptSourceData>() {
         @Override
         public void success(GetScriptSourceData data) {
           String source = data.scriptSource();
-          script.setSource(source);
-          operationCallback.done(true);
+          if (cacheFingerprint != null) {
+            persistentCache.put(cacheFingerprint, source);
+          }
+          setLoadedSource(script, source, operationCallback);
         }
         @Override
         public void failure(Exception exception) {
@@ -205,28 +365,295 @@ class WipScriptManager {
         }
       };
       GetScriptSourceParams params = new GetScriptSourceParams(sourceID);
-      return tabImpl.getCommandProcessor().send(params, commandCallback, syncCallback);
+      return tabImpl.getCommandProcessor().send(params, commandCallback, completionCallback);
+    }
+  }
+
+  /**
+   * Sets script source and completes the load operation. The source cache only learns about
+   * the source after that: a source may only be dropped once its load is complete,
+   * see {@link ScriptData#dropSource()}.
+   */
+  private void setLoadedSource(WipScriptImpl script, String source,
+      Callback<Boolean> operationCallback) {
+    script.setSource(source);
+    searchIndex.put(script.getId(), source);
+    operationCallback.done(true);
+    if (sourceCache != null) {
+      sourceCache.sourceLoaded(script.getId(), source.length());
+    }
+  }
+
+  /**
+   * Limits the number of 'getScriptSource' requests that are in flight at the same time.
+   * Backend reports all pre-existing scripts in a burst and we do not want to put hundreds
+   * of requests in front of commands that user is waiting for. Loads that a new debug context
+   * depends on are moved to the head of the queue (see {@link #prioritize}).
+   */
+  private class SourceLoadWindow {
+    private final int maxInFlight;
+
+    // Access must be synchronized.
+    private final Deque<PendingSourceLoad> queue = new ArrayDeque<PendingSourceLoad>();
+    private int inFlight = 0;
+    private boolean sendingQueued = false;
+
+    SourceLoadWindow(int maxInFlight) {
+      this.maxInFlight = maxInFlight;
+    }
+
+    RelayOk submit(PendingSourceLoad load) {
+      synchronized (this) {
+        if (inFlight >= maxInFlight) {
+          queue.add(load);
+          return LOAD_QUEUED_RELAY_OK;
+        }
+        inFlight++;
+      }
+      boolean sent = false;
+      try {
+        RelayOk relayOk = load.send(new SlotReleasingCallback(load.syncCallback));
+        sent = true;
+        return relayOk;
+      } finally {
+        if (!sent) {
+          slotReleased();
+        }
+      }
+    }
+
+    /**
+     * Moves queued loads of the given scripts to the head of the queue.
+     */
+    void prioritize(Set<String> sourceIds) {
+      synchronized (this) {
+        List<PendingSourceLoad> urgent = new ArrayList<PendingSourceLoad>(sourceIds.size());
+        for (Iterator<PendingSourceLoad> it = queue.iterator(); it.hasNext(); ) {
+          PendingSourceLoad load = it.next();
+          if (sourceIds.contains(load.sourceID)) {
+            urgent.add(load);
+            it.remove();
+          }
+        }
+        for (int i = urgent.size() - 1; i >= 0; i--) {
+          queue.addFirst(urgent.get(i));
+        }
+      }
+    }
+
+    private void slotReleased() {
+      synchronized (this) {
+        inFlight--;
+      }
+      sendQueued();
+    }
+
+    private void sendQueued() {
+      synchronized (this) {
+        if (sendingQueued) {
+          // Called from within send; the outer loop will pick the released slot.
+          return;
+        }
+        sendingQueued = true;
+      }
+      while (true) {
+        PendingSourceLoad load;
+        synchronized (this) {
+          if (inFlight >= maxInFlight || queue.isEmpty()) {
+            sendingQueued = false;
+            return;
+          }
+          load = queue.poll();
+          inFlight++;
+        }
+        SyncCallback completionCallback = new SlotReleasingCallback(load.syncCallback);
+        try {
+          load.send(completionCallback);
+        } catch (RuntimeException e) {
+          // Nobody else is going to report this failure to the future.
+          completionCallback.callbackDone(e);
+        }
+      }
+    }
+
+    private class SlotReleasingCallback implements SyncCallback {
+      private final SyncCallback inner;
+
+      SlotReleasingCallback(SyncCallback inner) {
+        this.inner = inner;
+      }
+
+      @Override
+      public void callbackDone(RuntimeException e) {
+        try {
+          inner.callbackDone(e);
+        } finally {
+          slotReleased();
+        }
+      }
+    }
+  }
+
+  // Load is queued and will be sent once there is a free slot.
+  private static final RelayOk LOAD_QUEUED_RELAY_OK = new RelayOk() {};
+
+  private static int getIntProperty(String name, int defaultValue) {
+    String numberString = System.getProperty(name, String.valueOf(defaultValue));
+    int number = defaultValue;
+    try {
+      number = Integer.parseInt(numberString);
+    } catch (NumberFormatException e) {
+      // fall through and use the default value
+    }
+    return Math.max(1, number);
+  }
+
+  /**
+   * Keeps track of loaded sources in lazy mode and drops least recently used ones once their
+   * total size exceeds the limit. Sources of scripts referenced from the current stack frames
+   * or from breakpoint locations are never dropped.
+   * Sources are loaded in Dispatch thread, however they may be accessed from any thread.
+   */
+  private class SourceCache {
+    private final int maxSize;
+
+    // Access must be synchronized.
+    private final LinkedHashMap<String, Integer> idToSize =
+        new LinkedHashMap<String, Integer>(16, 0.75f, true);
+    private long totalSize = 0;
+    private Set<String> frameScriptIds = new HashSet<String>(0);
+
+    SourceCache(int maxSize) {
+      this.maxSize = maxSize;
+    }
+
+    void touch(String sourceId) {
+      synchronized (this) {
+        idToSize.get(sourceId);
+      }
+    }
+
+    void setFrameScripts(Set<String> sourceIds) {
+      synchronized (this) {
+        frameScriptIds = sourceIds;
+      }
+    }
+
+    void sourceLoaded(String sourceId, int size) {
+      List<String> toDrop;
+      synchronized (this) {
+        Integer oldSize = idToSize.put(sourceId, size);
+        if (oldSize != null) {
+          totalSize -= oldSize;
+        }
+        totalSize += size;
+        if (totalSize <= maxSize) {
+          return;
+        }
+        Set<String> pinned = getPinnedScriptIds();
+        pinned.add(sourceId);
+        toDrop = new ArrayList<String>();
+        for (Iterator<Map.Entry<String, Integer>> it = idToSize.entrySet().iterator();
+            it.hasNext() && totalSize > maxSize; ) {
+          Map.Entry<String, Integer> entry = it.next();
+          if (pinned.contains(entry.getKey())) {
+            continue;
+          }
+          totalSize -= entry.getValue();
+          toDrop.add(entry.getKey());
+          it.remove();
+        }
+      }
+      for (String id : toDrop) {
+        ScriptData data;
+        synchronized (scriptIdToData) {
+          data = getSafe(scriptIdToData, id);
+        }
+        if (data != null) {
+          data.dropSource();
+        }
+      }
+    }
+
+    void clear() {
+      synchronized (this) {
+        idToSize.clear();
+        totalSize = 0;
+        frameScriptIds = new HashSet<String>(0);
+      }
+    }
+
+    private Set<String> getPinnedScriptIds() {
+      Set<String> result = new HashSet<String>(frameScriptIds);
+      for (WipBreakpointImpl breakpoint : tabImpl.getBreakpointManager().getAllBreakpoints()) {
+        for (WipBreakpointImpl.ActualLocation location : breakpoint.getActualLocations()) {
+          result.add(location.getSourceId());
+        }
+      }
+      return result;
     }
   }
 
   private class ScriptData {
     final WipScriptImpl scriptImpl;
-    final AsyncFutureRef<Boolean> sourceLoadedFuture = new AsyncFutureRef<Boolean>();
+    final String cacheFingerprint;
+
+    // Access must be synchronized.
+    private AsyncFutureRef<Boolean> sourceLoadedFuture = null;
 
-    ScriptData(WipScriptImpl scriptImpl) {
+    ScriptData(WipScriptImpl scriptImpl, String cacheFingerprint) {
       this.scriptImpl = scriptImpl;
+      this.cacheFingerprint = cacheFingerprint;
+    }
+
+    /**
+     * Returns a future for script source, starting the load operation if needed.
+     */
+    synchronized AsyncFutureRef<Boolean> getSourceLoadedFuture() {
+      if (sourceLoadedFuture == null) {
+        sourceLoadedFuture = new AsyncFutureRef<Boolean>();
+        sourceLoadedFuture.initializeRunning(
+            new SourceLoadOperation(scriptImpl, scriptImpl.getId(), cacheFingerprint));
+      }
+      return sourceLoadedFuture;
+    }
+
+    synchronized boolean isSourceLoaded() {
+      return sourceLoadedFuture != null && sourceLoadedFuture.isDone();
+    }
+
+    /**
+     * @return whether the source has been dropped after the load operation of the future
+     *     was started
+     */
+    synchronized boolean isDroppedSince(AsyncFutureRef<Boolean> future) {
+      return sourceLoadedFuture != future;
+    }
+
+    /**
+     * Forgets script source; it will be loaded again on the next access. Does nothing if
+     * the source is being loaded, so that a drop never overtakes a load.
+     */
+    synchronized void dropSource() {
+      if (!isSourceLoaded()) {
+        return;
+      }
+      sourceLoadedFuture = null;
+      scriptImpl.setSource(null);
+      searchIndex.remove(scriptImpl.getId());
     }
   }
 
-   /**
+  /**
    * Asynchronously loads all script sources that will be referenced from a new debug context
-   * (from its stack frames).
+   * (from its stack frames). All sources are waited for in parallel and their requests
+   * are moved ahead of other pending source loads.
    * Must be called from Dispatch thread.
    */
-  RelayOk loadScriptSourcesAsync(Set<String> ids, ScriptSourceLoadCallback callback,
+  RelayOk loadScriptSourcesAsync(Set<String> ids, final ScriptSourceLoadCallback callback,
       SyncCallback syncCallback) {
-    Queue<ScriptData> scripts = new ArrayDeque<ScriptData>(ids.size());
-    Map<String, WipScriptImpl> result = new HashMap<String, WipScriptImpl>(ids.size());
+    List<ScriptData> scripts = new ArrayList<ScriptData>(ids.size());
+    final Map<String, WipScriptImpl> result = new HashMap<String, WipScriptImpl>(ids.size());
     synchronized (scriptIdToData) {
       for (String id : ids) {
         ScriptData data = getSafe(scriptIdToData, id);
@@ -237,65 +664,278 @@ class WipScriptManager {
           continue;
         }
         result.put(id, data.scriptImpl);
-        if (!data.sourceLoadedFuture.isDone()) {
+        if (!data.isSourceLoaded()) {
           scripts.add(data);
         }
       }
     }
 
-    // Start a chain of asynchronous operations.
-    // Make sure we call this sync callback sooner or later.
-    RelaySyncCallback relay =  new RelaySyncCallback(syncCallback);
-
-    return loadNextScript(scripts, result, callback, relay);
-  }
-
-  interface ScriptSourceLoadCallback {
-    void done(Map<String, WipScriptImpl> loadedScripts);
-  }
-
-  static String convertAlienSourceId(Object sourceIdObj) {
-    if (sourceIdObj instanceof String == false) {
-      throw new IllegalArgumentException("Script id must be string");
+    if (sourceCache != null) {
+      sourceCache.setFrameScripts(new HashSet<String>(ids));
     }
-    return (String) sourceIdObj;
-  }
 
-  // TODO: scripts are loaded in-series; make load parallel instead (to wait less).
-  private RelayOk loadNextScript(final Queue<ScriptData> scripts,
-      final Map<String, WipScriptImpl> result, final ScriptSourceLoadCallback callback,
-      final RelaySyncCallback relay) {
-    final ScriptData data = scripts.poll();
-    if (data == null) {
-      // Terminate the chain of asynchronous loads and pass a result to the callback.
-      RelayOk relayOk;
+    if (scripts.isEmpty()) {
       if (callback != null) {
         callback.done(result);
       }
-      return relay.finish();
+      return RelaySyncCallback.finish(syncCallback);
+    }
+
+    Set<String> pendingIds = new HashSet<String>(scripts.size());
+    for (ScriptData data : scripts) {
+      pendingIds.add(data.scriptImpl.getId());
     }
+    sourceLoadWindow.prioritize(pendingIds);
 
-    // Create a guard for the case that we fail before issuing next #loadNextScript() call.
+    // Make sure we call this sync callback sooner or later.
+    RelaySyncCallback relay = new RelaySyncCallback(syncCallback);
     final RelaySyncCallback.Guard guard = relay.newGuard();
 
-    AsyncFuture.Callback<Boolean> futureCallback = new AsyncFuture.Callback<Boolean>() {
+    // Merger is not thread-safe, but all its callbacks come from Dispatch thread.
+    final AsyncFutureMerger<Boolean> merger = new AsyncFutureMerger<Boolean>();
+    for (ScriptData data : scripts) {
+      merger.addSubOperation();
+      data.getSourceLoadedFuture().getAsync(new AsyncFuture.Callback<Boolean>() {
+            @Override
+            public void done(Boolean res) {
+              merger.subOperationDone(res);
+            }
+          },
+          new SyncCallback() {
+            @Override
+            public void callbackDone(RuntimeException e) {
+              merger.subOperationDoneSync(e);
+            }
+          });
+    }
+
+    AsyncFuture.Callback<List<Boolean>> mergedCallback =
+        new AsyncFuture.Callback<List<Boolean>>() {
       @Override
-      public void done(Boolean res) {
-        RelayOk relayOk = loadNextScript(scripts, result, callback, relay);
-        // We successfully relayed responsibility for operationDestructable to next async call,
-        // discharge guard.
+      public void done(List<Boolean> res) {
+        if (callback != null) {
+          callback.done(result);
+        }
+      }
+    };
+    // The future will call a guard even if some of the loads failed.
+    RelayOk relayOk = merger.getFuture().getAsync(mergedCallback, guard.asSyncCallback());
+
+    // Complete the default sub-operation of the merger.
+    merger.subOperationDone(null);
+    merger.subOperationDoneSync(null);
+
+    return relayOk;
+  }
+
+  /**
+   * Searches for text in all scripts. Scripts with locally available sources are searched
+   * with {@link ScriptSearchIndex} on a separate thread, the rest is searched on remote with
+   * 'searchInContent' requests that are all sent at once.
+   */
+  RelayOk search(final String query, final boolean caseSensitive,
+      final GenericCallback<List<ScriptSearchExtension.Match>> callback,
+      SyncCallback syncCallback) {
+    RelaySyncCallback relay = new RelaySyncCallback(syncCallback);
+    final RelaySyncCallback.Guard guard = relay.newGuard();
+
+    // Merger is not thread-safe, so everything is done in Dispatch thread.
+    Runnable searchRunnable = new Runnable() {
+      @Override
+      public void run() {
+        List<WipScriptImpl> remoteScripts = new ArrayList<WipScriptImpl>();
+        final Map<String, WipScriptImpl> idToScript = new HashMap<String, WipScriptImpl>();
+        synchronized (scriptIdToData) {
+          for (ScriptData data : scriptIdToData.values()) {
+            idToScript.put(data.scriptImpl.getId(), data.scriptImpl);
+            if (!searchIndex.contains(data.scriptImpl.getId())) {
+              remoteScripts.add(data.scriptImpl);
+            }
+          }
+        }
+
+        final AsyncFutureMerger<List<MatchImpl>> merger =
+            new AsyncFutureMerger<List<MatchImpl>>();
+        for (final WipScriptImpl script : remoteScripts) {
+          merger.addSubOperation();
+          GenericCallback<SearchInContentData> commandCallback =
+              new GenericCallback<SearchInContentData>() {
+            @Override
+            public void success(SearchInContentData data) {
+              List<MatchImpl> matches = new ArrayList<MatchImpl>(data.result().size());
+              for (SearchMatchValue matchValue : data.result()) {
+                matches.add(new MatchImpl(script, matchValue.lineNumber().intValue(),
+                    matchValue.lineContent()));
+              }
+              merger.subOperationDone(matches);
+            }
+
+            @Override
+            public void failure(Exception exception) {
+              // Script may have been collected in the meantime.
+              merger.subOperationDone(Collections.<MatchImpl>emptyList());
+            }
+          };
+          SyncCallback commandSyncCallback = new SyncCallback() {
+            @Override
+            public void callbackDone(RuntimeException e) {
+              merger.subOperationDoneSync(e);
+            }
+          };
+          SearchInContentParams params =
+              new SearchInContentParams(script.getId(), query, caseSensitive, false);
+          tabImpl.getCommandProcessor().send(params, commandCallback, commandSyncCallback);
+        }
+
+        AsyncFuture.Callback<List<List<MatchImpl>>> mergedCallback =
+            new AsyncFuture.Callback<List<List<MatchImpl>>>() {
+          @Override
+          public void done(List<List<MatchImpl>> res) {
+            List<ScriptSearchExtension.Match> result =
+                new ArrayList<ScriptSearchExtension.Match>();
+            for (List<MatchImpl> matches : res) {
+              if (matches != null) {
+                result.addAll(matches);
+              }
+            }
+            if (callback != null) {
+              callback.success(result);
+            }
+          }
+        };
+        RelayOk relayOk = merger.getFuture().getAsync(mergedCallback,
+            guard.getRelay().getUserSyncCallback());
         guard.discharge(relayOk);
+
+        // The default sub-operation of the merger is the local search. Indexing and scanning
+        // may take a while, so they are done off Dispatch thread.
+        Runnable localSearchRunnable = new Runnable() {
+          @Override
+          public void run() {
+            final List<MatchImpl> localResult = new ArrayList<MatchImpl>();
+            try {
+              Map<String, List<ScriptSearchIndex.LineMatch>> localMatches =
+                  searchIndex.search(query, caseSensitive);
+              for (Map.Entry<String, List<ScriptSearchIndex.LineMatch>> entry :
+                  localMatches.entrySet()) {
+                WipScriptImpl script = idToScript.get(entry.getKey());
+                if (script == null) {
+                  continue;
+                }
+                for (ScriptSearchIndex.LineMatch lineMatch : entry.getValue()) {
+                  localResult.add(new MatchImpl(script, lineMatch.getLineNumber(),
+                      lineMatch.getLineContent()));
+                }
+              }
+            } finally {
+              completeLocalSearch(merger, localResult);
+            }
+          }
+        };
+        try {
+          getSearchExecutor().execute(localSearchRunnable);
+        } catch (RejectedExecutionException e) {
+          localSearchRunnable.run();
+        }
       }
     };
 
-    // The async operation will call a guard even if something failed within the AsyncFuture.
-    return data.sourceLoadedFuture.getAsync(futureCallback, guard.asSyncCallback());
+    return tabImpl.getCommandProcessor().runInDispatchThread(searchRunnable,
+        guard.asSyncCallback());
+  }
+
+  /**
+   * Passes the local search result to the merger in Dispatch thread.
+   */
+  private void completeLocalSearch(final AsyncFutureMerger<List<MatchImpl>> merger,
+      final List<MatchImpl> localResult) {
+    Runnable runnable = new Runnable() {
+      @Override
+      public void run() {
+        merger.subOperationDone(localResult);
+      }
+    };
+    SyncCallback syncCallback = new SyncCallback() {
+      @Override
+      public void callbackDone(RuntimeException e) {
+        merger.subOperationDoneSync(e);
+      }
+    };
+    try {
+      tabImpl.getCommandProcessor().runInDispatchThread(runnable, syncCallback);
+    } catch (IllegalStateException e) {
+      // Connection is closed and Dispatch thread no longer touches the merger.
+      merger.subOperationDone(localResult);
+      merger.subOperationDoneSync(null);
+    }
+  }
+
+  private static ExecutorService searchExecutor = null;
+
+  private static synchronized ExecutorService getSearchExecutor() {
+    if (searchExecutor == null) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+          30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread = new Thread(r, "WipScriptSearch");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      searchExecutor = executor;
+    }
+    return searchExecutor;
+  }
+
+  private static class MatchImpl implements ScriptSearchExtension.Match {
+    private final Script script;
+    private final int lineNumber;
+    private final String lineContent;
+
+    MatchImpl(Script script, int lineNumber, String lineContent) {
+      this.script = script;
+      this.lineNumber = lineNumber;
+      this.lineContent = lineContent;
+    }
+
+    @Override
+    public Script getScript() {
+      return script;
+    }
+
+    @Override
+    public int getLineNumber() {
+      return lineNumber;
+    }
+
+    @Override
+    public String getLineContent() {
+      return lineContent;
+    }
+  }
+
+  interface ScriptSourceLoadCallback {
+    void done(Map<String, WipScriptImpl> loadedScripts);
+  }
+
+  static String convertAlienSourceId(Object sourceIdObj) {
+    if (sourceIdObj instanceof String == false) {
+      throw new IllegalArgumentException("Script id must be string");
+    }
+    return (String) sourceIdObj;
   }
 
   public void pageReloaded() {
     synchronized (scriptIdToData) {
       scriptIdToData.clear();
     }
+    searchIndex.clear();
+    if (sourceCache != null) {
+      sourceCache.clear();
+    }
   }
 
   void endPopulateScriptMode() {
@@ -16,6 +16,8 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.chromium.sdk.FunctionScopeExtension;
 import org.chromium.sdk.JsArray;
@@ -28,17 +30,21 @@ import org.chromium.sdk.JsScope;
 import org.chromium.sdk.JsValue;
 import org.chromium.sdk.JsValue.Type;
 import org.chromium.sdk.JsVariable;
+import org.chromium.sdk.ObjectPreviewExtension;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.Script;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.TextStreamPosition;
+import org.chromium.sdk.internal.PropertyPageSupport;
 import org.chromium.sdk.internal.wip.WipValueLoader.Getter;
 import org.chromium.sdk.internal.wip.WipValueLoader.ObjectProperties;
 import org.chromium.sdk.internal.wip.protocol.input.WipCommandResponse.Success;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.FunctionDetailsValue;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.LocationValue;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.ScopeValue;
+import org.chromium.sdk.internal.wip.protocol.input.runtime.ObjectPreviewValue;
 import org.chromium.sdk.internal.wip.protocol.input.runtime.PropertyDescriptorValue;
+import org.chromium.sdk.internal.wip.protocol.input.runtime.PropertyPreviewValue;
 import org.chromium.sdk.internal.wip.protocol.input.runtime.RemoteObjectValue;
 import org.chromium.sdk.internal.wip.protocol.output.debugger.SetVariableValueParams;
 import org.chromium.sdk.internal.wip.protocol.output.runtime.CallArgumentParam;
@@ -95,15 +101,19 @@ class WipValueBuilder {
     }
   }
 
+  /**
+   * @param ownedGroupId group of the host object if it was created by SDK or null;
+   *     property values belong to the same group
+   */
   public JsObjectProperty createObjectProperty(final PropertyDescriptorValue propertyDescriptor,
-      final String hostObjectRefId, String name) {
-    JsValue jsValue = wrap(propertyDescriptor.value());
+      final String hostObjectRefId, String ownedGroupId, String name) {
+    JsValue jsValue = wrap(propertyDescriptor.value(), ownedGroupId);
 
-    final JsValue getter = wrap(propertyDescriptor.get());
+    final JsValue getter = wrap(propertyDescriptor.get(), ownedGroupId);
 
-    final JsValue setter = wrap(propertyDescriptor.set());
+    final JsValue setter = wrap(propertyDescriptor.set(), ownedGroupId);
 
-    return new ObjectPropertyBase(jsValue, name) {
+    JsObjectProperty property = new ObjectPropertyBase(jsValue, name) {
       @Override public boolean isWritable() {
         return propertyDescriptor.writable();
       }
@@ -151,15 +161,23 @@ class WipValueBuilder {
       private static final String EVALUATE_EXPRESSION =
           GETTER_VAR_NAME + ".call(" + OBJECT_VAR_NAME + ")";
     };
+    if (getter != null) {
+      // Getter is called on the host object, so its id must stay alive with the property.
+      valueLoader.getTabImpl().getObjectGroupManager().registerWrapper(property,
+          hostObjectRefId, ownedGroupId);
+    }
+    return property;
   }
 
-  public JsVariable createVariable(RemoteObjectValue valueData, String name) {
-    return new VariableImpl(name, wrap(valueData));
+  public JsVariable createVariable(RemoteObjectValue valueData, String ownedGroupId,
+      String name) {
+    return new VariableImpl(name, wrap(valueData, ownedGroupId));
   }
 
   public JsDeclarativeVariable createDeclarativeVariable(RemoteObjectValue valueData, String name,
       final WipContextBuilder.ScopeParams scopeParams) {
-    JsValue jsValue = wrap(valueData);
+    // Scope objects come from backtrace or function details, not from an SDK group.
+    JsValue jsValue = wrap(valueData, null);
     VariableValueChanger valueChanger = new VariableValueChanger() {
           @Override
           RelayOk setValue(String variableName, JsValue newValue,
@@ -184,11 +202,16 @@ class WipValueBuilder {
     return new DeclarativeVariable(name, jsValue, valueChanger);
   }
 
-  public JsValue wrap(RemoteObjectValue valueData) {
+  /**
+   * @param ownedGroupId object group of the value if the group was created by SDK
+   *     (see {@link WipValueLoader#getObjectGroupId()}) or null for other groups (e.g.
+   *     'backtrace'); only objects of SDK groups are tracked by {@link WipObjectGroupManager}
+   */
+  public JsValue wrap(RemoteObjectValue valueData, String ownedGroupId) {
     if (valueData == null) {
       return null;
     }
-    return getValueType(valueData).build(valueData, valueLoader);
+    return getValueType(valueData).build(valueData, valueLoader, ownedGroupId);
   }
 
   private static ValueType getValueType(RemoteObjectValue valueData) {
@@ -203,7 +226,8 @@ class WipValueBuilder {
   }
 
   private static abstract class ValueType {
-    abstract JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader);
+    abstract JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId);
   }
 
   private static abstract class PrimitiveType extends ValueType {
@@ -216,7 +240,8 @@ class WipValueBuilder {
     protected abstract String getValueString(RemoteObjectValue valueData);
 
     @Override
-    JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader) {
+    JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId) {
       final Object value = valueData.value();
       final String valueString = getValueString(valueData);
       return new JsValueBase() {
@@ -298,22 +323,29 @@ class WipValueBuilder {
     }
 
     @Override
-    JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader) {
+    JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId) {
       // TODO: Implement caching here.
-      return buildNewInstance(valueData, valueLoader);
+      return buildNewInstance(valueData, valueLoader, ownedGroupId);
     }
 
-    abstract JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader);
+    abstract JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId);
 
-    abstract class JsObjectBase extends JsValueBase implements JsObject {
+    abstract class JsObjectBase extends JsValueBase implements JsObject, PreviewAccess {
       private final RemoteObjectValue valueData;
       private final WipValueLoader valueLoader;
+      private final String ownedGroupId;
       private final AsyncFutureRef<Getter<ObjectProperties>> loadedPropertiesRef =
           new AsyncFutureRef<Getter<ObjectProperties>>();
 
-      JsObjectBase(RemoteObjectValue valueData, WipValueLoader valueLoader) {
+      JsObjectBase(RemoteObjectValue valueData, WipValueLoader valueLoader,
+          String ownedGroupId) {
         this.valueData = valueData;
         this.valueLoader = valueLoader;
+        this.ownedGroupId = ownedGroupId;
+        valueLoader.getTabImpl().getObjectGroupManager().registerWrapper(this,
+            valueData.objectId(), ownedGroupId);
       }
 
       @Override
@@ -364,6 +396,47 @@ class WipValueBuilder {
         return getLoadedProperties().getProperty(name);
       }
 
+      @Override
+      public PropertyPage getPropertyPage(String continuationToken, int maxCount)
+          throws MethodIsBlockingException {
+        long start = PropertyPageSupport.parseContinuationToken(continuationToken);
+        if (continuationToken == null && isPropertiesLoaded()) {
+          return PropertyPageSupport.createFullPage(this);
+        }
+        AsyncFutureRef<Getter<ObjectProperties>> pageRef =
+            new AsyncFutureRef<Getter<ObjectProperties>>();
+        valueLoader.loadFunctionResultPropertiesInFuture(valueData.objectId(), ownedGroupId,
+            PropertyPageSupport.createPageFunction(start, maxCount),
+            valueLoader.getCacheState(), pageRef);
+        ObjectProperties pageProperties;
+        try {
+          pageProperties = pageRef.getSync().get();
+        } catch (RuntimeException e) {
+          if (start != 0) {
+            throw e;
+          }
+          // The helper function has failed, load all properties in a regular way.
+          return PropertyPageSupport.createFullPage(this);
+        }
+        if (pageProperties == null) {
+          // The object fits in a single page.
+          return PropertyPageSupport.createFullPage(this);
+        }
+        return PropertyPageSupport.createPage(pageProperties.properties(), start, maxCount);
+      }
+
+      @Override
+      public int getPropertyCountIfKnown() {
+        if (isPropertiesLoaded()) {
+          return loadedPropertiesRef.getSync().get().properties().size();
+        }
+        ObjectPreviewValue previewValue = valueData.preview();
+        if (previewValue != null && !previewValue.overflow()) {
+          return previewValue.properties().size();
+        }
+        return -1;
+      }
+
       @Override
       public String getRefId() {
         return valueData.objectId();
@@ -374,15 +447,48 @@ class WipValueBuilder {
         return valueLoader;
       }
 
+      @Override
+      public ObjectPreviewExtension.Preview getPreview() {
+        ObjectPreviewValue previewValue = valueData.preview();
+        if (previewValue == null) {
+          return null;
+        }
+        return new PreviewImpl(previewValue);
+      }
+
       protected RemoteObjectValue getValueData() {
         return valueData;
       }
 
+      protected String getOwnedGroupId() {
+        return ownedGroupId;
+      }
+
       @Override
       public CallArgumentParam createCallArgumentParam() {
         return new CallArgumentParam(false, null, valueData.objectId());
       }
 
+      void prefetchProperties() {
+        if (!loadedPropertiesRef.isInitialized()) {
+          doLoadProperties(false, valueLoader.getCacheState());
+        }
+      }
+
+      private boolean isPropertiesLoaded() {
+        if (!loadedPropertiesRef.isDone()) {
+          return false;
+        }
+        ObjectProperties properties;
+        try {
+          properties = loadedPropertiesRef.getSync().get();
+        } catch (RuntimeException e) {
+          // Properties have failed to load.
+          return false;
+        }
+        return properties.getCacheState() == valueLoader.getCacheState();
+      }
+
       protected ObjectProperties getLoadedProperties() throws MethodIsBlockingException {
         int currentCacheState = getRemoteValueMapping().getCacheState();
         if (loadedPropertiesRef.isInitialized()) {
@@ -399,7 +505,7 @@ class WipValueBuilder {
 
       private void doLoadProperties(boolean reload, int currentCacheState)
           throws MethodIsBlockingException {
-        valueLoader.loadJsObjectPropertiesInFuture(valueData.objectId(),
+        valueLoader.loadJsObjectPropertiesInFuture(valueData.objectId(), ownedGroupId,
             reload, currentCacheState, loadedPropertiesRef);
       }
     }
@@ -411,8 +517,9 @@ class WipValueBuilder {
     }
 
     @Override
-    JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader) {
-      return new ObjectTypeBase.JsObjectBase(valueData, valueLoader) {
+    JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId) {
+      return new ObjectTypeBase.JsObjectBase(valueData, valueLoader, ownedGroupId) {
         @Override public JsArray asArray() {
           return null;
         }
@@ -430,16 +537,17 @@ class WipValueBuilder {
     }
 
     @Override
-    JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader) {
-      return new Array(valueData, valueLoader);
+    JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId) {
+      return new Array(valueData, valueLoader, ownedGroupId);
     }
 
     private class Array extends JsObjectBase implements JsArray {
       private final AtomicReference<ArrayProperties> arrayPropertiesRef =
           new AtomicReference<ArrayProperties>(null);
 
-      Array(RemoteObjectValue valueData, WipValueLoader valueLoader) {
-        super(valueData, valueLoader);
+      Array(RemoteObjectValue valueData, WipValueLoader valueLoader, String ownedGroupId) {
+        super(valueData, valueLoader, ownedGroupId);
       }
 
       @Override
@@ -454,9 +562,48 @@ class WipValueBuilder {
 
       @Override
       public long getLength() throws MethodIsBlockingException {
+        String description = getValueData().description();
+        if (arrayPropertiesRef.get() == null && description != null) {
+          // Description looks like "Array[10]", it saves us loading all elements.
+          Matcher matcher = LENGTH_IN_DESCRIPTION_PATTERN.matcher(description);
+          if (matcher.matches()) {
+            try {
+              return Long.parseLong(matcher.group(1));
+            } catch (NumberFormatException e) {
+              // Fall through and load all elements.
+            }
+          }
+        }
         return getArrayProperties().getLength();
       }
 
+      @Override
+      public SortedMap<Long, ? extends JsVariable> getRange(long from, long to)
+          throws MethodIsBlockingException {
+        ArrayProperties arrayProperties = arrayPropertiesRef.get();
+        if (arrayProperties != null) {
+          return arrayProperties.getPublicSparseArrayMap().subMap(from, to);
+        }
+        AsyncFutureRef<Getter<ObjectProperties>> rangeRef =
+            new AsyncFutureRef<Getter<ObjectProperties>>();
+        getRemoteValueMapping().loadArrayRangeInFuture(getValueData().objectId(),
+            getOwnedGroupId(), from, to,
+            getRemoteValueMapping().getCacheState(), rangeRef);
+        ObjectProperties rangeProperties = rangeRef.getSync().get();
+        if (rangeProperties == null) {
+          throw new RuntimeException("Failed to copy array range on remote");
+        }
+        TreeMap<Long, JsVariable> map = new TreeMap<Long, JsVariable>();
+        for (JsVariable variable : rangeProperties.properties()) {
+          Long index = JavaScriptExpressionBuilder.parsePropertyNameAsArrayIndex(
+              variable.getName());
+          if (index != null) {
+            map.put(index, variable);
+          }
+        }
+        return Collections.synchronizedSortedMap(Collections.unmodifiableSortedMap(map));
+      }
+
       @Override
       public JsVariable get(long index) throws MethodIsBlockingException {
         return getSafe(getArrayProperties().getSparseArrayMap(), index);
@@ -503,6 +650,9 @@ class WipValueBuilder {
       }
     }
 
+    private static final Pattern LENGTH_IN_DESCRIPTION_PATTERN =
+        Pattern.compile("\\w*\\[(\\d+)\\]");
+
     private static class ArrayProperties {
       final long length;
       final SortedMap<Long, ? extends JsVariable> sparseArrayMap;
@@ -536,8 +686,9 @@ class WipValueBuilder {
     }
 
     @Override
-    JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader) {
-      return new FunctionValueImpl(valueData, valueLoader);
+    JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId) {
+      return new FunctionValueImpl(valueData, valueLoader, ownedGroupId);
     }
 
     private class FunctionValueImpl extends ObjectTypeBase.JsObjectBase
@@ -545,8 +696,9 @@ class WipValueBuilder {
       private final AsyncFutureRef<Getter<FunctionDetailsValue>> loadedPositionRef =
           new AsyncFutureRef<Getter<FunctionDetailsValue>>();
 
-      FunctionValueImpl(RemoteObjectValue valueData, WipValueLoader valueLoader) {
-        super(valueData, valueLoader);
+      FunctionValueImpl(RemoteObjectValue valueData, WipValueLoader valueLoader,
+          String ownedGroupId) {
+        super(valueData, valueLoader, ownedGroupId);
       }
 
       @Override public JsArray asArray() {
@@ -628,6 +780,120 @@ class WipValueBuilder {
     }
   };
 
+  private interface PreviewAccess {
+    ObjectPreviewExtension.Preview getPreview();
+  }
+
+  /**
+   * Starts loading properties of the value if it is an object and its properties haven't been
+   * requested yet. Never blocks.
+   */
+  static void prefetchProperties(JsValue jsValue) {
+    if (jsValue instanceof ObjectTypeBase.JsObjectBase) {
+      ((ObjectTypeBase.JsObjectBase) jsValue).prefetchProperties();
+    }
+  }
+
+  static final ObjectPreviewExtension OBJECT_PREVIEW_EXTENSION = new ObjectPreviewExtension() {
+    @Override
+    public Preview getPreview(JsObject jsObject) {
+      if (jsObject instanceof PreviewAccess) {
+        return ((PreviewAccess) jsObject).getPreview();
+      } else {
+        return null;
+      }
+    }
+  };
+
+  /**
+   * Wraps protocol preview data. Nested previews are wrapped on demand.
+   */
+  private static class PreviewImpl implements ObjectPreviewExtension.Preview {
+    private final ObjectPreviewValue previewValue;
+    private volatile List<PreviewPropertyImpl> properties = null;
+
+    PreviewImpl(ObjectPreviewValue previewValue) {
+      this.previewValue = previewValue;
+    }
+
+    @Override
+    public List<? extends ObjectPreviewExtension.Property> getProperties() {
+      List<PreviewPropertyImpl> result = properties;
+      if (result == null) {
+        List<PropertyPreviewValue> propertyValues = previewValue.properties();
+        result = new ArrayList<PreviewPropertyImpl>(propertyValues.size());
+        for (PropertyPreviewValue propertyValue : propertyValues) {
+          result.add(new PreviewPropertyImpl(propertyValue));
+        }
+        // Possibly overwrite other already created list, but we don't care about instance here.
+        properties = result;
+      }
+      return result;
+    }
+
+    @Override
+    public boolean isOverflow() {
+      return previewValue.overflow();
+    }
+  }
+
+  private static class PreviewPropertyImpl implements ObjectPreviewExtension.Property {
+    private final PropertyPreviewValue propertyValue;
+
+    PreviewPropertyImpl(PropertyPreviewValue propertyValue) {
+      this.propertyValue = propertyValue;
+    }
+
+    @Override
+    public String getName() {
+      return propertyValue.name();
+    }
+
+    @Override
+    public Type getType() {
+      PropertyPreviewValue.Type protocolType = propertyValue.type();
+      if (protocolType == PropertyPreviewValue.Type.OBJECT) {
+        return PREVIEW_SUBTYPE_TO_TYPE.get(propertyValue.subtype());
+      }
+      return PREVIEW_TYPE_TO_TYPE.get(protocolType);
+    }
+
+    private static final Map<PropertyPreviewValue.Type, Type> PREVIEW_TYPE_TO_TYPE;
+    static {
+      PREVIEW_TYPE_TO_TYPE = new HashMap<PropertyPreviewValue.Type, Type>();
+      PREVIEW_TYPE_TO_TYPE.put(PropertyPreviewValue.Type.FUNCTION, Type.TYPE_FUNCTION);
+      PREVIEW_TYPE_TO_TYPE.put(PropertyPreviewValue.Type.UNDEFINED, Type.TYPE_UNDEFINED);
+      PREVIEW_TYPE_TO_TYPE.put(PropertyPreviewValue.Type.STRING, Type.TYPE_STRING);
+      PREVIEW_TYPE_TO_TYPE.put(PropertyPreviewValue.Type.NUMBER, Type.TYPE_NUMBER);
+      PREVIEW_TYPE_TO_TYPE.put(PropertyPreviewValue.Type.BOOLEAN, Type.TYPE_BOOLEAN);
+    }
+
+    private static final Map<PropertyPreviewValue.Subtype, Type> PREVIEW_SUBTYPE_TO_TYPE;
+    static {
+      PREVIEW_SUBTYPE_TO_TYPE = new HashMap<PropertyPreviewValue.Subtype, Type>();
+      PREVIEW_SUBTYPE_TO_TYPE.put(null, Type.TYPE_OBJECT);
+      PREVIEW_SUBTYPE_TO_TYPE.put(PropertyPreviewValue.Subtype.ARRAY, Type.TYPE_ARRAY);
+      PREVIEW_SUBTYPE_TO_TYPE.put(PropertyPreviewValue.Subtype.NULL, Type.TYPE_NULL);
+      PREVIEW_SUBTYPE_TO_TYPE.put(PropertyPreviewValue.Subtype.NODE, Type.TYPE_OBJECT);
+      PREVIEW_SUBTYPE_TO_TYPE.put(PropertyPreviewValue.Subtype.REGEXP, Type.TYPE_REGEXP);
+      PREVIEW_SUBTYPE_TO_TYPE.put(PropertyPreviewValue.Subtype.DATE, Type.TYPE_DATE);
+    }
+
+    @Override
+    public String getValueString() {
+      return propertyValue.value();
+    }
+
+    @Override
+    public ObjectPreviewExtension.Preview getValuePreview() {
+      ObjectPreviewValue nestedPreview = propertyValue.valuePreview();
+      if (nestedPreview == null) {
+        return null;
+      }
+      return new PreviewImpl(nestedPreview);
+    }
+  }
+
   private static abstract class VariableBase implements JsVariable {
     private final String name;
 
@@ -736,7 +1002,8 @@ class WipValueBuilder {
 
   private static class ObjectType extends ValueType {
     @Override
-    JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader) {
+    JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
+        String ownedGroupId) {
       ValueType secondLevelValueType =
           getSafe(PROTOCOL_SUBTYPE_TO_VALUE_TYPE, valueData.subtype());
 
@@ -745,7 +1012,7 @@ class WipValueBuilder {
         secondLevelValueType = DEFAULT_VALUE_TYPE;
       }
 
-      return secondLevelValueType.build(valueData, valueLoader);
+      return secondLevelValueType.build(valueData, valueLoader, ownedGroupId);
     }
 
     private static final Map<RemoteObjectValue.Subtype, ValueType> PROTOCOL_SUBTYPE_TO_VALUE_TYPE;
@@ -11,26 +11,36 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import org.chromium.sdk.CallbackSemaphore;
 import org.chromium.sdk.JsObjectProperty;
 import org.chromium.sdk.JsVariable;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.RemoteValueMapping;
 import org.chromium.sdk.SyncCallback;
+import org.chromium.sdk.internal.RemoteObjectCache;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.FunctionDetailsValue;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.GetFunctionDetailsData;
+import org.chromium.sdk.internal.wip.protocol.input.runtime.CallFunctionOnData;
 import org.chromium.sdk.internal.wip.protocol.input.runtime.GetPropertiesData;
 import org.chromium.sdk.internal.wip.protocol.input.runtime.InternalPropertyDescriptorValue;
 import org.chromium.sdk.internal.wip.protocol.input.runtime.PropertyDescriptorValue;
 import org.chromium.sdk.internal.wip.protocol.output.debugger.GetFunctionDetailsParams;
+import org.chromium.sdk.internal.wip.protocol.output.runtime.CallFunctionOnParams;
 import org.chromium.sdk.internal.wip.protocol.output.runtime.GetPropertiesParams;
+import org.chromium.sdk.internal.wip.protocol.output.runtime.ReleaseObjectParams;
 import org.chromium.sdk.util.AsyncFuture;
 import org.chromium.sdk.util.AsyncFuture.Callback;
 import org.chromium.sdk.util.AsyncFutureRef;
 import org.chromium.sdk.util.GenericCallback;
 import org.chromium.sdk.util.MethodIsBlockingException;
+import org.chromium.sdk.util.RelaySyncCallback;
 
 /**
  * Responsible for loading values of properties. It works in pair with {@link WipValueBuilder}.
@@ -60,26 +70,142 @@ public abstract class WipValueLoader implements RemoteValueMapping {
   }
 
   /**
-   * Loads object properties. It starts and executes a load operation of a corresponding
-   * {@link AsyncFuture}. The operation is fully synchronous, so this method normally
-   * blocks. There is a chance that other thread is already executing load operation.
-   * In this case the method will return immediately, but {@link AsyncFuture} will hold
-   * thread until the operation finishes.
-   * @param innerNameBuilder name builder for qualified names of all properties and subproperties
+   * Loads object properties. It starts a load operation of a corresponding
+   * {@link AsyncFuture} and returns immediately; the operation sends a request and
+   * postprocesses the response in a shared thread pool, so no thread is blocked
+   * while waiting for remote.
+   * @param ownedGroupId group of the object if it was created by SDK or null
    * @param futureRef future reference that will hold result of load operation
    */
-  void loadJsObjectPropertiesInFuture(final String objectId,
+  void loadJsObjectPropertiesInFuture(final String objectId, String ownedGroupId,
       boolean reload, int currentCacheState,
-      AsyncFutureRef<Getter<ObjectProperties>> futureRef) throws MethodIsBlockingException {
-    ObjectPropertyProcessor propertyProcessor =
-        new ObjectPropertyProcessor(objectId);
+      AsyncFutureRef<Getter<ObjectProperties>> futureRef) {
+    LoadPostprocessor<Getter<ObjectProperties>> propertyProcessor =
+        new ObjectPropertyProcessor(objectId, ownedGroupId);
+
+    final RemoteObjectCache<String, Getter<ObjectProperties>> cache =
+        getPersistentPropertyCache();
+    if (cache != null && objectId != null) {
+      final Getter<ObjectProperties> cached = cache.get(objectId, currentCacheState);
+      tabImpl.reportObjectCacheStatistics();
+      if (cached != null) {
+        if (reload) {
+          futureRef.reinitializeRunning(new AsyncFuture.Operation<Getter<ObjectProperties>>() {
+            @Override
+            public RelayOk start(Callback<Getter<ObjectProperties>> callback,
+                SyncCallback syncCallback) {
+              callback.done(cached);
+              return RelaySyncCallback.finish(syncCallback);
+            }
+          });
+        } else {
+          futureRef.initializeTrivial(cached);
+        }
+        return;
+      }
+      propertyProcessor = new CachingPostprocessor(propertyProcessor, cache, objectId);
+    }
     loadPropertiesInFuture(objectId, propertyProcessor, reload, currentCacheState, futureRef);
   }
 
+  /**
+   * @return cache of object properties that outlives debug context or null if object ids
+   *     of this mapping become invalid when VM resumes
+   */
+  RemoteObjectCache<String, Getter<ObjectProperties>> getPersistentPropertyCache() {
+    return null;
+  }
+
+  /**
+   * Loads elements of an array within range [from, to). The range gets copied into
+   * a temporary remote object first, so that only the range elements are transferred.
+   * @param futureRef future reference that will hold properties of the temporary object
+   *     (named by element indexes)
+   */
+  void loadArrayRangeInFuture(String arrayObjectId, String ownedGroupId, long from, long to,
+      int currentCacheState, AsyncFutureRef<Getter<ObjectProperties>> futureRef) {
+    String functionText = "function() { var r = {}; " +
+        "for (var i = " + from + ", end = Math.min(" + to + ", this.length); i < end; i++) { " +
+        "if (i in this) { r[i] = this[i]; } } return r; }";
+    loadFunctionResultPropertiesInFuture(arrayObjectId, ownedGroupId, functionText,
+        currentCacheState, futureRef);
+  }
+
+  /**
+   * Calls a function on a remote object and loads properties of the object it returns.
+   * This way a helper function may pick a subset of properties that we actually need.
+   * The result object is released as soon as its properties are loaded, so the properties
+   * are built as properties of the original object (e.g. getters are called on it).
+   * @param ownedGroupId group of the original object if it was created by SDK or null;
+   *     the result object and its property values belong to the same group
+   * @param futureRef future reference that will hold properties of the function result or
+   *     null if the function returned a primitive value
+   */
+  void loadFunctionResultPropertiesInFuture(final String objectId, final String ownedGroupId,
+      final String functionText, final int currentCacheState,
+      AsyncFutureRef<Getter<ObjectProperties>> futureRef) {
+    AsyncFuture.Operation<Getter<ObjectProperties>> operation =
+        new AsyncFuture.Operation<Getter<ObjectProperties>>() {
+      @Override
+      public RelayOk start(final Callback<Getter<ObjectProperties>> callback,
+          SyncCallback syncCallback) {
+        final RelaySyncCallback relay = new RelaySyncCallback(syncCallback);
+        final RelaySyncCallback.Guard guard = relay.newGuard();
+
+        GenericCallback<CallFunctionOnData> requestCallback =
+            new GenericCallback<CallFunctionOnData>() {
+          @Override
+          public void success(CallFunctionOnData data) {
+            if (data.wasThrown() == Boolean.TRUE) {
+              callback.done(Getter.<ObjectProperties>newFailure(
+                  new Exception("Helper function failed on remote")));
+              return;
+            }
+            final String resultObjectId = data.result().objectId();
+            if (resultObjectId == null) {
+              callback.done(Getter.<ObjectProperties>newNormal(null));
+              return;
+            }
+            // The result object is only needed to get its properties.
+            Callback<Getter<ObjectProperties>> releasingCallback =
+                new Callback<Getter<ObjectProperties>>() {
+              @Override
+              public void done(Getter<ObjectProperties> result) {
+                tabImpl.getCommandProcessor().send(new ReleaseObjectParams(resultObjectId),
+                    null, null);
+                callback.done(result);
+              }
+            };
+            AsyncFuture.Operation<Getter<ObjectProperties>> loadOperation =
+                createLoadPropertiesOperation(resultObjectId,
+                    new ObjectPropertyProcessor(objectId, ownedGroupId), currentCacheState);
+            guard.discharge(loadOperation.start(releasingCallback,
+                relay.getUserSyncCallback()));
+          }
+
+          @Override
+          public void failure(Exception exception) {
+            callback.done(Getter.<ObjectProperties>newFailure(exception));
+          }
+        };
+
+        CallFunctionOnParams request =
+            new CallFunctionOnParams(objectId, functionText, null, null, null, null);
+
+        return tabImpl.getCommandProcessor().send(request, requestCallback,
+            guard.asSyncCallback());
+      }
+    };
+    futureRef.initializeRunning(operation);
+  }
+
   int getCacheState() {
     return cacheStateRef.get();
   }
 
+  /**
+   * @return object group that SDK creates for objects of this mapping (e.g. evaluate results)
+   */
   abstract String getObjectGroupId();
 
   /**
@@ -138,9 +264,11 @@ public abstract class WipValueLoader implements RemoteValueMapping {
 
   private class ObjectPropertyProcessor implements LoadPostprocessor<Getter<ObjectProperties>> {
     private final String objectId;
+    private final String ownedGroupId;
 
-    ObjectPropertyProcessor(String objectId) {
+    ObjectPropertyProcessor(String objectId, String ownedGroupId) {
       this.objectId = objectId;
+      this.ownedGroupId = ownedGroupId;
     }
 
     @Override
@@ -156,7 +284,7 @@ public abstract class WipValueLoader implements RemoteValueMapping {
         boolean isInternal = INTERNAL_PROPERTY_NAME.contains(name);
 
         JsObjectProperty property = valueBuilder.createObjectProperty(propertyDescriptor,
-            objectId, name);
+            objectId, ownedGroupId, name);
         if (isInternal) {
           internalProperties.add(property);
         } else {
@@ -169,7 +297,7 @@ public abstract class WipValueLoader implements RemoteValueMapping {
           String name = propertyDescriptor.name();
 
           JsVariable variable =
-              valueBuilder.createVariable(propertyDescriptor.value(), name);
+              valueBuilder.createVariable(propertyDescriptor.value(), ownedGroupId, name);
           internalProperties.add(variable);
         }
       }
@@ -221,6 +349,43 @@ public abstract class WipValueLoader implements RemoteValueMapping {
     }
   }
 
+  /**
+   * Puts successfully loaded properties into a persistent cache.
+   */
+  private static class CachingPostprocessor
+      implements LoadPostprocessor<Getter<ObjectProperties>> {
+    private final LoadPostprocessor<Getter<ObjectProperties>> delegate;
+    private final RemoteObjectCache<String, Getter<ObjectProperties>> cache;
+    private final String objectId;
+
+    CachingPostprocessor(LoadPostprocessor<Getter<ObjectProperties>> delegate,
+        RemoteObjectCache<String, Getter<ObjectProperties>> cache, String objectId) {
+      this.delegate = delegate;
+      this.cache = cache;
+      this.objectId = objectId;
+    }
+
+    @Override
+    public Getter<ObjectProperties> process(List<? extends PropertyDescriptorValue> propertyList,
+        List<? extends InternalPropertyDescriptorValue> internalPropertyList,
+        int currentCacheState) {
+      Getter<ObjectProperties> result =
+          delegate.process(propertyList, internalPropertyList, currentCacheState);
+      cache.put(objectId, currentCacheState, result);
+      return result;
+    }
+
+    @Override
+    public Getter<ObjectProperties> getEmptyResult() {
+      return delegate.getEmptyResult();
+    }
+
+    @Override
+    public Getter<ObjectProperties> forException(Exception exception) {
+      return delegate.forException(exception);
+    }
+  }
+
   private static final Getter<ObjectProperties> EMPTY_OBJECT_PROPERTIES_GETTER =
       Getter.newNormal(((ObjectProperties) new ObjectProperties() {
         @Override public List<? extends JsObjectProperty> properties() {
@@ -239,46 +404,70 @@ public abstract class WipValueLoader implements RemoteValueMapping {
 
   <RES> void loadPropertiesInFuture(final String objectId,
       final LoadPostprocessor<RES> propertyPostprocessor, boolean reload,
-      final int currentCacheState, AsyncFutureRef<RES> futureRef)
-      throws MethodIsBlockingException {
+      final int currentCacheState, AsyncFutureRef<RES> futureRef) {
     if (objectId == null) {
       futureRef.initializeTrivial(propertyPostprocessor.getEmptyResult());
       return;
     }
 
-    // The entire operation that first loads properties from remote and then postprocess them
-    // (without occupying Dispatch thread).
-    // The operation is sync because we don't want to do postprocessing in Dispatch thread.
-    AsyncFuture.SyncOperation<RES> syncOperation = new AsyncFuture.SyncOperation<RES>() {
+    AsyncFuture.Operation<RES> operation =
+        createLoadPropertiesOperation(objectId, propertyPostprocessor, currentCacheState);
+
+    if (reload) {
+      futureRef.reinitializeRunning(operation);
+    } else {
+      futureRef.initializeRunning(operation);
+    }
+  }
+
+  private <RES> AsyncFuture.Operation<RES> createLoadPropertiesOperation(final String objectId,
+      final LoadPostprocessor<RES> propertyPostprocessor, final int currentCacheState) {
+    // The operation only sends a request. The response is postprocessed in
+    // a postprocessing thread so that we neither occupy Dispatch thread nor block
+    // a thread for each object being loaded.
+    return new AsyncFuture.Operation<RES>() {
       @Override
-      protected RES runSync() throws MethodIsBlockingException {
-        // Get response from remote.
-        LoadPropertiesResponse response = loadRawPropertiesSync(objectId);
+      public RelayOk start(final Callback<RES> callback, SyncCallback syncCallback) {
+        final RelaySyncCallback relay = new RelaySyncCallback(syncCallback);
+        final RelaySyncCallback.Guard guard = relay.newGuard();
 
-        // Process result.
-        return response.accept(new LoadPropertiesResponse.Visitor<RES>() {
+        GenericCallback<GetPropertiesData> requestCallback =
+            new GenericCallback<GetPropertiesData>() {
           @Override
-          public RES visitData(GetPropertiesData data) {
-            // TODO: check exception.
-            return propertyPostprocessor.process(data.result(), data.internalProperties(),
-                currentCacheState);
+          public void success(final GetPropertiesData data) {
+            Runnable postprocessor = new Runnable() {
+              @Override
+              public void run() {
+                RES result;
+                try {
+                  result = propertyPostprocessor.process(data.result(),
+                      data.internalProperties(), currentCacheState);
+                } catch (RuntimeException e) {
+                  result = propertyPostprocessor.forException(e);
+                }
+                callback.done(result);
+              }
+            };
+            guard.discharge(postprocessAsync(postprocessor, relay.getUserSyncCallback()));
           }
 
           @Override
-          public RES visitFailure(final Exception exception) {
-            return propertyPostprocessor.forException(new RuntimeException(
-                "Failed to read properties from remote", exception));
+          public void failure(Exception exception) {
+            callback.done(propertyPostprocessor.forException(new RuntimeException(
+                "Failed to read properties from remote", exception)));
           }
-        });
+        };
+
+        final GetPropertiesParams request;
+        {
+          boolean ownProperties = true;
+          request = new GetPropertiesParams(objectId, ownProperties);
+        }
+
+        return tabImpl.getCommandProcessor().send(request, requestCallback,
+            guard.asSyncCallback());
       }
     };
-
-    if (reload) {
-      futureRef.reinitializeRunning(syncOperation.asAsyncOperation());
-    } else {
-      futureRef.initializeRunning(syncOperation.asAsyncOperation());
-    }
-    syncOperation.execute();
   }
 
   void loadFunctionLocationInFuture(final String objectId,
@@ -309,56 +498,66 @@ public abstract class WipValueLoader implements RemoteValueMapping {
   }
 
   /**
-   * Response is either data or error message. We wrap whatever it is for postprocessing
-   * that is conducted off Dispatch thread.
+   * Runs a postprocessing task in a shared thread pool and calls syncCallback after it.
+   * If the pool rejects the task, it is run in the current thread.
    */
-  private static abstract class LoadPropertiesResponse {
-    interface Visitor<R> {
-      R visitData(GetPropertiesData response);
-
-      R visitFailure(Exception exception);
-    }
-    abstract <R> R accept(Visitor<R> visitor);
-  }
-
-  private LoadPropertiesResponse loadRawPropertiesSync(String objectId)
-      throws MethodIsBlockingException {
-    final LoadPropertiesResponse[] result = { null };
-    GenericCallback<GetPropertiesData> callback =
-        new GenericCallback<GetPropertiesData>() {
-      @Override
-      public void success(final GetPropertiesData value) {
-        result[0] = new LoadPropertiesResponse() {
-          @Override
-          <R> R accept(Visitor<R> visitor) {
-            return visitor.visitData(value);
-          }
-        };
-      }
-
+  private static RelayOk postprocessAsync(final Runnable task, final SyncCallback syncCallback) {
+    Runnable wrappedTask = new Runnable() {
       @Override
-      public void failure(final Exception exception) {
-        result[0] = new LoadPropertiesResponse() {
-          @Override
-          <R> R accept(Visitor<R> visitor) {
-            return visitor.visitFailure(exception);
+      public void run() {
+        RuntimeException exception = null;
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          exception = e;
+          throw e;
+        } finally {
+          if (syncCallback != null) {
+            syncCallback.callbackDone(exception);
           }
-        };
+        }
       }
     };
-
-    final GetPropertiesParams request;
-    {
-      boolean ownProperties = true;
-      request = new GetPropertiesParams(objectId, ownProperties);
+    try {
+      getPostprocessExecutor().execute(wrappedTask);
+    } catch (RejectedExecutionException e) {
+      wrappedTask.run();
     }
+    return POSTPROCESS_RELAY_OK;
+  }
 
-    CallbackSemaphore callbackSemaphore = new CallbackSemaphore();
-    RelayOk relayOk =
-        tabImpl.getCommandProcessor().send(request, callback, callbackSemaphore);
-    callbackSemaphore.acquireDefault(relayOk);
+  private static final RelayOk POSTPROCESS_RELAY_OK = new RelayOk() {};
 
-    return result[0];
+  /**
+   * System property that sets the number of threads that build property objects
+   * from loaded data.
+   */
+  private static final String POSTPROCESS_THREADS_PROPERTY =
+      "org.chromium.sdk.wip.propertyPostprocessThreads";
+
+  private static final int DEFAULT_POSTPROCESS_THREADS = 4;
+
+  private static ExecutorService postprocessExecutor = null;
+
+  private static synchronized ExecutorService getPostprocessExecutor() {
+    if (postprocessExecutor == null) {
+      int threads = Integer.getInteger(POSTPROCESS_THREADS_PROPERTY, DEFAULT_POSTPROCESS_THREADS);
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+          30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger(0);
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread thread =
+                  new Thread(r, "WipPropertyPostprocessor-" + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+      postprocessExecutor = executor;
+    }
+    return postprocessExecutor;
   }
 
   static WipValueLoader castArgument(RemoteValueMapping mapping) {
@@ -11,6 +11,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
@@ -170,6 +171,16 @@ public abstract class AbstractWsConnection<INPUT, OUTPUT> implements WsConnectio
   @Override
   public abstract void sendTextualMessage(String message) throws IOException;
 
+  /**
+   * Default implementation sends messages one by one.
+   */
+  @Override
+  public void sendTextualMessages(List<String> messages) throws IOException {
+    for (String message : messages) {
+      sendTextualMessage(message);
+    }
+  }
+
   protected abstract CloseReason runListenLoop(INPUT loggableReader)
       throws IOException, InterruptedException;
 
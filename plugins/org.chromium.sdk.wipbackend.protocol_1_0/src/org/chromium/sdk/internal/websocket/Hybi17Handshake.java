@@ -9,10 +9,13 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -20,12 +23,16 @@ import org.chromium.sdk.internal.websocket.ManualLoggingSocketWrapper.LoggableIn
 import org.chromium.sdk.util.BasicUtil;
 
 /**
- * WebSocket connection handshake.
+ * WebSocket connection handshake. Optionally negotiates 'permessage-deflate' extension.
  * @see http://tools.ietf.org/html/draft-ietf-hybi-thewebsocketprotocol-17
+ * @see http://tools.ietf.org/html/rfc7692
  */
 class Hybi17Handshake {
+  /**
+   * @param offerDeflate whether to offer 'permessage-deflate' extension to server
+   */
   static Result performHandshake(ManualLoggingSocketWrapper socket, InetSocketAddress endpoint,
-      String resourceName, Random random) throws IOException {
+      String resourceName, boolean offerDeflate, Random random) throws IOException {
     final ManualLoggingSocketWrapper.LoggableInput input = socket.getLoggableInput();
     ManualLoggingSocketWrapper.LoggableOutput output = socket.getLoggableOutput();
 
@@ -41,6 +48,9 @@ class Hybi17Handshake {
     String secKeyString = DatatypeConverter.printBase64Binary(secKeyBytes);
     headerFields.add("Sec-WebSocket-Key: " + secKeyString);
     headerFields.add("Sec-WebSocket-Version: 13");
+    if (offerDeflate) {
+      headerFields.add("Sec-WebSocket-Extensions: " + PERMESSAGE_DEFLATE);
+    }
 
     Collections.shuffle(headerFields, random);
 
@@ -49,6 +59,7 @@ class Hybi17Handshake {
     }
 
     writeHttpLine(output, "");
+    output.flush();
 
     HandshakeUtil.LineReader lineReader = new HandshakeUtil.LineReader() {
       @Override
@@ -74,7 +85,13 @@ class Hybi17Handshake {
     if (!"upgrade".equalsIgnoreCase(responseFields.get("connection"))) {
       throw new IOException("Malformed response");
     }
-    if (responseFields.get("sec-websocket-extensions") != null) {
+    boolean deflateAccepted;
+    String extensionsString = responseFields.get("sec-websocket-extensions");
+    if (extensionsString == null) {
+      deflateAccepted = false;
+    } else if (offerDeflate && isValidDeflateResponse(extensionsString)) {
+      deflateAccepted = true;
+    } else {
       throw new IOException("Malformed response");
     }
     if (responseFields.get("sec-websocket-protocol") != null) {
@@ -102,14 +119,38 @@ class Hybi17Handshake {
     if (!BasicUtil.eq(expectedAcceptString, secAcceptString)) {
       throw new IOException("Malformed response");
     }
-    return CONNECTED_RESULT;
+    return deflateAccepted ? CONNECTED_DEFLATE_RESULT : CONNECTED_RESULT;
+  }
+
+  /**
+   * Checks server response to our 'permessage-deflate' offer. We do not compress outgoing
+   * messages and can inflate whatever window size server uses, so all parameters are
+   * acceptable.
+   */
+  private static boolean isValidDeflateResponse(String extensionsString) {
+    String[] parts = extensionsString.split(";");
+    if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(parts[0].trim())) {
+      return false;
+    }
+    for (int i = 1; i < parts.length; i++) {
+      String param = parts[i].trim();
+      int equalsPos = param.indexOf('=');
+      String name = equalsPos == -1 ? param : param.substring(0, equalsPos).trim();
+      if (!DEFLATE_PARAMETERS.contains(name.toLowerCase())) {
+        return false;
+      }
+    }
+    return true;
   }
 
   static abstract class Result {
     abstract <R> R accept(Visitor<R> visitor);
 
     interface Visitor<R> {
-      R visitConnected();
+      /**
+       * @param deflate whether 'permessage-deflate' extension has been negotiated
+       */
+      R visitConnected(boolean deflate);
       R visitUnknownError(Exception exception);
       R visitErrorMessage(int code, String errorName, String text);
     }
@@ -127,7 +168,14 @@ class Hybi17Handshake {
   private static final Result CONNECTED_RESULT = new Result() {
     @Override
     <R> R accept(Visitor<R> visitor) {
-      return visitor.visitConnected();
+      return visitor.visitConnected(false);
+    }
+  };
+
+  private static final Result CONNECTED_DEFLATE_RESULT = new Result() {
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitConnected(true);
     }
   };
 
@@ -166,4 +214,10 @@ class Hybi17Handshake {
   }
 
   private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+  private static final Set<String> DEFLATE_PARAMETERS = new HashSet<String>(Arrays.asList(
+      "server_no_context_takeover", "client_no_context_takeover",
+      "server_max_window_bits", "client_max_window_bits"));
 }
@@ -6,9 +6,13 @@ package org.chromium.sdk.internal.websocket;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 import org.chromium.sdk.ConnectionLogger;
 import org.chromium.sdk.internal.websocket.ManualLoggingSocketWrapper.LoggableInput;
@@ -17,12 +21,29 @@ import org.chromium.sdk.util.BasicUtil;
 
 /**
  * WebSocket connection. Sends and receives messages. Implements HyBi-17 protocol specification.
+ * Incoming messages may be fragmented and, if 'permessage-deflate' extension is turned on,
+ * compressed. Outgoing messages are always sent in a single uncompressed frame.
  * @see http://tools.ietf.org/html/draft-ietf-hybi-thewebsocketprotocol-17
+ * @see http://tools.ietf.org/html/rfc7692
  */
 public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, LoggableOutput> {
   private static final Logger LOGGER = Logger.getLogger(Hybi17WsConnection.class.getName());
   private static final Random RANDOM = new Random();
 
+  /**
+   * System property that makes connection offer 'permessage-deflate' extension. Note that
+   * connection log shows compressed frames as they are.
+   */
+  private static final String PERMESSAGE_DEFLATE_PROPERTY =
+      "org.chromium.sdk.wip.websocket.permessageDeflate";
+
+  private static final int INITIAL_MESSAGE_BUFFER_SIZE = 16 * 1024;
+
+  /** Bigger buffers are released after the message so that one huge message does not stick. */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+  private static final int MAX_MESSAGE_SIZE = Integer.MAX_VALUE / 2;
+
   /**
    * Specifies how outgoing frames get masked. While protocol specification requires that every
    * outgoing frame must be masked (to disable provocative content that socket client may send),
@@ -91,9 +112,11 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
         connectionLogger, maskStrategy.getLogWrapperFactory());
 
     boolean handshakeDone = false;
+    boolean deflate;
     Exception handshakeException = null;
     try {
-      performHandshakeOrFail(socketWrapper, endpoint, resourceId);
+      deflate = performHandshakeOrFail(socketWrapper, endpoint, resourceId,
+          Boolean.getBoolean(PERMESSAGE_DEFLATE_PROPERTY));
       handshakeDone = true;
     } catch (RuntimeException e) {
       handshakeException = e;
@@ -107,22 +130,83 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
       }
     }
 
-    return new Hybi17WsConnection(socketWrapper, maskStrategy, connectionLogger);
+    return new Hybi17WsConnection(socketWrapper, maskStrategy, deflate, connectionLogger);
   }
 
   private final MaskStrategy maskStrategy;
 
+  /** Null unless 'permessage-deflate' is negotiated. Accessed from listen thread only. */
+  private final Inflater inflater;
+
+  // Incoming message assembly state, accessed from listen thread only.
+  private byte[] messageBuffer = new byte[INITIAL_MESSAGE_BUFFER_SIZE];
+  private int messageLength = 0;
+  private boolean messageInProgress = false;
+  private boolean messageCompressed = false;
+  private byte[] inflateBuffer = null;
+
+  private final AtomicLong payloadBytesReceived = new AtomicLong(0);
+  private final AtomicLong messageBytesReceived = new AtomicLong(0);
+
   private Hybi17WsConnection(ManualLoggingSocketWrapper socketWrapper, MaskStrategy maskStrategy,
-      ConnectionLogger connectionLogger) {
+      boolean deflate, ConnectionLogger connectionLogger) {
     super(socketWrapper, connectionLogger);
     this.maskStrategy = maskStrategy;
+    if (deflate) {
+      this.inflater = new Inflater(true);
+    } else {
+      this.inflater = null;
+    }
+  }
+
+  /**
+   * @return whether incoming messages may come compressed
+   */
+  public boolean isDeflateNegotiated() {
+    return inflater != null;
+  }
+
+  /**
+   * @return the total size of text message payloads as they were received (possibly compressed)
+   */
+  public long getPayloadBytesReceived() {
+    return payloadBytesReceived.get();
+  }
+
+  /**
+   * @return the total size of text messages after decompression
+   */
+  public long getMessageBytesReceived() {
+    return messageBytesReceived.get();
   }
 
   @Override
-  public void sendTextualMessage(final String message) throws IOException {
+  public void sendTextualMessage(String message) throws IOException {
+    sendMessage(OpCode.TEXT, createTextPayload(message), false);
+  }
+
+  /**
+   * Writes all messages as consecutive frames and flushes socket only once, so that
+   * a batch normally goes out as a single TCP segment.
+   */
+  @Override
+  public void sendTextualMessages(List<String> messages) throws IOException {
+    LoggableOutput output = getSocketWrapper().getLoggableOutput();
+    synchronized (this) {
+      if (isOutputClosed()) {
+        throw new IOException("WebSocket is already closed for output");
+      }
+      for (String message : messages) {
+        writeFrame(output, OpCode.TEXT, createTextPayload(message));
+      }
+      output.flush();
+    }
+  }
+
+  private static LoggablePayload createTextPayload(final String message) {
     final byte[] bytes = message.getBytes(UTF_8_CHARSET);
 
-    LoggablePayload payload = new LoggablePayload() {
+    return new LoggablePayload() {
       @Override void send(LoggableOutput output, byte[] maskBytes) throws IOException {
         output.writeToLog(message, "utf-8 demasked");
         if (maskBytes != null) {
@@ -136,8 +220,6 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
         return bytes.length;
       }
     };
-
-    sendMessage(OpCode.TEXT, payload, false);
   }
 
   @Override
@@ -178,25 +260,41 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
         }
       }
 
-      if ((firstByte & FrameBits.FIN_BIT) == 0) {
-        throw new IncomingProtocolException("Fragments unsupported",
-            StatusCode.CANNOT_ACCEPT, null);
-      }
-      if ((firstByte & FrameBits.RESERVED_MASK) != 0) {
-        throw new IncomingProtocolException("Unexpected reserved bits",
-            StatusCode.PROTOCOL_ERROR, null);
-      }
-
+      boolean isFinal = (firstByte & FrameBits.FIN_BIT) != 0;
+      int reservedBits = firstByte & FrameBits.RESERVED_MASK;
       int opcode = firstByte & FrameBits.OPCODE_MASK;
 
+      // Null for data frames.
       IncomingFrameHandler frameHandler;
 
       switch (opcode) {
       case OpCode.CONTINUATION:
-        throw new IncomingProtocolException("Continuation is not supported",
-            StatusCode.CANNOT_ACCEPT, null);
+        if (!messageInProgress) {
+          throw new IncomingProtocolException("Unexpected continuation frame",
+              StatusCode.PROTOCOL_ERROR, null);
+        }
+        if (reservedBits != 0) {
+          throw new IncomingProtocolException("Unexpected reserved bits",
+              StatusCode.PROTOCOL_ERROR, null);
+        }
+        frameHandler = null;
+        break;
       case OpCode.TEXT:
-        frameHandler = IncomingFrameHandler.TEXT_MESSAGE;
+        if (messageInProgress) {
+          throw new IncomingProtocolException("Previous message is not finished",
+              StatusCode.PROTOCOL_ERROR, null);
+        }
+        if (reservedBits == FrameBits.RSV1_BIT && inflater != null) {
+          messageCompressed = true;
+        } else if (reservedBits == 0) {
+          messageCompressed = false;
+        } else {
+          throw new IncomingProtocolException("Unexpected reserved bits",
+              StatusCode.PROTOCOL_ERROR, null);
+        }
+        messageInProgress = true;
+        messageLength = 0;
+        frameHandler = null;
         break;
       case OpCode.BINARY:
         throw new IncomingProtocolException("Binary is not supported",
@@ -215,6 +313,11 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
             StatusCode.CANNOT_ACCEPT, null);
       }
 
+      if (frameHandler != null && (!isFinal || reservedBits != 0)) {
+        throw new IncomingProtocolException("Malformed control frame",
+            StatusCode.PROTOCOL_ERROR, null);
+      }
+
       int secondByte = readByteOfFail(loggableReader);
 
       boolean hasMask = (secondByte & FrameBits.MASK_BIT) != 0;
@@ -253,9 +356,111 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
         payloadLen = payloadLenByte;
       }
 
-      byte [] bytes = loggableReader.readBytes(payloadLen);
-      frameHandler.process(bytes, this);
+      if (frameHandler != null) {
+        byte [] bytes = loggableReader.readBytes(payloadLen);
+        frameHandler.process(bytes, this);
+        continue;
+      }
+
+      if (payloadLen > MAX_MESSAGE_SIZE - messageLength) {
+        throw new IncomingProtocolException("Message is too large",
+            StatusCode.CANNOT_ACCEPT, null);
+      }
+      // Reserve space for deflate tail also.
+      ensureMessageCapacity(messageLength + payloadLen + DEFLATE_TAIL.length);
+      loggableReader.readBytes(messageBuffer, messageLength, payloadLen);
+      messageLength += payloadLen;
+
+      if (isFinal) {
+        processTextMessage();
+      }
+    }
+  }
+
+  private void processTextMessage() throws IncomingProtocolException {
+    String text;
+    if (messageCompressed) {
+      int inflatedLength = inflateMessage();
+      text = new String(inflateBuffer, 0, inflatedLength, UTF_8_CHARSET);
+      messageBytesReceived.addAndGet(inflatedLength);
+      if (inflateBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+        inflateBuffer = null;
+      }
+    } else {
+      text = new String(messageBuffer, 0, messageLength, UTF_8_CHARSET);
+      messageBytesReceived.addAndGet(messageLength);
+    }
+    payloadBytesReceived.addAndGet(messageLength);
+
+    messageInProgress = false;
+    messageLength = 0;
+    if (messageBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+      messageBuffer = new byte[INITIAL_MESSAGE_BUFFER_SIZE];
     }
+
+    dispatchTextMessage(text);
+  }
+
+  /**
+   * Inflates the message buffer into {@link #inflateBuffer}. Inflater is kept for the entire
+   * connection because server may reuse its sliding window across messages.
+   * @return number of inflated bytes
+   */
+  private int inflateMessage() throws IncomingProtocolException {
+    System.arraycopy(DEFLATE_TAIL, 0, messageBuffer, messageLength, DEFLATE_TAIL.length);
+    inflater.setInput(messageBuffer, 0, messageLength + DEFLATE_TAIL.length);
+    if (inflateBuffer == null) {
+      inflateBuffer = new byte[Math.max(INITIAL_MESSAGE_BUFFER_SIZE, messageLength * 4)];
+    }
+    int length = 0;
+    try {
+      while (true) {
+        if (length == inflateBuffer.length) {
+          inflateBuffer = copyOf(inflateBuffer, length, length * 2);
+        }
+        int inflated = inflater.inflate(inflateBuffer, length, inflateBuffer.length - length);
+        length += inflated;
+        if (length < inflateBuffer.length && inflater.needsInput()) {
+          // All input is consumed and all output is flushed.
+          break;
+        }
+        if (inflater.finished()) {
+          // Server finished deflate stream, it will start a new one with the next message.
+          inflater.reset();
+          break;
+        }
+        if (inflated == 0 && inflater.needsDictionary()) {
+          throw new DataFormatException("Dictionary is required");
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new IncomingProtocolException("Failed to inflate message",
+          StatusCode.INVALID_DATA, e);
+    }
+    return length;
+  }
+
+  private void ensureMessageCapacity(int capacity) {
+    if (capacity > messageBuffer.length) {
+      messageBuffer = copyOf(messageBuffer, messageLength,
+          Math.max(capacity, messageBuffer.length * 2));
+    }
+  }
+
+  private static byte[] copyOf(byte[] array, int length, int newSize) {
+    byte[] result = new byte[newSize];
+    System.arraycopy(array, 0, result, 0, length);
+    return result;
+  }
+
+  private void dispatchTextMessage(final String text) {
+    getDispatchQueue().add(new MessageDispatcher() {
+      @Override
+      boolean dispatch(Listener userListener) {
+        userListener.textMessageRecieved(text);
+        return false;
+      }
+    });
   }
 
   private static class IncomingProtocolException extends Exception {
@@ -274,20 +479,6 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
   private static abstract class IncomingFrameHandler {
     abstract void process(byte[] bytes, Hybi17WsConnection hybiWsConnection);
 
-    static final IncomingFrameHandler TEXT_MESSAGE = new IncomingFrameHandler() {
-      @Override
-      void process(byte[] bytes, Hybi17WsConnection hybiWsConnection) {
-        final String text = new String(bytes, UTF_8_CHARSET);
-        hybiWsConnection.getDispatchQueue().add(new MessageDispatcher() {
-          @Override
-          boolean dispatch(Listener userListener) {
-            userListener.textMessageRecieved(text);
-            return false;
-          }
-        });
-      }
-    };
-
     static final IncomingFrameHandler PING = new IncomingFrameHandler() {
       @Override
       void process(final byte[] bytes, Hybi17WsConnection hybiWsConnection) {
@@ -377,86 +568,98 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
 
   private void sendMessage(int opCode, LoggablePayload loggablePayload, boolean isClosingMessage)
       throws IOException {
-    int length = loggablePayload.getLength();
     LoggableOutput output = getSocketWrapper().getLoggableOutput();
 
-    byte[] maskBytes = maskStrategy.generate();
-
     synchronized (this) {
       if (isOutputClosed()) {
         throw new IOException("WebSocket is already closed for output");
       }
 
-      byte firstByte = (byte) (FrameBits.FIN_BIT | OpCode.TEXT);
+      writeFrame(output, opCode, loggablePayload);
+      output.flush();
+
+      if (isClosingMessage) {
+        setOutputClosed(true);
+      }
+    }
+  }
+
+  /**
+   * Writes a single frame into the output buffer. Caller must hold the lock and flush output.
+   */
+  private void writeFrame(LoggableOutput output, int opCode, LoggablePayload loggablePayload)
+      throws IOException {
+    int length = loggablePayload.getLength();
+    byte[] maskBytes = maskStrategy.generate();
 
-      output.writeByte(firstByte);
+    byte firstByte = (byte) (FrameBits.FIN_BIT | opCode);
 
-      int maskFlag = maskBytes == null ? 0 : FrameBits.MASK_BIT;
+    output.writeByte(firstByte);
 
-      if (length <= 125) {
-        output.writeByte((byte) (length | maskFlag));
-      } else if (length <= FrameBits.MAX_TWO_BYTE_INT) {
-        output.writeByte((byte) (FrameBits.LENGTH_2_BYTE_CODE | maskFlag));
-        output.writeByte((byte) ((length >> 8) & 0xFF));
-        output.writeByte((byte) (length & 0xFF));
-      } else {
-        output.writeByte((byte) (FrameBits.LENGTH_8_BYTE_CODE | maskFlag));
-        output.writeByte((byte) 0);
-        output.writeByte((byte) 0);
-        output.writeByte((byte) 0);
-        output.writeByte((byte) 0);
-        output.writeByte((byte) (length >>> 24));
-        output.writeByte((byte) ((length >> 16) & 0xFF));
-        output.writeByte((byte) ((length >> 8) & 0xFF));
-        output.writeByte((byte) (length & 0xFF));
-      }
+    int maskFlag = maskBytes == null ? 0 : FrameBits.MASK_BIT;
 
-      if (maskBytes != null) {
-        output.writeBytes(maskBytes);
-      }
-      loggablePayload.send(output, maskBytes);
+    if (length <= 125) {
+      output.writeByte((byte) (length | maskFlag));
+    } else if (length <= FrameBits.MAX_TWO_BYTE_INT) {
+      output.writeByte((byte) (FrameBits.LENGTH_2_BYTE_CODE | maskFlag));
+      output.writeByte((byte) ((length >> 8) & 0xFF));
+      output.writeByte((byte) (length & 0xFF));
+    } else {
+      output.writeByte((byte) (FrameBits.LENGTH_8_BYTE_CODE | maskFlag));
+      output.writeByte((byte) 0);
+      output.writeByte((byte) 0);
+      output.writeByte((byte) 0);
+      output.writeByte((byte) 0);
+      output.writeByte((byte) (length >>> 24));
+      output.writeByte((byte) ((length >> 16) & 0xFF));
+      output.writeByte((byte) ((length >> 8) & 0xFF));
+      output.writeByte((byte) (length & 0xFF));
+    }
 
-      if (isClosingMessage) {
-        setOutputClosed(true);
-      }
+    if (maskBytes != null) {
+      output.writeBytes(maskBytes);
     }
+    loggablePayload.send(output, maskBytes);
 
     output.markSeparatorForLog();
   }
 
-  private static void performHandshakeOrFail(ManualLoggingSocketWrapper socket,
-      InetSocketAddress endpoint, String resourceId) throws IOException {
+  /**
+   * @return whether 'permessage-deflate' extension has been negotiated
+   */
+  private static boolean performHandshakeOrFail(ManualLoggingSocketWrapper socket,
+      InetSocketAddress endpoint, String resourceId, boolean offerDeflate) throws IOException {
     Hybi17Handshake.Result result =
-        Hybi17Handshake.performHandshake(socket, endpoint, resourceId, RANDOM);
-    result.accept(HANDSHAKE_RESULT_VISITOR).get();
+        Hybi17Handshake.performHandshake(socket, endpoint, resourceId, offerDeflate, RANDOM);
+    return result.accept(HANDSHAKE_RESULT_VISITOR).get();
   }
 
-  private static final Hybi17Handshake.Result.Visitor<DataOrException<Void>>
+  private static final Hybi17Handshake.Result.Visitor<DataOrException<Boolean>>
       HANDSHAKE_RESULT_VISITOR =
-      new Hybi17Handshake.Result.Visitor<DataOrException<Void>>() {
+      new Hybi17Handshake.Result.Visitor<DataOrException<Boolean>>() {
         @Override
-        public DataOrException<Void> visitConnected() {
-          return new DataOrException<Void>() {
-            @Override Void get() throws IOException {
-              return null;
+        public DataOrException<Boolean> visitConnected(final boolean deflate) {
+          return new DataOrException<Boolean>() {
+            @Override Boolean get() throws IOException {
+              return deflate;
             }
           };
         }
 
         @Override
-        public DataOrException<Void> visitUnknownError(final Exception exception) {
-          return new DataOrException<Void>() {
-            @Override Void get() throws IOException {
+        public DataOrException<Boolean> visitUnknownError(final Exception exception) {
+          return new DataOrException<Boolean>() {
+            @Override Boolean get() throws IOException {
               throw new IOException("Failed to establish WebSocket connection", exception);
             }
           };
         }
 
         @Override
-        public DataOrException<Void> visitErrorMessage(final int code,
+        public DataOrException<Boolean> visitErrorMessage(final int code,
             final String errorName, final String text) {
-          return new DataOrException<Void>() {
-            @Override Void get() throws IOException {
+          return new DataOrException<Boolean>() {
+            @Override Boolean get() throws IOException {
               throw new IOException("Failed to establish WebSocket connection: " + code + " " +
                   errorName + " | " + text);
             }
@@ -488,6 +691,7 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
     int OPCODE_LENGTH = 4;
     int OPCODE_MASK = (1 << OPCODE_LENGTH) - 1;
     int RESERVED_MASK = ((1 << 3) - 1) << OPCODE_LENGTH ;
+    int RSV1_BIT = 1 << 6;
 
     int LENGTH_MASK = (1 << 7) - 1;
     int LENGTH_2_BYTE_CODE = 126;
@@ -511,7 +715,11 @@ public class Hybi17WsConnection extends AbstractWsConnection<LoggableInput, Logg
     int NORMAL = 1000;
     int PROTOCOL_ERROR = 1002;
     int CANNOT_ACCEPT = 1003;
+    int INVALID_DATA = 1007;
   }
 
+  /** Bytes that sender removes from the end of each compressed message. */
+  private static final byte[] DEFLATE_TAIL = { 0x00, 0x00, (byte) 0xFF, (byte) 0xFF };
+
   private static final int STATUS_CODE_LENTGH = 2;
 }
@@ -5,6 +5,7 @@
 package org.chromium.sdk.internal.websocket;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -13,6 +14,7 @@ import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 import org.chromium.sdk.ConnectionLogger;
+import org.chromium.sdk.ConnectionLogger.RawStreamListener;
 import org.chromium.sdk.ConnectionLogger.StreamListener;
 import org.chromium.sdk.internal.transport.AbstractSocketWrapper;
 import org.chromium.sdk.internal.websocket.ManualLoggingSocketWrapper.LoggableInput;
@@ -28,6 +30,8 @@ public class ManualLoggingSocketWrapper extends
 
   public static final Charset UTF_8_CHARSET = Charset.forName("UTF-8");
 
+  private static final byte[] CRLF_BYTES = { (byte) 0x0D, (byte) 0x0A };
+
   public ManualLoggingSocketWrapper(SocketAddress endpoint, int connectionTimeoutMs,
       ConnectionLogger connectionLogger,
       WrapperFactory<LoggableInput, LoggableOutput> wrapperFactory) throws IOException {
@@ -40,6 +44,7 @@ public class ManualLoggingSocketWrapper extends
   public static abstract class LoggableInput {
     public abstract int readByteOrEos() throws IOException;
     public abstract byte[] readBytes(int length) throws IOException;
+    public abstract void readBytes(byte[] buffer, int offset, int length) throws IOException;
     public abstract ByteBuffer readUpTo0x0D0A() throws IOException;
 
     public abstract void markSeparatorForLog();
@@ -67,6 +72,13 @@ public class ManualLoggingSocketWrapper extends
     public abstract void writeToLog(String string, String annotation) throws IOException;
 
     public abstract void markSeparatorForLog();
+
+    /**
+     * Sends all buffered bytes to the socket. Output is buffered, so that a whole frame (or
+     * several frames) go out in a single socket write; callers must flush after each
+     * logical portion of data.
+     */
+    public abstract void flush() throws IOException;
   }
 
   public static abstract class FactoryBase
@@ -118,16 +130,20 @@ public class ManualLoggingSocketWrapper extends
         @Override
         public byte[] readBytes(int length) throws IOException {
           byte[] result = new byte[length];
-          int offset = 0;
+          readBytes(result, 0, length);
+          return result;
+        }
+
+        @Override
+        public void readBytes(byte[] buffer, int offset, int length) throws IOException {
           while (length > 0) {
-            int r = bufferedInputStream.read(result, offset, length);
+            int r = bufferedInputStream.read(buffer, offset, length);
             if (r == -1) {
               throw new IOException("Unexpected EOS");
             }
             length -= r;
             offset += r;
           }
-          return result;
         }
 
         @Override
@@ -137,7 +153,8 @@ public class ManualLoggingSocketWrapper extends
     }
 
     @Override
-    public LoggableOutput wrapOutputStream(final OutputStream outputStream) {
+    public LoggableOutput wrapOutputStream(OutputStream socketOutputStream) {
+      final OutputStream outputStream = new BufferedOutputStream(socketOutputStream);
       return new LoggableOutput() {
         @Override public void writeAsciiString(String string) throws IOException {
           outputStream.write(string.getBytes(UTF_8_CHARSET));
@@ -162,6 +179,9 @@ public class ManualLoggingSocketWrapper extends
         }
         @Override public void markSeparatorForLog() {
         }
+        @Override public void flush() throws IOException {
+          outputStream.flush();
+        }
       };
     }
 
@@ -172,27 +192,29 @@ public class ManualLoggingSocketWrapper extends
         @Override
         public ByteBuffer readUpTo0x0D0A() throws IOException {
           ByteBuffer bytes = originalInputWrapper.readUpTo0x0D0A();
-          String logString =
-              new String(bytes.array(), bytes.arrayOffset(), bytes.limit(), CHARSET) + "\r\n";
-          streamListener.addContent(logString);
+          logTextBytes(bytes.array(), bytes.arrayOffset(), bytes.limit(), streamListener);
+          logTextBytes(CRLF_BYTES, 0, CRLF_BYTES.length, streamListener);
           return bytes;
         }
 
         @Override
         public byte[] readBytes(int length) throws IOException {
           byte[] bytes = originalInputWrapper.readBytes(length);
-          String logString = new String(bytes, CHARSET);
-          streamListener.addContent(logString);
+          logTextBytes(bytes, 0, bytes.length, streamListener);
           return bytes;
         }
 
+        @Override
+        public void readBytes(byte[] buffer, int offset, int length) throws IOException {
+          originalInputWrapper.readBytes(buffer, offset, length);
+          logTextBytes(buffer, offset, length, streamListener);
+        }
+
         @Override
         public int readByteOrEos() throws IOException {
           int res = originalInputWrapper.readByteOrEos();
           if (res != -1) {
-            StringBuilder builder = new StringBuilder(4);
-            dumpByte((byte) res, builder);
-            streamListener.addContent(builder);
+            dumpByte((byte) res, streamListener);
           }
           return res;
         }
@@ -229,11 +251,7 @@ public class ManualLoggingSocketWrapper extends
       @Override
       public void writeBytes(byte[] bytes) throws IOException {
         originalOutputWrapper.writeBytes(bytes);
-        StringBuilder builder = new StringBuilder(bytes.length * 4);
-        for (byte b : bytes) {
-          dumpByte(b, builder);
-        }
-        streamListener.addContent(builder);
+        dumpBytes(bytes, streamListener);
       }
 
       @Override
@@ -241,6 +259,11 @@ public class ManualLoggingSocketWrapper extends
         streamListener.addSeparator();
       }
 
+      @Override
+      public void flush() throws IOException {
+        originalOutputWrapper.flush();
+      }
+
       protected LoggableOutput getOriginalOutputWrapper() {
         return originalOutputWrapper;
       }
@@ -283,8 +306,7 @@ public class ManualLoggingSocketWrapper extends
         @Override
         public void writeBytesNoLogging(byte[] bytes) throws IOException {
           getOriginalOutputWrapper().writeBytesNoLogging(bytes);
-          String str = new String(bytes, CHARSET);
-          getStreamListener().addContent(str);
+          logTextBytes(bytes, 0, bytes.length, getStreamListener());
         }
       };
     }
@@ -313,11 +335,7 @@ public class ManualLoggingSocketWrapper extends
 
         @Override
         public void writeBytesToLog(byte[] bytes) {
-          StringBuilder builder = new StringBuilder(bytes.length * 4);
-          for (byte b : bytes) {
-            dumpByte(b, builder);
-          }
-          getStreamListener().addContent(builder);
+          dumpBytes(bytes, getStreamListener());
         }
 
         @Override
@@ -338,8 +356,37 @@ public class ManualLoggingSocketWrapper extends
   }
 
   private static void dumpByte(byte b, StreamListener streamListener) {
+    if (streamListener instanceof RawStreamListener) {
+      ((RawStreamListener) streamListener).addBinaryBytes(new byte[] { b }, 0, 1);
+      return;
+    }
     StringBuilder builder = new StringBuilder(4);
     dumpByte(b, builder);
     streamListener.addContent(builder);
   }
+
+  private static void dumpBytes(byte[] bytes, StreamListener streamListener) {
+    if (streamListener instanceof RawStreamListener) {
+      ((RawStreamListener) streamListener).addBinaryBytes(bytes, 0, bytes.length);
+      return;
+    }
+    StringBuilder builder = new StringBuilder(bytes.length * 4);
+    for (byte b : bytes) {
+      dumpByte(b, builder);
+    }
+    streamListener.addContent(builder);
+  }
+
+  /**
+   * Logs bytes that are a text. Listener that accepts raw bytes gets them as they are,
+   * so that the conversion is postponed until the log is viewed.
+   */
+  private static void logTextBytes(byte[] bytes, int offset, int length,
+      StreamListener streamListener) {
+    if (streamListener instanceof RawStreamListener) {
+      ((RawStreamListener) streamListener).addTextBytes(bytes, offset, length);
+      return;
+    }
+    streamListener.addContent(new String(bytes, offset, length, FactoryBase.CHARSET));
+  }
 }
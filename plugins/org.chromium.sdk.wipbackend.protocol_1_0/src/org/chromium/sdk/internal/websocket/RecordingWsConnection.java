@@ -0,0 +1,78 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.websocket;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.chromium.sdk.RelayOk;
+import org.chromium.sdk.SyncCallback;
+import org.chromium.sdk.internal.transport.SessionRecording;
+import org.chromium.sdk.util.SignalRelay;
+
+/**
+ * A WebSocket connection wrapper that records all textual messages into
+ * a {@link SessionRecording}. WebSocket messages have no headers, so they are recorded
+ * with an empty header map.
+ */
+public class RecordingWsConnection implements WsConnection {
+  private static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+  private final WsConnection delegate;
+  private final SessionRecording.Writer recordingWriter;
+
+  public RecordingWsConnection(WsConnection delegate, SessionRecording.Writer recordingWriter) {
+    this.delegate = delegate;
+    this.recordingWriter = recordingWriter;
+  }
+
+  @Override
+  public void startListening(final Listener listener) {
+    delegate.startListening(new Listener() {
+      @Override
+      public void textMessageRecieved(String text) {
+        recordingWriter.write(true, NO_HEADERS, text);
+        listener.textMessageRecieved(text);
+      }
+
+      @Override
+      public void errorMessage(Exception ex) {
+        listener.errorMessage(ex);
+      }
+
+      @Override
+      public void eofMessage() {
+        recordingWriter.close();
+        listener.eofMessage();
+      }
+    });
+  }
+
+  @Override
+  public void sendTextualMessage(String message) throws IOException {
+    recordingWriter.write(false, NO_HEADERS, message);
+    delegate.sendTextualMessage(message);
+  }
+
+  @Override
+  public void sendTextualMessages(List<String> messages) throws IOException {
+    for (String message : messages) {
+      recordingWriter.write(false, NO_HEADERS, message);
+    }
+    delegate.sendTextualMessages(messages);
+  }
+
+  @Override
+  public RelayOk runInDispatchThread(Runnable runnable, SyncCallback syncCallback) {
+    return delegate.runInDispatchThread(runnable, syncCallback);
+  }
+
+  @Override
+  public SignalRelay<?> getCloser() {
+    return delegate.getCloser();
+  }
+}
@@ -5,6 +5,7 @@
 package org.chromium.sdk.internal.websocket;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
@@ -20,6 +21,12 @@ public interface WsConnection {
 
   void sendTextualMessage(String message) throws IOException;
 
+  /**
+   * Sends several messages in the given order. Implementation may write them all in one
+   * socket write.
+   */
+  void sendTextualMessages(List<String> messages) throws IOException;
+
   RelayOk runInDispatchThread(Runnable runnable, SyncCallback syncCallback);
 
   SignalRelay<?> getCloser();
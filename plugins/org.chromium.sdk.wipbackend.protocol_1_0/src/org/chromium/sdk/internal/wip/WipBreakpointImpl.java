@@ -246,6 +246,10 @@ public class WipBreakpointImpl implements Breakpoint {
       this.columnNumber = columnNumber;
     }
 
+    String getSourceId() {
+      return sourceId;
+    }
+
     @Override
     public boolean equals(Object obj) {
       ActualLocation other = (ActualLocation) obj;
@@ -16,9 +16,12 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.chromium.sdk.Breakpoint;
 import org.chromium.sdk.Breakpoint.Target;
 import org.chromium.sdk.JavascriptVm.BreakpointCallback;
+import org.chromium.sdk.JavascriptVm.BreakpointSpec;
+import org.chromium.sdk.JavascriptVm.BulkBreakpointCallback;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.TextStreamPosition;
+import org.chromium.sdk.internal.BulkBreakpointSetter;
 import org.chromium.sdk.internal.wip.protocol.input.debugger.BreakpointResolvedEventData;
 import org.chromium.sdk.util.RelaySyncCallback;
 
@@ -77,6 +80,33 @@ public class WipBreakpointManager {
     }
   }
 
+  /**
+   * Sends all setBreakpoint commands in a single batch, so that they go out in one write.
+   */
+  RelayOk setBreakpoints(Collection<? extends BreakpointSpec> specs,
+      BulkBreakpointCallback callback, SyncCallback syncCallback) {
+    WipCommandProcessor commandProcessor = tabImpl.getCommandProcessor();
+    commandProcessor.beginBatch();
+    try {
+      return bulkBreakpointSetter.setBreakpoints(specs, callback, syncCallback);
+    } finally {
+      commandProcessor.endBatch();
+    }
+  }
+
+  private final BulkBreakpointSetter bulkBreakpointSetter = new BulkBreakpointSetter() {
+    @Override
+    protected RelayOk setBreakpoint(BreakpointSpec spec, BreakpointCallback callback,
+        SyncCallback syncCallback) {
+      if (spec.getIgnoreCount() != Breakpoint.EMPTY_VALUE) {
+        callback.failure("Ignore count is not supported");
+        return RelaySyncCallback.finish(syncCallback);
+      }
+      return WipBreakpointManager.this.setBreakpoint(spec.getTarget(), spec.getLine(),
+          spec.getColumn(), spec.isEnabled(), spec.getCondition(), callback, syncCallback);
+    }
+  };
+
   Db getDb() {
     return db;
   }
@@ -0,0 +1,229 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.wip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.chromium.sdk.internal.websocket.WsConnection;
+
+/**
+ * Writes outgoing commands to the socket, coalescing several commands into a single socket
+ * write when possible. Commands get collected into a batch:
+ * <ul>
+ * <li>between {@link #beginBatch()} and {@link #endBatch()} calls made from the same thread
+ *     (calls may be nested);
+ * <li>within an optional time window (see {@link #BATCH_WINDOW_PROPERTY}): the first command
+ *     starts the window and everything sent before it expires goes out together.
+ * </ul>
+ * Commands are always written in the order they were sent.
+ */
+class WipCommandWriter {
+  private static final Logger LOGGER = Logger.getLogger(WipCommandWriter.class.getName());
+
+  /**
+   * System property that sets a time window in milliseconds during which commands
+   * are coalesced. 0 (default) means that commands sent outside an explicit batch are
+   * written immediately.
+   */
+  private static final String BATCH_WINDOW_PROPERTY =
+      "org.chromium.sdk.wip.commandBatchWindowMs";
+
+  private static ScheduledExecutorService windowExecutor = null;
+
+  private final WsConnection socket;
+  private final long windowMs;
+  private final Statistics statistics = new Statistics();
+
+  private final ThreadLocal<Batch> threadBatch = new ThreadLocal<Batch>();
+
+  // Access must be synchronized.
+  private Batch windowBatch = null;
+
+  WipCommandWriter(WsConnection socket) {
+    this(socket, Long.getLong(BATCH_WINDOW_PROPERTY, 0));
+  }
+
+  WipCommandWriter(WsConnection socket, long windowMs) {
+    this.socket = socket;
+    this.windowMs = windowMs;
+  }
+
+  void send(String message) {
+    Batch batch = threadBatch.get();
+    if (batch != null) {
+      batch.add(message);
+      return;
+    }
+    if (windowMs > 0) {
+      addToWindow(message);
+      return;
+    }
+    write(Collections.singletonList(message), System.nanoTime());
+  }
+
+  /**
+   * Starts collecting commands sent from the current thread. Each call must be matched with
+   * {@link #endBatch()}.
+   */
+  void beginBatch() {
+    Batch batch = threadBatch.get();
+    if (batch == null) {
+      batch = new Batch();
+      threadBatch.set(batch);
+    }
+    batch.depth++;
+  }
+
+  /**
+   * Ends the batch started with {@link #beginBatch()}; the outermost call writes all
+   * collected commands.
+   */
+  void endBatch() {
+    Batch batch = threadBatch.get();
+    if (batch == null) {
+      throw new IllegalStateException("Batch has not been started");
+    }
+    batch.depth--;
+    if (batch.depth > 0) {
+      return;
+    }
+    threadBatch.remove();
+    if (!batch.messages.isEmpty()) {
+      write(batch.messages, batch.startNanos);
+    }
+  }
+
+  Statistics getStatistics() {
+    return statistics;
+  }
+
+  private synchronized void addToWindow(String message) {
+    if (windowBatch == null) {
+      windowBatch = new Batch();
+      getWindowExecutor().schedule(new Runnable() {
+        @Override
+        public void run() {
+          write(Collections.<String>emptyList(), System.nanoTime());
+        }
+      }, windowMs, TimeUnit.MILLISECONDS);
+    }
+    windowBatch.add(message);
+  }
+
+  /**
+   * Writes messages together with a pending window batch (that always goes first, because
+   * it contains older messages).
+   */
+  private synchronized void write(List<String> messages, long startNanos) {
+    if (windowBatch != null) {
+      List<String> windowMessages = windowBatch.messages;
+      windowMessages.addAll(messages);
+      messages = windowMessages;
+      startNanos = windowBatch.startNanos;
+      windowBatch = null;
+    }
+    if (messages.isEmpty()) {
+      return;
+    }
+    try {
+      if (messages.size() == 1) {
+        socket.sendTextualMessage(messages.get(0));
+      } else {
+        socket.sendTextualMessages(messages);
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Failed to send", e);
+    }
+    long latencyNanos = System.nanoTime() - startNanos;
+    statistics.batchWritten(messages.size(), latencyNanos);
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine("Wrote " + messages.size() + " command(s), queued for " +
+          TimeUnit.NANOSECONDS.toMicros(latencyNanos) + " us");
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getWindowExecutor() {
+    if (windowExecutor == null) {
+      windowExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "WipCommandBatchWindow");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return windowExecutor;
+  }
+
+  private static class Batch {
+    final List<String> messages = new ArrayList<String>(4);
+    long startNanos;
+    int depth = 0;
+
+    void add(String message) {
+      if (messages.isEmpty()) {
+        startNanos = System.nanoTime();
+      }
+      messages.add(message);
+    }
+  }
+
+  /**
+   * Counters of socket writes. Latency is the time the first command of a batch spent
+   * waiting for the write.
+   */
+  static class Statistics {
+    private final AtomicLong writeCount = new AtomicLong(0);
+    private final AtomicLong messageCount = new AtomicLong(0);
+    private final AtomicLong maxBatchSize = new AtomicLong(0);
+    private final AtomicLong totalLatencyNanos = new AtomicLong(0);
+
+    long getWriteCount() {
+      return writeCount.get();
+    }
+
+    long getMessageCount() {
+      return messageCount.get();
+    }
+
+    long getMaxBatchSize() {
+      return maxBatchSize.get();
+    }
+
+    long getTotalLatencyNanos() {
+      return totalLatencyNanos.get();
+    }
+
+    private void batchWritten(int size, long latencyNanos) {
+      writeCount.incrementAndGet();
+      messageCount.addAndGet(size);
+      totalLatencyNanos.addAndGet(latencyNanos);
+      while (true) {
+        long max = maxBatchSize.get();
+        if (size <= max || maxBatchSize.compareAndSet(max, size)) {
+          break;
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "writes=" + getWriteCount() + " commands=" + getMessageCount() +
+          " maxBatch=" + getMaxBatchSize() + " latencyUs=" +
+          TimeUnit.NANOSECONDS.toMicros(getTotalLatencyNanos());
+    }
+  }
+}
@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -67,9 +68,18 @@ import org.json.simple.JSONObject;
 class WipContextBuilder {
   private static final Logger LOGGER = Logger.getLogger(WipContextBuilder.class.getName());
 
+  /**
+   * System property that turns on speculative loading of the top frame variables as soon as
+   * VM is suspended, so that they are likely to be ready when user first asks for them.
+   */
+  private static final String PREFETCH_SCOPES_PROPERTY = "org.chromium.sdk.wip.prefetchScopes";
+
+  private static final boolean PREFETCH_SCOPES = Boolean.getBoolean(PREFETCH_SCOPES_PROPERTY);
+
   private final WipTabImpl tabImpl;
   private final EvaluateHack evaluateHack;
   private WipDebugContextImpl currentContext = null;
+  private final AtomicInteger contextCounter = new AtomicInteger(0);
 
   WipContextBuilder(WipTabImpl tabImpl) {
     this.tabImpl = tabImpl;
@@ -111,6 +121,10 @@ class WipContextBuilder {
     };
 
     context.setFrames(data.callFrames(), callback, null);
+
+    if (PREFETCH_SCOPES) {
+      context.prefetchTopFrameData();
+    }
   }
 
   EvaluateHack getEvaluateHack() {
@@ -145,8 +159,9 @@ class WipContextBuilder {
         } catch (JsonProtocolParseException e) {
           throw new RuntimeException("Failed to parse exception data", e);
         }
+        // Objects of the paused event belong to 'backtrace' group, that SDK doesn't own.
         JsValue exceptionValue =
-            valueLoader.getValueBuilder().wrap(exceptionRemoteObject, null);
+            valueLoader.getValueBuilder().wrap(exceptionRemoteObject, null, null);
         exceptionData = new ExceptionDataImpl(exceptionValue);
       } else {
         exceptionData = null;
@@ -179,7 +194,26 @@ class WipContextBuilder {
       return valueLoader;
     }
 
+    /**
+     * Starts loading data of the top frame. All requests go out in a single write and
+     * the method never blocks.
+     */
+    void prefetchTopFrameData() {
+      List<CallFrameImpl> currentFrames = frames;
+      if (currentFrames.isEmpty()) {
+        return;
+      }
+      WipCommandProcessor commandProcessor = tabImpl.getCommandProcessor();
+      commandProcessor.beginBatch();
+      try {
+        currentFrames.get(0).prefetchData();
+      } finally {
+        commandProcessor.endBatch();
+      }
+    }
+
     void reportClosed() {
+      tabImpl.getObjectGroupManager().releaseGroup(objectGroupId);
       CloseRequest request = this.closeRequest.get();
       if (request != null && request.callback != null) {
         request.callback.success();
@@ -289,6 +323,7 @@ class WipContextBuilder {
       private final JsVariable thisObject;
       private final TextStreamPosition streamPosition;
       private final String sourceId;
+      private final boolean isThisGlobal;
       private WipScriptImpl scriptImpl;
 
       public CallFrameImpl(CallFrameValue frameData) {
@@ -318,8 +353,10 @@ class WipContextBuilder {
         if (thisObjectData == null) {
           LOGGER.log(Level.SEVERE, "Missing local scope", new Exception());
           thisObject = null;
+          isThisGlobal = false;
         } else {
           thisObject = createSimpleNameVariable("this", thisObjectData);
+          isThisGlobal = isGlobalObject(thisObjectData, scopeDataList);
         }
 
         // 0-based.
@@ -352,6 +389,22 @@ class WipContextBuilder {
         return sourceId;
       }
 
+      /**
+       * Starts loading variables of local and closure scopes and properties of 'this',
+       * unless 'this' is the global object (it is usually too big to load speculatively).
+       */
+      void prefetchData() {
+        for (JsScope scope : scopeData.get()) {
+          if (scope instanceof DeclarativeScopeImpl &&
+              (scope.getType() == JsScope.Type.LOCAL || scope.getType() == JsScope.Type.CLOSURE)) {
+            ((DeclarativeScopeImpl) scope).prefetchVariables();
+          }
+        }
+        if (thisObject != null && !isThisGlobal) {
+          WipValueBuilder.prefetchProperties(thisObject.getValue());
+        }
+      }
+
       void setScript(WipScriptImpl scriptImpl) {
         this.scriptImpl = scriptImpl;
       }
@@ -389,7 +442,9 @@ class WipContextBuilder {
       private JsVariable createSimpleNameVariable(final String name,
           RemoteObjectValue thisObjectData) {
         ValueNameBuilder valueNameBuidler = WipExpressionBuilder.createRootName(name, false);
-        return valueLoader.getValueBuilder().createVariable(thisObjectData, valueNameBuidler);
+        // Call frame objects belong to 'backtrace' group, that SDK doesn't own.
+        return valueLoader.getValueBuilder().createVariable(thisObjectData, null,
+            valueNameBuidler);
       }
 
       private final WipEvaluateContextBase<?> evaluateContext =
@@ -482,6 +537,15 @@ class WipContextBuilder {
         return visitor.visitDeclarative(this);
       }
 
+      /**
+       * Starts loading variables unless they are already loaded or being loaded. Never blocks.
+       */
+      void prefetchVariables() {
+        if (!propertiesRef.isInitialized()) {
+          startLoadOperation(false, valueLoader.getCacheState());
+        }
+      }
+
       @Override
       public List<? extends JsDeclarativeVariable> getVariables() throws MethodIsBlockingException {
         int currentCacheState = valueLoader.getCacheState();
@@ -545,7 +609,6 @@ class WipContextBuilder {
             return WipValueLoader.Getter.newFailure(exception);
           }
         };
-        // This is blocking.
         valueLoader.loadPropertiesInFuture(objectId, processor, reload, currentCacheState,
             propertiesRef);
       }
@@ -556,7 +619,7 @@ class WipContextBuilder {
       private final JsScope.Type type;
 
       ObjectScopeImpl(ScopeValue scopeData, JsScope.Type type) {
-        jsValue = valueLoader.getValueBuilder().wrap(scopeData.object(), null);
+        jsValue = valueLoader.getValueBuilder().wrap(scopeData.object(), null, null);
         this.type = type;
       }
 
@@ -586,10 +649,16 @@ class WipContextBuilder {
       }
     }
 
+    /**
+     * Group of objects that are created in this context, e.g. evaluate results.
+     * It gets released when the context is closed.
+     */
+    private final String objectGroupId = "sdk-context-" + contextCounter.incrementAndGet();
+
     private final WipValueLoader valueLoader = new WipValueLoader(tabImpl) {
       @Override
       String getObjectGroupId() {
-        return null;
+        return objectGroupId;
       }
     };
   }
@@ -616,6 +685,21 @@ class WipContextBuilder {
     }
   }
 
+  /**
+   * Guesses whether the object is the global object by comparing it with the global scope
+   * object; object ids can't be compared because they are different for each reference.
+   */
+  private static boolean isGlobalObject(RemoteObjectValue objectData,
+      List<ScopeValue> scopeChain) {
+    for (ScopeValue scope : scopeChain) {
+      if (scope.type() == ScopeValue.Type.GLOBAL) {
+        String globalClassName = scope.object().className();
+        return globalClassName != null && globalClassName.equals(objectData.className());
+      }
+    }
+    return false;
+  }
+
   private static final Map<ScopeValue.Type, JsScope.Type> WIP_TO_SDK_SCOPE_TYPE;
   static {
     WIP_TO_SDK_SCOPE_TYPE = new HashMap<ScopeValue.Type, JsScope.Type>();
@@ -126,7 +126,9 @@ abstract class WipEvaluateContextBase<DATA> extends JsEvaluateContextBase {
 
     WipValueBuilder valueBuilder = destinationValueLoader.getValueBuilder();
 
-    final JsValue value = valueBuilder.wrap(valueData, valueNameBuidler.getQualifiedNameBuilder());
+    // Evaluate results are put into the group of the destination mapping.
+    final JsValue value = valueBuilder.wrap(valueData, destinationValueLoader.getObjectGroupId(),
+        valueNameBuidler.getQualifiedNameBuilder());
 
     if (getWasThrown(data) == Boolean.TRUE) {
       return new ResultOrException() {
@@ -0,0 +1,191 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.wip;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.chromium.sdk.internal.wip.protocol.output.runtime.ReleaseObjectGroupParams;
+import org.chromium.sdk.internal.wip.protocol.output.runtime.ReleaseObjectParams;
+
+/**
+ * Keeps track of remote object ids that SDK holds in a tab and releases them on remote.
+ * Remote keeps an object alive for as long as its id is bound, so ids must be released
+ * as soon as nobody is able to use them.
+ * <p>An object id is considered reachable while some local {@link org.chromium.sdk.JsObject}
+ * that wraps it is reachable. When all wrappers get garbage-collected, the id is scheduled
+ * for 'Runtime.releaseObject'. Scheduled ids are sent in a single batch once there is
+ * enough of them or when a whole object group is released.
+ * <p>Only ids of SDK-owned groups are tracked: objects of other groups (e.g. 'backtrace')
+ * are released by remote itself.
+ */
+class WipObjectGroupManager {
+  /**
+   * System property that sets how many ids are collected before they are released.
+   */
+  private static final String RELEASE_BATCH_SIZE_PROPERTY =
+      "org.chromium.sdk.wip.objectReleaseBatchSize";
+
+  private static final int RELEASE_BATCH_SIZE =
+      Integer.getInteger(RELEASE_BATCH_SIZE_PROPERTY, 20);
+
+  private final WipTabImpl tabImpl;
+
+  private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<Object>();
+
+  // All fields below are accessed under synchronization on this.
+
+  private final Map<String, IdRecord> liveIds = new HashMap<String, IdRecord>();
+
+  // Holds wrapper references until they are enqueued.
+  private final Set<WrapperReference> wrapperReferences = new HashSet<WrapperReference>();
+
+  private List<String> pendingReleases = new ArrayList<String>();
+
+  WipObjectGroupManager(WipTabImpl tabImpl) {
+    this.tabImpl = tabImpl;
+  }
+
+  /**
+   * Registers a local wrapper of a remote object.
+   * @param groupId group the object belongs to or null if the group is not owned by SDK;
+   *     such objects are not tracked
+   */
+  void registerWrapper(Object wrapper, String objectId, String groupId) {
+    if (objectId == null || groupId == null) {
+      return;
+    }
+    List<String> idsToRelease;
+    synchronized (this) {
+      IdRecord record = liveIds.get(objectId);
+      if (record == null) {
+        record = new IdRecord(groupId);
+        liveIds.put(objectId, record);
+      }
+      record.wrapperCount++;
+      wrapperReferences.add(new WrapperReference(wrapper, objectId, referenceQueue));
+
+      pollCollectedWrappers();
+      if (pendingReleases.size() < RELEASE_BATCH_SIZE) {
+        return;
+      }
+      idsToRelease = takePendingReleases();
+    }
+    sendReleases(idsToRelease, null);
+  }
+
+  /**
+   * Releases a whole object group on remote together with all scheduled ids.
+   */
+  void releaseGroup(String groupId) {
+    List<String> idsToRelease;
+    synchronized (this) {
+      forgetGroupImpl(groupId);
+      pollCollectedWrappers();
+      idsToRelease = takePendingReleases();
+    }
+    sendReleases(idsToRelease, groupId);
+  }
+
+  /**
+   * Stops tracking ids of the group, that has been released by someone else.
+   */
+  synchronized void forgetGroup(String groupId) {
+    forgetGroupImpl(groupId);
+  }
+
+  /**
+   * @return number of tracked remote object ids that haven't been released yet
+   */
+  synchronized int getLiveObjectCount() {
+    pollCollectedWrappers();
+    return liveIds.size();
+  }
+
+  private void forgetGroupImpl(String groupId) {
+    for (Iterator<IdRecord> it = liveIds.values().iterator(); it.hasNext(); ) {
+      if (groupId.equals(it.next().groupId)) {
+        it.remove();
+      }
+    }
+    // Ids of the group are released with the group.
+    for (Iterator<String> it = pendingReleases.iterator(); it.hasNext(); ) {
+      if (!liveIds.containsKey(it.next())) {
+        it.remove();
+      }
+    }
+  }
+
+  private void pollCollectedWrappers() {
+    while (true) {
+      Reference<?> reference = referenceQueue.poll();
+      if (reference == null) {
+        break;
+      }
+      WrapperReference wrapperReference = (WrapperReference) reference;
+      wrapperReferences.remove(wrapperReference);
+      IdRecord record = liveIds.get(wrapperReference.objectId);
+      if (record == null) {
+        // The group has already been released.
+        continue;
+      }
+      record.wrapperCount--;
+      if (record.wrapperCount == 0) {
+        liveIds.remove(wrapperReference.objectId);
+        pendingReleases.add(wrapperReference.objectId);
+      }
+    }
+  }
+
+  private List<String> takePendingReleases() {
+    List<String> result = pendingReleases;
+    pendingReleases = new ArrayList<String>();
+    return result;
+  }
+
+  private void sendReleases(List<String> objectIds, String groupId) {
+    if (objectIds.isEmpty() && groupId == null) {
+      return;
+    }
+    WipCommandProcessor commandProcessor = tabImpl.getCommandProcessor();
+    commandProcessor.beginBatch();
+    try {
+      for (String id : objectIds) {
+        commandProcessor.send(new ReleaseObjectParams(id), null, null);
+      }
+      if (groupId != null) {
+        commandProcessor.send(new ReleaseObjectGroupParams(groupId), null, null);
+      }
+    } finally {
+      commandProcessor.endBatch();
+    }
+  }
+
+  private static class IdRecord {
+    final String groupId;
+    int wrapperCount = 0;
+
+    IdRecord(String groupId) {
+      this.groupId = groupId;
+    }
+  }
+
+  private static class WrapperReference extends PhantomReference<Object> {
+    final String objectId;
+
+    WrapperReference(Object wrapper, String objectId, ReferenceQueue<Object> queue) {
+      super(wrapper, queue);
+      this.objectId = objectId;
+    }
+  }
+}
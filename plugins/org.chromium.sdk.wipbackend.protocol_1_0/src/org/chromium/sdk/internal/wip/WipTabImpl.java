@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -16,15 +17,19 @@ import org.chromium.sdk.Breakpoint;
 import org.chromium.sdk.BreakpointTypeExtension;
 import org.chromium.sdk.BrowserTab;
 import org.chromium.sdk.CallbackSemaphore;
+import org.chromium.sdk.DebugEventListener;
 import org.chromium.sdk.FunctionScopeExtension;
 import org.chromium.sdk.IgnoreCountBreakpointExtension;
+import org.chromium.sdk.ObjectPreviewExtension;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.RestartFrameExtension;
 import org.chromium.sdk.Script;
+import org.chromium.sdk.ScriptSearchExtension;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.TabDebugEventListener;
 import org.chromium.sdk.Version;
 import org.chromium.sdk.internal.JsonUtil;
+import org.chromium.sdk.internal.RemoteObjectCache;
 import org.chromium.sdk.internal.websocket.WsConnection;
 import org.chromium.sdk.internal.wip.protocol.input.WipCommandResponse.Success;
 import org.chromium.sdk.internal.wip.protocol.output.WipParams;
@@ -61,6 +66,9 @@ public class WipTabImpl implements WipBrowserTab, WipJavascriptVm {
   private final WipFrameManager frameManager = new WipFrameManager(this);
 
   private final VmState vmState = new VmState();
+  private final RemoteObjectCache.Statistics objectCacheStatistics =
+      new RemoteObjectCache.Statistics();
+  private final WipObjectGroupManager objectGroupManager = new WipObjectGroupManager(this);
   private final SignalRelay<Void> closeSignalRelay;
 
   private volatile String url;
@@ -116,6 +124,15 @@ public class WipTabImpl implements WipBrowserTab, WipJavascriptVm {
   }
 
   private void init() {
+    commandProcessor.beginBatch();
+    try {
+      sendInitCommands();
+    } finally {
+      commandProcessor.endBatch();
+    }
+  }
+
+  private void sendInitCommands() {
     SyncCallback syncCallback = new SyncCallback() {
       @Override
       public void callbackDone(RuntimeException e) {
@@ -144,7 +161,6 @@ public class WipTabImpl implements WipBrowserTab, WipJavascriptVm {
     scriptManager.pageReloaded();
     breakpointManager.clearNonProvisionalBreakpoints();
     WipTabImpl.this.tabListener.navigated(this.url);
-    contextBuilder.getEvaluateHack().pageReloaded();
   }
 
   WipScriptManager getScriptManager() {
@@ -244,6 +260,24 @@ public class WipTabImpl implements WipBrowserTab, WipJavascriptVm {
     return null;
   }
 
+  @Override
+  public ObjectPreviewExtension getObjectPreviewExtension() {
+    return null;
+  }
+
+  @Override
+  public ScriptSearchExtension getScriptSearchExtension() {
+    return scriptSearchExtension;
+  }
+
+  private final ScriptSearchExtension scriptSearchExtension = new ScriptSearchExtension() {
+    @Override
+    public RelayOk search(String query, boolean caseSensitive,
+        GenericCallback<List<Match>> callback, SyncCallback syncCallback) {
+      return scriptManager.search(query, caseSensitive, callback, syncCallback);
+    }
+  };
+
   @Override public FunctionScopeExtension getFunctionScopeExtension() {
     return null;
   }
@@ -281,6 +315,12 @@ public class WipTabImpl implements WipBrowserTab, WipJavascriptVm {
         callback, syncCallback);
   }
 
+  @Override
+  public RelayOk setBreakpoints(Collection<? extends BreakpointSpec> specs,
+      BulkBreakpointCallback callback, SyncCallback syncCallback) {
+    return breakpointManager.setBreakpoints(specs, callback, syncCallback);
+  }
+
   @Override
   public void suspend(final SuspendCallback callback) {
     PauseParams params = new PauseParams();
@@ -332,6 +372,48 @@ public class WipTabImpl implements WipBrowserTab, WipJavascriptVm {
     return this.socket;
   }
 
+  /**
+   * Starts collecting commands that the current thread sends to the remote; they will be
+   * written to the socket at once when the matching {@link #endBatch()} is called.
+   * Batches may be nested. The caller must not wait for a command response inside a batch.
+   */
+  public void beginBatch() {
+    commandProcessor.beginBatch();
+  }
+
+  /**
+   * Ends a batch started with {@link #beginBatch()}.
+   * @throws IllegalStateException if no batch was started in the current thread
+   */
+  public void endBatch() {
+    commandProcessor.endBatch();
+  }
+
+  RemoteObjectCache.Statistics getObjectCacheStatistics() {
+    return objectCacheStatistics;
+  }
+
+  /**
+   * Sends current object cache counters to {@link DebugEventListener.VmStatusListener}.
+   */
+  void reportObjectCacheStatistics() {
+    DebugEventListener.VmStatusListener statusListener =
+        tabListener.getDebugEventListener().getVmStatusListener();
+    if (statusListener != null) {
+      statusListener.objectCacheStatisticsChanged(objectCacheStatistics.getHitCount(),
+          objectCacheStatistics.getMissCount());
+    }
+  }
+
+  WipObjectGroupManager getObjectGroupManager() {
+    return objectGroupManager;
+  }
+
+  @Override
+  public int getLiveRemoteObjectCount() {
+    return objectGroupManager.getLiveObjectCount();
+  }
+
   WipContextBuilder getContextBuilder() {
     return contextBuilder;
   }
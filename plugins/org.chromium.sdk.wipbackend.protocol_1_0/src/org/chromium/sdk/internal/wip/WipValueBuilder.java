@@ -14,6 +14,8 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.chromium.sdk.JsArray;
 import org.chromium.sdk.JsDeclarativeVariable;
@@ -28,6 +30,7 @@ import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.Script;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.TextStreamPosition;
+import org.chromium.sdk.internal.PropertyPageSupport;
 import org.chromium.sdk.internal.wip.WipExpressionBuilder.ObjectPropertyNameBuilder;
 import org.chromium.sdk.internal.wip.WipExpressionBuilder.PropertyNameBuilder;
 import org.chromium.sdk.internal.wip.WipExpressionBuilder.QualifiedNameBuilder;
@@ -90,18 +93,22 @@ class WipValueBuilder {
     }
   }
 
+  /**
+   * @param ownedGroupId group of the host object if it was created by SDK or null;
+   *     property values belong to the same group
+   */
   public JsObjectProperty createObjectProperty(final PropertyDescriptorValue propertyDescriptor,
-      final String hostObjectRefId, ValueNameBuilder nameBuilder) {
+      final String hostObjectRefId, String ownedGroupId, ValueNameBuilder nameBuilder) {
     final QualifiedNameBuilder qualifiedNameBuilder = nameBuilder.getQualifiedNameBuilder();
-    JsValue jsValue = wrap(propertyDescriptor.value(), qualifiedNameBuilder);
+    JsValue jsValue = wrap(propertyDescriptor.value(), ownedGroupId, qualifiedNameBuilder);
 
     final JsValue getter = wrapPropertyDescriptorFunction(propertyDescriptor.get(),
-        qualifiedNameBuilder, "getter");
+        ownedGroupId, qualifiedNameBuilder, "getter");
 
     final JsValue setter = wrapPropertyDescriptorFunction(propertyDescriptor.set(),
-        qualifiedNameBuilder, "setter");
+        ownedGroupId, qualifiedNameBuilder, "setter");
 
-    return new ObjectPropertyBase(jsValue, nameBuilder) {
+    JsObjectProperty property = new ObjectPropertyBase(jsValue, nameBuilder) {
       @Override public JsDeclarativeVariable asDeclarativeVariable() {
         return null;
       }
@@ -165,6 +172,12 @@ class WipValueBuilder {
       private static final String EVALUATE_EXPRESSION =
           GETTER_VAR_NAME + ".call(" + OBJECT_VAR_NAME + ")";
     };
+    if (getter != null) {
+      // Getter is called on the host object, so its id must stay alive with the property.
+      valueLoader.getTabImpl().getObjectGroupManager().registerWrapper(property,
+          hostObjectRefId, ownedGroupId);
+    }
+    return property;
   }
 
   private static QualifiedNameBuilder createPseudoPropertyNameBuilder(
@@ -182,7 +195,7 @@ class WipValueBuilder {
     };
   }
 
-  private JsValue wrapPropertyDescriptorFunction(RemoteObjectValue value,
+  private JsValue wrapPropertyDescriptorFunction(RemoteObjectValue value, String ownedGroupId,
       QualifiedNameBuilder propertyValueNameBuilder, String symbolicName) {
     if (value == null) {
       return null;
@@ -191,17 +204,18 @@ class WipValueBuilder {
     QualifiedNameBuilder qualifiedNameBuilder =
         createPseudoPropertyNameBuilder(propertyValueNameBuilder, symbolicName);
 
-    return wrap(value, qualifiedNameBuilder);
+    return wrap(value, ownedGroupId, qualifiedNameBuilder);
   }
 
-  public JsVariable createVariable(RemoteObjectValue valueData, ValueNameBuilder nameBuilder) {
+  public JsVariable createVariable(RemoteObjectValue valueData, String ownedGroupId,
+      ValueNameBuilder nameBuilder) {
     QualifiedNameBuilder qualifiedNameBuilder;
     if (nameBuilder == null) {
       qualifiedNameBuilder = null;
     } else {
       qualifiedNameBuilder = nameBuilder.getQualifiedNameBuilder();
     }
-    JsValue jsValue = wrap(valueData, qualifiedNameBuilder);
+    JsValue jsValue = wrap(valueData, ownedGroupId, qualifiedNameBuilder);
     return createVariable(jsValue, nameBuilder);
   }
 
@@ -213,15 +227,22 @@ class WipValueBuilder {
     } else {
       qualifiedNameBuilder = nameBuilder.getQualifiedNameBuilder();
     }
-    JsValue jsValue = wrap(valueData, qualifiedNameBuilder);
+    // Scope objects come from backtrace, not from an SDK group.
+    JsValue jsValue = wrap(valueData, null, qualifiedNameBuilder);
     return new DeclarativeVariable(jsValue, nameBuilder);
   }
 
-  public JsValue wrap(RemoteObjectValue valueData, QualifiedNameBuilder nameBuilder) {
+  /**
+   * @param ownedGroupId object group of the value if the group was created by SDK
+   *     (see {@link WipValueLoader#getObjectGroupId()}) or null for other groups (e.g.
+   *     'backtrace'); only objects of SDK groups are tracked by {@link WipObjectGroupManager}
+   */
+  public JsValue wrap(RemoteObjectValue valueData, String ownedGroupId,
+      QualifiedNameBuilder nameBuilder) {
     if (valueData == null) {
       return null;
     }
-    return getValueType(valueData).build(valueData, valueLoader, nameBuilder);
+    return getValueType(valueData).build(valueData, valueLoader, ownedGroupId, nameBuilder);
   }
 
   public static JsVariable createVariable(JsValue jsValue,
@@ -229,6 +250,16 @@ class WipValueBuilder {
     return new VariableImpl(jsValue, nameBuilder);
   }
 
+  /**
+   * Starts loading properties of the value if it is an object and its properties haven't been
+   * requested yet. Never blocks.
+   */
+  static void prefetchProperties(JsValue jsValue) {
+    if (jsValue instanceof ObjectTypeBase.JsObjectBase) {
+      ((ObjectTypeBase.JsObjectBase) jsValue).prefetchProperties();
+    }
+  }
+
   private static ValueType getValueType(RemoteObjectValue valueData) {
     RemoteObjectValue.Type protocolType = valueData.type();
     ValueType result = getSafe(PROTOCOL_TYPE_TO_VALUE_TYPE, protocolType);
@@ -242,7 +273,7 @@ class WipValueBuilder {
 
   private static abstract class ValueType {
     abstract JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder qualifiedNameBuilder);
+        String ownedGroupId, QualifiedNameBuilder qualifiedNameBuilder);
   }
 
   private static abstract class PrimitiveType extends ValueType {
@@ -256,7 +287,7 @@ class WipValueBuilder {
 
     @Override
     JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder qualifiedNameBuilder) {
+        String ownedGroupId, QualifiedNameBuilder qualifiedNameBuilder) {
       final Object value = valueData.value();
       final String valueString = getValueString(valueData);
       return new JsValueBase() {
@@ -339,26 +370,30 @@ class WipValueBuilder {
 
     @Override
     JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder qualifiedNameBuilder) {
+        String ownedGroupId, QualifiedNameBuilder qualifiedNameBuilder) {
       // TODO: Implement caching here.
-      return buildNewInstance(valueData, valueLoader, qualifiedNameBuilder);
+      return buildNewInstance(valueData, valueLoader, ownedGroupId, qualifiedNameBuilder);
     }
 
     abstract JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder qualifiedNameBuilder);
+        String ownedGroupId, QualifiedNameBuilder qualifiedNameBuilder);
 
     abstract class JsObjectBase extends JsValueBase implements JsObject {
       private final RemoteObjectValue valueData;
       private final WipValueLoader valueLoader;
+      private final String ownedGroupId;
       private final QualifiedNameBuilder nameBuilder;
       private final AsyncFutureRef<Getter<ObjectProperties>> loadedPropertiesRef =
           new AsyncFutureRef<Getter<ObjectProperties>>();
 
       JsObjectBase(RemoteObjectValue valueData, WipValueLoader valueLoader,
-          QualifiedNameBuilder nameBuilder) {
+          String ownedGroupId, QualifiedNameBuilder nameBuilder) {
         this.valueData = valueData;
         this.valueLoader = valueLoader;
+        this.ownedGroupId = ownedGroupId;
         this.nameBuilder = nameBuilder;
+        valueLoader.getTabImpl().getObjectGroupManager().registerWrapper(this,
+            valueData.objectId(), ownedGroupId);
       }
 
       @Override
@@ -409,6 +444,43 @@ class WipValueBuilder {
         return getLoadedProperties().getProperty(name);
       }
 
+      @Override
+      public PropertyPage getPropertyPage(String continuationToken, int maxCount)
+          throws MethodIsBlockingException {
+        long start = PropertyPageSupport.parseContinuationToken(continuationToken);
+        if (continuationToken == null && isPropertiesLoaded()) {
+          return PropertyPageSupport.createFullPage(this);
+        }
+        AsyncFutureRef<Getter<ObjectProperties>> pageRef =
+            new AsyncFutureRef<Getter<ObjectProperties>>();
+        valueLoader.loadFunctionResultPropertiesInFuture(valueData.objectId(), ownedGroupId,
+            PropertyPageSupport.createPageFunction(start, maxCount), createInnerNameBuilder(),
+            valueLoader.getCacheState(), pageRef);
+        ObjectProperties pageProperties;
+        try {
+          pageProperties = pageRef.getSync().get();
+        } catch (RuntimeException e) {
+          if (start != 0) {
+            throw e;
+          }
+          // The helper function has failed, load all properties in a regular way.
+          return PropertyPageSupport.createFullPage(this);
+        }
+        if (pageProperties == null) {
+          // The object fits in a single page.
+          return PropertyPageSupport.createFullPage(this);
+        }
+        return PropertyPageSupport.createPage(pageProperties.properties(), start, maxCount);
+      }
+
+      @Override
+      public int getPropertyCountIfKnown() {
+        if (isPropertiesLoaded()) {
+          return loadedPropertiesRef.getSync().get().properties().size();
+        }
+        return -1;
+      }
+
       @Override
       public String getRefId() {
         return valueData.objectId();
@@ -428,6 +500,26 @@ class WipValueBuilder {
         return new CallArgumentParam(false, null, valueData.objectId());
       }
 
+      void prefetchProperties() {
+        if (!loadedPropertiesRef.isInitialized()) {
+          doLoadProperties(false, valueLoader.getCacheState());
+        }
+      }
+
+      private boolean isPropertiesLoaded() {
+        if (!loadedPropertiesRef.isDone()) {
+          return false;
+        }
+        ObjectProperties properties;
+        try {
+          properties = loadedPropertiesRef.getSync().get();
+        } catch (RuntimeException e) {
+          // Properties have failed to load.
+          return false;
+        }
+        return properties.getCacheState() == valueLoader.getCacheState();
+      }
+
       protected ObjectProperties getLoadedProperties() throws MethodIsBlockingException {
         int currentCacheState = getRemoteValueMapping().getCacheState();
         if (loadedPropertiesRef.isInitialized()) {
@@ -444,14 +536,20 @@ class WipValueBuilder {
 
       private void doLoadProperties(boolean reload, int currentCacheState)
           throws MethodIsBlockingException {
-        PropertyNameBuilder innerNameBuilder;
+        valueLoader.loadJsObjectPropertiesInFuture(valueData.objectId(), ownedGroupId,
+            createInnerNameBuilder(), reload, currentCacheState, loadedPropertiesRef);
+      }
+
+      protected String getOwnedGroupId() {
+        return ownedGroupId;
+      }
+
+      protected PropertyNameBuilder createInnerNameBuilder() {
         if (nameBuilder == null) {
-          innerNameBuilder = null;
+          return null;
         } else {
-          innerNameBuilder = new ObjectPropertyNameBuilder(nameBuilder);
+          return new ObjectPropertyNameBuilder(nameBuilder);
         }
-        valueLoader.loadJsObjectPropertiesInFuture(valueData.objectId(), innerNameBuilder,
-            reload, currentCacheState, loadedPropertiesRef);
       }
     }
   }
@@ -463,8 +561,9 @@ class WipValueBuilder {
 
     @Override
     JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder qualifiedNameBuilder) {
-      return new ObjectTypeBase.JsObjectBase(valueData, valueLoader, qualifiedNameBuilder) {
+        String ownedGroupId, QualifiedNameBuilder qualifiedNameBuilder) {
+      return new ObjectTypeBase.JsObjectBase(valueData, valueLoader, ownedGroupId,
+          qualifiedNameBuilder) {
         @Override public JsArray asArray() {
           return null;
         }
@@ -483,17 +582,17 @@ class WipValueBuilder {
 
     @Override
     JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder nameBuilder) {
-      return new Array(valueData, valueLoader, nameBuilder);
+        String ownedGroupId, QualifiedNameBuilder nameBuilder) {
+      return new Array(valueData, valueLoader, ownedGroupId, nameBuilder);
     }
 
     private class Array extends JsObjectBase implements JsArray {
       private final AtomicReference<ArrayProperties> arrayPropertiesRef =
           new AtomicReference<ArrayProperties>(null);
 
-      Array(RemoteObjectValue valueData, WipValueLoader valueLoader,
+      Array(RemoteObjectValue valueData, WipValueLoader valueLoader, String ownedGroupId,
           QualifiedNameBuilder nameBuilder) {
-        super(valueData, valueLoader, nameBuilder);
+        super(valueData, valueLoader, ownedGroupId, nameBuilder);
       }
 
       @Override
@@ -508,9 +607,48 @@ class WipValueBuilder {
 
       @Override
       public long getLength() throws MethodIsBlockingException {
+        String description = getValueData().description();
+        if (arrayPropertiesRef.get() == null && description != null) {
+          // Description looks like "Array[10]", it saves us loading all elements.
+          Matcher matcher = LENGTH_IN_DESCRIPTION_PATTERN.matcher(description);
+          if (matcher.matches()) {
+            try {
+              return Long.parseLong(matcher.group(1));
+            } catch (NumberFormatException e) {
+              // Fall through and load all elements.
+            }
+          }
+        }
         return getArrayProperties().getLength();
       }
 
+      @Override
+      public SortedMap<Long, ? extends JsVariable> getRange(long from, long to)
+          throws MethodIsBlockingException {
+        ArrayProperties arrayProperties = arrayPropertiesRef.get();
+        if (arrayProperties != null) {
+          return arrayProperties.getPublicSparseArrayMap().subMap(from, to);
+        }
+        AsyncFutureRef<Getter<ObjectProperties>> rangeRef =
+            new AsyncFutureRef<Getter<ObjectProperties>>();
+        getRemoteValueMapping().loadArrayRangeInFuture(getValueData().objectId(),
+            getOwnedGroupId(), createInnerNameBuilder(), from, to,
+            getRemoteValueMapping().getCacheState(), rangeRef);
+        ObjectProperties rangeProperties = rangeRef.getSync().get();
+        if (rangeProperties == null) {
+          throw new RuntimeException("Failed to copy array range on remote");
+        }
+        TreeMap<Long, JsVariable> map = new TreeMap<Long, JsVariable>();
+        for (JsVariable variable : rangeProperties.properties()) {
+          Long index = JavaScriptExpressionBuilder.parsePropertyNameAsArrayIndex(
+              variable.getName());
+          if (index != null) {
+            map.put(index, variable);
+          }
+        }
+        return Collections.synchronizedSortedMap(Collections.unmodifiableSortedMap(map));
+      }
+
       @Override
       public JsVariable get(long index) throws MethodIsBlockingException {
         return getSafe(getArrayProperties().getSparseArrayMap(), index);
@@ -557,6 +695,9 @@ class WipValueBuilder {
       }
     }
 
+    private static final Pattern LENGTH_IN_DESCRIPTION_PATTERN =
+        Pattern.compile("\\w*\\[(\\d+)\\]");
+
     private static class ArrayProperties {
       final long length;
       final SortedMap<Long, ? extends JsVariable> sparseArrayMap;
@@ -591,17 +732,17 @@ class WipValueBuilder {
 
     @Override
     JsValue buildNewInstance(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder nameBuilder) {
-      return new FunctionValueImpl(valueData, valueLoader, nameBuilder);
+        String ownedGroupId, QualifiedNameBuilder nameBuilder) {
+      return new FunctionValueImpl(valueData, valueLoader, ownedGroupId, nameBuilder);
     }
 
     private class FunctionValueImpl extends ObjectTypeBase.JsObjectBase implements JsFunction {
       private final AsyncFutureRef<Getter<LocationValue>> loadedPositionRef =
           new AsyncFutureRef<Getter<LocationValue>>();
 
-      FunctionValueImpl(RemoteObjectValue valueData,
-          WipValueLoader valueLoader, QualifiedNameBuilder nameBuilder) {
-        super(valueData, valueLoader, nameBuilder);
+      FunctionValueImpl(RemoteObjectValue valueData, WipValueLoader valueLoader,
+          String ownedGroupId, QualifiedNameBuilder nameBuilder) {
+        super(valueData, valueLoader, ownedGroupId, nameBuilder);
       }
 
       @Override public JsArray asArray() {
@@ -740,7 +881,7 @@ class WipValueBuilder {
   private static class ObjectType extends ValueType {
     @Override
     JsValue build(RemoteObjectValue valueData, WipValueLoader valueLoader,
-        QualifiedNameBuilder nameBuilder) {
+        String ownedGroupId, QualifiedNameBuilder nameBuilder) {
       ValueType secondLevelValueType =
           getSafe(PROTOCOL_SUBTYPE_TO_VALUE_TYPE, valueData.subtype());
 
@@ -749,7 +890,7 @@ class WipValueBuilder {
         secondLevelValueType = DEFAULT_VALUE_TYPE;
       }
 
-      return secondLevelValueType.build(valueData, valueLoader, nameBuilder);
+      return secondLevelValueType.build(valueData, valueLoader, ownedGroupId, nameBuilder);
     }
 
     private static final Map<RemoteObjectValue.Subtype, ValueType> PROTOCOL_SUBTYPE_TO_VALUE_TYPE;
@@ -50,6 +50,15 @@ import org.json.simple.JSONObject;
  * @param <ROOT> root user-provided type (see {@link JsonParserRoot})
  */
 public class DynamicParserImpl<ROOT> {
+  /**
+   * System property that forbids using dynamic parsers at runtime. Release builds are compiled
+   * with generated static parsers; the property helps to catch a dynamic bridge that gets
+   * on classpath by mistake. Generating static parsers is still allowed.
+   */
+  public static final String REQUIRE_STATIC_PARSERS_PROPERTY =
+      "org.chromium.sdk.internal.protocolparser.requireStaticParsers";
+
+  private final Class<ROOT> parserRootClass;
   private final Map<Class<?>, TypeHandler<?>> type2TypeHandler;
   private final ParserRootImpl<ROOT> rootImpl;
 
@@ -76,11 +85,20 @@ public class DynamicParserImpl<ROOT> {
       List<? extends Class<?>> protocolInterfaces,
       List<? extends DynamicParserImpl<?>> basePackages, boolean strictMode)
       throws JsonProtocolModelParseException {
+    this.parserRootClass = parserRootClass;
     type2TypeHandler = readTypes(protocolInterfaces, basePackages, strictMode);
     rootImpl = new ParserRootImpl<ROOT>(parserRootClass, type2TypeHandler);
   }
 
+  /**
+   * @throws IllegalStateException if dynamic parsers are forbidden
+   *     (see {@link #REQUIRE_STATIC_PARSERS_PROPERTY})
+   */
   public ROOT getParserRoot() {
+    if (Boolean.getBoolean(REQUIRE_STATIC_PARSERS_PROPERTY)) {
+      throw new IllegalStateException("Dynamic protocol parser for " +
+          parserRootClass.getName() + " is used while static parsers are required");
+    }
     return rootImpl.getInstance();
   }
 
@@ -23,4 +23,13 @@ public interface WipJavascriptVm extends JavascriptVm {
    * @return extension to evaluate operations that supports {@link RemoteValueMapping}; not null
    */
   EvaluateToMappingExtension getEvaluateWithDestinationMappingExtension();
+
+  /**
+   * Returns number of remote object ids that SDK currently keeps bound on remote. Ids are
+   * released once the local objects that use them are no longer reachable, or when
+   * the debug context or {@link PermanentRemoteValueMapping} they belong to is gone.
+   * Objects that remote releases by itself (e.g. call frame scopes) are not counted.
+   * @return number of live remote object ids
+   */
+  int getLiveRemoteObjectCount();
 }
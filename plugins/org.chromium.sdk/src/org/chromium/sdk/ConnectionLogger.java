@@ -23,6 +23,24 @@ public interface ConnectionLogger {
     void addSeparator();
   }
 
+  /**
+   * Optional extension of {@link StreamListener} that accepts bytes as they are. Connection
+   * may pass bytes instead of converting them into characters, leaving the conversion to
+   * whoever views the log. All calls must be serialized together with
+   * {@link StreamListener} calls.
+   */
+  interface RawStreamListener extends StreamListener {
+    /**
+     * Adds bytes that are a text in UTF-8 (or its subset).
+     */
+    void addTextBytes(byte[] bytes, int offset, int length);
+
+    /**
+     * Adds bytes that are not a text (e.g. frame headers) and should be shown as codes.
+     */
+    void addBinaryBytes(byte[] bytes, int offset, int length);
+  }
+
   /**
    * @return listener for incoming socket stream or null
    */
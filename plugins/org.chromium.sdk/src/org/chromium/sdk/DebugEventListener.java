@@ -65,6 +65,14 @@ public interface DebugEventListener {
      *   not make sense if currentRequest is null
      */
     void busyStatusChanged(String currentRequest, int numberOfEnqueued);
+
+    /**
+     * Reports updated counters of the local caches of remote objects. Counters are
+     * cumulative for the whole debug session.
+     * @param hitCount number of lookups that were served locally
+     * @param missCount number of lookups that required a request to remote VM
+     */
+    void objectCacheStatisticsChanged(long hitCount, long missCount);
   }
 
   /**
@@ -5,6 +5,7 @@
 package org.chromium.sdk;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.chromium.sdk.util.GenericCallback;
 import org.chromium.sdk.util.MethodIsBlockingException;
@@ -94,6 +95,103 @@ public interface JavascriptVm {
   RelayOk setBreakpoint(Breakpoint.Target target, int line, int column, boolean enabled,
       String condition, BreakpointCallback callback, SyncCallback syncCallback);
 
+  /**
+   * Parameters of a breakpoint for {@link JavascriptVm#setBreakpoints}. They have the same
+   * meaning as parameters of {@link JavascriptVm#setBreakpoint}.
+   */
+  class BreakpointSpec {
+    private final Breakpoint.Target target;
+    private final int line;
+    private final int column;
+    private final boolean enabled;
+    private final String condition;
+    private final int ignoreCount;
+
+    public BreakpointSpec(Breakpoint.Target target, int line, int column, boolean enabled,
+        String condition) {
+      this(target, line, column, enabled, condition, Breakpoint.EMPTY_VALUE);
+    }
+
+    /**
+     * @param ignoreCount initial ignore count or {@link Breakpoint#EMPTY_VALUE}; a breakpoint
+     *     with ignore count fails unless VM supports {@link IgnoreCountBreakpointExtension}
+     */
+    public BreakpointSpec(Breakpoint.Target target, int line, int column, boolean enabled,
+        String condition, int ignoreCount) {
+      this.target = target;
+      this.line = line;
+      this.column = column;
+      this.enabled = enabled;
+      this.condition = condition;
+      this.ignoreCount = ignoreCount;
+    }
+
+    public Breakpoint.Target getTarget() {
+      return target;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    public int getColumn() {
+      return column;
+    }
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public String getCondition() {
+      return condition;
+    }
+
+    public int getIgnoreCount() {
+      return ignoreCount;
+    }
+  }
+
+  /**
+   * A callback for {@link JavascriptVm#setBreakpoints}.
+   */
+  interface BulkBreakpointCallback {
+    /**
+     * Reports that a breakpoint has been set, as soon as its response arrives. May be called
+     * from different threads.
+     * @param index position of the breakpoint spec
+     */
+    void success(int index, Breakpoint breakpoint);
+
+    /**
+     * Reports that a breakpoint has failed to set. May be called from different threads.
+     * @param index position of the breakpoint spec
+     */
+    void failure(int index, String errorMessage);
+
+    /**
+     * Reports that one more breakpoint request has finished; called after
+     * {@link #success} or {@link #failure}. May be called from different threads.
+     */
+    void progress(int finishedCount, int totalCount);
+
+    /**
+     * Called once after all requests have finished.
+     * @param breakpoints created breakpoints in the order of specs; an element is null
+     *     if the corresponding breakpoint failed to set
+     * @param errorMessages error messages in the order of specs; an element is null
+     *     if the corresponding breakpoint has been set
+     */
+    void done(List<Breakpoint> breakpoints, List<String> errorMessages);
+  }
+
+  /**
+   * Sets several breakpoints at once. All requests are sent without waiting for responses
+   * in between, which is much faster than setting breakpoints one by one.
+   * @param callback receives progress and the result, may be {@code null}
+   */
+  RelayOk setBreakpoints(Collection<? extends BreakpointSpec> specs,
+      BulkBreakpointCallback callback, SyncCallback syncCallback);
+
   /**
    * Tries to suspend VM. If successful, {@link DebugEventListener#suspended(DebugContext)}
    * will be called.
@@ -179,4 +277,14 @@ public interface JavascriptVm {
    * @return extension that restarts frame or null if unsupported by VM
    */
   RestartFrameExtension getRestartFrameExtension();
+
+  /**
+   * @return extension that returns object previews or null if unsupported by VM
+   */
+  ObjectPreviewExtension getObjectPreviewExtension();
+
+  /**
+   * @return extension that searches in script sources or null if unsupported by VM
+   */
+  ScriptSearchExtension getScriptSearchExtension();
 }
@@ -36,4 +36,20 @@ public interface JsArray extends JsObject {
    * @throws MethodIsBlockingException because it may need to load value from remote
    */
   SortedMap<Long, ? extends JsVariable> toSparseArray() throws MethodIsBlockingException;
+
+  /**
+   * Returns elements with indexes within a range. Unlike {@link #toSparseArray()} it
+   * doesn't require all elements to be loaded: the implementation may only load the range
+   * from remote, which is what user wants for huge arrays.
+   * <p>Element variables may belong to a temporary remote object that holds a copy of
+   * the range, so they may not support value modification.
+   * @param from the first index (inclusive)
+   * @param to the last index (exclusive)
+   * @return a map whose keys are array indices within [from, to) and values are
+   *     {@code JsVariable} instances found at the corresponding indices; the map is sorted
+   *     in the ascending key order
+   * @throws MethodIsBlockingException because it may need to load value from remote
+   */
+  SortedMap<Long, ? extends JsVariable> getRange(long from, long to)
+      throws MethodIsBlockingException;
 }
@@ -42,6 +42,43 @@ public interface JsObject extends JsValue {
    */
   JsVariable getProperty(String name) throws MethodIsBlockingException;
 
+  /**
+   * Returns a portion of object own properties. It allows to show the first properties of
+   * a huge object without loading all of them. A small object (or an object whose properties
+   * are already loaded) is returned as a single page that contains
+   * all of {@link #getProperties()}.
+   * @param continuationToken null for the first page or a token from the previous page
+   * @param maxCount maximal number of properties in the page
+   * @throws MethodIsBlockingException because it may need to load value from remote
+   */
+  PropertyPage getPropertyPage(String continuationToken, int maxCount)
+      throws MethodIsBlockingException;
+
+  /**
+   * Never blocks.
+   * @return number of own properties if it is known without a request to remote or -1
+   */
+  int getPropertyCountIfKnown();
+
+  /**
+   * A portion of object properties.
+   * @see JsObject#getPropertyPage
+   */
+  interface PropertyPage {
+    Collection<? extends JsVariable> getProperties();
+
+    /**
+     * @return internal properties of the object (e.g. __proto__); only the first page
+     *     has them, other pages return an empty collection
+     */
+    Collection<? extends JsVariable> getInternalProperties();
+
+    /**
+     * @return an opaque token that requests the next page or null if this page is the last
+     */
+    String getContinuationToken();
+  }
+
   /**
    * @return this object cast to {@link JsArray} or {@code null} if this object
    *         is not an array
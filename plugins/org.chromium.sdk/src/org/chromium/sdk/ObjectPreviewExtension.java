@@ -0,0 +1,55 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk;
+
+import java.util.List;
+
+/**
+ * An extension to {@link JsObject} API that returns a short summary of object properties.
+ * Some backends receive the summary together with the object itself, so it allows to show
+ * an object without loading its properties from remote.
+ * @see JavascriptVm#getObjectPreviewExtension()
+ */
+public interface ObjectPreviewExtension {
+  /**
+   * Never blocks.
+   * @return object preview or null if remote has not provided it for this object
+   */
+  Preview getPreview(JsObject jsObject);
+
+  /**
+   * An abbreviated view of an object.
+   */
+  interface Preview {
+    /**
+     * @return some of the object properties (all of them unless {@link #isOverflow()})
+     */
+    List<? extends Property> getProperties();
+
+    /**
+     * @return whether some properties of the object did not fit in the preview
+     */
+    boolean isOverflow();
+  }
+
+  /**
+   * A property of an object as reported in {@link Preview}.
+   */
+  interface Property {
+    String getName();
+
+    JsValue.Type getType();
+
+    /**
+     * @return user-friendly value string (possibly truncated) or null if not provided
+     */
+    String getValueString();
+
+    /**
+     * @return preview of the property value if it is an object and remote provided it
+     */
+    Preview getValuePreview();
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk;
+
+import java.util.List;
+
+import org.chromium.sdk.util.GenericCallback;
+
+/**
+ * An extension to {@link JavascriptVm} API that searches for text in sources of all
+ * scripts. Sources that haven't been loaded locally are searched on remote.
+ * @see JavascriptVm#getScriptSearchExtension()
+ */
+public interface ScriptSearchExtension {
+  /**
+   * Finds all source lines that contain the query string.
+   * @param query plain string to search for (not a regular expression)
+   * @param callback receives matching lines of all scripts; each line is reported once
+   */
+  RelayOk search(String query, boolean caseSensitive,
+      GenericCallback<List<Match>> callback, SyncCallback syncCallback);
+
+  /**
+   * A source line that contains the query.
+   */
+  interface Match {
+    Script getScript();
+
+    /**
+     * @return 0-based line number within script source
+     */
+    int getLineNumber();
+
+    String getLineContent();
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.chromium.sdk.Breakpoint;
+import org.chromium.sdk.JavascriptVm;
+import org.chromium.sdk.JavascriptVm.BreakpointCallback;
+import org.chromium.sdk.JavascriptVm.BreakpointSpec;
+import org.chromium.sdk.JavascriptVm.BulkBreakpointCallback;
+import org.chromium.sdk.RelayOk;
+import org.chromium.sdk.SyncCallback;
+
+/**
+ * Common implementation of {@link JavascriptVm#setBreakpoints}. It sends all single breakpoint
+ * requests without waiting for their responses, passes each result on as it arrives and
+ * collects results in the order of specs. A backend provides a single breakpoint operation.
+ */
+public abstract class BulkBreakpointSetter {
+  /**
+   * Sets one breakpoint. Must call syncCallback once whatever happens (unless throws).
+   */
+  protected abstract RelayOk setBreakpoint(BreakpointSpec spec, BreakpointCallback callback,
+      SyncCallback syncCallback);
+
+  public RelayOk setBreakpoints(Collection<? extends BreakpointSpec> specs,
+      BulkBreakpointCallback callback, SyncCallback syncCallback) {
+    List<BreakpointSpec> specList = new ArrayList<BreakpointSpec>(specs);
+    Aggregator aggregator = new Aggregator(specList.size(), callback, syncCallback);
+    if (specList.isEmpty()) {
+      aggregator.finish();
+      return RELAY_OK;
+    }
+    for (int i = 0; i < specList.size(); i++) {
+      BreakpointCallback itemCallback = aggregator.createItemCallback(i);
+      SyncCallback itemSyncCallback = aggregator.createItemSyncCallback();
+      try {
+        setBreakpoint(specList.get(i), itemCallback, itemSyncCallback);
+      } catch (RuntimeException e) {
+        itemCallback.failure(e.getMessage());
+        itemSyncCallback.callbackDone(e);
+      }
+    }
+    return RELAY_OK;
+  }
+
+  private static class Aggregator {
+    private final int totalCount;
+    private final BulkBreakpointCallback callback;
+    private final SyncCallback syncCallback;
+    private final Breakpoint[] breakpoints;
+    private final String[] errorMessages;
+    private final boolean[] reported;
+    private final AtomicInteger finishedCount = new AtomicInteger(0);
+    private final AtomicInteger pendingSyncCount;
+    private volatile RuntimeException syncException = null;
+
+    Aggregator(int totalCount, BulkBreakpointCallback callback, SyncCallback syncCallback) {
+      this.totalCount = totalCount;
+      this.callback = callback;
+      this.syncCallback = syncCallback;
+      this.breakpoints = new Breakpoint[totalCount];
+      this.errorMessages = new String[totalCount];
+      this.reported = new boolean[totalCount];
+      this.pendingSyncCount = new AtomicInteger(totalCount);
+    }
+
+    BreakpointCallback createItemCallback(final int index) {
+      return new BreakpointCallback() {
+        @Override
+        public void success(Breakpoint breakpoint) {
+          report(index, breakpoint, null);
+        }
+
+        @Override
+        public void failure(String errorMessage) {
+          report(index, null, errorMessage == null ? "Unknown error" : errorMessage);
+        }
+      };
+    }
+
+    SyncCallback createItemSyncCallback() {
+      return new SyncCallback() {
+        private boolean done = false;
+
+        @Override
+        public void callbackDone(RuntimeException e) {
+          synchronized (this) {
+            if (done) {
+              return;
+            }
+            done = true;
+          }
+          if (e != null) {
+            syncException = e;
+          }
+          if (pendingSyncCount.decrementAndGet() == 0) {
+            finish();
+          }
+        }
+      };
+    }
+
+    private void report(int index, Breakpoint breakpoint, String errorMessage) {
+      synchronized (this) {
+        if (reported[index]) {
+          return;
+        }
+        reported[index] = true;
+        breakpoints[index] = breakpoint;
+        errorMessages[index] = errorMessage;
+      }
+      if (callback == null) {
+        return;
+      }
+      if (breakpoint == null) {
+        callback.failure(index, errorMessage);
+      } else {
+        callback.success(index, breakpoint);
+      }
+      callback.progress(finishedCount.incrementAndGet(), totalCount);
+    }
+
+    void finish() {
+      try {
+        for (int i = 0; i < totalCount; i++) {
+          report(i, null, "Breakpoint request has not completed");
+        }
+        if (callback != null) {
+          List<Breakpoint> breakpointList;
+          List<String> errorList;
+          synchronized (this) {
+            breakpointList = new ArrayList<Breakpoint>(Arrays.asList(breakpoints));
+            errorList = new ArrayList<String>(Arrays.asList(errorMessages));
+          }
+          callback.done(breakpointList, errorList);
+        }
+      } finally {
+        if (syncCallback != null) {
+          syncCallback.callbackDone(syncException);
+        }
+      }
+    }
+  }
+
+  private static final RelayOk RELAY_OK = new RelayOk() {};
+}
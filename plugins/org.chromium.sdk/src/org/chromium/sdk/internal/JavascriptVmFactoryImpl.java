@@ -4,7 +4,11 @@
 
 package org.chromium.sdk.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.SocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.chromium.sdk.JavascriptVmFactory;
 import org.chromium.sdk.ConnectionLogger;
@@ -12,6 +16,9 @@ import org.chromium.sdk.StandaloneVm;
 import org.chromium.sdk.internal.standalonev8.StandaloneVmImpl;
 import org.chromium.sdk.internal.transport.Connection;
 import org.chromium.sdk.internal.transport.Handshaker;
+import org.chromium.sdk.internal.transport.NioSocketConnection;
+import org.chromium.sdk.internal.transport.RecordingConnection;
+import org.chromium.sdk.internal.transport.SessionRecording;
 import org.chromium.sdk.internal.transport.SocketConnection;
 
 /**
@@ -24,15 +31,58 @@ public class JavascriptVmFactoryImpl extends JavascriptVmFactory {
 
   private static final int DEFAULT_CONNECTION_TIMEOUT_MS = 1000;
 
+  /**
+   * System property that switches standalone connections to {@link NioSocketConnection}, which
+   * serves all connections from a fixed number of threads instead of 3 threads per connection.
+   */
+  private static final String USE_NIO_PROPERTY = "org.chromium.sdk.client.connection.nio";
+
+  /**
+   * System property that makes standalone connections record all their messages into
+   * session files (see {@link SessionRecording}). The value is a path prefix of the files.
+   */
+  private static final String RECORD_SESSION_PROPERTY =
+      "org.chromium.sdk.client.connection.recordSession";
+
+  private static final Logger LOGGER = Logger.getLogger(JavascriptVmFactoryImpl.class.getName());
+
   @Override
   public StandaloneVm createStandalone(SocketAddress socketAddress,
       ConnectionLogger connectionLogger) {
     Handshaker.StandaloneV8 handshaker = new Handshaker.StandaloneV8Impl();
-    SocketConnection connection =
-        new SocketConnection(socketAddress, getTimeout(), connectionLogger, handshaker);
+    Connection connection =
+        createConnection(socketAddress, getTimeout(), connectionLogger, handshaker);
+    String recordPathPrefix = System.getProperty(RECORD_SESSION_PROPERTY);
+    if (recordPathPrefix != null) {
+      connection = wrapForRecording(connection, recordPathPrefix);
+    }
     return createStandalone(connection, handshaker);
   }
 
+  private Connection createConnection(SocketAddress socketAddress, int timeoutMs,
+      ConnectionLogger connectionLogger, Handshaker handshaker) {
+    if (Boolean.getBoolean(USE_NIO_PROPERTY)) {
+      try {
+        return new NioSocketConnection(socketAddress, timeoutMs, connectionLogger, handshaker);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to create NIO event loop", e);
+      }
+    }
+    return new SocketConnection(socketAddress, timeoutMs, connectionLogger, handshaker);
+  }
+
+  private static Connection wrapForRecording(Connection connection, String pathPrefix) {
+    File file = SessionRecording.nextSessionFile(pathPrefix);
+    SessionRecording.Writer writer;
+    try {
+      writer = new SessionRecording.Writer(file);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Failed to start session recording into " + file, e);
+      return connection;
+    }
+    return new RecordingConnection(connection, writer);
+  }
+
   // Debug entry (no logger by definition)
   StandaloneVmImpl createStandalone(Connection connection, Handshaker.StandaloneV8 handshaker) {
     return new StandaloneVmImpl(connection, handshaker);
@@ -5,7 +5,9 @@
 package org.chromium.sdk.internal;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.nio.CharBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -55,6 +57,63 @@ public class JsonUtil {
     return (JSONObject) parsed;
   }
 
+  /**
+   * Parses JSON directly from a character sequence without converting it to String first.
+   * @see #jsonObjectFromJson(String)
+   */
+  public static JSONObject jsonObjectFromJson(CharSequence json) throws ParseException {
+    if (json instanceof String) {
+      return jsonObjectFromJson((String) json);
+    }
+    JSONParser p = new JSONParser();
+    Object parsed;
+    try {
+      parsed = p.parse(new CharSequenceReader(json));
+    } catch (IOException e) {
+      // never occurs
+      throw new RuntimeException(e);
+    }
+    if (false == parsed instanceof JSONObject) {
+      LOGGER.log(Level.SEVERE, "Not a JSON object: {0}", json);
+      return null;
+    }
+    return (JSONObject) parsed;
+  }
+
+  private static class CharSequenceReader extends Reader {
+    private final CharSequence sequence;
+    private int pos = 0;
+
+    CharSequenceReader(CharSequence sequence) {
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      int length = sequence.length();
+      if (pos >= length) {
+        return -1;
+      }
+      int end = Math.min(length, pos + len);
+      if (sequence instanceof CharBuffer) {
+        CharBuffer buffer = ((CharBuffer) sequence).duplicate();
+        buffer.position(buffer.position() + pos);
+        buffer.get(cbuf, off, end - pos);
+      } else {
+        for (int i = pos; i < end; i++) {
+          cbuf[off++] = sequence.charAt(i);
+        }
+      }
+      int res = end - pos;
+      pos = end;
+      return res;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
   /**
    * Helper function to rip out an integer number from a JSON payload.
    *
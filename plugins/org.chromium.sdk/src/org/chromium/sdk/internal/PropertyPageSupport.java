@@ -0,0 +1,157 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.chromium.sdk.JsDeclarativeVariable;
+import org.chromium.sdk.JsObject;
+import org.chromium.sdk.JsObjectProperty;
+import org.chromium.sdk.JsValue;
+import org.chromium.sdk.JsVariable;
+
+/**
+ * Backend-independent part of {@link JsObject#getPropertyPage} implementation. A page is
+ * copied on remote into a temporary holder object by a helper function (that is called with
+ * the object as 'this'); backend then loads holder properties as usual.
+ * <p>The continuation token is the index of the first property of the next page in
+ * {@code Object.getOwnPropertyNames} order. The first page also gets the object prototype,
+ * that is reported as '__proto__' internal property.
+ */
+public class PropertyPageSupport {
+  /**
+   * Holder property that signals that the object has more properties after this page.
+   */
+  private static final String HAS_MORE_PROPERTY_NAME = "__chromeSdkHasMoreProperties";
+
+  /**
+   * Holder property that keeps the object prototype (first page only).
+   */
+  private static final String PROTO_PROPERTY_NAME = "__chromeSdkProto";
+
+  /**
+   * Returns a text of JavaScript function that copies a page of 'this' own properties into
+   * a new object (keeping accessors as they are) and returns it. For the first page of
+   * an object that fits in a single page it returns null, so that backend could load
+   * the properties in a regular way.
+   */
+  public static String createPageFunction(long start, int maxCount) {
+    return "function() { var names = Object.getOwnPropertyNames(this); " +
+        "if (" + start + " == 0 && names.length <= " + maxCount + ") { return null; } " +
+        "var r = Object.create(null); " +
+        "var end = Math.min(" + start + " + " + maxCount + ", names.length); " +
+        "for (var i = " + start + "; i < end; i++) { " +
+        "var d = Object.getOwnPropertyDescriptor(this, names[i]); d.configurable = true; " +
+        "Object.defineProperty(r, names[i], d); } " +
+        "if (end < names.length) { Object.defineProperty(r, '" + HAS_MORE_PROPERTY_NAME +
+        "', { value: true, configurable: true }); } " +
+        "if (" + start + " == 0) { Object.defineProperty(r, '" + PROTO_PROPERTY_NAME +
+        "', { value: Object.getPrototypeOf(this), configurable: true }); } " +
+        "return r; }";
+  }
+
+  /**
+   * @return index of the first property of the page
+   * @throws IllegalArgumentException if token is malformed
+   */
+  public static long parseContinuationToken(String continuationToken) {
+    if (continuationToken == null) {
+      return 0;
+    }
+    try {
+      return Long.parseLong(continuationToken);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Malformed continuation token: " + continuationToken,
+          e);
+    }
+  }
+
+  /**
+   * Creates a page out of the holder object properties.
+   */
+  public static JsObject.PropertyPage createPage(
+      Collection<? extends JsVariable> holderProperties, long start, int maxCount) {
+    List<JsVariable> properties = new ArrayList<JsVariable>(holderProperties.size());
+    List<JsVariable> internalProperties = new ArrayList<JsVariable>(1);
+    boolean hasMore = false;
+    for (JsVariable variable : holderProperties) {
+      String name = variable.getName();
+      if (HAS_MORE_PROPERTY_NAME.equals(name)) {
+        hasMore = true;
+      } else if (PROTO_PROPERTY_NAME.equals(name)) {
+        internalProperties.add(new ProtoVariable(variable.getValue()));
+      } else if (!"__proto__".equals(name)) {
+        // The holder has no prototype, but backend may still report it.
+        properties.add(variable);
+      }
+    }
+    String continuationToken = hasMore ? String.valueOf(start + maxCount) : null;
+    return new PageImpl(properties, internalProperties, continuationToken);
+  }
+
+  /**
+   * Creates the only page that contains all object properties.
+   */
+  public static JsObject.PropertyPage createFullPage(JsObject jsObject) {
+    return new PageImpl(jsObject.getProperties(), jsObject.getInternalProperties(), null);
+  }
+
+  /**
+   * Object prototype as it is read from the holder.
+   */
+  private static class ProtoVariable implements JsVariable {
+    private final JsValue value;
+
+    ProtoVariable(JsValue value) {
+      this.value = value;
+    }
+
+    @Override public JsValue getValue() {
+      return value;
+    }
+
+    @Override public String getName() {
+      return "__proto__";
+    }
+
+    @Override public JsObjectProperty asObjectProperty() {
+      return null;
+    }
+
+    @Override public JsDeclarativeVariable asDeclarativeVariable() {
+      return null;
+    }
+  }
+
+  private static class PageImpl implements JsObject.PropertyPage {
+    private final Collection<? extends JsVariable> properties;
+    private final Collection<? extends JsVariable> internalProperties;
+    private final String continuationToken;
+
+    PageImpl(Collection<? extends JsVariable> properties,
+        Collection<? extends JsVariable> internalProperties, String continuationToken) {
+      this.properties = properties;
+      this.internalProperties = internalProperties;
+      this.continuationToken = continuationToken;
+    }
+
+    @Override
+    public Collection<? extends JsVariable> getProperties() {
+      return properties;
+    }
+
+    @Override
+    public Collection<? extends JsVariable> getInternalProperties() {
+      return internalProperties;
+    }
+
+    @Override
+    public String getContinuationToken() {
+      return continuationToken;
+    }
+  }
+}
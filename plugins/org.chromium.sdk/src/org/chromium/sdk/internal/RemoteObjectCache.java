@@ -0,0 +1,123 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of data about remote objects that may outlive a debug context.
+ * It is only suitable for objects whose remote identity stays valid after VM resumes.
+ * <p>Each entry is stored with a version and only matches a lookup with the same version,
+ * so the owner invalidates all entries at once by changing the version (e.g. on
+ * {@link org.chromium.sdk.RemoteValueMapping#clearCaches()}). The least recently used
+ * entries are evicted when the cache is full.
+ * @param <K> type of remote object identity
+ * @param <V> type of cached data
+ */
+public class RemoteObjectCache<K, V> {
+  /**
+   * System property that sets the maximal number of entries in a cache.
+   */
+  private static final String CAPACITY_PROPERTY = "org.chromium.sdk.objectCacheCapacity";
+
+  private static final int DEFAULT_CAPACITY = 1000;
+
+  private final Statistics statistics;
+
+  // Access must be synchronized.
+  private final Map<K, Entry<V>> map;
+
+  /**
+   * @param statistics counters to update; may be shared between several caches
+   */
+  public RemoteObjectCache(Statistics statistics) {
+    this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY), statistics);
+  }
+
+  public RemoteObjectCache(final int capacity, Statistics statistics) {
+    this.statistics = statistics;
+    this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @return cached value or null if there is no entry with this key and version
+   */
+  public synchronized V get(K key, int version) {
+    Entry<V> entry = map.get(key);
+    if (entry == null) {
+      statistics.missCount.incrementAndGet();
+      return null;
+    }
+    if (entry.version != version) {
+      map.remove(key);
+      statistics.missCount.incrementAndGet();
+      return null;
+    }
+    statistics.hitCount.incrementAndGet();
+    return entry.value;
+  }
+
+  public synchronized void put(K key, int version, V value) {
+    map.put(key, new Entry<V>(version, value));
+  }
+
+  public synchronized void clear() {
+    map.clear();
+  }
+
+  public synchronized int size() {
+    return map.size();
+  }
+
+  public Statistics getStatistics() {
+    return statistics;
+  }
+
+  private static class Entry<V> {
+    final int version;
+    final V value;
+
+    Entry(int version, V value) {
+      this.version = version;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Hit and miss counters of one or several caches.
+   */
+  public static class Statistics {
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+
+    public long getHitCount() {
+      return hitCount.get();
+    }
+
+    public long getMissCount() {
+      return missCount.get();
+    }
+
+    /**
+     * Counts lookups in caches that do not use {@link RemoteObjectCache} class itself.
+     */
+    public void recordLookups(int hits, int misses) {
+      hitCount.addAndGet(hits);
+      missCount.addAndGet(misses);
+    }
+
+    @Override
+    public String toString() {
+      return "hits=" + getHitCount() + " misses=" + getMissCount();
+    }
+  }
+}
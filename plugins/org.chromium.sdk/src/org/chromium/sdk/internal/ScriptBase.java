@@ -84,6 +84,10 @@ public abstract class ScriptBase<ID> implements Script {
     this.source = null;
   }
 
+  protected Descriptor<ID> getDescriptor() {
+    return descriptor;
+  }
+
   @Override
   public Type getType() {
     return this.descriptor.type;
@@ -0,0 +1,265 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An n-gram index over script sources that are available locally. For each sequence of
+ * 1 to 3 chars (case-insensitive) it keeps the set of scripts that contain it, so that
+ * a text search only scans the scripts that contain all n-grams of the query.
+ * <p>Sources are indexed lazily on the first search after they were put, so that adding
+ * and removing sources is cheap. Postings of removed sources are not cleaned eagerly:
+ * a stale posting may only produce a false candidate that is rejected by the scan; all
+ * postings are rebuilt once there are more stale sources than live ones.
+ * <p>The class is thread-safe. Indexing and scanning are done outside of the lock.
+ */
+public class ScriptSearchIndex {
+  private static final int GRAM_LENGTH = 3;
+
+  // Access must be synchronized.
+  private final Map<String, String> idToSource = new HashMap<String, String>();
+  private final Map<String, String> unindexedSources = new HashMap<String, String>();
+  private final Map<Long, Set<String>> gramToIds = new HashMap<Long, Set<String>>();
+  private int staleCount = 0;
+
+  /**
+   * Adds script source to the index, replacing the previous source of the script.
+   */
+  public synchronized void put(String scriptId, String source) {
+    remove(scriptId);
+    idToSource.put(scriptId, source);
+    unindexedSources.put(scriptId, source);
+  }
+
+  public synchronized void remove(String scriptId) {
+    if (idToSource.remove(scriptId) == null) {
+      return;
+    }
+    if (unindexedSources.remove(scriptId) == null) {
+      staleCount++;
+    }
+  }
+
+  public synchronized boolean contains(String scriptId) {
+    return idToSource.containsKey(scriptId);
+  }
+
+  public synchronized void clear() {
+    idToSource.clear();
+    unindexedSources.clear();
+    gramToIds.clear();
+    staleCount = 0;
+  }
+
+  /**
+   * Finds all lines that contain the query in indexed scripts.
+   * @return map from script id to its matching lines (only scripts with matches are included)
+   */
+  public Map<String, List<LineMatch>> search(String query, boolean caseSensitive) {
+    indexPendingSources();
+    Map<String, String> candidates = getCandidates(lowerCase(query));
+    Map<String, List<LineMatch>> result = new LinkedHashMap<String, List<LineMatch>>();
+    for (Map.Entry<String, String> entry : candidates.entrySet()) {
+      List<LineMatch> lines = findLines(entry.getValue(), query, caseSensitive);
+      if (!lines.isEmpty()) {
+        result.put(entry.getKey(), lines);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A line of script source that contains the query.
+   */
+  public static class LineMatch {
+    private final int lineNumber;
+    private final String lineContent;
+
+    LineMatch(int lineNumber, String lineContent) {
+      this.lineNumber = lineNumber;
+      this.lineContent = lineContent;
+    }
+
+    /**
+     * @return 0-based line number within script source
+     */
+    public int getLineNumber() {
+      return lineNumber;
+    }
+
+    public String getLineContent() {
+      return lineContent;
+    }
+  }
+
+  private void indexPendingSources() {
+    Map<String, String> pending;
+    synchronized (this) {
+      if (staleCount > idToSource.size()) {
+        gramToIds.clear();
+        staleCount = 0;
+        unindexedSources.putAll(idToSource);
+      }
+      if (unindexedSources.isEmpty()) {
+        return;
+      }
+      pending = new HashMap<String, String>(unindexedSources);
+    }
+    for (Map.Entry<String, String> entry : pending.entrySet()) {
+      Set<Long> grams = getGrams(lowerCase(entry.getValue()));
+      synchronized (this) {
+        String id = entry.getKey();
+        // Skip if the source has been replaced or removed in the meantime.
+        if (unindexedSources.get(id) != entry.getValue()) {
+          continue;
+        }
+        unindexedSources.remove(id);
+        for (Long gram : grams) {
+          Set<String> ids = gramToIds.get(gram);
+          if (ids == null) {
+            ids = new HashSet<String>(2);
+            gramToIds.put(gram, ids);
+          }
+          ids.add(id);
+        }
+      }
+    }
+  }
+
+  private synchronized Map<String, String> getCandidates(String lowerCaseQuery) {
+    Map<String, String> result = new HashMap<String, String>();
+    // Sources put after indexing has started are scanned without the index.
+    result.putAll(unindexedSources);
+    if (lowerCaseQuery.length() == 0) {
+      result.putAll(idToSource);
+      return result;
+    }
+    // Start with the rarest n-gram to keep intermediate sets small.
+    List<Set<String>> postings = new ArrayList<Set<String>>();
+    for (Long gram : getQueryGrams(lowerCaseQuery)) {
+      Set<String> ids = gramToIds.get(gram);
+      if (ids == null) {
+        return result;
+      }
+      postings.add(ids);
+    }
+    Set<String> smallest = postings.get(0);
+    for (Set<String> ids : postings) {
+      if (ids.size() < smallest.size()) {
+        smallest = ids;
+      }
+    }
+    for (String id : smallest) {
+      String source = idToSource.get(id);
+      if (source == null) {
+        // Stale posting.
+        continue;
+      }
+      boolean inAll = true;
+      for (Set<String> ids : postings) {
+        if (!ids.contains(id)) {
+          inAll = false;
+          break;
+        }
+      }
+      if (inAll) {
+        result.put(id, source);
+      }
+    }
+    return result;
+  }
+
+  private static List<LineMatch> findLines(String source, String query, boolean caseSensitive) {
+    String text = caseSensitive ? source : lowerCase(source);
+    String pattern = caseSensitive ? query : lowerCase(query);
+    List<LineMatch> result = new ArrayList<LineMatch>(0);
+    int lineNumber = 0;
+    int lineStart = 0;
+    int pos = text.indexOf(pattern);
+    while (pos != -1) {
+      // Count lines up to the match.
+      for (int i = lineStart; i < pos; i++) {
+        if (text.charAt(i) == '\n') {
+          lineNumber++;
+          lineStart = i + 1;
+        }
+      }
+      int lineEnd = text.indexOf('\n', pos + pattern.length());
+      if (lineEnd == -1) {
+        lineEnd = text.length();
+      }
+      int contentEnd = lineEnd;
+      if (contentEnd > lineStart && source.charAt(contentEnd - 1) == '\r') {
+        contentEnd--;
+      }
+      result.add(new LineMatch(lineNumber, source.substring(lineStart, contentEnd)));
+      if (lineEnd == text.length()) {
+        break;
+      }
+      // Each line is reported once.
+      lineNumber++;
+      lineStart = lineEnd + 1;
+      pos = text.indexOf(pattern, lineStart);
+    }
+    return result;
+  }
+
+  /**
+   * @return all n-grams of length 1 to {@link #GRAM_LENGTH} of the text
+   */
+  private static Set<Long> getGrams(String lowerCaseText) {
+    Set<Long> result = new HashSet<Long>();
+    for (int i = 0; i < lowerCaseText.length(); i++) {
+      for (int length = 1; length <= GRAM_LENGTH && i + length <= lowerCaseText.length();
+          length++) {
+        result.add(encodeGram(lowerCaseText, i, length));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return the n-grams a source must contain to contain the query: all trigrams of
+   *     a long query or the query itself if it is shorter
+   */
+  private static Set<Long> getQueryGrams(String lowerCaseQuery) {
+    if (lowerCaseQuery.length() < GRAM_LENGTH) {
+      return Collections.singleton(encodeGram(lowerCaseQuery, 0, lowerCaseQuery.length()));
+    }
+    Set<Long> result = new HashSet<Long>();
+    for (int i = 0; i + GRAM_LENGTH <= lowerCaseQuery.length(); i++) {
+      result.add(encodeGram(lowerCaseQuery, i, GRAM_LENGTH));
+    }
+    return result;
+  }
+
+  private static long encodeGram(String text, int offset, int length) {
+    long gram = length;
+    for (int i = 0; i < length; i++) {
+      gram = (gram << 16) | text.charAt(offset + i);
+    }
+    return gram;
+  }
+
+  /**
+   * Converts string to lower case char by char, so that the result has the same length
+   * and the same char offsets.
+   */
+  private static String lowerCase(String text) {
+    char[] chars = new char[text.length()];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(text.charAt(i));
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,309 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persistent cache of script sources that survives debug sessions. Script managers consult
+ * it before downloading a source from remote.
+ * <p>
+ * Sources are stored content-addressed: each source is a 'blob' file named after SHA-1 of
+ * its text and an index entry maps a script fingerprint to a blob. The fingerprint is built by
+ * a backend from data it knows before the source is downloaded (script URL, position, length
+ * etc.). Blobs are read via memory-mapped files, so a large bundle gets decoded right into
+ * a string without intermediate copies on heap. The total size of blobs is bounded, least
+ * recently used blobs are deleted first.
+ * <p>
+ * Note that the fingerprint does not cover the script content, so a changed script that kept
+ * its URL and dimensions would be taken from the cache; this is why the cache is only used
+ * when explicitly configured.
+ * <p>
+ * Files are written into a separate temporary directory first and then moved in place.
+ * Temporary files that a crashed session has left are deleted when the cache is created.
+ * <p>
+ * The class is thread-safe; writes are done in a background thread.
+ */
+public class ScriptSourceCache {
+  /** The class logger. */
+  private static final Logger LOGGER = Logger.getLogger(ScriptSourceCache.class.getName());
+
+  /**
+   * System property that holds a cache directory. The cache is disabled if the property
+   * is not set.
+   */
+  private static final String DIRECTORY_PROPERTY = "org.chromium.sdk.scriptSourceCache.dir";
+
+  /**
+   * System property that limits the total size of cached sources (in bytes).
+   */
+  private static final String MAX_SIZE_PROPERTY = "org.chromium.sdk.scriptSourceCache.maxSize";
+
+  private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final String BLOB_SUFFIX = ".js";
+  private static final String INDEX_SUFFIX = ".key";
+
+  private static final Map<File, ScriptSourceCache> directoryToCache =
+      new HashMap<File, ScriptSourceCache>();
+
+  /**
+   * @return cache for the directory specified by system property or null if no directory
+   *     is specified
+   */
+  public static ScriptSourceCache getConfigured() {
+    String directoryName = System.getProperty(DIRECTORY_PROPERTY);
+    if (directoryName == null || directoryName.length() == 0) {
+      return null;
+    }
+    File directory = new File(directoryName).getAbsoluteFile();
+    synchronized (directoryToCache) {
+      ScriptSourceCache cache = directoryToCache.get(directory);
+      if (cache == null) {
+        long maxSize = DEFAULT_MAX_SIZE;
+        try {
+          maxSize = Long.parseLong(
+              System.getProperty(MAX_SIZE_PROPERTY, String.valueOf(DEFAULT_MAX_SIZE)));
+        } catch (NumberFormatException e) {
+          // fall through and use the default value
+        }
+        cache = new ScriptSourceCache(directory, maxSize);
+        directoryToCache.put(directory, cache);
+      }
+      return cache;
+    }
+  }
+
+  private final File blobDirectory;
+  private final File indexDirectory;
+  private final File tempDirectory;
+  private final long maxSize;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "ScriptSourceCacheWriter");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  // Access must be synchronized. -1 means the directory hasn't been scanned yet.
+  private long totalSize = -1;
+
+  public ScriptSourceCache(File directory, long maxSize) {
+    this.blobDirectory = new File(directory, "sources");
+    this.indexDirectory = new File(directory, "index");
+    this.tempDirectory = new File(directory, "tmp");
+    this.maxSize = maxSize;
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        deleteTempFiles();
+      }
+    });
+  }
+
+  /**
+   * @param fingerprint a backend-specific string that identifies the script
+   * @return cached source or null
+   */
+  public String get(String fingerprint) {
+    File indexFile = getIndexFile(fingerprint);
+    if (!indexFile.isFile()) {
+      return null;
+    }
+    try {
+      String[] entry = readText(indexFile).split("\n");
+      if (entry.length != 2 || !entry[0].equals(fingerprint)) {
+        // Corrupted entry or a collision.
+        return null;
+      }
+      File blobFile = new File(blobDirectory, entry[1] + BLOB_SUFFIX);
+      if (!blobFile.isFile()) {
+        // Blob has been evicted.
+        indexFile.delete();
+        return null;
+      }
+      String source = readText(blobFile);
+      blobFile.setLastModified(System.currentTimeMillis());
+      return source;
+    } catch (IOException e) {
+      LOGGER.log(Level.INFO, "Failed to read cached script source", e);
+      return null;
+    }
+  }
+
+  /**
+   * Asynchronously saves source in the cache.
+   * @param fingerprint a backend-specific string that identifies the script
+   */
+  public void put(final String fingerprint, final String source) {
+    writer.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          write(fingerprint, source);
+        } catch (IOException e) {
+          LOGGER.log(Level.INFO, "Failed to save script source in cache", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits until all pending writes are done.
+   */
+  void flush() throws InterruptedException {
+    try {
+      writer.submit(new Runnable() {
+        @Override public void run() {
+        }
+      }).get();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void write(String fingerprint, String source) throws IOException {
+    byte[] bytes = source.getBytes(UTF8);
+    String contentHash = toHexString(sha1(bytes));
+    File blobFile = new File(blobDirectory, contentHash + BLOB_SUFFIX);
+    if (blobFile.isFile()) {
+      blobFile.setLastModified(System.currentTimeMillis());
+    } else {
+      writeFile(blobFile, bytes);
+      synchronized (this) {
+        if (totalSize != -1) {
+          totalSize += bytes.length;
+        }
+      }
+    }
+    String indexEntry = fingerprint + "\n" + contentHash;
+    writeFile(getIndexFile(fingerprint), indexEntry.getBytes(UTF8));
+
+    evictIfNeeded();
+  }
+
+  private synchronized void evictIfNeeded() {
+    File[] blobs = blobDirectory.listFiles();
+    if (blobs == null) {
+      return;
+    }
+    if (totalSize == -1) {
+      totalSize = 0;
+      for (File blob : blobs) {
+        totalSize += blob.length();
+      }
+    }
+    if (totalSize <= maxSize) {
+      return;
+    }
+    Arrays.sort(blobs, new Comparator<File>() {
+      @Override
+      public int compare(File o1, File o2) {
+        long diff = o1.lastModified() - o2.lastModified();
+        return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+      }
+    });
+    for (File blob : blobs) {
+      if (totalSize <= maxSize) {
+        break;
+      }
+      long length = blob.length();
+      // Deletion may fail while the file is still mapped on some platforms.
+      if (blob.delete()) {
+        totalSize -= length;
+      }
+    }
+  }
+
+  private void deleteTempFiles() {
+    File[] tempFiles = tempDirectory.listFiles();
+    if (tempFiles == null) {
+      return;
+    }
+    for (File file : tempFiles) {
+      file.delete();
+    }
+  }
+
+  private File getIndexFile(String fingerprint) {
+    return new File(indexDirectory, toHexString(sha1(fingerprint.getBytes(UTF8))) + INDEX_SUFFIX);
+  }
+
+  private static String readText(File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return UTF8.decode(buffer).toString();
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Writes file via a temporary file, so that readers never see a partially written file.
+   * The temporary file is kept outside of blob and index directories, so that it is never
+   * counted as a blob.
+   */
+  private void writeFile(File file, byte[] bytes) throws IOException {
+    file.getParentFile().mkdirs();
+    tempDirectory.mkdirs();
+    File tempFile = File.createTempFile("tmp", null, tempDirectory);
+    boolean renamed = false;
+    try {
+      FileOutputStream output = new FileOutputStream(tempFile);
+      try {
+        output.write(bytes);
+      } finally {
+        output.close();
+      }
+      file.delete();
+      renamed = tempFile.renameTo(file);
+    } finally {
+      if (!renamed) {
+        tempFile.delete();
+      }
+    }
+  }
+
+  private static byte[] sha1(byte[] bytes) {
+    try {
+      return MessageDigest.getInstance("SHA-1").digest(bytes);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String toHexString(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+      builder.append(Character.forDigit(b & 0xF, 16));
+    }
+    return builder.toString();
+  }
+}
@@ -106,7 +106,7 @@ public class StandaloneVmImpl extends JavascriptVmImpl implements StandaloneVm {
       public void messageReceived(Message message) {
         JSONObject json;
         try {
-          json = JsonUtil.jsonObjectFromJson(message.getContent());
+          json = JsonUtil.jsonObjectFromJson(message.getContentSequence());
         } catch (ParseException e) {
           LOGGER.log(Level.SEVERE, "Invalid JSON received: {0}", message.getContent());
           return;
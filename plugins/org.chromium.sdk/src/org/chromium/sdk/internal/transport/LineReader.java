@@ -31,6 +31,9 @@ class LineReader {
   // A cached buffer instance used for constructing a string.
   private ByteBuffer lineBuffer = ByteBuffer.allocate(20);
 
+  // A cached buffer instance used for reading fixed-sized blocks.
+  private ByteBuffer blockBuffer = ByteBuffer.allocate(1024);
+
   LineReader(InputStream inputStream) {
     this.inputStream = inputStream;
   }
@@ -52,6 +55,19 @@ class LineReader {
    * Method has similar semantics to {@link BufferedReader#readLine()} method.
    */
   public String readLine(Charset charset) throws IOException {
+    int len = readLineBytes();
+    if (len == -1) {
+      return null;
+    }
+    return new String(lineBuffer.array(), 0, len, charset);
+  }
+
+  /**
+   * Reads a line without decoding it. The line bytes (without line terminator) are available
+   * from {@link #getLineBytes()} until the next call to this reader.
+   * @return line length in bytes or -1 if stream has ended
+   */
+  int readLineBytes() throws IOException {
     lineBuffer.clear();
 
     while (true) {
@@ -88,7 +104,7 @@ class LineReader {
       int readRes = inputStream.read(buffer.array());
       if (readRes <= 0) {
         if (lineBuffer.position() == 0) {
-          return null;
+          return -1;
         } else {
           throw new IOException("End of stream while expecting line end");
         }
@@ -99,6 +115,50 @@ class LineReader {
     if (lineBuffer.position() > 0 && lineBuffer.get(lineBuffer.position() - 1) == CR_BYTE) {
       lineBuffer.position(lineBuffer.position() - 1);
     }
-    return new String(lineBuffer.array(), 0, lineBuffer.position(), charset);
+    return lineBuffer.position();
+  }
+
+  /**
+   * @return internal array that holds the last line read by {@link #readLineBytes()}
+   *     starting from index 0
+   */
+  byte[] getLineBytes() {
+    return lineBuffer.array();
+  }
+
+  /**
+   * Reads a fixed-sized block of bytes into an internal buffer that is reused by subsequent
+   * calls.
+   * @return buffer in 'read' (flipped) state or null if stream has ended before the block
+   *     was read completely
+   */
+  ByteBuffer readBlock(int length) throws IOException {
+    if (blockBuffer.capacity() < length) {
+      blockBuffer = ByteBuffer.allocate(Math.max(blockBuffer.capacity() * 2, length));
+    }
+    byte[] array = blockBuffer.array();
+    int totalRead = 0;
+    while (totalRead < length) {
+      int readBytes = read(array, totalRead, length - totalRead);
+      if (readBytes == -1) {
+        return null;
+      }
+      totalRead += readBytes;
+    }
+    blockBuffer.clear();
+    blockBuffer.limit(length);
+    return blockBuffer;
+  }
+
+  /**
+   * Takes away all bytes that have been read from the stream but not consumed yet. Used when
+   * a caller switches from this reader to reading the underlying source directly.
+   * @return buffer in 'read' (flipped) state
+   */
+  ByteBuffer takeBufferedBytes() {
+    ByteBuffer result = ByteBuffer.allocate(buffer.remaining());
+    result.put(buffer);
+    result.flip();
+    return result;
   }
 }
@@ -7,7 +7,10 @@ package org.chromium.sdk.internal.transport;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -80,13 +83,38 @@ public class Message {
 
   private static final String CONTENT_LENGTH = "Content-Length";
 
+  private static final byte[] CONTENT_LENGTH_BYTES = CONTENT_LENGTH.getBytes();
+
+  private static final byte LF_BYTE = '\n';
+  private static final byte CR_BYTE = '\r';
+  private static final byte SEMICOLON_BYTE = ':';
+
   private final HashMap<String, String> headers;
 
-  private final String content;
+  /**
+   * Message content; may be null if content is held in {@link #contentBuffer} and has not
+   * been converted to String yet.
+   */
+  private String content;
+
+  /** Content view of a pooled buffer or null. */
+  private CharBuffer contentBuffer;
+
+  private final MessageBufferPool bufferPool;
 
   public Message(Map<String, String> headers, String content) {
     this.headers = new HashMap<String, String>(headers);
     this.content = content;
+    this.contentBuffer = null;
+    this.bufferPool = null;
+  }
+
+  private Message(HashMap<String, String> headers, CharBuffer contentBuffer,
+      MessageBufferPool bufferPool) {
+    this.headers = headers;
+    this.content = null;
+    this.contentBuffer = contentBuffer;
+    this.bufferPool = bufferPool;
   }
 
   /**
@@ -104,7 +132,7 @@ public class Message {
       writeHeaderField(entry.getKey(), headerValue, outputStream, charset);
     }
 
-    String content = maskNull(this.content);
+    String content = maskNull(getContent());
     byte[] contentBytes = content.getBytes(charset);
 
     writeHeaderField(CONTENT_LENGTH, String.valueOf(contentBytes.length), outputStream, charset);
@@ -174,6 +202,212 @@ public class Message {
     return new Message(headers, contentString);
   }
 
+  /**
+   * Reads a message from the specified reader. If buffer pool is provided, this method does
+   * not create intermediate strings for header lines and it keeps content in a pooled buffer.
+   * Such message must be {@link #release() released} after use.
+   *
+   * @param bufferPool pool for message content or null
+   * @see #fromBufferedReader(LineReader, Charset)
+   */
+  public static Message fromBufferedReader(LineReader reader, Charset charset,
+      MessageBufferPool bufferPool) throws IOException, MalformedMessageException {
+    if (bufferPool == null) {
+      return fromBufferedReader(reader, charset);
+    }
+    HashMap<String, String> headers = new HashMap<String, String>(4);
+
+    int contentLength = -1;
+
+    while (true) { // read headers
+      int lineLength = reader.readLineBytes();
+      if (lineLength == -1) {
+        LOGGER.fine("End of stream");
+        return null;
+      }
+      if (lineLength == 0) {
+        break; // end of headers
+      }
+      byte[] line = reader.getLineBytes();
+      int semiColonPos = indexOf(line, lineLength, SEMICOLON_BYTE);
+      if (semiColonPos == -1) {
+        LOGGER.log(Level.SEVERE, "Bad header line: {0}", new String(line, 0, lineLength, charset));
+        return null;
+      }
+      int valueStart = semiColonPos + 1;
+      int valueEnd = lineLength;
+      while (valueStart < valueEnd && (line[valueStart] & 0xFF) <= ' ') {
+        valueStart++;
+      }
+      while (valueEnd > valueStart && (line[valueEnd - 1] & 0xFF) <= ' ') {
+        valueEnd--;
+      }
+      if (regionEquals(line, semiColonPos, CONTENT_LENGTH_BYTES)) {
+        contentLength = parseNonNegativeInt(line, valueStart, valueEnd);
+      } else {
+        headers.put(new String(line, 0, semiColonPos, charset),
+            new String(line, valueStart, valueEnd - valueStart, charset));
+      }
+    }
+    if (contentLength == -1) {
+      throw new MalformedMessageException("No valid " + CONTENT_LENGTH + " header");
+    }
+
+    LOGGER.log(Level.FINER, "Reading payload: {0} bytes", contentLength);
+    ByteBuffer contentBytes = reader.readBlock(contentLength);
+    if (contentBytes == null) {
+      // End-of-stream (browser closed?)
+      LOGGER.fine("End of stream while reading content");
+      return null;
+    }
+
+    CharBuffer contentChars = bufferPool.decode(contentBytes, charset);
+    return new Message(headers, contentChars, bufferPool);
+  }
+
+  private static int indexOf(byte[] bytes, int length, byte b) {
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean regionEquals(byte[] bytes, int length, byte[] expected) {
+    if (length != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return parsed number or -1 if it is malformed
+   */
+  private static int parseNonNegativeInt(byte[] bytes, int start, int end) {
+    if (start == end) {
+      return -1;
+    }
+    long result = 0;
+    for (int i = start; i < end; i++) {
+      int digit = bytes[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      result = result * 10 + digit;
+      if (result > Integer.MAX_VALUE) {
+        return -1;
+      }
+    }
+    return (int) result;
+  }
+
+  /**
+   * Reads a message from a buffer that accumulates raw socket data. This is a non-blocking
+   * counterpart of {@link #fromBufferedReader}: if the buffer does not contain a complete
+   * message yet, it returns null and leaves the buffer position untouched.
+   *
+   * @param buffer to read message from; must be in 'read' (flipped) state; on success
+   *     its position is advanced past the message
+   * @return a new message or null if more data is needed
+   * @throws MalformedMessageException if the buffer content does not represent a valid
+   *     message
+   */
+  public static Message fromByteBuffer(ByteBuffer buffer, Charset charset)
+      throws MalformedMessageException {
+    return fromByteBuffer(buffer, charset, null);
+  }
+
+  /**
+   * Reads a message from a buffer that accumulates raw socket data. If buffer pool is provided,
+   * the message content is kept in a pooled buffer and the message must be
+   * {@link #release() released} after use.
+   *
+   * @param bufferPool pool for message content or null
+   * @see #fromByteBuffer(ByteBuffer, Charset)
+   */
+  public static Message fromByteBuffer(ByteBuffer buffer, Charset charset,
+      MessageBufferPool bufferPool) throws MalformedMessageException {
+    HashMap<String, String> headers = new HashMap<String, String>(4);
+    String contentLengthValue = null;
+
+    int pos = buffer.position();
+    while (true) { // read headers
+      int lineEnd = indexOf(buffer, LF_BYTE, pos);
+      if (lineEnd == -1) {
+        return null;
+      }
+      int lineStart = pos;
+      pos = lineEnd + 1;
+      if (lineEnd > lineStart && buffer.get(lineEnd - 1) == CR_BYTE) {
+        lineEnd--;
+      }
+      if (lineEnd == lineStart) {
+        break; // end of headers
+      }
+      String line = decode(buffer, lineStart, lineEnd - lineStart, charset);
+      int semiColonPos = line.indexOf(':');
+      if (semiColonPos == -1) {
+        throw new MalformedMessageException("Bad header line: " + line);
+      }
+      String name = line.substring(0, semiColonPos);
+      String trimmedValue = line.substring(semiColonPos + 1).trim();
+      if (CONTENT_LENGTH.equals(name)) {
+        contentLengthValue = trimmedValue;
+      } else {
+        headers.put(name, trimmedValue);
+      }
+    }
+
+    if (contentLengthValue == null) {
+      throw new MalformedMessageException("No " + CONTENT_LENGTH + " header");
+    }
+    int contentLength;
+    try {
+      contentLength = Integer.parseInt(contentLengthValue);
+    } catch (NumberFormatException e) {
+      throw new MalformedMessageException(e);
+    }
+    if (buffer.limit() - pos < contentLength) {
+      return null;
+    }
+    if (bufferPool != null) {
+      ByteBuffer contentBytes = buffer.duplicate();
+      contentBytes.limit(pos + contentLength);
+      contentBytes.position(pos);
+      buffer.position(pos + contentLength);
+      return new Message(headers, bufferPool.decode(contentBytes, charset), bufferPool);
+    }
+    String contentString = decode(buffer, pos, contentLength, charset);
+    buffer.position(pos + contentLength);
+    return new Message(headers, contentString);
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte b, int from) {
+    for (int i = from; i < buffer.limit(); i++) {
+      if (buffer.get(i) == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String decode(ByteBuffer buffer, int offset, int length, Charset charset) {
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + offset, length, charset);
+    }
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(offset + i);
+    }
+    return new String(bytes, charset);
+  }
+
   /**
    * @return the "Tool" header value
    */
@@ -191,11 +425,45 @@ public class Message {
   /**
    * @return the message content. Never {@code null} (for no content, returns an
    *         empty String)
+   * @throws IllegalStateException if the message has been released before its content
+   *         was ever requested
    */
   public String getContent() {
+    if (content == null && bufferPool != null) {
+      if (contentBuffer == null) {
+        throw new IllegalStateException("Message has been released");
+      }
+      content = contentBuffer.toString();
+    }
     return content;
   }
 
+  /**
+   * Returns the message content without converting it to String. For a message read with
+   * buffer pool the result is a view of a pooled buffer and is only valid until
+   * {@link #release()} is called.
+   */
+  public CharSequence getContentSequence() {
+    if (content != null || bufferPool == null) {
+      return content;
+    }
+    if (contentBuffer == null) {
+      throw new IllegalStateException("Message has been released");
+    }
+    return contentBuffer.asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns content buffer to the pool, if there is one. The message content must not be
+   * accessed via {@link #getContentSequence()} afterwards.
+   */
+  public void release() {
+    if (contentBuffer != null) {
+      bufferPool.release(contentBuffer);
+      contentBuffer = null;
+    }
+  }
+
   /**
    * @param name of the header
    * @param defaultValue to return if the header is not found in the message
@@ -206,6 +474,13 @@ public class Message {
     return getHeader(this.headers, name, defaultValue);
   }
 
+  /**
+   * @return all headers of the message except Content-Length
+   */
+  public Map<String, String> getHeaders() {
+    return Collections.unmodifiableMap(headers);
+  }
+
   private static String getHeader(Map<? extends String, String> headers, String headerName,
       String defaultValue) {
     String value = headers.get(headerName);
@@ -0,0 +1,109 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of character buffers that hold decoded message content. Connection that uses
+ * the pool creates messages whose content is a view of a pooled buffer (see
+ * {@link Message#getContentSequence()}) and returns the buffer after the message has been
+ * dispatched. This saves allocating a byte array and a String per inbound message.
+ * <p>
+ * This class is thread-safe: buffers are usually acquired by a reader thread and released
+ * by a dispatch thread.
+ */
+public class MessageBufferPool {
+  /**
+   * System property that turns on pooled buffers in socket connections.
+   */
+  private static final String USE_POOL_PROPERTY =
+      "org.chromium.sdk.client.connection.pooledBuffers";
+
+  private static final int MAX_POOLED_BUFFERS = 8;
+
+  /** Buffers bigger than this are not kept in pool, so that one huge message does not stick. */
+  private static final int MAX_POOLED_CAPACITY = 1024 * 1024;
+
+  private static final int MIN_CAPACITY = 1024;
+
+  private static final MessageBufferPool SHARED = new MessageBufferPool();
+
+  /**
+   * @return shared pool if it is enabled by system property or null
+   */
+  static MessageBufferPool getConfigured() {
+    if (Boolean.getBoolean(USE_POOL_PROPERTY)) {
+      return SHARED;
+    } else {
+      return null;
+    }
+  }
+
+  private final Queue<CharBuffer> buffers = new ConcurrentLinkedQueue<CharBuffer>();
+  private final AtomicInteger size = new AtomicInteger(0);
+
+  /**
+   * Decodes bytes into a pooled buffer. Malformed input is replaced the same way
+   * {@link String#String(byte[], Charset)} does it.
+   * @param bytes buffer in 'read' (flipped) state; it gets fully consumed
+   * @return buffer in 'read' (flipped) state that must be passed to {@link #release} later
+   */
+  CharBuffer decode(ByteBuffer bytes, Charset charset) {
+    CharsetDecoder decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer chars = acquire((int) (bytes.remaining() * (double) decoder.maxCharsPerByte()));
+    CoderResult result = decoder.decode(bytes, chars, true);
+    if (result.isUnderflow()) {
+      result = decoder.flush(chars);
+    }
+    if (!result.isUnderflow()) {
+      try {
+        result.throwException();
+      } catch (CharacterCodingException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    chars.flip();
+    return chars;
+  }
+
+  CharBuffer acquire(int capacity) {
+    CharBuffer buffer = buffers.poll();
+    if (buffer != null) {
+      size.decrementAndGet();
+      if (buffer.capacity() >= capacity) {
+        buffer.clear();
+        return buffer;
+      }
+    }
+    int newCapacity = MIN_CAPACITY;
+    while (newCapacity < capacity) {
+      newCapacity *= 2;
+    }
+    return CharBuffer.allocate(newCapacity);
+  }
+
+  void release(CharBuffer buffer) {
+    if (buffer.capacity() > MAX_POOLED_CAPACITY) {
+      return;
+    }
+    if (size.incrementAndGet() > MAX_POOLED_BUFFERS) {
+      size.decrementAndGet();
+      return;
+    }
+    buffers.add(buffer);
+  }
+}
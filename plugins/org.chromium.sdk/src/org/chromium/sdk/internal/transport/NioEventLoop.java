@@ -0,0 +1,173 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single selector thread that serves socket I/O for many connections together with
+ * a small fixed pool of threads that dispatch inbound messages. The number of threads
+ * does not depend on the number of connections.
+ * <p>
+ * All methods of {@link ChannelHandler} are called from the selector thread and must not block.
+ */
+class NioEventLoop {
+  /** The class logger. */
+  private static final Logger LOGGER = Logger.getLogger(NioEventLoop.class.getName());
+
+  private static final String DISPATCH_THREADS_PROPERTY =
+      "org.chromium.sdk.client.connection.nio.dispatchThreads";
+
+  private static final int DEFAULT_DISPATCH_THREADS = 2;
+
+  private static NioEventLoop defaultInstance = null;
+
+  /**
+   * @return shared instance; it is created on demand and is never shut down (all its threads
+   *     are daemons)
+   */
+  static synchronized NioEventLoop getDefault() throws IOException {
+    if (defaultInstance == null) {
+      defaultInstance = new NioEventLoop(getDispatchThreadNumber());
+    }
+    return defaultInstance;
+  }
+
+  /**
+   * Receives I/O readiness events for a registered channel.
+   */
+  interface ChannelHandler {
+    void handleReadable();
+    void handleWritable();
+  }
+
+  private final Selector selector;
+  private final Thread selectorThread;
+  private final ExecutorService dispatchExecutor;
+
+  /** Tasks that must be run in the selector thread, e.g. registration or interest changes. */
+  private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+
+  NioEventLoop(int dispatchThreadNumber) throws IOException {
+    this.selector = Selector.open();
+    this.dispatchExecutor = Executors.newFixedThreadPool(dispatchThreadNumber,
+        new DaemonThreadFactory("NioDispatchThread"));
+    this.selectorThread = new Thread("NioSelectorThread") {
+      @Override
+      public void run() {
+        runSelectLoop();
+      }
+    };
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+  }
+
+  /**
+   * @return executor that is shared by all connections for dispatching inbound messages;
+   *     it does not preserve task order
+   */
+  Executor getDispatchExecutor() {
+    return dispatchExecutor;
+  }
+
+  /**
+   * Asynchronously runs the task in the selector thread.
+   */
+  void runInSelectorThread(Runnable task) {
+    pendingTasks.add(task);
+    selector.wakeup();
+  }
+
+  /**
+   * Registers channel with the selector. Must be called from the selector thread.
+   */
+  SelectionKey register(SelectableChannel channel, int ops, ChannelHandler handler)
+      throws ClosedChannelException {
+    assert Thread.currentThread() == selectorThread;
+    return channel.register(selector, ops, handler);
+  }
+
+  private void runSelectLoop() {
+    while (true) {
+      try {
+        selector.select();
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, "Selector failed", e);
+        return;
+      }
+      while (true) {
+        Runnable task = pendingTasks.poll();
+        if (task == null) {
+          break;
+        }
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          LOGGER.log(Level.SEVERE, "Exception in selector task", e);
+        }
+      }
+      for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+        SelectionKey key = it.next();
+        it.remove();
+        ChannelHandler handler = (ChannelHandler) key.attachment();
+        try {
+          if (key.isValid() && key.isReadable()) {
+            handler.handleReadable();
+          }
+          if (key.isValid() && key.isWritable()) {
+            handler.handleWritable();
+          }
+        } catch (CancelledKeyException e) {
+          // Connection has been closed concurrently.
+        } catch (RuntimeException e) {
+          LOGGER.log(Level.SEVERE, "Exception in channel handler", e);
+        }
+      }
+    }
+  }
+
+  private static int getDispatchThreadNumber() {
+    String numberString = System.getProperty(DISPATCH_THREADS_PROPERTY,
+        String.valueOf(DEFAULT_DISPATCH_THREADS));
+    int number = DEFAULT_DISPATCH_THREADS;
+    try {
+      number = Integer.parseInt(numberString);
+    } catch (NumberFormatException e) {
+      // fall through and use the default value
+    }
+    return Math.max(1, number);
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private final AtomicInteger counter = new AtomicInteger(0);
+
+    DaemonThreadFactory(String namePrefix) {
+      this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, namePrefix + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,593 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.chromium.sdk.ConnectionLogger;
+import org.chromium.sdk.ConnectionLogger.StreamListener;
+import org.chromium.sdk.internal.transport.Message.MalformedMessageException;
+import org.chromium.sdk.util.ByteToCharConverter;
+import org.chromium.sdk.util.SignalRelay;
+import org.chromium.sdk.util.SignalRelay.AlreadySignalledException;
+
+/**
+ * A non-blocking implementation of {@link Connection}. Unlike {@link SocketConnection} it
+ * does not own any threads: socket I/O is served by a shared {@link NioEventLoop} selector
+ * thread and inbound messages are dispatched on its shared executor. Messages of one connection
+ * are still dispatched strictly one after another, so {@link NetListener} sees the same
+ * ordering as with {@link SocketConnection}, although not necessarily from the same thread.
+ * <p>
+ * Handshake is performed in blocking mode on a short-lived thread of its own with
+ * the connection timeout, so that a silent remote cannot hold a shared dispatch thread.
+ * The dispatch queue is held until the handshake is over. After that the socket channel is
+ * switched to non-blocking mode.
+ * <p>
+ * This class is thread-safe.
+ */
+public class NioSocketConnection implements Connection {
+  /** The class logger. */
+  private static final Logger LOGGER = Logger.getLogger(NioSocketConnection.class.getName());
+
+  /**
+   * Character encoding used in the socket data interchange.
+   */
+  private static final Charset SOCKET_CHARSET = Charset.forName("UTF-8");
+
+  private static final int INITIAL_READ_BUFFER_SIZE = 8 * 1024;
+
+  /** Maximum number of dispatch items processed in a row before yielding a pooled thread. */
+  private static final int DISPATCH_BATCH_SIZE = 64;
+
+  private static final NetListener NULL_LISTENER = new NetListener() {
+    @Override public void connectionClosed() {
+    }
+
+    @Override public void eosReceived() {
+    }
+
+    @Override public void messageReceived(Message message) {
+    }
+  };
+
+  private final SocketAddress socketEndpoint;
+  private final int connectionTimeoutMs;
+  private final ConnectionLogger connectionLogger;
+  private final Handshaker handshaker;
+  private final NioEventLoop eventLoop;
+
+  /** Pool for inbound message content or null. */
+  private final MessageBufferPool bufferPool = MessageBufferPool.getConfigured();
+
+  /** Whether the agent is currently attached to a remote browser. */
+  private final AtomicBoolean isAttached = new AtomicBoolean(false);
+
+  /** The listener to report network events to. */
+  private volatile NetListener listener;
+
+  private volatile SocketChannel channel = null;
+
+  /** The outbound message queue; each element is a serialized message. */
+  private final Queue<ByteBuffer> outboundQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+  private final DispatchQueue dispatchQueue;
+
+  /** Selector-thread-only state. */
+  private SelectionKey selectionKey = null;
+  private ByteBuffer readBuffer = null;
+  private ByteBuffer currentOutbound = null;
+  private ByteToCharConverter inputLogConverter = null;
+  private ByteToCharConverter outputLogConverter = null;
+
+  public NioSocketConnection(SocketAddress endpoint, int connectionTimeoutMs,
+      ConnectionLogger connectionLogger, Handshaker handshaker) throws IOException {
+    this(endpoint, connectionTimeoutMs, connectionLogger, handshaker,
+        NioEventLoop.getDefault());
+  }
+
+  NioSocketConnection(SocketAddress endpoint, int connectionTimeoutMs,
+      ConnectionLogger connectionLogger, Handshaker handshaker, NioEventLoop eventLoop) {
+    this.socketEndpoint = endpoint;
+    this.connectionTimeoutMs = connectionTimeoutMs;
+    this.connectionLogger = connectionLogger;
+    this.handshaker = handshaker;
+    this.eventLoop = eventLoop;
+    this.dispatchQueue = new DispatchQueue(eventLoop.getDispatchExecutor());
+  }
+
+  @Override
+  public void setNetListener(NetListener netListener) {
+    if (this.listener != null && netListener != this.listener) {
+      throw new IllegalStateException("Cannot change NetListener");
+    }
+    this.listener = netListener != null
+        ? netListener
+        : NULL_LISTENER;
+    SignalRelay<?> listenerCloser = SignalRelay.create(new SignalRelay.Callback<Void>() {
+      @Override public void onSignal(Void param, Exception cause) {
+        listener.connectionClosed();
+      }
+    });
+    try {
+      shutdownRelay.bind(listenerCloser, null, null);
+    } catch (AlreadySignalledException e) {
+      // ListenerCloser cannot be closing and we should not be closing at this moment of time.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void start() throws IOException {
+    try {
+      if (!isAttached.get()) {
+        attach();
+      }
+    } catch (IOException e) {
+      listener.connectionClosed();
+      throw e;
+    }
+  }
+
+  @Override
+  public void close() {
+    shutdownRelay.sendSignal(null, null);
+  }
+
+  @Override
+  public boolean isConnected() {
+    return isAttached.get();
+  }
+
+  @Override
+  public void send(Message message) {
+    if (!isAttached.get()) {
+      throw new IllegalStateException("Connection not attached");
+    }
+    LOGGER.log(Level.FINER, "-->{0}", message);
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    try {
+      message.sendThrough(stream, SOCKET_CHARSET);
+    } catch (IOException e) {
+      // never occurs
+      throw new RuntimeException(e);
+    }
+    outboundQueue.add(ByteBuffer.wrap(stream.toByteArray()));
+    eventLoop.runInSelectorThread(updateInterestTask);
+  }
+
+  @Override
+  public void runInDispatchThread(Runnable callback) {
+    dispatchQueue.add(callback);
+  }
+
+  private void attach() throws IOException {
+    SocketChannel newChannel = SocketChannel.open();
+    try {
+      newChannel.socket().connect(socketEndpoint, connectionTimeoutMs);
+    } catch (IOException e) {
+      newChannel.close();
+      throw e;
+    }
+    this.channel = newChannel;
+
+    isAttached.set(true);
+
+    if (connectionLogger != null) {
+      connectionLogger.setConnectionCloser(new ConnectionLogger.ConnectionCloser() {
+        @Override public void closeConnection() {
+          shutdownRelay.sendSignal(null, new Exception("Close requested from logger UI"));
+        }
+      });
+      connectionLogger.start();
+    }
+
+    // Dispatch queue is held until handshake is over, so no item can overtake it.
+    Thread handshakeThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          performHandshake();
+        } catch (IOException e) {
+          shutdownRelay.sendSignal(null, e);
+        }
+      }
+    }, "NioHandshakeThread");
+    handshakeThread.setDaemon(true);
+    handshakeThread.start();
+  }
+
+  private void performHandshake() throws IOException {
+    // Socket streams (unlike channel streams) respect the read timeout.
+    channel.socket().setSoTimeout(connectionTimeoutMs);
+    InputStream input = channel.socket().getInputStream();
+    OutputStream output = channel.socket().getOutputStream();
+    if (connectionLogger != null) {
+      StreamListener incomingListener = connectionLogger.getIncomingStreamListener();
+      StreamListener outgoingListener = connectionLogger.getOutgoingStreamListener();
+      if (incomingListener != null) {
+        input = new LoggingInputStream(input, incomingListener);
+      }
+      if (outgoingListener != null) {
+        output = new LoggingOutputStream(output, outgoingListener);
+      }
+    }
+    LineReader lineReader = new LineReader(input);
+    handshaker.perform(lineReader, output);
+    output.flush();
+
+    final ByteBuffer leftover = lineReader.takeBufferedBytes();
+    channel.socket().setSoTimeout(0);
+    channel.configureBlocking(false);
+    dispatchQueue.resume();
+
+    eventLoop.runInSelectorThread(new Runnable() {
+      @Override
+      public void run() {
+        registerChannel(leftover);
+      }
+    });
+  }
+
+  /**
+   * Called from selector thread.
+   */
+  private void registerChannel(ByteBuffer leftover) {
+    if (!isAttached.get()) {
+      return;
+    }
+    readBuffer = ByteBuffer.allocate(Math.max(INITIAL_READ_BUFFER_SIZE, leftover.remaining()));
+    readBuffer.put(leftover);
+    if (connectionLogger != null) {
+      inputLogConverter = new ByteToCharConverter(SOCKET_CHARSET);
+      outputLogConverter = new ByteToCharConverter(SOCKET_CHARSET);
+      addSeparatorToLog(connectionLogger.getIncomingStreamListener());
+      addSeparatorToLog(connectionLogger.getOutgoingStreamListener());
+    }
+    try {
+      selectionKey = eventLoop.register(channel, SelectionKey.OP_READ, channelHandler);
+    } catch (IOException e) {
+      shutdownRelay.sendSignal(null, e);
+      return;
+    }
+    // Process messages that came together with handshake.
+    processInput();
+    updateInterestTask.run();
+  }
+
+  private final Runnable updateInterestTask = new Runnable() {
+    @Override
+    public void run() {
+      if (selectionKey == null || !selectionKey.isValid()) {
+        // Not registered yet (or already closed); registration will pick up the queue.
+        return;
+      }
+      int ops = SelectionKey.OP_READ;
+      if (currentOutbound != null || !outboundQueue.isEmpty()) {
+        ops |= SelectionKey.OP_WRITE;
+      }
+      selectionKey.interestOps(ops);
+    }
+  };
+
+  private final NioEventLoop.ChannelHandler channelHandler = new NioEventLoop.ChannelHandler() {
+    @Override
+    public void handleReadable() {
+      int readRes;
+      try {
+        if (!readBuffer.hasRemaining()) {
+          ByteBuffer newBuffer = ByteBuffer.allocate(readBuffer.capacity() * 2);
+          readBuffer.flip();
+          newBuffer.put(readBuffer);
+          readBuffer = newBuffer;
+        }
+        readRes = channel.read(readBuffer);
+      } catch (IOException e) {
+        shutdownRelay.sendSignal(null, e);
+        return;
+      }
+      if (readRes == -1) {
+        LOGGER.fine("End of stream");
+        shutdownRelay.sendSignal(null, null);
+        return;
+      }
+      processInput();
+    }
+
+    @Override
+    public void handleWritable() {
+      try {
+        while (true) {
+          if (currentOutbound == null) {
+            currentOutbound = outboundQueue.poll();
+            if (currentOutbound == null) {
+              break;
+            }
+          }
+          int start = currentOutbound.position();
+          channel.write(currentOutbound);
+          if (outputLogConverter != null) {
+            StreamListener outgoingListener = connectionLogger.getOutgoingStreamListener();
+            logBytes(outgoingListener, outputLogConverter, currentOutbound, start);
+            if (!currentOutbound.hasRemaining()) {
+              addSeparatorToLog(outgoingListener);
+            }
+          }
+          if (currentOutbound.hasRemaining()) {
+            // Socket buffer is full, wait for next OP_WRITE.
+            break;
+          }
+          currentOutbound = null;
+        }
+      } catch (IOException e) {
+        shutdownRelay.sendSignal(null, e);
+        return;
+      }
+      updateInterestTask.run();
+    }
+  };
+
+  /**
+   * Parses all complete messages from the read buffer and passes them to dispatch queue.
+   * Called from selector thread.
+   */
+  private void processInput() {
+    readBuffer.flip();
+    try {
+      while (true) {
+        int start = readBuffer.position();
+        Message message;
+        try {
+          message = Message.fromByteBuffer(readBuffer, SOCKET_CHARSET, bufferPool);
+        } catch (MalformedMessageException e) {
+          // Unlike stream-based reader, we cannot resynchronize with the byte stream here.
+          LOGGER.log(Level.SEVERE, "Malformed protocol message", e);
+          shutdownRelay.sendSignal(null, e);
+          return;
+        }
+        if (message == null) {
+          break;
+        }
+        if (inputLogConverter != null) {
+          StreamListener incomingListener = connectionLogger.getIncomingStreamListener();
+          logBytes(incomingListener, inputLogConverter, readBuffer, start);
+          addSeparatorToLog(incomingListener);
+        }
+        dispatchQueue.add(new MessageItem(message));
+      }
+    } finally {
+      readBuffer.compact();
+    }
+  }
+
+  private static void logBytes(StreamListener listener, ByteToCharConverter converter,
+      ByteBuffer buffer, int start) {
+    if (listener == null) {
+      return;
+    }
+    ByteBuffer logged = buffer.duplicate();
+    logged.limit(buffer.position());
+    logged.position(start);
+    listener.addContent(converter.convert(logged));
+  }
+
+  private static void addSeparatorToLog(StreamListener listener) {
+    if (listener != null) {
+      listener.addSeparator();
+    }
+  }
+
+  private class MessageItem implements Runnable {
+    private final Message message;
+
+    MessageItem(Message message) {
+      this.message = message;
+    }
+
+    @Override
+    public void run() {
+      LOGGER.log(Level.FINER, "<--{0}", message);
+      try {
+        listener.messageReceived(message);
+      } finally {
+        message.release();
+      }
+    }
+  }
+
+  private final Runnable eosItem = new Runnable() {
+    @Override
+    public void run() {
+      LOGGER.log(Level.FINER, "<--EOS");
+      try {
+        listener.eosReceived();
+      } finally {
+        if (connectionLogger != null) {
+          connectionLogger.handleEos();
+        }
+      }
+    }
+  };
+
+  private final SignalRelay<Void> shutdownRelay =
+      SignalRelay.create(new SignalRelay.Callback<Void>() {
+    @Override
+    public void onSignal(Void param, Exception cause) {
+      if (!isAttached.compareAndSet(true, false)) {
+        // already shut down
+        return;
+      }
+      LOGGER.log(Level.INFO, "Shutdown requested", cause);
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // ignore
+      }
+      dispatchQueue.close(eosItem);
+    }
+  });
+
+  /**
+   * A per-connection queue of dispatch items that is drained by a shared executor. At most
+   * one task of the queue is running at any moment, which keeps items strictly ordered.
+   * The queue starts held: items are accumulated but not run until {@link #resume} or
+   * {@link #close}.
+   */
+  private static class DispatchQueue {
+    private final Executor executor;
+    private final LinkedList<Runnable> items = new LinkedList<Runnable>();
+
+    /** Fields must be accessed synchronized on items. */
+    private boolean isScheduled = false;
+    private boolean isClosed = false;
+    private boolean isHeld = true;
+
+    DispatchQueue(Executor executor) {
+      this.executor = executor;
+    }
+
+    void add(Runnable item) {
+      synchronized (items) {
+        if (isClosed) {
+          throw new IllegalStateException("Connection is closed");
+        }
+        addImpl(item);
+      }
+    }
+
+    /**
+     * Adds the final item and closes the queue.
+     */
+    void close(Runnable lastItem) {
+      synchronized (items) {
+        if (isClosed) {
+          return;
+        }
+        isClosed = true;
+        isHeld = false;
+        addImpl(lastItem);
+      }
+    }
+
+    /**
+     * Starts running items.
+     */
+    void resume() {
+      synchronized (items) {
+        if (!isHeld) {
+          return;
+        }
+        isHeld = false;
+        if (!items.isEmpty() && !isScheduled) {
+          isScheduled = true;
+          executor.execute(drainTask);
+        }
+      }
+    }
+
+    private void addImpl(Runnable item) {
+      items.add(item);
+      if (!isScheduled && !isHeld) {
+        isScheduled = true;
+        executor.execute(drainTask);
+      }
+    }
+
+    private final Runnable drainTask = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < DISPATCH_BATCH_SIZE; i++) {
+          Runnable item;
+          synchronized (items) {
+            item = items.poll();
+            if (item == null) {
+              isScheduled = false;
+              return;
+            }
+          }
+          try {
+            item.run();
+          } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Exception in message listener", e);
+          }
+        }
+        // Give other connections a chance.
+        executor.execute(this);
+      }
+    };
+  }
+
+  private static class LoggingInputStream extends InputStream {
+    private final InputStream original;
+    private final StreamListener listener;
+    private final ByteToCharConverter converter = new ByteToCharConverter(SOCKET_CHARSET);
+
+    LoggingInputStream(InputStream original, StreamListener listener) {
+      this.original = original;
+      this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] buffer = new byte[1];
+      int res = read(buffer, 0, 1);
+      if (res <= 0) {
+        return -1;
+      } else {
+        return buffer[0] & 0xFF;
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int res = original.read(b, off, len);
+      if (res > 0) {
+        listener.addContent(converter.convert(ByteBuffer.wrap(b, off, res)));
+      }
+      return res;
+    }
+  }
+
+  private static class LoggingOutputStream extends OutputStream {
+    private final OutputStream original;
+    private final StreamListener listener;
+    private final ByteToCharConverter converter = new ByteToCharConverter(SOCKET_CHARSET);
+
+    LoggingOutputStream(OutputStream original, StreamListener listener) {
+      this.original = original;
+      this.listener = listener;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      original.write(b, off, len);
+      listener.addContent(converter.convert(ByteBuffer.wrap(b, off, len)));
+    }
+
+    @Override
+    public void flush() throws IOException {
+      original.flush();
+    }
+  }
+}
@@ -0,0 +1,72 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.IOException;
+
+/**
+ * A connection wrapper that records all messages that go through it into
+ * a {@link SessionRecording}. Messages are recorded exactly as the SDK sees them, together
+ * with their timing.
+ */
+public class RecordingConnection implements Connection {
+  private final Connection delegate;
+  private final SessionRecording.Writer recordingWriter;
+
+  public RecordingConnection(Connection delegate, SessionRecording.Writer recordingWriter) {
+    this.delegate = delegate;
+    this.recordingWriter = recordingWriter;
+  }
+
+  @Override
+  public void setNetListener(final NetListener netListener) {
+    delegate.setNetListener(new NetListener() {
+      @Override
+      public void messageReceived(Message message) {
+        // Content sequence doesn't change the state of a pooled message.
+        recordingWriter.write(true, message.getHeaders(), message.getContentSequence());
+        netListener.messageReceived(message);
+      }
+
+      @Override
+      public void eosReceived() {
+        netListener.eosReceived();
+      }
+
+      @Override
+      public void connectionClosed() {
+        recordingWriter.close();
+        netListener.connectionClosed();
+      }
+    });
+  }
+
+  @Override
+  public void send(Message message) {
+    recordingWriter.write(false, message.getHeaders(), message.getContentSequence());
+    delegate.send(message);
+  }
+
+  @Override
+  public void runInDispatchThread(Runnable callback) {
+    delegate.runInDispatchThread(callback);
+  }
+
+  @Override
+  public void start() throws IOException {
+    delegate.start();
+  }
+
+  @Override
+  public void close() {
+    delegate.close();
+    recordingWriter.close();
+  }
+
+  @Override
+  public boolean isConnected() {
+    return delegate.isConnected();
+  }
+}
@@ -0,0 +1,207 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A file format for a recorded debug session: the exact sequence of messages that were sent
+ * and received over a connection, each with a time offset from the session start.
+ * A recording can be replayed by a stub remote to reproduce the session offline.
+ * <p>File layout: signature, then entries. An entry is a direction byte, a time offset in
+ * nanoseconds, headers (count, then name/value pairs) and a content (length, then UTF-8
+ * bytes).
+ */
+public class SessionRecording {
+  private static final Logger LOGGER = Logger.getLogger(SessionRecording.class.getName());
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte[] FILE_SIGNATURE = { 'C', 'S', 'D', 'K', 'R', 'E', 'C', '1' };
+
+  private static final byte DIRECTION_INCOMING = 0;
+  private static final byte DIRECTION_OUTGOING = 1;
+
+  private static final AtomicInteger sessionCounter = new AtomicInteger(0);
+
+  /**
+   * Creates a unique file name for a new session, so that several connections could be
+   * recorded at once.
+   */
+  public static File nextSessionFile(String pathPrefix) {
+    return new File(pathPrefix + "-" + sessionCounter.incrementAndGet() + ".rec");
+  }
+
+  /**
+   * A recorded message.
+   */
+  public static class Entry {
+    private final boolean incoming;
+    private final long timeNanos;
+    private final Map<String, String> headers;
+    private final String content;
+
+    Entry(boolean incoming, long timeNanos, Map<String, String> headers, String content) {
+      this.incoming = incoming;
+      this.timeNanos = timeNanos;
+      this.headers = headers;
+      this.content = content;
+    }
+
+    /**
+     * @return true for a message received from remote, false for a message sent to remote
+     */
+    public boolean isIncoming() {
+      return incoming;
+    }
+
+    /**
+     * @return time offset from the session start
+     */
+    public long getTimeNanos() {
+      return timeNanos;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public String getContent() {
+      return content;
+    }
+  }
+
+  /**
+   * Reads all entries of a recording. A truncated last entry (the session may still
+   * be being recorded) is ignored.
+   */
+  public static List<Entry> read(File file) throws IOException {
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      byte[] signature = new byte[FILE_SIGNATURE.length];
+      input.readFully(signature);
+      if (!Arrays.equals(signature, FILE_SIGNATURE)) {
+        throw new IOException("Not a session recording: " + file);
+      }
+      List<Entry> result = new ArrayList<Entry>();
+      while (true) {
+        Entry entry;
+        try {
+          entry = readEntry(input);
+        } catch (EOFException e) {
+          break;
+        }
+        result.add(entry);
+      }
+      return result;
+    } finally {
+      input.close();
+    }
+  }
+
+  private static Entry readEntry(DataInputStream input) throws IOException {
+    byte direction = input.readByte();
+    if (direction != DIRECTION_INCOMING && direction != DIRECTION_OUTGOING) {
+      throw new IOException("Malformed entry direction: " + direction);
+    }
+    long timeNanos = input.readLong();
+    int headerCount = input.readInt();
+    Map<String, String> headers;
+    if (headerCount == 0) {
+      headers = Collections.emptyMap();
+    } else {
+      headers = new LinkedHashMap<String, String>(headerCount);
+      for (int i = 0; i < headerCount; i++) {
+        String name = input.readUTF();
+        headers.put(name, input.readUTF());
+      }
+    }
+    byte[] contentBytes = new byte[input.readInt()];
+    input.readFully(contentBytes);
+    return new Entry(direction == DIRECTION_INCOMING, timeNanos, headers,
+        new String(contentBytes, UTF_8));
+  }
+
+  /**
+   * Appends messages to a recording file. The class is thread-safe. Write errors are logged
+   * and stop the recording, but never affect the connection.
+   */
+  public static class Writer {
+    private final long startNanos = System.nanoTime();
+    // Access must be synchronized. Null after the writer has been closed or failed.
+    private DataOutputStream output;
+
+    public Writer(File file) throws IOException {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      output.write(FILE_SIGNATURE);
+    }
+
+    public void write(boolean incoming, Map<String, String> headers, CharSequence content) {
+      long timeNanos = System.nanoTime() - startNanos;
+      byte[] contentBytes = content == null ? new byte[0] : content.toString().getBytes(UTF_8);
+      synchronized (this) {
+        if (output == null) {
+          return;
+        }
+        try {
+          output.writeByte(incoming ? DIRECTION_INCOMING : DIRECTION_OUTGOING);
+          output.writeLong(timeNanos);
+          int headerCount = 0;
+          for (String value : headers.values()) {
+            if (value != null) {
+              headerCount++;
+            }
+          }
+          output.writeInt(headerCount);
+          for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getValue() != null) {
+              output.writeUTF(header.getKey());
+              output.writeUTF(header.getValue());
+            }
+          }
+          output.writeInt(contentBytes.length);
+          output.write(contentBytes);
+        } catch (IOException e) {
+          LOGGER.log(Level.SEVERE, "Failed to record message, recording stopped", e);
+          closeImpl();
+        }
+      }
+    }
+
+    public synchronized void close() {
+      if (output != null) {
+        closeImpl();
+      }
+    }
+
+    private void closeImpl() {
+      try {
+        output.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, "Failed to close session recording", e);
+      }
+      output = null;
+    }
+  }
+}
@@ -86,7 +86,12 @@ public class SocketConnection implements Connection {
       try {
         LOGGER.log(Level.FINER, "-->{0}", message);
         message.sendThrough(writer.getOutputStream(), SOCKET_CHARSET);
-        writer.getOutputStream().flush();
+        // Messages queued in a burst (e.g. a bulk breakpoint set) go out in one write.
+        // This relies on the stream being buffered (see SocketWrapper#wrapOutputStream);
+        // with an unbuffered stream skipping the flush would change nothing.
+        if (outboundQueue.isEmpty()) {
+          writer.getOutputStream().flush();
+        }
         writer.markSeparatorForLog();
       } catch (IOException e) {
         shutdownRelay.sendSignal(false, e);
@@ -117,7 +122,11 @@ public class SocketConnection implements Connection {
     @Override
     void report(NetListener listener) {
       LOGGER.log(Level.FINER, "<--{0}", message);
-      listener.messageReceived(message);
+      try {
+        listener.messageReceived(message);
+      } finally {
+        message.release();
+      }
     }
     @Override
     boolean isEos() {
@@ -163,7 +172,7 @@ public class SocketConnection implements Connection {
         while (!isTerminated && isAttached.get()) {
           Message message;
           try {
-            message = Message.fromBufferedReader(lineReader, SOCKET_CHARSET);
+            message = Message.fromBufferedReader(lineReader, SOCKET_CHARSET, bufferPool);
           } catch (MalformedMessageException e) {
             LOGGER.log(Level.SEVERE, "Malformed protocol message", e);
             continue;
@@ -251,6 +260,9 @@ public class SocketConnection implements Connection {
   /** Handshaker used to establish connection. */
   private final Handshaker handshaker;
 
+  /** Pool for inbound message content or null. */
+  private final MessageBufferPool bufferPool = MessageBufferPool.getConfigured();
+
   /** The listener to report network events to. */
   private volatile NetListener listener;
 
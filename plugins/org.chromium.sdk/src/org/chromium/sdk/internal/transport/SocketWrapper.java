@@ -4,6 +4,7 @@
 
 package org.chromium.sdk.internal.transport;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -13,6 +14,7 @@ import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 
 import org.chromium.sdk.ConnectionLogger;
+import org.chromium.sdk.ConnectionLogger.RawStreamListener;
 import org.chromium.sdk.ConnectionLogger.StreamListener;
 import org.chromium.sdk.util.ByteToCharConverter;
 
@@ -55,12 +57,25 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
 
   private static class FactoryImpl
       implements WrapperFactory<LoggableInputStream, LoggableOutputStream> {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
     private final Charset charset;
 
     FactoryImpl(Charset charset) {
       this.charset = charset;
     }
 
+    /**
+     * @return listener that takes bytes as they are, or null if the listener needs
+     *     characters (raw text bytes must be in UTF-8)
+     */
+    private RawStreamListener getRawListener(StreamListener listener) {
+      if (listener instanceof RawStreamListener && UTF_8.equals(charset)) {
+        return (RawStreamListener) listener;
+      }
+      return null;
+    }
+
     @Override
     public LoggableInputStream wrapInputStream(final InputStream inputStream) {
       return new LoggableInputStream() {
@@ -74,7 +89,12 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
     }
 
     @Override
-    public LoggableOutputStream wrapOutputStream(final OutputStream outputStream) {
+    public LoggableOutputStream wrapOutputStream(OutputStream socketOutputStream) {
+      // Buffered, so that a message goes out in a single write rather than in small
+      // segments delayed by Nagle's algorithm. Every writer (SocketConnection, Hybi00
+      // WebSocket and the HTTP requests of WipBackendImpl) flushes after each message;
+      // SocketConnection also relies on it to coalesce queued messages.
+      final OutputStream outputStream = new BufferedOutputStream(socketOutputStream);
       return new LoggableOutputStream() {
         @Override public OutputStream getOutputStream() {
           return outputStream;
@@ -87,7 +107,8 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
 
     /**
      * Wraps original {@link LoggableInputStream} with another one that delegates all calls to the
-     * original one but additionally sends all the data to StreamListener.
+     * original one but additionally sends all the data to StreamListener. A
+     * {@link RawStreamListener} gets bytes as they are (see {@link #getRawListener}).
      *
      * @param originalLoggableReader stream that has to be wrapped
      * @param charset that is used to convert bytes to characters in log
@@ -98,6 +119,7 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
     public LoggableInputStream wrapInputStream(final LoggableInputStream loggableReader,
         final StreamListener listener) {
       final InputStream originalInputStream = loggableReader.getInputStream();
+      final RawStreamListener rawListener = getRawListener(listener);
 
       final InputStream wrappedInputStream = new InputStream() {
         private final ByteToCharConverter byteToCharConverter = new ByteToCharConverter(charset);
@@ -119,7 +141,9 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
 
         private int readImpl(byte[] buf, int off, int len) throws IOException {
           int res = originalInputStream.read(buf, off, len);
-          if (res > 0) {
+          if (res > 0 && rawListener != null) {
+            rawListener.addTextBytes(buf, off, res);
+          } else if (res > 0) {
             CharBuffer charBuffer = byteToCharConverter.convert(ByteBuffer.wrap(buf, off, res));
             listener.addContent(charBuffer);
           }
@@ -139,7 +163,8 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
 
     /**
      * Wraps original {@link LoggableOutputStream} with another one that delegates all calls to the
-     * original one but additionally sends all the data to StreamListener.
+     * original one but additionally sends all the data to StreamListener. A
+     * {@link RawStreamListener} gets bytes as they are (see {@link #getRawListener}).
      *
      * @param originalLoggableWriter stream that has to be wrapped
      * @param charset that is used to convert bytes to characters in log
@@ -153,6 +178,7 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
         return originalLoggableWriter;
       }
       final OutputStream originalOutputStream = originalLoggableWriter.getOutputStream();
+      final RawStreamListener rawListener = getRawListener(listener);
       final OutputStream wrappedOutputStream = new OutputStream() {
         private final ByteToCharConverter byteToCharConverter = new ByteToCharConverter(charset);
 
@@ -169,7 +195,11 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
         @Override
         public void write(int b) throws IOException {
           originalOutputStream.write(b);
-          writeToListener(ByteBuffer.wrap(new byte[] { (byte) b }));
+          if (rawListener != null) {
+            rawListener.addTextBytes(new byte[] { (byte) b }, 0, 1);
+          } else {
+            writeToListener(ByteBuffer.wrap(new byte[] { (byte) b }));
+          }
         }
 
         @Override
@@ -184,7 +214,11 @@ public class SocketWrapper extends AbstractSocketWrapper<SocketWrapper.LoggableI
 
         private void writeImpl(byte[] buf, int off, int len) throws IOException {
           originalOutputStream.write(buf, off, len);
-          writeToListener(ByteBuffer.wrap(buf, off, len));
+          if (rawListener != null) {
+            rawListener.addTextBytes(buf, off, len);
+          } else {
+            writeToListener(ByteBuffer.wrap(buf, off, len));
+          }
         }
 
         private void writeToListener(ByteBuffer byteBuffer) {
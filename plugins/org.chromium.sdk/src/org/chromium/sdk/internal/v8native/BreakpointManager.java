@@ -19,10 +19,13 @@ import org.chromium.sdk.Breakpoint.Target;
 import org.chromium.sdk.BreakpointTypeExtension;
 import org.chromium.sdk.JavascriptVm;
 import org.chromium.sdk.JavascriptVm.BreakpointCallback;
+import org.chromium.sdk.JavascriptVm.BreakpointSpec;
+import org.chromium.sdk.JavascriptVm.BulkBreakpointCallback;
 import org.chromium.sdk.JavascriptVm.ExceptionCatchMode;
 import org.chromium.sdk.JavascriptVm.ListBreakpointsCallback;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
+import org.chromium.sdk.internal.BulkBreakpointSetter;
 import org.chromium.sdk.internal.ScriptRegExpBreakpointTarget;
 import org.chromium.sdk.internal.protocolparser.JsonProtocolParseException;
 import org.chromium.sdk.internal.v8native.BreakpointImpl.FunctionTarget;
@@ -111,6 +114,24 @@ public class BreakpointManager {
         syncCallback);
   }
 
+  /**
+   * Sends all setbreakpoint requests at once; the transport writes them out in one burst.
+   */
+  public RelayOk setBreakpoints(Collection<? extends BreakpointSpec> specs,
+      BulkBreakpointCallback callback, SyncCallback syncCallback) {
+    return bulkBreakpointSetter.setBreakpoints(specs, callback, syncCallback);
+  }
+
+  private final BulkBreakpointSetter bulkBreakpointSetter = new BulkBreakpointSetter() {
+    @Override
+    protected RelayOk setBreakpoint(BreakpointSpec spec, BreakpointCallback callback,
+        SyncCallback syncCallback) {
+      return BreakpointManager.this.setBreakpoint(spec.getTarget(), spec.getLine(),
+          spec.getColumn(), spec.isEnabled(), spec.getCondition(), spec.getIgnoreCount(),
+          callback, syncCallback);
+    }
+  };
+
   public Breakpoint getBreakpoint(Long id) {
     return idToBreakpoint.get(id);
   }
@@ -18,6 +18,7 @@ import org.chromium.sdk.JavascriptVm.SuspendCallback;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.Version;
+import org.chromium.sdk.internal.RemoteObjectCache;
 import org.chromium.sdk.internal.v8native.InternalContext.ContextDismissedCheckedException;
 import org.chromium.sdk.internal.v8native.protocol.V8ProtocolUtil;
 import org.chromium.sdk.internal.v8native.protocol.input.CommandResponse;
@@ -58,6 +59,9 @@ public class DebugSession {
 
   private volatile Version vmVersion = null;
 
+  private final RemoteObjectCache.Statistics objectCacheStatistics =
+      new RemoteObjectCache.Statistics();
+
   public DebugSession(DebugSessionManager sessionManager, V8ContextFilter contextFilter,
       V8CommandOutput v8CommandOutput, JavascriptVm javascriptVm) {
     this.scriptManager = new ScriptManager(contextFilter, this);
@@ -115,6 +119,25 @@ public class DebugSession {
     return getSessionManager().getDebugEventListener();
   }
 
+  /**
+   * @return value cache counters of all contexts of this session
+   */
+  public RemoteObjectCache.Statistics getObjectCacheStatistics() {
+    return objectCacheStatistics;
+  }
+
+  /**
+   * Sends current value cache counters to {@link DebugEventListener.VmStatusListener}.
+   */
+  public void reportObjectCacheStatistics() {
+    DebugEventListener.VmStatusListener statusListener =
+        getDebugEventListener().getVmStatusListener();
+    if (statusListener != null) {
+      statusListener.objectCacheStatisticsChanged(objectCacheStatistics.getHitCount(),
+          objectCacheStatistics.getMissCount());
+    }
+  }
+
   public BreakpointManager getBreakpointManager() {
     return breakpointManager;
   }
@@ -5,6 +5,7 @@
 package org.chromium.sdk.internal.v8native;
 
 import java.io.IOException;
+import java.util.Collection;
 
 import org.chromium.sdk.Breakpoint;
 import org.chromium.sdk.BreakpointTypeExtension;
@@ -12,8 +13,10 @@ import org.chromium.sdk.CallbackSemaphore;
 import org.chromium.sdk.FunctionScopeExtension;
 import org.chromium.sdk.IgnoreCountBreakpointExtension;
 import org.chromium.sdk.JavascriptVm;
+import org.chromium.sdk.ObjectPreviewExtension;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.RestartFrameExtension;
+import org.chromium.sdk.ScriptSearchExtension;
 import org.chromium.sdk.SyncCallback;
 import org.chromium.sdk.Version;
 import org.chromium.sdk.internal.v8native.value.JsFunctionImpl;
@@ -54,6 +57,13 @@ public abstract class JavascriptVmImpl implements JavascriptVm {
         .setBreakpoint(target, line, column, enabled, condition, callback, syncCallback);
   }
 
+  @Override
+  public RelayOk setBreakpoints(Collection<? extends BreakpointSpec> specs,
+      BulkBreakpointCallback callback, SyncCallback syncCallback) {
+    return getDebugSession().getBreakpointManager().setBreakpoints(specs, callback,
+        syncCallback);
+  }
+
   @Override
   public RelayOk listBreakpoints(final ListBreakpointsCallback callback,
       SyncCallback syncCallback) {
@@ -105,6 +115,16 @@ public abstract class JavascriptVmImpl implements JavascriptVm {
     return CallFrameImpl.RESTART_FRAME_EXTENSION;
   }
 
+  @Override
+  public ObjectPreviewExtension getObjectPreviewExtension() {
+    return null;
+  }
+
+  @Override
+  public ScriptSearchExtension getScriptSearchExtension() {
+    return null;
+  }
+
   public abstract DebugSession getDebugSession();
 
   // TODO(peter.rybin): This message will be obsolete in JavaSE-1.6.
@@ -17,6 +17,7 @@ import java.util.Map;
 import org.chromium.sdk.Script;
 import org.chromium.sdk.Script.Type;
 import org.chromium.sdk.internal.ScriptBase.Descriptor;
+import org.chromium.sdk.internal.ScriptSourceCache;
 import org.chromium.sdk.internal.v8native.protocol.V8ProtocolUtil;
 import org.chromium.sdk.internal.v8native.protocol.input.data.ScriptHandle;
 import org.chromium.sdk.internal.v8native.protocol.input.data.SomeHandle;
@@ -46,6 +47,9 @@ public class ScriptManager {
   private final V8ContextFilter contextFilter;
   private final DebugSession debugSession;
 
+  /** Persistent source cache or null. */
+  private final ScriptSourceCache sourceCache = ScriptSourceCache.getConfigured();
+
   ScriptManager(V8ContextFilter contextFilter, DebugSession debugSession) {
     this.contextFilter = contextFilter;
     this.debugSession = debugSession;
@@ -67,7 +71,55 @@ public class ScriptManager {
     return theScript;
   }
 
+  /**
+   * Adds a script using a "scripts" V8 response that was requested without sources. The source
+   * is taken from the persistent cache.
+   *
+   * @return the new script or {@code null} if the source is not cached or the response does not
+   *         contain a valid script JSON
+   */
+  public Script addScriptFromCache(ScriptHandle scriptBody, List<SomeHandle> refs) {
+    if (sourceCache == null) {
+      return null;
+    }
+    String fingerprint = getCacheFingerprint(scriptBody);
+    if (fingerprint == null) {
+      return null;
+    }
+    String source = sourceCache.get(fingerprint);
+    if (source == null) {
+      return null;
+    }
+    ScriptImpl theScript = addScriptImpl(scriptBody, refs, source);
+    if (theScript != null) {
+      debugSession.getSessionManager().getDebugEventListener().scriptLoaded(theScript);
+    }
+    return theScript;
+  }
+
+  /**
+   * @return whether script sources may be taken from the persistent cache
+   */
+  public boolean isSourceCacheEnabled() {
+    return sourceCache != null;
+  }
+
   ScriptImpl addScriptImpl(ScriptHandle scriptBody, List<SomeHandle> refs) {
+    ScriptImpl theScript = addScriptImpl(scriptBody, refs, null);
+    if (theScript != null && sourceCache != null && scriptBody.source() != null) {
+      String fingerprint = getCacheFingerprint(scriptBody);
+      if (fingerprint != null) {
+        sourceCache.put(fingerprint, scriptBody.source());
+      }
+    }
+    return theScript;
+  }
+
+  /**
+   * @param cachedSource source to use if the response has none or null
+   */
+  private ScriptImpl addScriptImpl(ScriptHandle scriptBody, List<SomeHandle> refs,
+      String cachedSource) {
     ScriptImpl theScript = findById(V8ProtocolUtil.getScriptIdFromResponse(scriptBody));
     synchronized (this) {
       if (theScript == null) {
@@ -80,11 +132,26 @@ public class ScriptManager {
       }
       if (scriptBody.source() != null) {
         setSourceCode(scriptBody, theScript);
+      } else if (cachedSource != null) {
+        theScript.setSource(cachedSource);
       }
     }
     return theScript;
   }
 
+  /**
+   * @return a string that identifies the script across debug sessions or null
+   *     for a script without name
+   */
+  private static String getCacheFingerprint(ScriptHandle script) {
+    String name = script.name();
+    if (name == null) {
+      return null;
+    }
+    return "v8:" + name + ':' + script.lineOffset() + ':' + script.columnOffset() + ':' +
+        script.lineCount() + ':' + script.sourceLength();
+  }
+
   public void scriptCollected(long scriptId) {
     ScriptImpl script;
     synchronized (this) {
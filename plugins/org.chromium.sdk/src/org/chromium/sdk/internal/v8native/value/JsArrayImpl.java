@@ -13,6 +13,7 @@ import java.util.TreeMap;
 
 import org.chromium.sdk.JsArray;
 import org.chromium.sdk.JsFunction;
+import org.chromium.sdk.JsValue;
 import org.chromium.sdk.JsVariable;
 import org.chromium.sdk.util.JavaScriptExpressionBuilder;
 import org.chromium.sdk.util.MethodIsBlockingException;
@@ -42,8 +43,34 @@ class JsArrayImpl extends JsObjectBase<JsArrayImpl.ArrayPropertyData> implements
     return getPropertyData(true).ensureElementsMap();
   }
 
+  @Override
+  public SortedMap<Long, ? extends JsVariable> getRange(long from, long to)
+      throws MethodIsBlockingException {
+    ArrayPropertyData propertyData = getPropertyDataIfLoaded();
+    if (propertyData == null) {
+      // V8 'lookup' always returns all properties of an array, so we copy the range
+      // into a temporary object on remote and only load it.
+      SortedMap<Long, JsVariableBase> range = loadRangeFromRemote(from, to);
+      if (range != null) {
+        return range;
+      }
+      propertyData = getPropertyData(true);
+    }
+    return propertyData.ensureElementsMap().subMap(from, to);
+  }
+
   @Override
   public long getLength() throws MethodIsBlockingException {
+    if (getPropertyDataIfLoaded() == null) {
+      JsValue lengthValue = evaluateWithThisObject(THIS_OBJECT_VAR_NAME + ".length");
+      if (lengthValue != null && lengthValue.getType() == JsValue.Type.TYPE_NUMBER) {
+        try {
+          return Long.parseLong(lengthValue.getValueString());
+        } catch (NumberFormatException e) {
+          // Fall through and load all elements.
+        }
+      }
+    }
     SortedMap<Long, ?> map = getPropertyData(true).ensureElementsMap();
     if (map.isEmpty()) {
       return 0;
@@ -78,6 +105,48 @@ class JsArrayImpl extends JsObjectBase<JsArrayImpl.ArrayPropertyData> implements
     return null;
   }
 
+  /**
+   * @return elements of the range or null if remote failed to evaluate the helper expression
+   */
+  private SortedMap<Long, JsVariableBase> loadRangeFromRemote(long from, long to)
+      throws MethodIsBlockingException {
+    String expression = "(" + RANGE_FUNCTION + ")(" + THIS_OBJECT_VAR_NAME + ", " + from +
+        ", " + to + ")";
+    JsValue rangeValue = evaluateWithThisObject(expression);
+    if (!(rangeValue instanceof JsObjectBase)) {
+      return null;
+    }
+    JsObjectBase<?> rangeObject = (JsObjectBase<?>) rangeValue;
+    SortedMap<Long, JsVariableBase> map = new TreeMap<Long, JsVariableBase>();
+    for (JsVariableBase prop : rangeObject.getProperties()) {
+      Long index = getElementIndex(prop);
+      if (index != null) {
+        map.put(index, prop);
+      }
+    }
+    return Collections.unmodifiableSortedMap(Collections.synchronizedSortedMap(map));
+  }
+
+  private static Long getElementIndex(JsVariableBase prop) {
+    Object name = prop.getRawNameAsObject();
+    if (name instanceof Long) {
+      Long index = (Long) name;
+      if (!JavaScriptExpressionBuilder.checkArrayIndexValue(index)) {
+        return null;
+      }
+      return index;
+    } else {
+      return JavaScriptExpressionBuilder.parsePropertyNameAsArrayIndex(name.toString());
+    }
+  }
+
+  /**
+   * Copies existing elements of the range into a new object, keeping their indexes.
+   */
+  private static final String RANGE_FUNCTION = "function(a, from, to) { var r = {}; " +
+      "for (var i = from, end = Math.min(to, a.length); i < end; i++) { " +
+      "if (i in a) { r[i] = a[i]; } } return r; }";
+
   @Override
   protected ArrayPropertyData wrapBasicData(BasicPropertyData basicPropertyData) {
     return new ArrayPropertyData(basicPropertyData);
@@ -114,19 +183,9 @@ class JsArrayImpl extends JsObjectBase<JsArrayImpl.ArrayPropertyData> implements
         SortedMap<Long, JsVariableBase> map = new TreeMap<Long, JsVariableBase>();
 
         for (JsVariableBase prop : basicPropertyData.getPropertyList()) {
-          Object name = prop.getRawNameAsObject();
-          Long key;
-          if (name instanceof Long) {
-            Long index = (Long) name;
-            if (!JavaScriptExpressionBuilder.checkArrayIndexValue(index)) {
-              continue;
-            }
-            key = index;
-          } else {
-            key = JavaScriptExpressionBuilder.parsePropertyNameAsArrayIndex(name.toString());
-            if (key == null) {
-              continue;
-            }
+          Long key = getElementIndex(prop);
+          if (key == null) {
+            continue;
           }
           map.put(key, prop);
         }
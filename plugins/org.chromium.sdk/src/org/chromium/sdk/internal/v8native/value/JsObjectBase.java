@@ -12,9 +12,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.chromium.sdk.JsEvaluateContext;
+import org.chromium.sdk.JsEvaluateContext.ResultOrException;
 import org.chromium.sdk.JsFunction;
 import org.chromium.sdk.JsObject;
+import org.chromium.sdk.JsValue;
 import org.chromium.sdk.JsVariable;
+import org.chromium.sdk.internal.PropertyPageSupport;
 import org.chromium.sdk.internal.v8native.InternalContext;
 import org.chromium.sdk.internal.v8native.protocol.output.EvaluateMessage;
 import org.chromium.sdk.util.AsyncFuture;
@@ -91,6 +95,40 @@ public abstract class JsObjectBase<D> extends JsValueBase implements JsObject {
     return getBasicPropertyData(true).getPropertyMap().get(name);
   }
 
+  @Override
+  public PropertyPage getPropertyPage(String continuationToken, int maxCount)
+      throws MethodIsBlockingException {
+    long start = PropertyPageSupport.parseContinuationToken(continuationToken);
+    if (continuationToken == null && getPropertyDataIfLoaded() != null) {
+      return PropertyPageSupport.createFullPage(this);
+    }
+    String expression = "(" + PropertyPageSupport.createPageFunction(start, maxCount) +
+        ").call(" + THIS_OBJECT_VAR_NAME + ")";
+    JsValue pageValue = evaluateWithThisObject(expression);
+    if (pageValue instanceof JsObjectBase) {
+      JsObjectBase<?> pageObject = (JsObjectBase<?>) pageValue;
+      return PropertyPageSupport.createPage(pageObject.getProperties(), start, maxCount);
+    }
+    if (start != 0) {
+      throw new RuntimeException("Failed to load property page from remote");
+    }
+    // The object is small or the helper function has failed.
+    return PropertyPageSupport.createFullPage(this);
+  }
+
+  @Override
+  public int getPropertyCountIfKnown() {
+    D propertyData = getPropertyDataIfLoaded();
+    if (propertyData != null) {
+      return unwrapBasicData(propertyData).getPropertyList().size();
+    }
+    SubpropertiesMirror subpropertiesMirror = valueLoader.getSubpropertiesIfCached(ref);
+    if (subpropertiesMirror == null) {
+      return -1;
+    }
+    return subpropertiesMirror.getProperties().size();
+  }
+
   @Override
   public String getClassName() {
     return className;
@@ -119,6 +157,32 @@ public abstract class JsObjectBase<D> extends JsValueBase implements JsObject {
     return valueLoader.getInternalContext();
   }
 
+  /**
+   * Evaluates an expression in global context with this object available as
+   * {@link #THIS_OBJECT_VAR_NAME}.
+   * @return the result or null if the evaluation failed
+   */
+  protected JsValue evaluateWithThisObject(String expression) throws MethodIsBlockingException {
+    JsEvaluateContext evaluateContext =
+        getInternalContext().getUserContext().getGlobalEvaluateContext();
+    final JsValue[] result = { null };
+    JsEvaluateContext.EvaluateCallback callback = new JsEvaluateContext.EvaluateCallback() {
+      @Override
+      public void success(ResultOrException resultOrException) {
+        result[0] = resultOrException.getResult();
+      }
+
+      @Override
+      public void failure(Exception cause) {
+      }
+    };
+    evaluateContext.evaluateSync(expression,
+        Collections.singletonMap(THIS_OBJECT_VAR_NAME, this), callback);
+    return result[0];
+  }
+
+  protected static final String THIS_OBJECT_VAR_NAME = "__chromeSdkObject";
+
   protected long getRef() {
     return ref;
   }
@@ -149,6 +213,24 @@ public abstract class JsObjectBase<D> extends JsValueBase implements JsObject {
     return propertyDataRef.get().getSync();
   }
 
+  /**
+   * Returns property data only if it has already been loaded and is still fresh.
+   * Never blocks.
+   * @return property data or null
+   */
+  protected D getPropertyDataIfLoaded() {
+    AsyncFuture<D> future = propertyDataRef.get();
+    if (future == null || !future.isDone()) {
+      return null;
+    }
+    D result = future.getSync();
+    int currentCacheState = getRemoteValueMapping().getCurrentCacheState();
+    if (unwrapBasicData(result).getCacheState() != currentCacheState) {
+      return null;
+    }
+    return result;
+  }
+
   /**
    * Convenience method that gets property data and returns wrapped {@link BasicPropertyData}.
    */
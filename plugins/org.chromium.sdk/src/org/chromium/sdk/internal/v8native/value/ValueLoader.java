@@ -31,6 +31,12 @@ public abstract class ValueLoader implements RemoteValueMapping {
   public abstract SubpropertiesMirror getOrLoadSubproperties(Long ref)
       throws MethodIsBlockingException;
 
+  /**
+   * Looks up {@link ValueMirror} in map. Never blocks.
+   * @return property references or null if they haven't been loaded yet
+   */
+  public abstract SubpropertiesMirror getSubpropertiesIfCached(Long ref);
+
   /**
    * For each PropertyReference from propertyRefs tries to either:
    * 1. read it from PropertyReference (possibly cached value) or
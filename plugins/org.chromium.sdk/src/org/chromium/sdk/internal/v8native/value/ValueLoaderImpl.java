@@ -14,9 +14,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.chromium.sdk.CallbackSemaphore;
 import org.chromium.sdk.JsValue;
 import org.chromium.sdk.RelayOk;
 import org.chromium.sdk.SyncCallback;
@@ -50,6 +53,8 @@ import org.json.simple.JSONObject;
  * collects data as reported by various addDataToMap methods.
  * <p>V8 typically sends a lot of (unsolicited) data about properties. There could be various
  * strategies about whether to parse and add them into a map or save parsing time and ignore.
+ * <p>The map only lives as long as the debug context: V8 reassigns handles every time VM
+ * suspends, so a mirror cannot be verified to belong to the same object after resume.
  */
 public class ValueLoaderImpl extends ValueLoader {
 
@@ -63,6 +68,8 @@ public class ValueLoaderImpl extends ValueLoader {
 
   private final AtomicInteger cacheStateRef = new AtomicInteger(1);
 
+  private final LookupCoalescer lookupCoalescer = new LookupCoalescer();
+
   public ValueLoaderImpl(InternalContext context) {
     this.context = context;
     this.loadableStringFactory = new StringFactory();
@@ -154,6 +161,15 @@ public class ValueLoaderImpl extends ValueLoader {
 
   private static final boolean PRE_PARSE_PROPERTIES = false;
 
+  @Override
+  public SubpropertiesMirror getSubpropertiesIfCached(Long ref) {
+    ValueMirror mirror = getSafe(refToMirror, ref);
+    if (mirror == null) {
+      return null;
+    }
+    return mirror.getProperties();
+  }
+
   /**
    * Looks up {@link ValueMirror} in map, loads them if needed or reloads them
    * if property data is unavailable (or expired).
@@ -258,6 +274,11 @@ public class ValueLoaderImpl extends ValueLoader {
       }
     }
 
+    DebugSession debugSession = context.getDebugSession();
+    debugSession.getObjectCacheStatistics().recordLookups(
+        propertyRefs.size() - needsLoading.size(), needsLoading.size());
+    debugSession.reportObjectCacheStatistics();
+
     if (!needsLoading.isEmpty()) {
       List<Long> refIds = getRefIdFromReferences(needsLoading);
       List<ValueMirror> loadedMirrors = loadValuesFromRemote(refIds);
@@ -285,6 +306,7 @@ public class ValueLoaderImpl extends ValueLoader {
 
   /**
    * Requests values from remote via "lookup" command. Automatically caches received data.
+   * Concurrent requests are merged into a single command (see {@link LookupCoalescer}).
    * @param propertyRefIds list of ref ids we need to look up
    * @return loaded value mirrors in the same order as in propertyRefIds
    */
@@ -293,24 +315,164 @@ public class ValueLoaderImpl extends ValueLoader {
     if (propertyRefIds.isEmpty()) {
       return Collections.emptyList();
     }
+    return lookupCoalescer.load(propertyRefIds);
+  }
 
-    DebuggerMessage message = DebuggerMessageFactory.lookup(propertyRefIds, false);
+  /**
+   * Merges ref ids requested by concurrent callers into one "lookup" command per Dispatch
+   * thread tick. Callers put their ids into a pending batch; the first caller schedules
+   * a loopback task that sends the batch. Until the task runs, other callers join the same
+   * batch. Ids that are already pending or in flight are not requested again, the caller
+   * simply waits for the batch that has them. All callers of a batch share its outcome:
+   * if the command fails, each of them gets the exception.
+   */
+  private class LookupCoalescer {
+    // Access must be synchronized on this.
+    private LookupBatch pendingBatch = null;
+    private final Map<Long, LookupBatch> refToBatch = new HashMap<Long, LookupBatch>();
+
+    List<ValueMirror> load(List<Long> refIds) throws MethodIsBlockingException {
+      Map<Long, LookupBatch> requestBatches = new HashMap<Long, LookupBatch>(refIds.size());
+      LookupBatch batchToSchedule = null;
+      synchronized (this) {
+        for (Long ref : refIds) {
+          LookupBatch batch = refToBatch.get(ref);
+          if (batch == null) {
+            if (pendingBatch == null) {
+              pendingBatch = new LookupBatch();
+              batchToSchedule = pendingBatch;
+            }
+            batch = pendingBatch;
+            batch.refIds.add(ref);
+            refToBatch.put(ref, batch);
+          }
+          requestBatches.put(ref, batch);
+        }
+      }
+      if (batchToSchedule != null) {
+        scheduleSend(batchToSchedule);
+      }
 
-    V8BlockingCallback<List<ValueMirror>> callback =
-        new V8BlockingCallback<List<ValueMirror>>() {
-      @Override
-      protected List<ValueMirror> handleSuccessfulResponse(
-          SuccessCommandResponse response) {
-        return readResponseFromLookup(response, propertyRefIds);
+      List<ValueMirror> result = new ArrayList<ValueMirror>(refIds.size());
+      for (Long ref : refIds) {
+        LookupBatch batch = requestBatches.get(ref);
+        batch.await();
+        ValueMirror mirror = getSafe(refToMirror, ref);
+        if (mirror == null) {
+          // Cache might have been cleared meanwhile.
+          mirror = getSafe(batch.loadedMirrors, ref);
+        }
+        if (mirror == null) {
+          throw new ValueLoadException("Failed to find value for ref=" + ref);
+        }
+        result.add(mirror);
       }
-    };
+      return result;
+    }
 
-    try {
-      return V8Helper.callV8Sync(context, message, callback);
-    } catch (ContextDismissedCheckedException e) {
-      context.getDebugSession().maybeRethrowContextException(e);
-      // or
-      throw new ValueLoadException("Invalid context", e);
+    private void scheduleSend(final LookupBatch batch) {
+      Runnable runnable = new Runnable() {
+        @Override
+        public void run() {
+          closeBatch(batch);
+          send(batch);
+        }
+      };
+      try {
+        context.getDebugSession().sendLoopbackMessage(runnable, null);
+      } catch (RuntimeException e) {
+        closeBatch(batch);
+        batch.exception = e;
+        done(batch);
+      }
+    }
+
+    /**
+     * Stops new ids from joining the batch.
+     */
+    private synchronized void closeBatch(LookupBatch batch) {
+      if (pendingBatch == batch) {
+        pendingBatch = null;
+      }
+    }
+
+    private void send(final LookupBatch batch) {
+      final List<Long> refIds = batch.refIds;
+      DebuggerMessage message = DebuggerMessageFactory.lookup(refIds, false);
+
+      V8CommandCallbackBase callback = new V8CommandCallbackBase() {
+        @Override
+        public void success(SuccessCommandResponse successResponse) {
+          List<ValueMirror> mirrors = readResponseFromLookup(successResponse, refIds);
+          for (int i = 0; i < refIds.size(); i++) {
+            batch.loadedMirrors.put(refIds.get(i), mirrors.get(i));
+          }
+        }
+        @Override
+        public void failure(String message, FailedCommandResponse.ErrorDetails errorDetails) {
+          batch.exception = new Exception("Failure: " + message);
+        }
+      };
+      SyncCallback syncCallback = new SyncCallback() {
+        @Override
+        public void callbackDone(RuntimeException e) {
+          if (e != null && batch.exception == null) {
+            batch.exception = e;
+          }
+          done(batch);
+        }
+      };
+
+      try {
+        context.sendV8CommandAsync(message, true, callback, syncCallback);
+      } catch (ContextDismissedCheckedException e) {
+        batch.contextDismissed = e;
+        done(batch);
+      } catch (RuntimeException e) {
+        batch.exception = e;
+        done(batch);
+      }
+    }
+
+    private void done(LookupBatch batch) {
+      synchronized (this) {
+        for (Long ref : batch.refIds) {
+          if (refToBatch.get(ref) == batch) {
+            refToBatch.remove(ref);
+          }
+        }
+      }
+      batch.latch.countDown();
+    }
+  }
+
+  private class LookupBatch {
+    final List<Long> refIds = new ArrayList<Long>();
+    final Map<Long, ValueMirror> loadedMirrors = new HashMap<Long, ValueMirror>();
+    final CountDownLatch latch = new CountDownLatch(1);
+    // Set before latch is released.
+    volatile Exception exception = null;
+    volatile ContextDismissedCheckedException contextDismissed = null;
+
+    void await() throws MethodIsBlockingException {
+      boolean done;
+      try {
+        done = latch.await(CallbackSemaphore.OPERATION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ValueLoadException(e);
+      }
+      if (!done) {
+        throw new ValueLoadException("Timeout");
+      }
+      if (contextDismissed != null) {
+        context.getDebugSession().maybeRethrowContextException(contextDismissed);
+        // or
+        throw new ValueLoadException("Invalid context", contextDismissed);
+      }
+      if (exception != null) {
+        throw new ValueLoadException(exception);
+      }
     }
   }
 
@@ -0,0 +1,479 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.chromium.sdk.ConnectionLogger;
+
+/**
+ * Connection logger that captures traffic without slowing down connection threads.
+ * Stream listeners only copy bytes with a timestamp into an off-heap ring buffer (one per
+ * direction, lock-free, single producer and single consumer). A background thread drains
+ * the buffers into a compact binary file. The file is converted into a text by
+ * {@link #render} only when someone views the log.
+ * <p>When a buffer is full, the record is dropped rather than blocking the connection;
+ * the log then contains a note about the dropped records.
+ */
+public class RingBufferConnectionLogger implements ConnectionLogger {
+  private static final Logger LOGGER =
+      Logger.getLogger(RingBufferConnectionLogger.class.getName());
+
+  /**
+   * System property that sets a size of each ring buffer in bytes.
+   */
+  private static final String BUFFER_SIZE_PROPERTY =
+      "org.chromium.sdk.connectionLogBufferSize";
+
+  private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  private static final long DRAIN_INTERVAL_NS = 10L * 1000 * 1000;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final byte[] FILE_SIGNATURE = { 'C', 'S', 'D', 'K', 'L', 'O', 'G', '1' };
+
+  private static final byte[] EMPTY_BYTES = new byte[0];
+
+  private static final byte KIND_TEXT = 0;
+  private static final byte KIND_BINARY = 1;
+  private static final byte KIND_SEPARATOR = 2;
+  private static final byte KIND_DROPPED = 3;
+
+  private static final byte DIRECTION_INCOMING = 0;
+  private static final byte DIRECTION_OUTGOING = 1;
+
+  private final File logFile;
+  private final Ring incomingRing;
+  private final Ring outgoingRing;
+  private final Thread drainThread;
+  private volatile boolean eosReceived = false;
+  private volatile ConnectionCloser connectionCloser = null;
+
+  public RingBufferConnectionLogger(File logFile) {
+    this(logFile, Integer.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE));
+  }
+
+  public RingBufferConnectionLogger(File logFile, int bufferSize) {
+    this.logFile = logFile;
+    // Orders records of both directions.
+    AtomicLong sequenceCounter = new AtomicLong();
+    this.incomingRing = new Ring(DIRECTION_INCOMING, bufferSize, sequenceCounter);
+    this.outgoingRing = new Ring(DIRECTION_OUTGOING, bufferSize, sequenceCounter);
+    this.drainThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drainToFile();
+      }
+    }, "Connection log writer");
+    this.drainThread.setDaemon(true);
+  }
+
+  @Override
+  public StreamListener getIncomingStreamListener() {
+    return incomingRing;
+  }
+
+  @Override
+  public StreamListener getOutgoingStreamListener() {
+    return outgoingRing;
+  }
+
+  @Override
+  public void setConnectionCloser(ConnectionCloser connectionCloser) {
+    this.connectionCloser = connectionCloser;
+  }
+
+  public ConnectionCloser getConnectionCloser() {
+    return connectionCloser;
+  }
+
+  @Override
+  public void start() {
+    drainThread.start();
+  }
+
+  @Override
+  public void handleEos() {
+    eosReceived = true;
+    LockSupport.unpark(drainThread);
+  }
+
+  /**
+   * Waits until all traffic received before EOS is written to the file and the file
+   * is closed.
+   * @return whether the file has been closed within the timeout
+   */
+  public boolean waitUntilClosed(long timeoutMs) throws InterruptedException {
+    drainThread.join(timeoutMs);
+    return !drainThread.isAlive();
+  }
+
+  /**
+   * @return number of records that have been dropped because a buffer was full
+   */
+  public long getDroppedRecordCount() {
+    return incomingRing.droppedCount.get() + outgoingRing.droppedCount.get();
+  }
+
+  /**
+   * Converts a log file into a human-readable text.
+   */
+  public static void render(File logFile, Writer output) throws IOException {
+    DataInputStream input =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+    try {
+      byte[] signature = new byte[FILE_SIGNATURE.length];
+      input.readFully(signature);
+      if (!Arrays.equals(signature, FILE_SIGNATURE)) {
+        throw new IOException("Not a connection log file: " + logFile);
+      }
+      SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+      int lastDirection = -1;
+      StringBuilder builder = new StringBuilder();
+      while (true) {
+        byte direction;
+        byte kind;
+        long time;
+        byte[] payload;
+        try {
+          direction = input.readByte();
+          kind = input.readByte();
+          time = input.readLong();
+          payload = new byte[input.readInt()];
+          input.readFully(payload);
+        } catch (EOFException e) {
+          // The file may still be being written.
+          break;
+        }
+        if (direction != lastDirection) {
+          if (lastDirection != -1) {
+            output.append('\n');
+          }
+          output.append("> ")
+              .append(direction == DIRECTION_INCOMING ? "Received" : "Sent")
+              .append(" at ").append(timeFormat.format(new Date(time))).append(":\n");
+          lastDirection = direction;
+        }
+        switch (kind) {
+          case KIND_TEXT:
+            output.append(new String(payload, UTF_8));
+            break;
+          case KIND_BINARY:
+            builder.setLength(0);
+            for (byte b : payload) {
+              dumpByte(b, builder);
+            }
+            output.append(builder);
+            break;
+          case KIND_SEPARATOR:
+            output.append("\n> end of message\n");
+            break;
+          case KIND_DROPPED:
+            long count = ByteBuffer.wrap(payload).getLong();
+            output.append("\n> " + count + " records dropped\n");
+            break;
+          default:
+            throw new IOException("Unknown record kind " + kind);
+        }
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  private void drainToFile() {
+    LogFileWriter writer;
+    try {
+      writer = new LogFileWriter(logFile);
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Failed to open connection log file", e);
+      return;
+    }
+    try {
+      while (true) {
+        // Read the flag before draining, so that nothing sent before EOS is lost.
+        boolean eos = eosReceived;
+        if (!drainRings(writer)) {
+          writer.flush();
+          if (eos) {
+            break;
+          }
+          LockSupport.parkNanos(DRAIN_INTERVAL_NS);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.log(Level.SEVERE, "Failed to write connection log", e);
+    } finally {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        LOGGER.log(Level.SEVERE, "Failed to close connection log", e);
+      }
+    }
+  }
+
+  /**
+   * Moves all available records into the file, merging both directions in order.
+   * @return whether there was anything to move
+   */
+  private boolean drainRings(LogFileWriter writer) throws IOException {
+    boolean hasData = incomingRing.reportDropped(writer);
+    hasData |= outgoingRing.reportDropped(writer);
+    while (true) {
+      long incomingSequence = incomingRing.peekSequence();
+      long outgoingSequence = outgoingRing.peekSequence();
+      Ring ring;
+      if (incomingSequence == -1) {
+        if (outgoingSequence == -1) {
+          return hasData;
+        }
+        ring = outgoingRing;
+      } else if (outgoingSequence == -1 || incomingSequence < outgoingSequence) {
+        ring = incomingRing;
+      } else {
+        ring = outgoingRing;
+      }
+      ring.transferRecord(writer);
+      hasData = true;
+    }
+  }
+
+  private static void dumpByte(byte b, StringBuilder output) {
+    int code = (b + 256) % 256;
+    output.append('%');
+    output.append((char) ('0' + code / 100 % 10));
+    output.append((char) ('0' + code / 10 % 10));
+    output.append((char) ('0' + code % 10));
+  }
+
+  /**
+   * Ring buffer of a single direction. The connection thread is its only producer and
+   * the drain thread is its only consumer. Each side owns a position counter and only reads
+   * the other one, so no locks are needed.
+   * <p>Record layout: kind (1 byte), sequence number (8), time (8), payload length (4),
+   * payload.
+   */
+  private static class Ring implements RawStreamListener {
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 4;
+
+    private final byte direction;
+    private final AtomicLong sequenceCounter;
+    private final int capacity;
+    // Total number of bytes ever written and read.
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    // Producer-owned.
+    private final ByteBuffer writeView;
+    private final ByteBuffer writeHeader = ByteBuffer.allocate(HEADER_SIZE);
+
+    // Consumer-owned.
+    private final ByteBuffer readView;
+    private final ByteBuffer readHeader = ByteBuffer.allocate(HEADER_SIZE);
+    private byte[] payloadBuffer = new byte[256];
+    private long reportedDroppedCount = 0;
+
+    Ring(byte direction, int capacity, AtomicLong sequenceCounter) {
+      this.direction = direction;
+      this.capacity = capacity;
+      this.sequenceCounter = sequenceCounter;
+      ByteBuffer buffer = ByteBuffer.allocateDirect(capacity);
+      this.writeView = buffer.duplicate();
+      this.readView = buffer.duplicate();
+    }
+
+    @Override
+    public void addContent(CharSequence text) {
+      byte[] bytes = text.toString().getBytes(UTF_8);
+      addRecord(KIND_TEXT, bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void addSeparator() {
+      addRecord(KIND_SEPARATOR, EMPTY_BYTES, 0, 0);
+    }
+
+    @Override
+    public void addTextBytes(byte[] bytes, int offset, int length) {
+      addRecord(KIND_TEXT, bytes, offset, length);
+    }
+
+    @Override
+    public void addBinaryBytes(byte[] bytes, int offset, int length) {
+      addRecord(KIND_BINARY, bytes, offset, length);
+    }
+
+    private void addRecord(byte kind, byte[] bytes, int offset, int length) {
+      long sequence = sequenceCounter.incrementAndGet();
+      long size = HEADER_SIZE + length;
+      long currentTail = tail.get();
+      if (size > capacity - (currentTail - head.get())) {
+        droppedCount.incrementAndGet();
+        return;
+      }
+      writeHeader.clear();
+      writeHeader.put(kind).putLong(sequence).putLong(System.currentTimeMillis())
+          .putInt(length);
+      put(currentTail, writeHeader.array(), 0, HEADER_SIZE);
+      put(currentTail + HEADER_SIZE, bytes, offset, length);
+      // Publishes the record to the consumer.
+      tail.lazySet(currentTail + size);
+    }
+
+    private void put(long position, byte[] bytes, int offset, int length) {
+      int index = (int) (position % capacity);
+      int firstPart = Math.min(length, capacity - index);
+      writeView.position(index);
+      writeView.put(bytes, offset, firstPart);
+      if (firstPart < length) {
+        writeView.position(0);
+        writeView.put(bytes, offset + firstPart, length - firstPart);
+      }
+    }
+
+    /**
+     * @return sequence number of the next record or -1 if the ring is empty
+     */
+    long peekSequence() {
+      long currentHead = head.get();
+      if (tail.get() == currentHead) {
+        return -1;
+      }
+      get(currentHead, readHeader.array(), 0, HEADER_SIZE);
+      return readHeader.getLong(1);
+    }
+
+    /**
+     * Writes the next record to the file. Must be called right after
+     * {@link #peekSequence} returned a record.
+     */
+    void transferRecord(LogFileWriter writer) throws IOException {
+      long currentHead = head.get();
+      byte kind = readHeader.get(0);
+      long time = readHeader.getLong(9);
+      int length = readHeader.getInt(17);
+      if (payloadBuffer.length < length) {
+        payloadBuffer = new byte[Math.max(length, payloadBuffer.length * 2)];
+      }
+      get(currentHead + HEADER_SIZE, payloadBuffer, 0, length);
+      // Frees the space for the producer.
+      head.lazySet(currentHead + HEADER_SIZE + length);
+      writer.writeRecord(direction, kind, time, payloadBuffer, length);
+    }
+
+    /**
+     * Writes a note about records dropped since the last call.
+     * @return whether there was anything to report
+     */
+    boolean reportDropped(LogFileWriter writer) throws IOException {
+      long count = droppedCount.get();
+      if (count == reportedDroppedCount) {
+        return false;
+      }
+      byte[] payload = ByteBuffer.allocate(8).putLong(count - reportedDroppedCount).array();
+      reportedDroppedCount = count;
+      writer.writeRecord(direction, KIND_DROPPED, System.currentTimeMillis(), payload,
+          payload.length);
+      return true;
+    }
+
+    private void get(long position, byte[] bytes, int offset, int length) {
+      int index = (int) (position % capacity);
+      int firstPart = Math.min(length, capacity - index);
+      readView.position(index);
+      readView.get(bytes, offset, firstPart);
+      if (firstPart < length) {
+        readView.position(0);
+        readView.get(bytes, offset + firstPart, length - firstPart);
+      }
+    }
+  }
+
+  /**
+   * Writes records into the log file. Adjacent content records of the same direction and
+   * kind are merged, because connections tend to log messages in many small pieces.
+   * <p>Record layout: direction (1 byte), kind (1), time (8), payload length (4), payload.
+   */
+  private static class LogFileWriter {
+    private final DataOutputStream output;
+    private final ByteArrayOutputStream pendingPayload = new ByteArrayOutputStream();
+    private int pendingDirection = -1;
+    private byte pendingKind;
+    private long pendingTime;
+
+    LogFileWriter(File file) throws IOException {
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      output.write(FILE_SIGNATURE);
+    }
+
+    void writeRecord(byte direction, byte kind, long time, byte[] payload, int length)
+        throws IOException {
+      boolean isContent = kind == KIND_TEXT || kind == KIND_BINARY;
+      if (isContent && direction == pendingDirection && kind == pendingKind) {
+        pendingPayload.write(payload, 0, length);
+        return;
+      }
+      writePending();
+      if (isContent) {
+        pendingDirection = direction;
+        pendingKind = kind;
+        pendingTime = time;
+        pendingPayload.write(payload, 0, length);
+      } else {
+        writeRecordImpl(direction, kind, time, payload, length);
+      }
+    }
+
+    void flush() throws IOException {
+      writePending();
+      output.flush();
+    }
+
+    void close() throws IOException {
+      flush();
+      output.close();
+    }
+
+    private void writePending() throws IOException {
+      if (pendingDirection == -1) {
+        return;
+      }
+      writeRecordImpl((byte) pendingDirection, pendingKind, pendingTime,
+          pendingPayload.toByteArray(), pendingPayload.size());
+      pendingPayload.reset();
+      pendingDirection = -1;
+    }
+
+    private void writeRecordImpl(byte direction, byte kind, long time, byte[] payload,
+        int length) throws IOException {
+      output.writeByte(direction);
+      output.writeByte(kind);
+      output.writeLong(time);
+      output.writeInt(length);
+      output.write(payload, 0, length);
+    }
+  }
+}
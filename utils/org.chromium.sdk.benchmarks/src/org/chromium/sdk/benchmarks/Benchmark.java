@@ -0,0 +1,40 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+/**
+ * A single measured operation. {@link BenchmarkRunner} calls {@link #setUp()}, then runs
+ * the operation in a loop (first to warm up, then to measure) and finally calls
+ * {@link #tearDown()}.
+ * <p>An operation usually processes a whole payload set, so numbers of different benchmarks
+ * are not comparable with each other, only with previous runs of the same benchmark.
+ */
+public abstract class Benchmark {
+  private final String name;
+
+  protected Benchmark(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return a stable name used as a key in result and baseline files
+   */
+  public String getName() {
+    return name;
+  }
+
+  protected void setUp() throws Exception {
+  }
+
+  protected void tearDown() throws Exception {
+  }
+
+  /**
+   * Runs the operation once.
+   * @return any value that depends on the work done; runner consumes it so that
+   *     the compiler could not eliminate the work
+   */
+  protected abstract Object runOperation() throws Exception;
+}
@@ -0,0 +1,110 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Runs a {@link Benchmark}: warms it up for a fixed time, then measures several rounds
+ * and reports the fastest one, which is the least affected by GC and other processes.
+ * Allocation numbers are only available on VMs that support per-thread allocation counters.
+ */
+public class BenchmarkRunner {
+  private final long warmupMs;
+  private final long roundMs;
+  private final int rounds;
+
+  // Keeps operation results reachable, so that their computation is not eliminated.
+  private volatile int sink = 0;
+
+  public BenchmarkRunner(long warmupMs, long roundMs, int rounds) {
+    this.warmupMs = warmupMs;
+    this.roundMs = roundMs;
+    this.rounds = rounds;
+  }
+
+  public static class Result {
+    private final String name;
+    private final long nanosPerOperation;
+    private final long bytesPerOperation;
+
+    Result(String name, long nanosPerOperation, long bytesPerOperation) {
+      this.name = name;
+      this.nanosPerOperation = nanosPerOperation;
+      this.bytesPerOperation = bytesPerOperation;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getNanosPerOperation() {
+      return nanosPerOperation;
+    }
+
+    /**
+     * @return allocated bytes per operation or -1 if not available
+     */
+    public long getBytesPerOperation() {
+      return bytesPerOperation;
+    }
+  }
+
+  public Result run(Benchmark benchmark) throws Exception {
+    benchmark.setUp();
+    try {
+      runFor(benchmark, warmupMs);
+
+      long bestNanos = Long.MAX_VALUE;
+      long bestBytes = -1;
+      for (int i = 0; i < rounds; i++) {
+        long bytesBefore = getAllocatedBytes();
+        long timeBefore = System.nanoTime();
+        long count = runFor(benchmark, roundMs);
+        long nanos = (System.nanoTime() - timeBefore) / count;
+        long bytesAfter = getAllocatedBytes();
+        if (nanos < bestNanos) {
+          bestNanos = nanos;
+          bestBytes = bytesBefore < 0 ? -1 : (bytesAfter - bytesBefore) / count;
+        }
+      }
+      return new Result(benchmark.getName(), bestNanos, bestBytes);
+    } finally {
+      benchmark.tearDown();
+    }
+  }
+
+  /**
+   * @return number of operations run
+   */
+  private long runFor(Benchmark benchmark, long timeMs) throws Exception {
+    long deadline = System.nanoTime() + timeMs * 1000000L;
+    long count = 0;
+    int hash = 0;
+    do {
+      Object result = benchmark.runOperation();
+      hash += System.identityHashCode(result);
+      count++;
+    } while (System.nanoTime() < deadline);
+    sink += hash;
+    return count;
+  }
+
+  /**
+   * @return bytes allocated by current thread or -1 if VM does not support this
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean == false) {
+      return -1;
+    }
+    com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+    if (!sunBean.isThreadAllocatedMemorySupported()) {
+      return -1;
+    }
+    return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,171 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.chromium.sdk.DebugContext;
+import org.chromium.sdk.DebugEventListener;
+import org.chromium.sdk.JsEvaluateContext;
+import org.chromium.sdk.JsValue;
+import org.chromium.sdk.Script;
+import org.chromium.sdk.TabDebugEventListener;
+import org.chromium.sdk.internal.JsonUtil;
+import org.chromium.sdk.internal.transport.WsStubServer;
+import org.chromium.sdk.internal.websocket.Hybi17WsConnection;
+import org.chromium.sdk.internal.websocket.WsConnection;
+import org.chromium.sdk.internal.wip.WipBrowserImpl;
+import org.chromium.sdk.internal.wip.WipTabImpl;
+import org.json.simple.JSONObject;
+
+/**
+ * A benchmark of evaluate with additional context (EvaluateHack) in WIP backend. A local
+ * {@link WsStubServer} answers every command right away, so an operation costs as many local
+ * round trips as the operation takes. This does not depend on a payload set.
+ */
+class EvaluateBenchmarks {
+  private static final int TIMEOUT_MS = 10000;
+
+  private static final String OBJECT_VALUE = "{\"type\":\"object\",\"objectId\":" +
+      "\"{\\\"injectedScriptId\\\":1,\\\"id\\\":1}\",\"className\":\"Object\"," +
+      "\"description\":\"Object\"}";
+
+  static List<Benchmark> create() {
+    List<Benchmark> result = new ArrayList<Benchmark>();
+
+    result.add(new Benchmark("EvaluateHack.evaluate") {
+      private WsStubServer server;
+      private WipTabImpl tab;
+      private JsEvaluateContext evaluateContext;
+      private Map<String, JsValue> additionalContext;
+
+      @Override
+      protected void setUp() throws Exception {
+        server = new WsStubServer(new Responder());
+        server.start();
+        WsConnection socket = Hybi17WsConnection.connect(server.getAddress(), TIMEOUT_MS,
+            "/devtools/page/1", Hybi17WsConnection.MaskStrategy.TRANSPARENT_MASK, null);
+        tab = new WipTabImpl(socket, new WipBrowserImpl(server.getAddress(), null),
+            new TabListener(), "");
+        evaluateContext = tab.createPermanentValueMapping("benchmark").getEvaluateContext();
+        JsValue object = evaluate("({x: 1})", null);
+        additionalContext = Collections.singletonMap("p", object);
+      }
+
+      @Override
+      protected Object runOperation() throws Exception {
+        return evaluate("p.x", additionalContext);
+      }
+
+      @Override
+      protected void tearDown() throws Exception {
+        if (tab != null) {
+          tab.detach();
+        }
+        server.stop();
+      }
+
+      private JsValue evaluate(String expression, Map<String, JsValue> context)
+          throws Exception {
+        final BlockingQueue<Object> resultQueue = new LinkedBlockingQueue<Object>();
+        evaluateContext.evaluateAsync(expression, context,
+            new JsEvaluateContext.EvaluateCallback() {
+              @Override
+              public void success(JsEvaluateContext.ResultOrException result) {
+                resultQueue.add(result.getResult());
+              }
+
+              @Override
+              public void failure(Exception cause) {
+                resultQueue.add(cause);
+              }
+            }, null);
+        Object result = resultQueue.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (result instanceof JsValue) {
+          return (JsValue) result;
+        }
+        throw new IOException("Evaluate failed", (Exception) result);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Answers each command with a minimal successful response.
+   */
+  private static class Responder implements WsStubServer.Handler {
+    private WsStubServer server;
+
+    @Override
+    public void connected(WsStubServer server) {
+      this.server = server;
+    }
+
+    @Override
+    public void textMessageReceived(String text) {
+      String result;
+      try {
+        JSONObject request = JsonUtil.jsonObjectFromJson(text);
+        String method = JsonUtil.getAsString(request, "method");
+        if ("Page.getResourceTree".equals(method)) {
+          result = "{\"frameTree\":{\"frame\":{\"id\":\"1.1\",\"loaderId\":\"1.2\"," +
+              "\"url\":\"http://localhost/test.html\",\"securityOrigin\":\"http://localhost\"," +
+              "\"mimeType\":\"text/html\"},\"resources\":[]}}";
+        } else if ("Runtime.evaluate".equals(method) ||
+            "Runtime.callFunctionOn".equals(method)) {
+          result = "{\"result\":" + OBJECT_VALUE + ",\"wasThrown\":false}";
+        } else {
+          result = "{}";
+        }
+        server.sendTextMessage("{\"id\":" + JsonUtil.getAsLong(request, "id") +
+            ",\"result\":" + result + "}");
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private static class TabListener implements TabDebugEventListener, DebugEventListener {
+    @Override public DebugEventListener getDebugEventListener() {
+      return this;
+    }
+
+    @Override public void navigated(String newUrl) {
+    }
+
+    @Override public void closed() {
+    }
+
+    @Override public void suspended(DebugContext context) {
+    }
+
+    @Override public void resumed() {
+    }
+
+    @Override public void disconnected() {
+    }
+
+    @Override public void scriptLoaded(Script newScript) {
+    }
+
+    @Override public void scriptCollected(Script script) {
+    }
+
+    @Override public VmStatusListener getVmStatusListener() {
+      return null;
+    }
+
+    @Override public void scriptContentChanged(Script newScript) {
+    }
+  }
+}
@@ -0,0 +1,144 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.chromium.sdk.internal.transport.TransportBenchmarks;
+
+/**
+ * Runs benchmarks of transport, parsing and value rendering hot paths and optionally checks
+ * them against a baseline, so that a release could be gated on the numbers.
+ * <p>Options:
+ * <ul>
+ * <li>--recording=&lt;file&gt; &mdash; a session recording to take payloads from
+ *     (may be repeated); generated payloads are used by default
+ * <li>--filter=&lt;text&gt; &mdash; run only benchmarks with the text in their names
+ * <li>--output=&lt;file&gt; &mdash; save results (nanoseconds per operation) as
+ *     a properties file that can serve as a baseline
+ * <li>--baseline=&lt;file&gt; &mdash; results of a previous run
+ * <li>--tolerance=&lt;factor&gt; &mdash; how many times a benchmark may be slower than its
+ *     baseline (default 1.3)
+ * </ul>
+ * An option with an empty value is ignored, so that a build script could pass unset
+ * properties. Exits with code 1 if a benchmark is slower than allowed.
+ */
+public class Main {
+  private static final long WARMUP_MS =
+      Long.getLong("org.chromium.sdk.benchmarks.warmupMs", 2000);
+  private static final long ROUND_MS =
+      Long.getLong("org.chromium.sdk.benchmarks.roundMs", 1000);
+  private static final int ROUNDS =
+      Integer.getInteger("org.chromium.sdk.benchmarks.rounds", 5);
+
+  public static void main(String[] args) throws Exception {
+    List<File> recordings = new ArrayList<File>();
+    String filter = null;
+    File output = null;
+    File baselineFile = null;
+    double tolerance = 1.3;
+    for (String arg : args) {
+      if (arg.endsWith("=")) {
+        continue;
+      }
+      if (arg.startsWith("--recording=")) {
+        recordings.add(new File(getValue(arg)));
+      } else if (arg.startsWith("--filter=")) {
+        filter = getValue(arg);
+      } else if (arg.startsWith("--output=")) {
+        output = new File(getValue(arg));
+      } else if (arg.startsWith("--baseline=")) {
+        baselineFile = new File(getValue(arg));
+      } else if (arg.startsWith("--tolerance=")) {
+        tolerance = Double.parseDouble(getValue(arg));
+      } else {
+        System.err.println("Unknown option: " + arg);
+        System.exit(2);
+      }
+    }
+
+    Payloads payloads = Payloads.load(recordings);
+    System.out.println("Payloads: " + payloads.getV8Messages().size() + " V8 messages, " +
+        payloads.getWipMessages().size() + " WIP messages");
+
+    List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+    benchmarks.addAll(TransportBenchmarks.create(payloads));
+    benchmarks.addAll(WebSocketBenchmarks.create(payloads));
+    benchmarks.addAll(EvaluateBenchmarks.create());
+    benchmarks.addAll(ParserBenchmarks.create(payloads));
+    benchmarks.addAll(StringifierBenchmarks.create(payloads));
+
+    Properties baseline = null;
+    if (baselineFile != null) {
+      baseline = loadProperties(baselineFile);
+    }
+
+    BenchmarkRunner runner = new BenchmarkRunner(WARMUP_MS, ROUND_MS, ROUNDS);
+    Properties results = new Properties();
+    List<String> regressions = new ArrayList<String>();
+    for (Benchmark benchmark : benchmarks) {
+      if (filter != null && !benchmark.getName().contains(filter)) {
+        continue;
+      }
+      BenchmarkRunner.Result result = runner.run(benchmark);
+      results.setProperty(result.getName(), String.valueOf(result.getNanosPerOperation()));
+
+      StringBuilder line = new StringBuilder();
+      line.append(result.getName()).append(": ")
+          .append(result.getNanosPerOperation()).append(" ns/op, ");
+      long bytes = result.getBytesPerOperation();
+      line.append(bytes < 0 ? "n/a" : String.valueOf(bytes)).append(" bytes/op");
+
+      String baselineValue = baseline == null ? null : baseline.getProperty(result.getName());
+      if (baselineValue != null) {
+        long baselineNanos = Long.parseLong(baselineValue.trim());
+        line.append(", baseline ").append(baselineNanos).append(" ns/op");
+        if (result.getNanosPerOperation() > baselineNanos * tolerance) {
+          line.append(" REGRESSION");
+          regressions.add(result.getName());
+        }
+      }
+      System.out.println(line);
+    }
+
+    if (output != null) {
+      OutputStream stream = new FileOutputStream(output);
+      try {
+        results.store(stream, "Nanoseconds per operation");
+      } finally {
+        stream.close();
+      }
+    }
+
+    if (!regressions.isEmpty()) {
+      System.out.println("Slower than baseline by more than " + tolerance + " times: " +
+          regressions);
+      System.exit(1);
+    }
+  }
+
+  private static String getValue(String arg) {
+    return arg.substring(arg.indexOf('=') + 1);
+  }
+
+  private static Properties loadProperties(File file) throws IOException {
+    Properties properties = new Properties();
+    InputStream stream = new FileInputStream(file);
+    try {
+      properties.load(stream);
+    } finally {
+      stream.close();
+    }
+    return properties;
+  }
+}
@@ -0,0 +1,154 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.chromium.sdk.internal.JsonUtil;
+import org.chromium.sdk.internal.protocolparser.JsonProtocolParseException;
+import org.chromium.sdk.internal.v8native.protocol.input.CommandResponse;
+import org.chromium.sdk.internal.v8native.protocol.input.IncomingMessage;
+import org.chromium.sdk.internal.v8native.protocol.input.SuccessCommandResponse;
+import org.chromium.sdk.internal.v8native.protocol.input.V8NativeProtocolParser;
+import org.chromium.sdk.internal.v8native.protocol.input.V8ProtocolParserAccess;
+import org.chromium.sdk.internal.v8native.protocol.input.data.SomeHandle;
+import org.chromium.sdk.internal.wip.protocol.WipParserAccess;
+import org.chromium.sdk.internal.wip.protocol.input.WipCommandResponse;
+import org.chromium.sdk.internal.wip.protocol.input.WipEvent;
+import org.chromium.sdk.internal.wip.protocol.input.WipProtocolParser;
+import org.chromium.sdk.internal.wip.protocol.input.debugger.CallFrameValue;
+import org.chromium.sdk.internal.wip.protocol.input.debugger.PausedEventData;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Benchmarks of JSON parsing: {@link JsonUtil#jsonObjectFromJson} the way the SDK calls it,
+ * the parser it delegates to ({@link JSONParser}) for comparison, and the protocol parsers
+ * on top of it. Protocol parsers are the generated ones if the benchmarks are compiled with
+ * src-static-impl (as the build target does), otherwise they are the dynamic ones. A protocol
+ * parser operation also reads the fields the SDK reads on suspend, because parsers may parse
+ * fields lazily.
+ */
+class ParserBenchmarks {
+  static List<Benchmark> create(Payloads payloads) {
+    final List<String> v8Contents = new ArrayList<String>();
+    for (Payloads.Message message : payloads.getV8Messages()) {
+      v8Contents.add(message.getContent());
+    }
+    final List<String> wipContents = payloads.getWipMessages();
+
+    List<Benchmark> result = new ArrayList<Benchmark>();
+
+    // Protocol parsers work on top of JsonUtil, so their own cost is the difference
+    // with these numbers. V8 message content comes as a char sequence, WIP one as a string.
+    result.add(new Benchmark("JsonUtil.jsonObjectFromJson.v8") {
+      @Override
+      protected Object runOperation() throws ParseException {
+        Object json = null;
+        for (String content : v8Contents) {
+          json = JsonUtil.jsonObjectFromJson(CharBuffer.wrap(content));
+        }
+        return json;
+      }
+    });
+    result.add(new Benchmark("JsonUtil.jsonObjectFromJson.wip") {
+      @Override
+      protected Object runOperation() throws ParseException {
+        Object json = null;
+        for (String content : wipContents) {
+          json = JsonUtil.jsonObjectFromJson(content);
+        }
+        return json;
+      }
+    });
+
+    // The parser JsonUtil delegates to.
+    result.add(createJsonParserBenchmark("JSONParser.parse.v8", v8Contents));
+    result.add(createJsonParserBenchmark("JSONParser.parse.wip", wipContents));
+
+    result.add(new Benchmark("V8NativeProtocolParser") {
+      private final V8NativeProtocolParser parser = V8ProtocolParserAccess.get();
+
+      @Override
+      protected Object runOperation() throws Exception {
+        long sum = 0;
+        for (String content : v8Contents) {
+          JSONObject json = JsonUtil.jsonObjectFromJson(CharBuffer.wrap(content));
+          sum += readV8Message(parser.parseIncomingMessage(json));
+        }
+        return sum;
+      }
+    });
+
+    result.add(new Benchmark("WipProtocolParser") {
+      private final WipProtocolParser parser = WipParserAccess.get();
+
+      @Override
+      protected Object runOperation() throws Exception {
+        long sum = 0;
+        for (String content : wipContents) {
+          JSONObject json = JsonUtil.jsonObjectFromJson(content);
+          if (json.containsKey("method")) {
+            sum += readWipEvent(parser, parser.parseWipEvent(json));
+          } else {
+            WipCommandResponse response = parser.parseWipCommandResponse(json);
+            sum += response.id() == null ? 0 : response.id();
+          }
+        }
+        return sum;
+      }
+    });
+
+    return result;
+  }
+
+  private static Benchmark createJsonParserBenchmark(String name, final List<String> contents) {
+    return new Benchmark(name) {
+      @Override
+      protected Object runOperation() throws ParseException {
+        Object json = null;
+        for (String content : contents) {
+          json = new JSONParser().parse(content);
+        }
+        return json;
+      }
+    };
+  }
+
+  private static long readV8Message(IncomingMessage message) throws JsonProtocolParseException {
+    long sum = message.seq();
+    CommandResponse response = message.asCommandResponse();
+    if (response == null) {
+      return sum;
+    }
+    SuccessCommandResponse success = response.asSuccess();
+    if (success == null) {
+      return sum;
+    }
+    success.body();
+    for (SomeHandle handle : success.refs()) {
+      sum += handle.handle() + handle.type().length();
+    }
+    return sum;
+  }
+
+  private static long readWipEvent(WipProtocolParser parser, WipEvent event)
+      throws JsonProtocolParseException {
+    long sum = event.method().length();
+    if (!"Debugger.paused".equals(event.method())) {
+      return sum;
+    }
+    PausedEventData data =
+        parser.parseDebuggerPausedEventData(event.data().getUnderlyingObject());
+    for (CallFrameValue frame : data.callFrames()) {
+      sum += frame.functionName().length() + frame.location().lineNumber() +
+          frame.scopeChain().size();
+    }
+    return sum;
+  }
+}
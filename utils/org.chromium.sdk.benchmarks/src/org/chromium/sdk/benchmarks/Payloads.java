@@ -0,0 +1,202 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.chromium.sdk.internal.transport.SessionRecording;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A set of incoming messages that benchmarks process. Messages are taken from session
+ * recordings (see {@link SessionRecording}) or, if there are none, generated to look like
+ * typical messages of a suspended VM with a big call frame.
+ */
+public class Payloads {
+  private final List<Message> v8Messages;
+  private final List<String> wipMessages;
+
+  /**
+   * A V8 debug protocol message as it comes over the transport.
+   */
+  public static class Message {
+    private final Map<String, String> headers;
+    private final String content;
+
+    Message(Map<String, String> headers, String content) {
+      this.headers = headers;
+      this.content = content;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public String getContent() {
+      return content;
+    }
+  }
+
+  private Payloads(List<Message> v8Messages, List<String> wipMessages) {
+    this.v8Messages = Collections.unmodifiableList(v8Messages);
+    this.wipMessages = Collections.unmodifiableList(wipMessages);
+  }
+
+  public List<Message> getV8Messages() {
+    return v8Messages;
+  }
+
+  public List<String> getWipMessages() {
+    return wipMessages;
+  }
+
+  /**
+   * @return contents of all messages in both protocols
+   */
+  public List<String> getAllContents() {
+    List<String> result = new ArrayList<String>(v8Messages.size() + wipMessages.size());
+    for (Message message : v8Messages) {
+      result.add(message.getContent());
+    }
+    result.addAll(wipMessages);
+    return result;
+  }
+
+  /**
+   * Collects incoming messages from recordings. A message that has a 'type' field belongs to
+   * V8 debug protocol, other messages are considered WIP messages. A protocol that is missing
+   * from all the recordings gets generated messages.
+   */
+  public static Payloads load(List<File> recordings) throws IOException {
+    List<Message> v8Messages = new ArrayList<Message>();
+    List<String> wipMessages = new ArrayList<String>();
+    for (File file : recordings) {
+      for (SessionRecording.Entry entry : SessionRecording.read(file)) {
+        if (!entry.isIncoming()) {
+          continue;
+        }
+        JSONObject json;
+        try {
+          json = (JSONObject) new JSONParser().parse(entry.getContent());
+        } catch (ParseException e) {
+          throw new IOException("Malformed message in " + file + ": " + e.getMessage());
+        }
+        if (json.containsKey("type")) {
+          v8Messages.add(new Message(entry.getHeaders(), entry.getContent()));
+        } else {
+          wipMessages.add(entry.getContent());
+        }
+      }
+    }
+    if (v8Messages.isEmpty()) {
+      v8Messages = generateV8Messages();
+    }
+    if (wipMessages.isEmpty()) {
+      wipMessages = generateWipMessages();
+    }
+    return new Payloads(v8Messages, wipMessages);
+  }
+
+  private static final int GENERATED_VARIABLE_COUNT = 300;
+
+  private static List<Message> generateV8Messages() {
+    Map<String, String> headers = new LinkedHashMap<String, String>();
+    headers.put("Tool", "V8Debugger");
+    headers.put("Destination", "1");
+
+    List<Message> result = new ArrayList<Message>();
+    result.add(new Message(headers, "{\"seq\":14,\"type\":\"event\",\"event\":\"break\"," +
+        "\"body\":{\"invocationText\":\"#<Object>.onClick()\",\"sourceLine\":77," +
+        "\"sourceColumn\":4,\"sourceLineText\":\"    debugger;\",\"script\":{\"id\":52," +
+        "\"name\":\"http://localhost/app.js\",\"lineOffset\":0,\"columnOffset\":0," +
+        "\"lineCount\":1200}}}"));
+
+    StringBuilder builder = new StringBuilder();
+    builder.append("{\"seq\":15,\"request_seq\":7,\"type\":\"response\",");
+    builder.append("\"command\":\"backtrace\",\"success\":true,\"body\":{\"fromFrame\":0,");
+    builder.append("\"toFrame\":1,\"totalFrames\":1,\"frames\":[{\"type\":\"frame\",");
+    builder.append("\"index\":0,\"receiver\":{\"ref\":1},\"func\":{\"ref\":0},");
+    builder.append("\"script\":{\"ref\":2},\"constructCall\":false,\"debuggerFrame\":false,");
+    builder.append("\"arguments\":[],\"locals\":[");
+    for (int i = 0; i < GENERATED_VARIABLE_COUNT; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"name\":\"local").append(i).append("\",\"value\":{\"ref\":")
+          .append(i + 3).append("}}");
+    }
+    builder.append("],\"position\":3045,\"line\":77,\"column\":4,\"sourceLineText\":");
+    builder.append("\"    debugger;\",\"scopes\":[{\"type\":1,\"index\":0}]}]},\"refs\":[");
+    for (int i = 0; i < GENERATED_VARIABLE_COUNT; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"handle\":").append(i + 3).append(",\"type\":\"object\",");
+      builder.append("\"className\":\"Object\",\"constructorFunction\":{\"ref\":5},");
+      builder.append("\"protoObject\":{\"ref\":6},\"prototypeObject\":{\"ref\":7},");
+      builder.append("\"properties\":[{\"name\":\"value\",\"propertyType\":1,\"ref\":")
+          .append(i + 4).append("}],\"text\":\"#<Object>\"}");
+    }
+    builder.append("],\"running\":false}");
+    result.add(new Message(headers, builder.toString()));
+    return result;
+  }
+
+  private static List<String> generateWipMessages() {
+    List<String> result = new ArrayList<String>();
+
+    StringBuilder builder = new StringBuilder();
+    builder.append("{\"method\":\"Debugger.paused\",\"params\":{\"callFrames\":[");
+    for (int i = 0; i < 20; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"callFrameId\":\"{\\\"ordinal\\\":").append(i)
+          .append(",\\\"injectedScriptId\\\":1}\",\"functionName\":\"handler").append(i)
+          .append("\",\"location\":{\"scriptId\":\"52\",\"lineNumber\":").append(77 + i)
+          .append(",\"columnNumber\":4},\"scopeChain\":[{\"type\":\"local\",\"object\":")
+          .append("{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":1,")
+          .append("\\\"id\\\":").append(2 * i).append("}\",\"className\":\"Object\",")
+          .append("\"description\":\"Object\"}},{\"type\":\"global\",\"object\":")
+          .append("{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":1,")
+          .append("\\\"id\\\":").append(2 * i + 1).append("}\",\"className\":\"Window\",")
+          .append("\"description\":\"Window\"}}],\"this\":{\"type\":\"object\",")
+          .append("\"className\":\"Window\",\"description\":\"Window\"}}");
+    }
+    builder.append("],\"reason\":\"other\",\"hitBreakpoints\":[]}}");
+    result.add(builder.toString());
+
+    builder = new StringBuilder();
+    builder.append("{\"id\":31,\"result\":{\"result\":[");
+    for (int i = 0; i < GENERATED_VARIABLE_COUNT; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append("{\"name\":\"property").append(i).append("\",\"value\":");
+      if (i % 3 == 0) {
+        builder.append("{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":1,")
+            .append("\\\"id\\\":").append(100 + i).append("}\",\"className\":\"Object\",")
+            .append("\"description\":\"Object\"}");
+      } else if (i % 3 == 1) {
+        builder.append("{\"type\":\"string\",\"value\":\"text value ").append(i).append("\"}");
+      } else {
+        builder.append("{\"type\":\"number\",\"value\":").append(i).append(",\"description\":\"")
+            .append(i).append("\"}");
+      }
+      builder.append(",\"writable\":true,\"configurable\":true,\"enumerable\":true}");
+    }
+    builder.append("]}}");
+    result.add(builder.toString());
+    return result;
+  }
+}
@@ -0,0 +1,147 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.chromium.debug.core.util.JsValueStringifier;
+import org.chromium.sdk.JsArray;
+import org.chromium.sdk.JsObject;
+import org.chromium.sdk.JsObjectProperty;
+import org.chromium.sdk.JsValue;
+import org.chromium.sdk.JsVariable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * A benchmark of {@link JsValueStringifier} that renders every message of the payload set as
+ * a JavaScript value (JSON objects become objects, JSON arrays become arrays). Values are
+ * in-memory implementations of the SDK interfaces, so the numbers do not include loading
+ * values from remote.
+ */
+class StringifierBenchmarks {
+  static List<Benchmark> create(final Payloads payloads) {
+    List<Benchmark> result = new ArrayList<Benchmark>();
+
+    result.add(new Benchmark("JsValueStringifier.render") {
+      private final JsValueStringifier stringifier = new JsValueStringifier();
+      private final List<JsValue> values = new ArrayList<JsValue>();
+
+      @Override
+      protected void setUp() throws Exception {
+        for (String content : payloads.getAllContents()) {
+          values.add(toJsValue(new JSONParser().parse(content)));
+        }
+      }
+
+      @Override
+      protected Object runOperation() {
+        int length = 0;
+        for (JsValue value : values) {
+          length += stringifier.render(value).length();
+          // Properties are rendered the same way in Variables view.
+          JsObject object = value.asObject();
+          for (JsVariable property : object.getProperties()) {
+            length += stringifier.render(property.getValue()).length();
+          }
+        }
+        return length;
+      }
+    });
+
+    return result;
+  }
+
+  private static JsValue toJsValue(Object json) {
+    if (json instanceof JSONObject) {
+      List<JsObjectProperty> properties = new ArrayList<JsObjectProperty>();
+      for (Object entryObject : ((JSONObject) json).entrySet()) {
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) entryObject;
+        properties.add(createProperty(entry.getKey().toString(), toJsValue(entry.getValue())));
+      }
+      return createValue(JsObject.class, JsValue.Type.TYPE_OBJECT, "Object",
+          Collections.unmodifiableList(properties), null);
+    } else if (json instanceof JSONArray) {
+      List<JsObjectProperty> properties = new ArrayList<JsObjectProperty>();
+      SortedMap<Long, JsVariable> elements = new TreeMap<Long, JsVariable>();
+      JSONArray array = (JSONArray) json;
+      for (int i = 0; i < array.size(); i++) {
+        JsObjectProperty element = createProperty(String.valueOf(i), toJsValue(array.get(i)));
+        properties.add(element);
+        elements.put((long) i, element);
+      }
+      return createValue(JsArray.class, JsValue.Type.TYPE_ARRAY, "Array",
+          Collections.unmodifiableList(properties), Collections.unmodifiableSortedMap(elements));
+    } else if (json instanceof String) {
+      return createValue(JsValue.class, JsValue.Type.TYPE_STRING, (String) json, null, null);
+    } else if (json instanceof Boolean) {
+      return createValue(JsValue.class, JsValue.Type.TYPE_BOOLEAN, json.toString(), null, null);
+    } else if (json == null) {
+      return createValue(JsValue.class, JsValue.Type.TYPE_NULL, "null", null, null);
+    } else {
+      return createValue(JsValue.class, JsValue.Type.TYPE_NUMBER, json.toString(), null, null);
+    }
+  }
+
+  private static JsValue createValue(Class<? extends JsValue> valueInterface,
+      final JsValue.Type type, final String valueString,
+      final List<JsObjectProperty> properties, final SortedMap<Long, JsVariable> elements) {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("getType")) {
+          return type;
+        } else if (name.equals("getValueString")) {
+          return valueString;
+        } else if (name.equals("getClassName")) {
+          return valueString;
+        } else if (name.equals("asObject")) {
+          return properties == null ? null : proxy;
+        } else if (name.equals("asArray")) {
+          return elements == null ? null : proxy;
+        } else if (name.equals("getProperties")) {
+          return properties;
+        } else if (name.equals("toSparseArray")) {
+          return elements;
+        } else if (name.equals("isTruncated")) {
+          return false;
+        }
+        throw new UnsupportedOperationException(name);
+      }
+    };
+    return (JsValue) Proxy.newProxyInstance(StringifierBenchmarks.class.getClassLoader(),
+        new Class<?>[] { valueInterface }, handler);
+  }
+
+  private static JsObjectProperty createProperty(final String name, final JsValue value) {
+    InvocationHandler handler = new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        String methodName = method.getName();
+        if (methodName.equals("getName")) {
+          return name;
+        } else if (methodName.equals("getValue")) {
+          return value;
+        } else if (methodName.equals("isReadable")) {
+          return true;
+        }
+        throw new UnsupportedOperationException(methodName);
+      }
+    };
+    return (JsObjectProperty) Proxy.newProxyInstance(
+        StringifierBenchmarks.class.getClassLoader(),
+        new Class<?>[] { JsObjectProperty.class }, handler);
+  }
+}
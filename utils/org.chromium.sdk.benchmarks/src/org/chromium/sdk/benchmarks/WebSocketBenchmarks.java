@@ -0,0 +1,90 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.chromium.sdk.internal.transport.WsStubServer;
+import org.chromium.sdk.internal.websocket.Hybi17WsConnection;
+import org.chromium.sdk.internal.websocket.WsConnection;
+
+/**
+ * A benchmark of incoming frame decoding in {@link Hybi17WsConnection}. A local
+ * {@link WsStubServer} accepts the handshake and then sends all WIP messages of the payload set
+ * as text frames on each operation; the operation ends when the listener has received all
+ * of them. The numbers include local socket transfer and message dispatch. Allocation is
+ * measured on the benchmark thread only, so it does not show allocation of the decoder.
+ */
+class WebSocketBenchmarks {
+  private static final int TIMEOUT_MS = 10000;
+
+  static List<Benchmark> create(Payloads payloads) {
+    final List<String> messages = payloads.getWipMessages();
+    final byte[] frames = WsStubServer.encodeTextFrames(messages);
+
+    List<Benchmark> result = new ArrayList<Benchmark>();
+
+    result.add(new Benchmark("Hybi17WsConnection.decode") {
+      private final Semaphore receivedMessages = new Semaphore(0);
+      private WsStubServer server;
+      private WsConnection connection;
+
+      @Override
+      protected void setUp() throws Exception {
+        server = new WsStubServer(new WsStubServer.Handler() {
+          @Override
+          public void connected(WsStubServer server) {
+          }
+
+          @Override
+          public void textMessageReceived(String text) {
+          }
+        });
+        server.start();
+
+        connection = Hybi17WsConnection.connect(server.getAddress(), TIMEOUT_MS,
+            "/devtools/page/1", Hybi17WsConnection.MaskStrategy.NORMAL_MASK, null);
+        connection.startListening(new WsConnection.Listener() {
+          @Override
+          public void textMessageRecieved(String text) {
+            receivedMessages.release();
+          }
+
+          @Override
+          public void errorMessage(Exception ex) {
+            ex.printStackTrace();
+          }
+
+          @Override
+          public void eofMessage() {
+          }
+        });
+      }
+
+      @Override
+      protected Object runOperation() throws Exception {
+        server.sendFrames(frames);
+        if (!receivedMessages.tryAcquire(messages.size(), TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+          throw new IOException("Messages have not been received");
+        }
+        return receivedMessages;
+      }
+
+      @Override
+      protected void tearDown() throws Exception {
+        if (connection != null) {
+          connection.getCloser().sendSignal(null, null);
+        }
+        server.stop();
+      }
+    });
+
+    return result;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright (c) 2012 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.sdk.internal.transport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.chromium.sdk.benchmarks.Benchmark;
+import org.chromium.sdk.benchmarks.Payloads;
+import org.chromium.sdk.util.ByteToCharConverter;
+
+/**
+ * Benchmarks of reading V8 debug protocol messages from a socket stream. They live in
+ * the transport package because {@link LineReader} is package-private. Each operation
+ * reads all the V8 messages of the payload set from an in-memory stream.
+ */
+public class TransportBenchmarks {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // Socket input is normally decoded in chunks of this size.
+  private static final int CHUNK_SIZE = 4096;
+
+  public static List<Benchmark> create(Payloads payloads) {
+    final byte[] stream = toWireFormat(payloads.getV8Messages(), true);
+    // Only headers are read by lines, content is read as a block of bytes.
+    final byte[] headerStream = toWireFormat(payloads.getV8Messages(), false);
+    final int messageCount = payloads.getV8Messages().size();
+
+    List<Benchmark> result = new ArrayList<Benchmark>();
+
+    result.add(new Benchmark("LineReader.readLine") {
+      @Override
+      protected Object runOperation() throws IOException {
+        LineReader reader = new LineReader(new ByteArrayInputStream(headerStream));
+        String lastLine = null;
+        while (true) {
+          String line = reader.readLine(UTF_8);
+          if (line == null) {
+            return lastLine;
+          }
+          lastLine = line;
+        }
+      }
+    });
+
+    result.add(new Benchmark("Message.fromBufferedReader") {
+      @Override
+      protected Object runOperation() throws Exception {
+        LineReader reader = new LineReader(new ByteArrayInputStream(stream));
+        Message message = null;
+        for (int i = 0; i < messageCount; i++) {
+          message = Message.fromBufferedReader(reader, UTF_8);
+        }
+        return message;
+      }
+    });
+
+    result.add(new Benchmark("Message.fromBufferedReader.pooled") {
+      private final MessageBufferPool pool = new MessageBufferPool();
+
+      @Override
+      protected Object runOperation() throws Exception {
+        LineReader reader = new LineReader(new ByteArrayInputStream(stream));
+        int length = 0;
+        for (int i = 0; i < messageCount; i++) {
+          Message message = Message.fromBufferedReader(reader, UTF_8, pool);
+          length += message.getContentSequence().length();
+          message.release();
+        }
+        return length;
+      }
+    });
+
+    result.add(new Benchmark("ByteToCharConverter.convert") {
+      @Override
+      protected Object runOperation() {
+        ByteToCharConverter converter = new ByteToCharConverter(UTF_8);
+        CharBuffer chars = null;
+        for (int pos = 0; pos < stream.length; pos += CHUNK_SIZE) {
+          int length = Math.min(CHUNK_SIZE, stream.length - pos);
+          chars = converter.convert(ByteBuffer.wrap(stream, pos, length));
+        }
+        return chars;
+      }
+    });
+
+    return result;
+  }
+
+  private static byte[] toWireFormat(List<Payloads.Message> messages, boolean withContent) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try {
+      for (Payloads.Message message : messages) {
+        byte[] contentBytes = message.getContent().getBytes(UTF_8);
+        StringBuilder headers = new StringBuilder();
+        for (Map.Entry<String, String> header : message.getHeaders().entrySet()) {
+          headers.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        headers.append("Content-Length: ").append(contentBytes.length).append("\r\n\r\n");
+        output.write(headers.toString().getBytes(UTF_8));
+        if (withContent) {
+          output.write(contentBytes);
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return output.toByteArray();
+  }
+}